@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+
+package de.faz.modules.query;
+
+import com.google.common.base.Optional;
+import de.faz.modules.query.exception.SearchRejectedException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of searches that are executed at the same time and adapts this limit to the
+ * latency of the search engine. The limit grows while the latency stays near the minimum latency
+ * that was observed and shrinks with the ratio of minimum to current latency when requests start
+ * to queue up in the search engine (a gradient limit as in TCP Vegas).
+ *
+ * The limiter learns only from the requests that reach the search engine: register it as
+ * {@link SearchRequestListener} of the executor that sends them. Searches that are answered without
+ * a request still hold a slot while they run, but do not change the limit.
+ *
+ * A search that exceeds the limit waits in a bounded queue for at most <code>maxQueueTime</code>
+ * milliseconds or until the deadline of its settings, after that it is rejected with a
+ * {@link SearchRejectedException}. Share one instance for all contexts that search the same engine.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class AdaptiveConcurrencyLimiter implements SearchRequestListener {
+
+	public static final int DEFAULT_INITIAL_LIMIT = 20;
+	public static final int DEFAULT_MIN_LIMIT = 2;
+	public static final int DEFAULT_MAX_LIMIT = 200;
+	public static final int DEFAULT_MAX_QUEUE_SIZE = 50;
+	public static final long DEFAULT_MAX_QUEUE_TIME = 100;
+
+	/** latency increase over the minimum that is accepted without reducing the limit */
+	private static final double TOLERANCE = 1.5;
+	/** weight of a new sample in the smoothed limit */
+	private static final double SMOOTHING = 0.2;
+	/** the limit is reduced by this factor when a search fails */
+	private static final double BACKOFF_RATIO = 0.9;
+	/** the minimum latency is measured again after this number of samples, so it follows a changed index */
+	private static final int MIN_LATENCY_RESET_INTERVAL = 1000;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final int maxQueueSize;
+	private final long maxQueueTimeNanos;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition permitAvailable = lock.newCondition();
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private double limit;
+	private long minLatencyNanos = Long.MAX_VALUE;
+	private int samplesSinceReset;
+	private int inFlight;
+	private int queued;
+
+	public AdaptiveConcurrencyLimiter() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_MAX_QUEUE_SIZE, DEFAULT_MAX_QUEUE_TIME);
+	}
+
+	/**
+	 * @param maxQueueTime the time in milliseconds a search waits for a free slot before it is rejected
+	 */
+	public AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, final int maxQueueSize, final long maxQueueTime) {
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("the limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit.");
+		}
+		if (maxQueueSize < 0) {
+			throw new IllegalArgumentException("the queue size must not be negative.");
+		}
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.maxQueueSize = maxQueueSize;
+		this.maxQueueTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueTime);
+	}
+
+	/**
+	 * Waits until the search may be executed. Every successful call must be followed by a call
+	 * of {@link #release()} when the search is finished.
+	 *
+	 * @param settings the settings of the search, a search does not wait beyond their deadline
+	 * @throws SearchRejectedException when the queue is full or the search waited too long
+	 */
+	public void acquire(final SearchSettings settings) {
+		lock.lock();
+		try {
+			if (inFlight < getLimit()) {
+				inFlight++;
+				return;
+			}
+			if (queued >= maxQueueSize) {
+				throw reject("the concurrency limit of " + getLimit() + " searches is reached and the queue is full.");
+			}
+			queued++;
+			try {
+				long waitNanos = getMaxWaitNanos(settings);
+				while (inFlight >= getLimit()) {
+					if (waitNanos <= 0) {
+						throw reject("no search slot became free within the queue time.");
+					}
+					waitNanos = permitAvailable.awaitNanos(waitNanos);
+				}
+				inFlight++;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw reject("interrupted while waiting for a search slot.");
+			} finally {
+				queued--;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Frees the slot of a finished search.
+	 */
+	public void release() {
+		lock.lock();
+		try {
+			inFlight--;
+			permitAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adapts the limit to the latency of a request that was sent to the search engine. It is called
+	 * while the search still holds its slot.
+	 *
+	 * @param success false when the request failed, this reduces the limit
+	 */
+	@Override
+	public void requestFinished(final long latencyNanos, final boolean success) {
+		lock.lock();
+		try {
+			updateLimit(latencyNanos, success, inFlight);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void updateLimit(final long latencyNanos, final boolean success, final int inFlightBefore) {
+		if (!success) {
+			limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+			return;
+		}
+		if (++samplesSinceReset >= MIN_LATENCY_RESET_INTERVAL) {
+			samplesSinceReset = 0;
+			minLatencyNanos = latencyNanos;
+		}
+		minLatencyNanos = Math.min(minLatencyNanos, Math.max(1, latencyNanos));
+
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minLatencyNanos / Math.max(1, latencyNanos)));
+		double newLimit = limit * gradient + Math.sqrt(limit);
+		if (newLimit > limit && inFlightBefore < limit / 2) {
+			// the searches do not use the limit, so there is no evidence that a higher limit is safe
+			return;
+		}
+		newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+		limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+	}
+
+	private long getMaxWaitNanos(final SearchSettings settings) {
+		long waitNanos = maxQueueTimeNanos;
+		Optional<Long> remainingTime = settings != null ? settings.getRemainingTime() : Optional.<Long>absent();
+		if (remainingTime.isPresent()) {
+			waitNanos = Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(remainingTime.get()));
+		}
+		return waitNanos;
+	}
+
+	private SearchRejectedException reject(final String message) {
+		rejectedCount.incrementAndGet();
+		return new SearchRejectedException(message);
+	}
+
+	/**
+	 * @return the current number of searches that may be executed at the same time
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of searches that wait for a free slot
+	 */
+	public int getQueued() {
+		lock.lock();
+		try {
+			return queued;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link SearchContext} that can execute searches without blocking the calling thread.
+ * The method is not part of {@link SearchContext} itself, so existing implementations of
+ * that interface keep compiling. All contexts that extend {@link DefaultSearchContext}
+ * implement this interface.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public interface AsyncSearchContext extends SearchContext {
+
+    /**
+     * This function works like {@link SearchContext#execute(Query, SearchSettings)}
+     * but it does not wait for the backend. The returned future is completed
+     * when the search result is available. Cancelling the future aborts the
+     * request when the underlying executor supports it.
+     *
+     * @param query a {@link Query} instance
+     * @param settings a custom {@link SearchSettings} instance
+     * @return a future of the {@link SearchResult}
+     */
+    @Nonnull ListenableFuture<SearchResult> executeAsync(@Nonnull Query query, @Nonnull SearchSettings settings);
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+
+package de.faz.modules.query;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import de.faz.modules.query.exception.SearchFailedException;
+import de.faz.modules.query.fields.Mapping;
+
+import javax.annotation.Nonnull;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads single documents by their id and combines all lookups that are issued within a short
+ * window into one search <code>id:(1 OR 2 OR ...)</code>. Every caller gets its own future that is
+ * completed with its document, with an absent value when the id was not found, or with an exception
+ * when the search failed.
+ *
+ * A batch is sent when the window of its first lookup has passed, when it reaches the maximum batch
+ * size or when {@link #dispatch()} is called. Call {@link #dispatch()} after all lookups of a request
+ * are issued to skip the window. Lookups of the same id within one batch share one future.
+ *
+ * The id field is given as field definition like in {@link Query#term(Object)}, the function reads
+ * the id of a loaded document, i.e. it calls the getter of the id field:
+ * <pre>
+ * new BatchingDocumentLoader&lt;&gt;(context, Article.class, definition.getContentId(), new Function&lt;Article, String&gt;() {...}, scheduler);
+ * </pre>
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class BatchingDocumentLoader<T extends Mapping> {
+
+	public static final long DEFAULT_BATCH_WINDOW = 2;
+	/** stays well below the default limit of 1024 boolean clauses of solr */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+	private final SearchContext context;
+	private final Class<T> mappingClass;
+	private final TermQueryPart idTerm;
+	private final Function<? super T, ? extends CharSequence> idFunction;
+	private final ScheduledExecutorService scheduler;
+	private final Object lock = new Object();
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong batchCount = new AtomicLong();
+
+	private volatile long batchWindow = DEFAULT_BATCH_WINDOW;
+	private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private Map<String, SettableFuture<Optional<T>>> pending = new LinkedHashMap<>();
+
+	public BatchingDocumentLoader(@Nonnull final SearchContext context, @Nonnull final Class<T> mappingClass, final Object idFieldDefinition,
+		@Nonnull final Function<? super T, ? extends CharSequence> idFunction, @Nonnull final ScheduledExecutorService scheduler) {
+		this.context = Objects.requireNonNull(context, "A search context is required to load the documents.");
+		this.mappingClass = Objects.requireNonNull(mappingClass, "A mapping class is required to read the documents.");
+		this.idTerm = context.createQuery().term(idFieldDefinition);
+		this.idFunction = Objects.requireNonNull(idFunction, "A function is required to read the id of a document.");
+		this.scheduler = Objects.requireNonNull(scheduler, "A scheduler is required to send the batches.");
+	}
+
+	/**
+	 * Sets the time in milliseconds a lookup waits for other lookups before its batch is sent.
+	 */
+	public BatchingDocumentLoader<T> withBatchWindow(final long batchWindow) {
+		if (batchWindow < 0) {
+			throw new IllegalArgumentException("the batch window must not be negative.");
+		}
+		this.batchWindow = batchWindow;
+		return this;
+	}
+
+	public BatchingDocumentLoader<T> withMaxBatchSize(final int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("a batch must contain at least one id.");
+		}
+		this.maxBatchSize = maxBatchSize;
+		return this;
+	}
+
+	/**
+	 * Returns a future of the document with the given id. The future fails when the search
+	 * of the batch throws or returns a result that is marked with {@link SearchContext.SearchResult#isFailed()},
+	 * an absent value always means that the search engine did not find the id.
+	 */
+	@Nonnull
+	public ListenableFuture<Optional<T>> load(@Nonnull final CharSequence id) {
+		String key = Objects.requireNonNull(id, "An id is required to load a document.").toString();
+		loadCount.incrementAndGet();
+		Map<String, SettableFuture<Optional<T>>> fullBatch = null;
+		SettableFuture<Optional<T>> future;
+		synchronized (lock) {
+			future = pending.get(key);
+			if (future == null) {
+				future = SettableFuture.create();
+				pending.put(key, future);
+				if (pending.size() >= maxBatchSize) {
+					fullBatch = takePending();
+				} else if (pending.size() == 1) {
+					scheduleDispatch(pending);
+				}
+			}
+		}
+		if (fullBatch != null) {
+			send(fullBatch);
+		}
+		return future;
+	}
+
+	/**
+	 * Sends all pending lookups at once without waiting for the batch window.
+	 */
+	public void dispatch() {
+		Map<String, SettableFuture<Optional<T>>> batch;
+		synchronized (lock) {
+			batch = takePending();
+		}
+		if (!batch.isEmpty()) {
+			send(batch);
+		}
+	}
+
+	private void scheduleDispatch(final Map<String, SettableFuture<Optional<T>>> batch) {
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (lock) {
+					// the batch was already sent because it was full or dispatched
+					if (pending != batch) {
+						return;
+					}
+					takePending();
+				}
+				send(batch);
+			}
+		}, batchWindow, TimeUnit.MILLISECONDS);
+	}
+
+	private Map<String, SettableFuture<Optional<T>>> takePending() {
+		Map<String, SettableFuture<Optional<T>>> batch = pending;
+		pending = new LinkedHashMap<>();
+		return batch;
+	}
+
+	private void send(final Map<String, SettableFuture<Optional<T>>> batch) {
+		batchCount.incrementAndGet();
+		try {
+			Query query = context.createQuery();
+			query.add(idTerm.values(batch.keySet().toArray(new String[batch.size()])));
+			SearchSettings settings = context.withSettings().withPageSize(batch.size()).startAt(0).retainOnlyFieldsOf(mappingClass);
+			Futures.addCallback(executeAsync(query, settings), new FutureCallback<SearchContext.SearchResult>() {
+				@Override
+				public void onSuccess(final SearchContext.SearchResult result) {
+					if (result.isFailed()) {
+						// an empty result of a failed search must not complete the lookups as not found
+						fail(batch, new SearchFailedException("the search engine failed to load a batch of " + batch.size() + " documents."));
+						return;
+					}
+					try {
+						Iterator<T> it = result.getResultsForMapping(mappingClass);
+						while (it.hasNext()) {
+							T document = it.next();
+							CharSequence id = idFunction.apply(document);
+							SettableFuture<Optional<T>> future = id != null ? batch.get(id.toString()) : null;
+							if (future != null) {
+								future.set(Optional.of(document));
+							}
+						}
+					} catch (RuntimeException e) {
+						fail(batch, e);
+					}
+					// a future that is already completed ignores the absent value
+					for (SettableFuture<Optional<T>> future : batch.values()) {
+						future.set(Optional.<T>absent());
+					}
+				}
+
+				@Override
+				public void onFailure(final Throwable t) {
+					fail(batch, t);
+				}
+			});
+		} catch (RuntimeException e) {
+			fail(batch, e);
+		}
+	}
+
+	/**
+	 * Searches without blocking when the context supports it, other contexts execute the search in the
+	 * thread that sends the batch.
+	 */
+	private ListenableFuture<SearchContext.SearchResult> executeAsync(final Query query, final SearchSettings settings) {
+		if (context instanceof AsyncSearchContext) {
+			return ((AsyncSearchContext) context).executeAsync(query, settings);
+		}
+		return Futures.immediateFuture(context.execute(query, settings));
+	}
+
+	private void fail(final Map<String, SettableFuture<Optional<T>>> batch, final Throwable t) {
+		for (SettableFuture<Optional<T>> future : batch.values()) {
+			future.setException(t);
+		}
+	}
+
+	/**
+	 * @return the number of documents that were requested
+	 */
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/**
+	 * @return the number of searches that were sent to load the documents
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+
+package de.faz.modules.query;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import de.faz.modules.query.fields.Mapping;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+/**
+ * An executor that executes the searches of the wrapped executor within the limit of an
+ * {@link AdaptiveConcurrencyLimiter}. A search that exceeds the limit is queued or rejected
+ * with a {@link de.faz.modules.query.exception.SearchRejectedException}. The limit adapts to the
+ * requests the wrapped executor reports to the limiter as {@link SearchRequestListener}, this
+ * executor only holds the slot while the search runs.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class ConcurrencyLimitingQueryExecutor extends ForwardingQueryExecutor {
+
+	private final AdaptiveConcurrencyLimiter limiter;
+
+	public ConcurrencyLimitingQueryExecutor(@Nonnull final QueryExecutor delegate, @Nonnull final AdaptiveConcurrencyLimiter limiter) {
+		super(delegate);
+		this.limiter = Objects.requireNonNull(limiter, "A limiter is required to limit the searches.");
+	}
+
+	@Nonnull
+	@Override
+	public SearchContext.SearchResult execute(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		limiter.acquire(settings);
+		try {
+			return super.execute(query, settings);
+		} finally {
+			limiter.release();
+		}
+	}
+
+	/**
+	 * The slot is acquired before the search is sent and released when the returned future
+	 * is completed, so a search that is rejected throws before a future is returned.
+	 */
+	@Nonnull
+	@Override
+	public ListenableFuture<SearchContext.SearchResult> executeAsync(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		limiter.acquire(settings);
+		ListenableFuture<SearchContext.SearchResult> future;
+		try {
+			future = super.executeAsync(query, settings);
+		} catch (RuntimeException e) {
+			limiter.release();
+			throw e;
+		}
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				limiter.release();
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
+	}
+
+	@Override
+	public long count(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		limiter.acquire(settings);
+		try {
+			return super.count(query, settings);
+		} finally {
+			limiter.release();
+		}
+	}
+
+	@Override
+	public <T extends Mapping> long stream(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final ResultHandler<T> handler) {
+		limiter.acquire(settings);
+		try {
+			return super.stream(query, settings, mappingClass, handler);
+		} finally {
+			limiter.release();
+		}
+	}
+
+	@Nonnull
+	public AdaptiveConcurrencyLimiter getLimiter() {
+		return limiter;
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link SearchContext} that can count the matching documents without loading them.
+ * The method is not part of {@link SearchContext} itself, so existing implementations of
+ * that interface keep compiling. All contexts that extend {@link DefaultSearchContext}
+ * implement this interface.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public interface CountingSearchContext extends SearchContext {
+
+    /**
+     * This function returns the number of documents that match the query and
+     * the filters of the given {@link SearchSettings}. It does not load any
+     * documents, so use this function instead of {@link SearchContext#execute(Query, SearchSettings)}
+     * when you only need {@link SearchResult#getNumCount()}.
+     * Paging, sorting, highlighting and field restrictions of the settings are ignored.
+     *
+     * @param query a {@link Query} instance
+     * @param settings a custom {@link SearchSettings} instance
+     * @return the number of matching documents
+     * @throws de.faz.modules.query.exception.SearchFailedException if the search engine failed
+     *         or the deadline of the settings was exceeded before all matches were counted
+     */
+    long count(@Nonnull Query query, @Nonnull SearchSettings settings);
+}
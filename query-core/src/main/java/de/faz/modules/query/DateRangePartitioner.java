@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+package de.faz.modules.query;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Splits the index into date ranges of equal length between two dates. The first and the last
+ * range are open, so documents before the start or after the end date belong to the first or last
+ * partition. Documents without a value in the date field belong to an additional last partition.
+ *
+ * <pre>
+ * Article fieldDef = context.createFieldDefinitionFor(Article.class);
+ * Partitioner partitioner = new DateRangePartitioner(context.createQuery().term(fieldDef.getPublishingDate()), from, to, 8);
+ * </pre>
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class DateRangePartitioner implements Partitioner {
+
+	private final TermQueryPart dateField;
+	private final Date from;
+	private final Date to;
+	private final int partitionCount;
+
+	public DateRangePartitioner(@Nonnull final TermQueryPart dateField, @Nonnull final Date from, @Nonnull final Date to, final int partitionCount) {
+		this.dateField = Objects.requireNonNull(dateField, "A date field is required to create partitions.");
+		this.from = Objects.requireNonNull(from, "A start date is required to create partitions.");
+		this.to = Objects.requireNonNull(to, "An end date is required to create partitions.");
+		if (partitionCount < 1) {
+			throw new IllegalArgumentException("at least one partition is required.");
+		}
+		if (!from.before(to)) {
+			throw new IllegalArgumentException("the start date must be before the end date.");
+		}
+		this.partitionCount = partitionCount;
+	}
+
+	@Nonnull
+	@Override
+	public List<Query> createPartitions(@Nonnull final SearchContext context) {
+		long step = Math.max(1, (to.getTime() - from.getTime()) / partitionCount);
+		List<Query> partitions = new ArrayList<>(partitionCount + 1);
+		for (int i = 0; i < partitionCount; i++) {
+			// ranges are inclusive, so every range ends one millisecond before the next one starts
+			DateOption start = i == 0 ? DateOption.WILDCARD : DateOption.from(new Date(from.getTime() + i * step));
+			DateOption end = i == partitionCount - 1 ? DateOption.WILDCARD : DateOption.from(new Date(from.getTime() + (i + 1) * step - 1));
+			partitions.add(context.createQuery().add(dateField.range(start, end)));
+		}
+		Query withoutDate = context.createQuery();
+		partitions.add(withoutDate.add(withoutDate.not(dateField.range(DateOption.WILDCARD, DateOption.WILDCARD))));
+		return partitions;
+	}
+}
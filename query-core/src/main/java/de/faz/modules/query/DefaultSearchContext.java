@@ -14,6 +14,7 @@
 
 package de.faz.modules.query;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import de.faz.modules.query.fields.FieldDefinitionGenerator;
 import de.faz.modules.query.fields.Mapping;
 import org.slf4j.Logger;
@@ -25,7 +26,7 @@ import java.util.Collection;
 import java.util.List;
 
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
-public abstract class DefaultSearchContext implements SearchContext {
+public abstract class DefaultSearchContext implements AsyncSearchContext, CountingSearchContext, StreamingSearchContext {
 
 	private static final Logger LOG = LoggerFactory.getLogger(DefaultSearchContext.class);
 
@@ -90,12 +91,40 @@ public abstract class DefaultSearchContext implements SearchContext {
 	@Nonnull
     @Override
 	public SearchResult execute(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
-	    Query decoratedQuery = query;
-	    SearchSettings decoratedSettings = settings;
-	    for(final SearchDecorator decorator : decoratorList) {
-		    decoratedQuery = decorator.decorateQuery(decoratedQuery);
-		    decoratedSettings = decorator.decorateSettings(decoratedSettings);
-	    }
+		decorate(query, settings);
         return executor.execute(query, settings);
     }
+
+	@Nonnull
+	@Override
+	public ListenableFuture<SearchResult> executeAsync(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		decorate(query, settings);
+		return executor.executeAsync(query, settings);
+	}
+
+	@Override
+	public long count(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		decorate(query, settings);
+		return executor.count(query, settings);
+	}
+
+	@Override
+	public <T extends Mapping> long stream(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final ResultHandler<T> handler) {
+		decorate(query, settings);
+		return executor.stream(query, settings, mappingClass, handler);
+	}
+
+	/**
+	 * Hands the query and the settings to all decorators in the order they were added. The decorators
+	 * modify the given instances, every decorator gets the instances returned by the previous one.
+	 */
+	private void decorate(final Query query, final SearchSettings settings) {
+		Query decoratedQuery = query;
+		SearchSettings decoratedSettings = settings;
+		for(final SearchDecorator decorator : decoratorList) {
+			decoratedQuery = decorator.decorateQuery(decoratedQuery);
+			decoratedSettings = decorator.decorateSettings(decoratedSettings);
+		}
+	}
 }
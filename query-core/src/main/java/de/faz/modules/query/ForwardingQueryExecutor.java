@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+
+package de.faz.modules.query;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import de.faz.modules.query.fields.Mapping;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+/**
+ * A {@link QueryExecutor} that forwards all calls to another executor. Extend this class
+ * to add behaviour around an executor, i.e. limits or metrics, and override only the
+ * methods you need.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public abstract class ForwardingQueryExecutor extends QueryExecutor {
+
+	protected final QueryExecutor delegate;
+
+	protected ForwardingQueryExecutor(@Nonnull final QueryExecutor delegate) {
+		this.delegate = Objects.requireNonNull(delegate, "An executor is required to forward the searches to.");
+	}
+
+	@Nonnull
+	@Override
+	public SearchContext.SearchResult execute(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		return delegate.execute(query, settings);
+	}
+
+	@Nonnull
+	@Override
+	public ListenableFuture<SearchContext.SearchResult> executeAsync(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		return delegate.executeAsync(query, settings);
+	}
+
+	@Override
+	public long count(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		return delegate.count(query, settings);
+	}
+
+	@Override
+	public <T extends Mapping> long stream(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final ResultHandler<T> handler) {
+		return delegate.stream(query, settings, mappingClass, handler);
+	}
+
+	@Nonnull
+	@Override
+	protected SearchContext.SearchResult executeQuery(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		return delegate.executeQuery(query, settings);
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+
+package de.faz.modules.query;
+
+import com.google.common.base.Optional;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether searches are executed with reduced options to take load off the search engine.
+ * Searches are degraded while the moving average of the latency exceeds the latency threshold or
+ * while more than <code>maxInFlight</code> searches are executed at the same time. They are executed
+ * completely again when the average latency has dropped below {@link #RECOVERY_RATIO} of the threshold.
+ *
+ * A degraded search drops or reduces the {@link de.faz.modules.query.capabilities.Degradable} options
+ * of its settings, i.e. highlighting and grouping, and requests at most <code>maxRows</code> rows.
+ * Share one instance for all contexts that search the same engine.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class LoadSheddingPolicy {
+
+	public static final long DEFAULT_LATENCY_THRESHOLD = 500;
+	public static final int DEFAULT_MAX_IN_FLIGHT = 50;
+
+	/** part of the latency threshold the average must fall below to stop degrading */
+	public static final double RECOVERY_RATIO = 0.8;
+
+	/** weight of the latest latency in the moving average */
+	private static final double LATENCY_DECAY = 0.1;
+
+	private final long latencyThresholdNanos;
+	private final int maxInFlight;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong degradedCount = new AtomicLong();
+
+	private Optional<Integer> maxRows = Optional.absent();
+	private double latencyAverage;
+	private boolean overloaded;
+
+	public LoadSheddingPolicy() {
+		this(DEFAULT_LATENCY_THRESHOLD, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * @param latencyThreshold the average latency in milliseconds above which searches are degraded
+	 * @param maxInFlight the number of concurrent searches above which searches are degraded
+	 */
+	public LoadSheddingPolicy(final long latencyThreshold, final int maxInFlight) {
+		if (latencyThreshold <= 0 || maxInFlight < 1) {
+			throw new IllegalArgumentException("the latency threshold and the maximum number of searches must be positive.");
+		}
+		this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThreshold);
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Sets the maximum number of rows a degraded search requests.
+	 */
+	public LoadSheddingPolicy withMaxRows(final int rows) {
+		if (rows < 1) {
+			throw new IllegalArgumentException("a degraded search must request at least one row.");
+		}
+		this.maxRows = Optional.of(rows);
+		return this;
+	}
+
+	/**
+	 * Registers a search that is about to start.
+	 */
+	public void searchStarted() {
+		inFlight.incrementAndGet();
+	}
+
+	/**
+	 * @return true when a search that is started now should be degraded
+	 */
+	public boolean shouldDegrade() {
+		return inFlight.get() > maxInFlight || isOverloaded();
+	}
+
+	void recordDegradedSearch() {
+		degradedCount.incrementAndGet();
+	}
+
+	/**
+	 * Registers a finished search with the time it took.
+	 */
+	public synchronized void searchFinished(final long latencyNanos) {
+		inFlight.decrementAndGet();
+		latencyAverage = latencyAverage == 0 ? latencyNanos : latencyAverage + LATENCY_DECAY * (latencyNanos - latencyAverage);
+		if (latencyAverage > latencyThresholdNanos) {
+			overloaded = true;
+		} else if (latencyAverage < latencyThresholdNanos * RECOVERY_RATIO) {
+			overloaded = false;
+		}
+	}
+
+	public synchronized boolean isOverloaded() {
+		return overloaded;
+	}
+
+	public Optional<Integer> getMaxRows() {
+		return maxRows;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the moving average of the latency in milliseconds
+	 */
+	public synchronized double getLatencyAverage() {
+		return latencyAverage / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return the number of searches that were degraded
+	 */
+	public long getDegradedCount() {
+		return degradedCount.get();
+	}
+}
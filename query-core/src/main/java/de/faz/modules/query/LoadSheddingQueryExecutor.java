@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+
+package de.faz.modules.query;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import de.faz.modules.query.fields.Mapping;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+/**
+ * An executor that degrades the searches of the wrapped executor while the {@link LoadSheddingPolicy}
+ * reports an overload. A degraded search is executed with a copy of its settings, so the settings of
+ * the caller are never changed, and its result is marked with {@link SearchContext.SearchResult#isDegraded()}.
+ * Counts and streamed searches are never degraded but are taken into account by the policy.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class LoadSheddingQueryExecutor extends ForwardingQueryExecutor {
+
+	private final LoadSheddingPolicy policy;
+
+	public LoadSheddingQueryExecutor(@Nonnull final QueryExecutor delegate, @Nonnull final LoadSheddingPolicy policy) {
+		super(delegate);
+		this.policy = Objects.requireNonNull(policy, "A policy is required to decide when searches are degraded.");
+	}
+
+	@Nonnull
+	@Override
+	public SearchContext.SearchResult execute(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		boolean degrade = startSearch();
+		long start = System.nanoTime();
+		try {
+			if (!degrade) {
+				return super.execute(query, settings);
+			}
+			SearchContext.SearchResult result = super.execute(query, settings.createDegradedCopy(policy.getMaxRows()));
+			result.markDegraded();
+			return result;
+		} finally {
+			policy.searchFinished(System.nanoTime() - start);
+		}
+	}
+
+	@Nonnull
+	@Override
+	public ListenableFuture<SearchContext.SearchResult> executeAsync(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		boolean degrade = startSearch();
+		final long start = System.nanoTime();
+		ListenableFuture<SearchContext.SearchResult> future;
+		try {
+			future = super.executeAsync(query, degrade ? settings.createDegradedCopy(policy.getMaxRows()) : settings);
+		} catch (RuntimeException e) {
+			policy.searchFinished(System.nanoTime() - start);
+			throw e;
+		}
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				policy.searchFinished(System.nanoTime() - start);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		if (!degrade) {
+			return future;
+		}
+		return Futures.transform(future, new Function<SearchContext.SearchResult, SearchContext.SearchResult>() {
+			@Override
+			public SearchContext.SearchResult apply(final SearchContext.SearchResult result) {
+				result.markDegraded();
+				return result;
+			}
+		});
+	}
+
+	@Override
+	public long count(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		policy.searchStarted();
+		long start = System.nanoTime();
+		try {
+			return super.count(query, settings);
+		} finally {
+			policy.searchFinished(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public <T extends Mapping> long stream(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final ResultHandler<T> handler) {
+		policy.searchStarted();
+		long start = System.nanoTime();
+		try {
+			return super.stream(query, settings, mappingClass, handler);
+		} finally {
+			policy.searchFinished(System.nanoTime() - start);
+		}
+	}
+
+	private boolean startSearch() {
+		policy.searchStarted();
+		boolean degrade = policy.shouldDegrade();
+		if (degrade) {
+			policy.recordDegradedSearch();
+		}
+		return degrade;
+	}
+
+	@Nonnull
+	public LoadSheddingPolicy getPolicy() {
+		return policy;
+	}
+}
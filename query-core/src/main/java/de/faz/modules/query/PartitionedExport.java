@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+package de.faz.modules.query;
+
+import com.google.common.base.Optional;
+import de.faz.modules.query.exception.SearchFailedException;
+import de.faz.modules.query.fields.Mapping;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Exports all results of a query by splitting the index with a {@link Partitioner} and scanning
+ * all partitions in parallel. Every partition is paged with keyset paging, so keyset paging must be
+ * enabled in the {@link SearchSettings} of the export. The page size of the settings is used for
+ * every partition. Every page is executed with its own copy of the partition settings, so the
+ * decorators of the context add their filters only once per page. A page that failed or was cut
+ * off by a deadline fails the whole export instead of ending its partition early.
+ *
+ * The results can either be merged into one {@link ResultHandler} that is called by the exporting
+ * thread or be handed to one handler per partition that is called by the scanning thread of
+ * that partition. The order of the results is only preserved within a partition.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class PartitionedExport {
+
+	private final SearchContext context;
+	private final Partitioner partitioner;
+	private final ExecutorService executorService;
+
+	public PartitionedExport(@Nonnull final SearchContext context, @Nonnull final Partitioner partitioner, @Nonnull final ExecutorService executorService) {
+		this.context = Objects.requireNonNull(context, "A search context is required for the export.");
+		this.partitioner = Objects.requireNonNull(partitioner, "A partitioner is required for the export.");
+		this.executorService = Objects.requireNonNull(executorService, "An executor is required to scan the partitions.");
+	}
+
+	/**
+	 * Scans all partitions in parallel and hands the results to the given handler. The handler is
+	 * only called by the calling thread, so it does not need to be thread safe.
+	 *
+	 * @return the number of exported results
+	 */
+	public <T extends Mapping> long export(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final ResultHandler<T> handler) {
+		Objects.requireNonNull(handler, "A handler is required for the export.");
+		List<Query> partitions = createPartitions(settings);
+		final BlockingQueue<Batch<T>> batchQueue = new ArrayBlockingQueue<>(partitions.size() * 2);
+		List<Future<Long>> scans = new ArrayList<>(partitions.size());
+		for (Query partition : partitions) {
+			scans.add(executorService.submit(new PartitionScan<T>(query, createPartitionSettings(settings, partition), mappingClass) {
+				@Override
+				void handlePage(final List<T> page) throws InterruptedException {
+					batchQueue.put(new Batch<>(page, false));
+				}
+
+				@Override
+				void finished() throws InterruptedException {
+					batchQueue.put(new Batch<T>(null, true));
+				}
+			}));
+		}
+
+		long count = 0;
+		int runningScans = scans.size();
+		try {
+			while (runningScans > 0) {
+				Batch<T> batch = batchQueue.take();
+				if (batch.last) {
+					runningScans--;
+				} else {
+					for (T result : batch.results) {
+						handler.handle(result);
+						count++;
+					}
+				}
+			}
+			awaitScans(scans);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while exporting the partitions.", e);
+		} finally {
+			cancelScans(scans);
+		}
+		return count;
+	}
+
+	/**
+	 * Scans all partitions in parallel and hands the results of every partition to its own handler.
+	 * The handlers are called by the scanning threads, there must be one handler per partition.
+	 *
+	 * @return the number of exported results
+	 */
+	public <T extends Mapping> long export(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final List<? extends ResultHandler<T>> handlers) {
+		List<Query> partitions = createPartitions(settings);
+		if (handlers.size() != partitions.size()) {
+			throw new IllegalArgumentException("expected " + partitions.size() + " handlers, one for every partition, but got " + handlers.size() + ".");
+		}
+		List<Future<Long>> scans = new ArrayList<>(partitions.size());
+		for (int i = 0; i < partitions.size(); i++) {
+			final ResultHandler<T> handler = handlers.get(i);
+			scans.add(executorService.submit(new PartitionScan<T>(query, createPartitionSettings(settings, partitions.get(i)), mappingClass) {
+				@Override
+				void handlePage(final List<T> page) {
+					for (T result : page) {
+						handler.handle(result);
+					}
+				}
+			}));
+		}
+
+		try {
+			return awaitScans(scans);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while exporting the partitions.", e);
+		} finally {
+			cancelScans(scans);
+		}
+	}
+
+	private List<Query> createPartitions(final SearchSettings settings) {
+		if (!settings.isKeysetPaging()) {
+			throw new IllegalArgumentException("a partitioned export requires settings with keyset paging.");
+		}
+		List<Query> partitions = partitioner.createPartitions(context);
+		if (partitions.isEmpty()) {
+			throw new IllegalArgumentException("the partitioner did not create any partition.");
+		}
+		return partitions;
+	}
+
+	private SearchSettings createPartitionSettings(final SearchSettings settings, final Query partition) {
+		SearchSettings partitionSettings = context.withSettings();
+		settings.copyTo(partitionSettings);
+		partitionSettings.filterBy(partition);
+		return partitionSettings;
+	}
+
+	private long awaitScans(final List<Future<Long>> scans) throws InterruptedException {
+		long count = 0;
+		for (Future<Long> scan : scans) {
+			try {
+				count += scan.get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("could not export a partition.", e.getCause());
+			}
+		}
+		return count;
+	}
+
+	private void cancelScans(final List<Future<Long>> scans) {
+		for (Future<Long> scan : scans) {
+			scan.cancel(true);
+		}
+	}
+
+	private abstract class PartitionScan<T extends Mapping> implements Callable<Long> {
+		private final Query query;
+		private final SearchSettings settings;
+		private final Class<T> mappingClass;
+
+		PartitionScan(final Query query, final SearchSettings settings, final Class<T> mappingClass) {
+			this.query = query;
+			this.settings = settings;
+			this.mappingClass = mappingClass;
+		}
+
+		@Override
+		public Long call() throws InterruptedException {
+			long count = 0;
+			boolean cancelled = false;
+			try {
+				Optional<String> token;
+				SearchSettings pageSettings = settings.copy();
+				do {
+					SearchContext.SearchResult result = context.execute(query, pageSettings);
+					checkComplete(result);
+					List<T> page = new ArrayList<>(settings.getPageSize());
+					Iterator<T> it = result.getResultsForMapping(mappingClass);
+					while (it.hasNext()) {
+						page.add(it.next());
+					}
+					if (!page.isEmpty()) {
+						handlePage(page);
+						count += page.size();
+					}
+					token = result.getContinuationToken();
+					if (token.isPresent()) {
+						pageSettings = settings.copy().continueAfter(token.get());
+					}
+				} while (token.isPresent() && !Thread.currentThread().isInterrupted());
+			} catch (InterruptedException e) {
+				cancelled = true;
+				throw e;
+			} finally {
+				// nobody waits for a cancelled scan, so it must not block on the queue again
+				if (!cancelled) {
+					finished();
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * A failed or partial page has no continuation token and would end the partition early.
+		 */
+		private void checkComplete(final SearchContext.SearchResult result) {
+			if (result.isFailed()) {
+				throw new SearchFailedException("a page of the partition could not be fetched.");
+			}
+			if (result.isPartial()) {
+				throw new SearchFailedException("a page of the partition was cut off by the deadline.");
+			}
+		}
+
+		abstract void handlePage(List<T> page) throws InterruptedException;
+
+		void finished() throws InterruptedException {
+		}
+	}
+
+	private static class Batch<T> {
+		private final List<T> results;
+		private final boolean last;
+
+		Batch(final List<T> results, final boolean last) {
+			this.results = results;
+			this.last = last;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+package de.faz.modules.query;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * A partitioner splits the index into disjoint parts that can be searched in parallel.
+ * Every partition is a filter query, together the filters must match every document
+ * of the index exactly once.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public interface Partitioner {
+
+	/**
+	 * @param context the context that is used to create the filter queries
+	 * @return the filter queries of all partitions
+	 */
+	@Nonnull
+	List<Query> createPartitions(@Nonnull SearchContext context);
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE: All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query;
+
+import com.google.common.base.Optional;
+import de.faz.modules.query.exception.SearchFailedException;
+import de.faz.modules.query.fields.Mapping;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * This iterator walks through all results of a query page by page. While the caller consumes
+ * one page the next pages are fetched by a background task of the given {@link ExecutorService}.
+ * At most <code>prefetchDepth</code> pages are held in memory, the background task waits until
+ * the caller has consumed a page before it fetches the next one.
+ *
+ * The page size and the start offset are taken from the given {@link SearchSettings}. When keyset paging
+ * is enabled in the settings the pages are requested with the continuation token of the previous page
+ * instead of an offset. Every page is executed with its own copy of the settings, so the given
+ * settings are not modified and the decorators of the context add their filters only once per page.
+ * A page that failed or was cut off by a deadline ends the iteration with an exception instead of
+ * a shorter result. Always close the iterator when you stop iterating before the end of the result.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class PrefetchingResultIterator<T extends Mapping> implements Iterator<T>, Closeable {
+
+	public static final int DEFAULT_PREFETCH_DEPTH = 2;
+
+	private final SearchContext context;
+	private final Query query;
+	private final SearchSettings settings;
+	private final Class<T> mappingClass;
+	private final BlockingQueue<Page<T>> pageQueue;
+	private final Future<?> fetchTask;
+
+	private Iterator<T> currentPage = Collections.emptyIterator();
+	private boolean finished;
+	private volatile boolean closed;
+
+	public PrefetchingResultIterator(@Nonnull final SearchContext context, @Nonnull final Query query, @Nonnull final SearchSettings settings,
+		@Nonnull final Class<T> mappingClass, @Nonnull final ExecutorService executorService) {
+		this(context, query, settings, mappingClass, executorService, DEFAULT_PREFETCH_DEPTH);
+	}
+
+	public PrefetchingResultIterator(@Nonnull final SearchContext context, @Nonnull final Query query, @Nonnull final SearchSettings settings,
+		@Nonnull final Class<T> mappingClass, @Nonnull final ExecutorService executorService, final int prefetchDepth) {
+		if (prefetchDepth < 1) {
+			throw new IllegalArgumentException("the prefetch depth must be at least 1.");
+		}
+		this.context = Objects.requireNonNull(context, "A search context is required to fetch the pages.");
+		this.query = Objects.requireNonNull(query, "A query instance is required to perform a search.");
+		this.settings = Objects.requireNonNull(settings, "Settings are required to perform a search.");
+		this.mappingClass = Objects.requireNonNull(mappingClass, "A mapping class is required to read the results.");
+		this.pageQueue = new ArrayBlockingQueue<>(prefetchDepth);
+		this.fetchTask = Objects.requireNonNull(executorService, "An executor is required to fetch the pages.").submit(new Runnable() {
+			@Override
+			public void run() {
+				fetchPages();
+			}
+		});
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!currentPage.hasNext() && !finished) {
+			Page<T> page = takePage();
+			if (page.error != null) {
+				finished = true;
+				throw new IllegalStateException("could not fetch the next page of the search result.", page.error);
+			}
+			if (page.isLast()) {
+				finished = true;
+			} else {
+				currentPage = page.results.iterator();
+			}
+		}
+		return currentPage.hasNext();
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return currentPage.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("results of a search can not be removed.");
+	}
+
+	/**
+	 * Stops the background task and discards all prefetched pages.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		finished = true;
+		currentPage = Collections.emptyIterator();
+		fetchTask.cancel(true);
+		pageQueue.clear();
+	}
+
+	private Page<T> takePage() {
+		try {
+			return pageQueue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new IllegalStateException("interrupted while waiting for the next page of the search result.", e);
+		}
+	}
+
+	private void fetchPages() {
+		int pageSize = settings.getPageSize();
+		int offset = settings.getOffset().or(0);
+		try {
+			SearchSettings pageSettings = settings.copy();
+			if (!settings.isKeysetPaging()) {
+				pageSettings.startAt(offset);
+			}
+			while (!closed) {
+				SearchContext.SearchResult result = context.execute(query, pageSettings);
+				checkComplete(result, offset);
+				List<T> results = new ArrayList<>(pageSize);
+				Iterator<T> it = result.getResultsForMapping(mappingClass);
+				while (it.hasNext()) {
+					results.add(it.next());
+				}
+				offset += results.size();
+				if (!results.isEmpty()) {
+					pageQueue.put(new Page<>(results, null));
+				}
+				// a degraded page may contain less rows than the page size without being the last one
+				boolean lastPage = results.size() < pageSize && !result.isDegraded();
+				pageSettings = results.isEmpty() || lastPage ? null : createNextPage(result, offset);
+				if (pageSettings == null) {
+					pageQueue.put(new Page<T>(null, null));
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			publishError(e);
+		}
+	}
+
+	/**
+	 * A failed or partial page is empty or shorter than the page size and would end the iteration early.
+	 */
+	private void checkComplete(final SearchContext.SearchResult result, final int offset) {
+		if (result.isFailed()) {
+			throw new SearchFailedException("the page at offset " + offset + " of the search result could not be fetched.");
+		}
+		if (result.isPartial()) {
+			throw new SearchFailedException("the page at offset " + offset + " of the search result was cut off by the deadline.");
+		}
+	}
+
+	/**
+	 * Returns the settings of the page after the given result or null when it was the last page.
+	 */
+	private SearchSettings createNextPage(final SearchContext.SearchResult result, final int offset) {
+		SearchSettings nextPage = settings.copy();
+		if (settings.isKeysetPaging()) {
+			Optional<String> token = result.getContinuationToken();
+			return token.isPresent() ? nextPage.continueAfter(token.get()) : null;
+		}
+		return offset < result.getNumCount() ? nextPage.startAt(offset) : null;
+	}
+
+	private void publishError(final RuntimeException e) {
+		try {
+			pageQueue.put(new Page<T>(null, e));
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class Page<T> {
+		private final List<T> results;
+		private final RuntimeException error;
+
+		Page(final List<T> results, final RuntimeException error) {
+			this.results = results;
+			this.error = error;
+		}
+
+		boolean isLast() {
+			return results == null;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+
+package de.faz.modules.query;
+
+import de.faz.modules.query.exception.SearchRejectedException;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Separates the searches of the {@link SearchSettings.Priority} classes, so back office work like
+ * exports can not starve the searches a user is waiting for. All classes share
+ * <code>totalLimit</code> slots, and every class has its own quota of these slots and its own
+ * bounded queue. A search only gets a free slot when no search of a higher priority is waiting for
+ * one, so interactive searches are always preferred. Searches of a higher priority that wait only
+ * because their own quota is used up do not block the other classes.
+ *
+ * By default an interactive search may use all slots and a background search a quarter of them.
+ * Every search that holds a slot holds one connection to the search engine, so the quotas
+ * bound the connections of a class as well.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class PriorityBulkheads {
+
+	public static final int DEFAULT_MAX_QUEUE_SIZE = 100;
+	public static final long DEFAULT_MAX_QUEUE_TIME = 1000;
+
+	private static final int CLASS_COUNT = SearchSettings.Priority.values().length;
+
+	private final int totalLimit;
+	private final int[] quotas = new int[CLASS_COUNT];
+	private final int[] maxQueueSizes = new int[CLASS_COUNT];
+	private final long[] maxQueueTimes = new long[CLASS_COUNT];
+	private final int[] inFlight = new int[CLASS_COUNT];
+	private final int[] queued = new int[CLASS_COUNT];
+	private final AtomicLongArray rejectedCounts = new AtomicLongArray(CLASS_COUNT);
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition slotAvailable = lock.newCondition();
+
+	private int totalInFlight;
+
+	public PriorityBulkheads(final int totalLimit) {
+		if (totalLimit < 1) {
+			throw new IllegalArgumentException("at least one search must be allowed.");
+		}
+		this.totalLimit = totalLimit;
+		for (SearchSettings.Priority priority : SearchSettings.Priority.values()) {
+			quotas[priority.ordinal()] = priority == SearchSettings.Priority.INTERACTIVE ? totalLimit : Math.max(1, totalLimit / 4);
+			maxQueueSizes[priority.ordinal()] = DEFAULT_MAX_QUEUE_SIZE;
+			maxQueueTimes[priority.ordinal()] = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_QUEUE_TIME);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of searches of the given class that are executed at the same time.
+	 */
+	public PriorityBulkheads withQuota(@Nonnull final SearchSettings.Priority priority, final int maxConcurrent) {
+		if (maxConcurrent < 1 || maxConcurrent > totalLimit) {
+			throw new IllegalArgumentException("the quota must be between 1 and the total limit of " + totalLimit + ".");
+		}
+		lock.lock();
+		try {
+			quotas[priority.ordinal()] = maxConcurrent;
+			slotAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the number of searches of the given class that may wait for a slot and the time in
+	 * milliseconds they wait before they are rejected.
+	 */
+	public PriorityBulkheads withQueue(@Nonnull final SearchSettings.Priority priority, final int maxQueueSize, final long maxQueueTime) {
+		lock.lock();
+		try {
+			maxQueueSizes[priority.ordinal()] = maxQueueSize;
+			maxQueueTimes[priority.ordinal()] = TimeUnit.MILLISECONDS.toNanos(maxQueueTime);
+		} finally {
+			lock.unlock();
+		}
+		return this;
+	}
+
+	/**
+	 * Waits for a slot of the priority class of the given settings. Every successful call
+	 * must be followed by a call of {@link #release(SearchSettings.Priority)}.
+	 *
+	 * @return the priority class the slot was acquired for
+	 * @throws SearchRejectedException when the queue of the class is full or the search waited too long
+	 */
+	@Nonnull
+	public SearchSettings.Priority acquire(@Nonnull final SearchSettings settings) {
+		SearchSettings.Priority priority = settings.getPriority();
+		int index = priority.ordinal();
+		lock.lock();
+		try {
+			if (!hasFreeSlot(index)) {
+				if (queued[index] >= maxQueueSizes[index]) {
+					throw reject(priority, "the " + priority + " searches reached their quota and their queue is full.");
+				}
+				queued[index]++;
+				try {
+					long waitNanos = getMaxWaitNanos(index, settings);
+					while (!hasFreeSlot(index)) {
+						if (waitNanos <= 0) {
+							throw reject(priority, "no slot for a " + priority + " search became free within the queue time.");
+						}
+						waitNanos = slotAvailable.awaitNanos(waitNanos);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw reject(priority, "interrupted while waiting for a search slot.");
+				} finally {
+					queued[index]--;
+					// searches of a lower priority may have given way to this one
+					slotAvailable.signalAll();
+				}
+			}
+			inFlight[index]++;
+			totalInFlight++;
+			return priority;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void release(@Nonnull final SearchSettings.Priority priority) {
+		lock.lock();
+		try {
+			inFlight[priority.ordinal()]--;
+			totalInFlight--;
+			slotAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean hasFreeSlot(final int index) {
+		if (totalInFlight >= totalLimit || inFlight[index] >= quotas[index]) {
+			return false;
+		}
+		for (int higher = 0; higher < index; higher++) {
+			// a free slot goes to the waiting searches of a higher priority first, unless they wait for their own quota
+			if (queued[higher] > 0 && inFlight[higher] < quotas[higher]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long getMaxWaitNanos(final int index, final SearchSettings settings) {
+		long waitNanos = maxQueueTimes[index];
+		if (settings.getRemainingTime().isPresent()) {
+			waitNanos = Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(settings.getRemainingTime().get()));
+		}
+		return waitNanos;
+	}
+
+	private SearchRejectedException reject(final SearchSettings.Priority priority, final String message) {
+		rejectedCounts.incrementAndGet(priority.ordinal());
+		return new SearchRejectedException(message);
+	}
+
+	public int getInFlight(@Nonnull final SearchSettings.Priority priority) {
+		lock.lock();
+		try {
+			return inFlight[priority.ordinal()];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getQueued(@Nonnull final SearchSettings.Priority priority) {
+		lock.lock();
+		try {
+			return queued[priority.ordinal()];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getRejectedCount(@Nonnull final SearchSettings.Priority priority) {
+		return rejectedCounts.get(priority.ordinal());
+	}
+}
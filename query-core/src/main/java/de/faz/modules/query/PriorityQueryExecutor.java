@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+
+package de.faz.modules.query;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import de.faz.modules.query.fields.Mapping;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+/**
+ * An executor that executes every search of the wrapped executor in the bulkhead of its
+ * {@link SearchSettings.Priority}, see {@link PriorityBulkheads}.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class PriorityQueryExecutor extends ForwardingQueryExecutor {
+
+	private final PriorityBulkheads bulkheads;
+
+	public PriorityQueryExecutor(@Nonnull final QueryExecutor delegate, @Nonnull final PriorityBulkheads bulkheads) {
+		super(delegate);
+		this.bulkheads = Objects.requireNonNull(bulkheads, "Bulkheads are required to separate the searches.");
+	}
+
+	@Nonnull
+	@Override
+	public SearchContext.SearchResult execute(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		SearchSettings.Priority priority = bulkheads.acquire(settings);
+		try {
+			return super.execute(query, settings);
+		} finally {
+			bulkheads.release(priority);
+		}
+	}
+
+	@Nonnull
+	@Override
+	public ListenableFuture<SearchContext.SearchResult> executeAsync(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		final SearchSettings.Priority priority = bulkheads.acquire(settings);
+		ListenableFuture<SearchContext.SearchResult> future;
+		try {
+			future = super.executeAsync(query, settings);
+		} catch (RuntimeException e) {
+			bulkheads.release(priority);
+			throw e;
+		}
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				bulkheads.release(priority);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
+	}
+
+	@Override
+	public long count(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		SearchSettings.Priority priority = bulkheads.acquire(settings);
+		try {
+			return super.count(query, settings);
+		} finally {
+			bulkheads.release(priority);
+		}
+	}
+
+	@Override
+	public <T extends Mapping> long stream(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final ResultHandler<T> handler) {
+		SearchSettings.Priority priority = bulkheads.acquire(settings);
+		try {
+			return super.stream(query, settings, mappingClass, handler);
+		} finally {
+			bulkheads.release(priority);
+		}
+	}
+
+	@Nonnull
+	public PriorityBulkheads getBulkheads() {
+		return bulkheads;
+	}
+}
@@ -14,7 +14,13 @@
 
 package de.faz.modules.query;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import de.faz.modules.query.exception.SearchFailedException;
+import de.faz.modules.query.fields.Mapping;
+
 import javax.annotation.Nonnull;
+import java.util.Iterator;
 
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
 public abstract class QueryExecutor {
@@ -24,6 +30,47 @@ public abstract class QueryExecutor {
         return executeQuery(query, settings);
     }
 
+    /**
+     * Executes the query without blocking the calling thread. This default
+     * implementation executes the query synchronously and returns a completed
+     * future, executors with a non-blocking transport override this method.
+     */
+    @Nonnull
+    public ListenableFuture<SearchContext.SearchResult> executeAsync(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+        return Futures.immediateFuture(execute(query, settings));
+    }
+
+    /**
+     * Returns only the number of documents that match the query. This default
+     * implementation executes the complete query, executors should override
+     * this method to skip loading and mapping the documents.
+     *
+     * @throws SearchFailedException if the number of matches is unknown or incomplete
+     */
+    public long count(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+        SearchContext.SearchResult result = execute(query, settings);
+        if (result.isFailed() || result.isPartial()) {
+            throw new SearchFailedException("the count of the query is " + (result.isFailed() ? "unknown." : "incomplete."));
+        }
+        return result.getNumCount();
+    }
+
+    /**
+     * Hands every result of the query to the given handler and returns the number of
+     * matching documents. This default implementation executes the complete query,
+     * executors should override this method to deliver the results while the response
+     * is read so the page is never held in memory.
+     */
+    public <T extends Mapping> long stream(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+        @Nonnull final ResultHandler<T> handler) {
+        SearchContext.SearchResult result = execute(query, settings);
+        Iterator<T> it = result.getResultsForMapping(mappingClass);
+        while (it.hasNext()) {
+            handler.handle(it.next());
+        }
+        return result.getNumCount();
+    }
+
     @Nonnull
     protected abstract SearchContext.SearchResult executeQuery(@Nonnull final Query query, @Nonnull final SearchSettings settings);
 
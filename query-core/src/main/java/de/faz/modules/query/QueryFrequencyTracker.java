@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query;
+
+import de.faz.modules.query.util.HeavyHitters;
+import de.faz.modules.query.util.QueryFingerprint;
+
+import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks which queries cause the most load with a fixed amount of memory. The number of executions
+ * and the cumulative latency of every query are counted in two {@link HeavyHitters} sketches, which
+ * keep the queries with the highest estimates. The estimates are never too low; with a probability
+ * of 98% a count is too high by at most <code>e / width</code> of all recorded queries.
+ *
+ * A query is identified by a fingerprint of the query, its filters, its sort and its page size, so
+ * all pages of a listing are counted together. Wrap an executor with a {@link TrackingQueryExecutor}
+ * to record every search, and share one tracker for all contexts of an application.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class QueryFrequencyTracker implements QueryFrequencyTrackerMXBean {
+
+	public static final int DEFAULT_WIDTH = HeavyHitters.DEFAULT_WIDTH;
+	public static final int DEFAULT_TOP_SIZE = 100;
+
+	private final int topSize;
+	private final HeavyHitters counts;
+	private final HeavyHitters latencies;
+
+	public QueryFrequencyTracker() {
+		this(DEFAULT_WIDTH, DEFAULT_TOP_SIZE);
+	}
+
+	/**
+	 * @param width the number of counters in every row of the sketches
+	 * @param topSize the number of queries that are kept in the top lists
+	 */
+	public QueryFrequencyTracker(final int width, final int topSize) {
+		if (width < 1 || topSize < 1) {
+			throw new IllegalArgumentException("the width of the sketch and the size of the top lists must be positive.");
+		}
+		this.topSize = topSize;
+		this.counts = new HeavyHitters(width, topSize);
+		this.latencies = new HeavyHitters(width, topSize);
+	}
+
+	/**
+	 * Records one execution of the query with the given fingerprint.
+	 */
+	public void record(@Nonnull final QueryFingerprint fingerprint, final long latency, @Nonnull final TimeUnit unit) {
+		counts.add(fingerprint, 1);
+		latencies.add(fingerprint, unit.toNanos(latency));
+	}
+
+	/**
+	 * Returns the most frequent queries, the most frequent one first.
+	 */
+	@Nonnull
+	public List<HeavyHitter> getTopByFrequency(final int size) {
+		List<HeavyHitter> hitters = new ArrayList<>();
+		for (HeavyHitters.Entry entry : counts.getTop(size)) {
+			hitters.add(new HeavyHitter(entry.getFingerprint().toString(), entry.getEstimate(), latencies.estimate(entry.getFingerprint())));
+		}
+		return hitters;
+	}
+
+	/**
+	 * Returns the queries with the highest cumulative latency, the most expensive one first.
+	 */
+	@Nonnull
+	public List<HeavyHitter> getTopByLatency(final int size) {
+		List<HeavyHitter> hitters = new ArrayList<>();
+		for (HeavyHitters.Entry entry : latencies.getTop(size)) {
+			hitters.add(new HeavyHitter(entry.getFingerprint().toString(), counts.estimate(entry.getFingerprint()), entry.getEstimate()));
+		}
+		return hitters;
+	}
+
+	@Override
+	public List<HeavyHitter> getTopQueriesByFrequency() {
+		return getTopByFrequency(topSize);
+	}
+
+	@Override
+	public List<HeavyHitter> getTopQueriesByLatency() {
+		return getTopByLatency(topSize);
+	}
+
+	@Override
+	public long getRecordCount() {
+		return counts.getTotalWeight();
+	}
+
+	@Override
+	public synchronized void reset() {
+		counts.clear();
+		latencies.clear();
+	}
+
+	/**
+	 * Registers this tracker at the platform MBean server with the name
+	 * <code>de.faz.modules.query:type=QueryFrequencyTracker,name=&lt;name&gt;</code>.
+	 */
+	@Nonnull
+	public ObjectName registerMBean(@Nonnull final String name) {
+		try {
+			ObjectName objectName = new ObjectName("de.faz.modules.query:type=QueryFrequencyTracker,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("could not register the query frequency tracker " + name, e);
+		}
+	}
+
+	/**
+	 * Creates the fingerprint of a search from the query, the filters, the sort and the page size.
+	 * The offset and the continuation token are ignored.
+	 */
+	@Nonnull
+	public static QueryFingerprint createFingerprint(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		return newFingerprint(query, settings).build();
+	}
+
+	static QueryFingerprint.Builder newFingerprint(final Query query, final SearchSettings settings) {
+		Objects.requireNonNull(query, "A query instance is required to create a fingerprint.");
+		QueryFingerprint.Builder fingerprint = QueryFingerprint.builder().add("q", query.toString());
+		List<String> filters = new ArrayList<>(settings.filterList.size());
+		for (Query filter : settings.filterList) {
+			filters.add(filter.toString());
+		}
+		// the order of the filters does not change the result
+		Collections.sort(filters);
+		for (String filter : filters) {
+			fingerprint.add("fq", filter);
+		}
+		for (SearchSettings.SortBy sortBy : settings.getSort()) {
+			fingerprint.add("sort", sortBy.getFieldName() + " " + sortBy.getOrder());
+		}
+		return fingerprint.add("rows", String.valueOf(settings.getPageSize()));
+	}
+
+	/**
+	 * A query with its estimated number of executions and its estimated cumulative latency.
+	 */
+	public static class HeavyHitter {
+		private final String fingerprint;
+		private final long count;
+		private final long totalLatencyNanos;
+
+		HeavyHitter(final String fingerprint, final long count, final long totalLatencyNanos) {
+			this.fingerprint = fingerprint;
+			this.count = count;
+			this.totalLatencyNanos = totalLatencyNanos;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the cumulative latency in milliseconds
+		 */
+		public long getTotalLatency() {
+			return TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos);
+		}
+
+		/**
+		 * @return the average latency in milliseconds
+		 */
+		public double getAverageLatency() {
+			return count > 0 ? totalLatencyNanos / 1e6 / count : 0;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query;
+
+import java.util.List;
+
+/**
+ * The JMX view of a {@link QueryFrequencyTracker}, register it with
+ * {@link QueryFrequencyTracker#registerMBean(String)}.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public interface QueryFrequencyTrackerMXBean {
+
+	/**
+	 * @return the most frequent queries, the most frequent one first
+	 */
+	List<QueryFrequencyTracker.HeavyHitter> getTopQueriesByFrequency();
+
+	/**
+	 * @return the queries with the highest cumulative latency, the most expensive one first
+	 */
+	List<QueryFrequencyTracker.HeavyHitter> getTopQueriesByLatency();
+
+	long getRecordCount();
+
+	void reset();
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query;
+
+import de.faz.modules.query.fields.Mapping;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A handler that receives the results of a streamed search one by one.
+ * See {@link SearchContext#stream(Query, SearchSettings, Class, ResultHandler)}.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public interface ResultHandler<T extends Mapping> {
+
+	/**
+	 * Is called for every result in the order of the search result. The
+	 * result must not be used after this method returned when the executor
+	 * reuses its instances.
+	 */
+	void handle(@Nonnull T result);
+}
@@ -14,6 +14,7 @@
 
 package de.faz.modules.query;
 
+import com.google.common.base.Optional;
 import de.faz.modules.query.fields.Mapping;
 
 import javax.annotation.Nonnull;
@@ -143,6 +144,8 @@ public interface SearchContext {
     abstract class SearchResult {
         protected int pageSize;
         protected int offset;
+        private boolean degraded;
+        private boolean failed;
 
 
         public SearchResult(int pageSize) {
@@ -166,6 +169,50 @@ public interface SearchContext {
             return offset;
         }
 
+        /**
+         * Returns the token to request the next page when keyset paging is enabled in the
+         * {@link SearchSettings}. The token is absent when keyset paging is disabled or when
+         * this was the last page.
+         */
+        public Optional<String> getContinuationToken() {
+            return Optional.absent();
+        }
+
+        /**
+         * Returns true when the search engine stopped collecting hits because the deadline of the
+         * {@link SearchSettings} was reached. The result then contains only the hits found so far
+         * and {@link #getNumCount()} is a lower bound.
+         */
+        public boolean isPartial() {
+            return false;
+        }
+
+        /**
+         * Returns true when the search was executed with reduced options because the search
+         * engine was overloaded, i.e. without highlighting or with fewer rows than the page size.
+         * See {@link LoadSheddingPolicy}.
+         */
+        public boolean isDegraded() {
+            return degraded;
+        }
+
+        void markDegraded() {
+            this.degraded = true;
+        }
+
+        /**
+         * Returns true when the search engine could not be reached or answered with an error. The
+         * executors do not throw in this case but return an empty result, so check this flag before
+         * an empty result is taken as proof that no document matches.
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        protected void markFailed() {
+            this.failed = true;
+        }
+
         public abstract <S extends Mapping> Iterator<S> getResultsForMapping(Class<S> mapping);
         public abstract long getNumCount();
         public abstract long getNumberOfPages();
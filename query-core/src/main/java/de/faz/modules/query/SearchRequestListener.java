@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query;
+
+/**
+ * Receives the outcome of every request an executor sends to the search engine. Searches that are
+ * answered without a request, i.e. empty queries, searches after their deadline or known empty
+ * queries, are not reported, so their latency says nothing about the search engine.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public interface SearchRequestListener {
+
+	/**
+	 * @param latencyNanos the time the request took
+	 * @param success false when the search engine could not be reached or answered with an error
+	 */
+	void requestFinished(long latencyNanos, boolean success);
+}
@@ -16,6 +16,7 @@ package de.faz.modules.query;
 
 import com.google.common.base.Optional;
 import de.faz.modules.query.capabilities.ContextCapabilities;
+import de.faz.modules.query.capabilities.Degradable;
 import de.faz.modules.query.capabilities.DefaultContextCapabilities;
 import de.faz.modules.query.capabilities.EnrichQueryExecutor;
 import de.faz.modules.query.capabilities.GroupingSupport;
@@ -25,13 +26,18 @@ import de.faz.modules.query.capabilities.SearchOptionFactory;
 import de.faz.modules.query.exception.InvalidQueryException;
 import de.faz.modules.query.exception.UnsupportedFeatureException;
 import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import de.faz.modules.query.fields.MappedFieldResolver;
+import de.faz.modules.query.fields.Mapping;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
 public class SearchSettings implements SearchOption {
@@ -42,6 +48,16 @@ public class SearchSettings implements SearchOption {
 		ASC, DESC;
 	}
 
+	/**
+	 * The priority classes of searches in the order they are preferred, see {@link PriorityBulkheads}.
+	 */
+	public enum Priority {
+		/** searches a user is waiting for, i.e. page rendering */
+		INTERACTIVE,
+		/** searches of exports, editorial tools and other back office work */
+		BACKGROUND;
+	}
+
 	protected Collection<SearchOption> optionCollection;
 
 	private Collection<SortBy> sort;
@@ -49,6 +65,12 @@ public class SearchSettings implements SearchOption {
 	protected Optional<Integer> offset = Optional.absent();
 	protected List<Query> filterList;
 	protected Collection<String> fieldList;
+	protected Optional<CharSequence> keysetField = Optional.absent();
+	protected Optional<String> continuationToken = Optional.absent();
+	protected Optional<Long> deadline = Optional.absent();
+	protected Priority priority = Priority.INTERACTIVE;
+	private boolean degraded;
+	private Optional<Integer> degradedRowLimit = Optional.absent();
 	private Map<String, Object> parameterMap;
 
 	protected FieldDefinitionGenerator generator;
@@ -91,6 +113,84 @@ public class SearchSettings implements SearchOption {
 		return this;
 	}
 
+	/**
+	 * Enables keyset paging. Instead of skipping <code>offset</code> hits the next page is selected by
+	 * a filter on the sort values of the last hit of the previous page, so a deep page is as cheap as the
+	 * first one. The given field must be unique for every document, it is appended to the sort as
+	 * tie breaker. Use {@link SearchContext.SearchResult#getContinuationToken()} of a result and
+	 * {@link #continueAfter(String)} to request the next page. The offset of the settings is ignored.
+	 */
+	public SearchSettings withKeysetPaging(final Object uniqueFieldDefinition) {
+		if (generator.isEmpty()) {
+			throw new InvalidQueryException("The field description of withKeysetPaging was null.");
+		}
+		this.keysetField = Optional.of(generator.pop().getName());
+		return this;
+	}
+
+	/**
+	 * Requests the page behind the result the given continuation token was taken from.
+	 * The query, the filters and the sort must be the same as for that result.
+	 */
+	public SearchSettings continueAfter(@Nonnull final String continuationToken) {
+		if (!keysetField.isPresent()) {
+			throw new InvalidQueryException("continueAfter requires keyset paging to be enabled.");
+		}
+		this.continuationToken = Optional.of(continuationToken);
+		return this;
+	}
+
+	public boolean isKeysetPaging() {
+		return keysetField.isPresent();
+	}
+
+	/**
+	 * Sets the point in time after which the caller does not wait for the result anymore.
+	 * The search engine stops collecting hits when the deadline is reached and returns the
+	 * hits found so far, see {@link SearchContext.SearchResult#isPartial()}. A search that
+	 * is started after the deadline is not sent at all.
+	 */
+	public SearchSettings withDeadline(@Nonnull final Date deadline) {
+		this.deadline = Optional.of(deadline.getTime());
+		return this;
+	}
+
+	/**
+	 * Sets the deadline to the given time from now, see {@link #withDeadline(Date)}.
+	 */
+	public SearchSettings withTimeout(final long timeout, @Nonnull final TimeUnit unit) {
+		this.deadline = Optional.of(System.currentTimeMillis() + unit.toMillis(timeout));
+		return this;
+	}
+
+	/**
+	 * @return the milliseconds until the deadline is reached, 0 when it is already exceeded,
+	 * or absent when no deadline is set
+	 */
+	public Optional<Long> getRemainingTime() {
+		if (!deadline.isPresent()) {
+			return Optional.absent();
+		}
+		return Optional.of(Math.max(0, deadline.get() - System.currentTimeMillis()));
+	}
+
+	public boolean isDeadlineExceeded() {
+		return deadline.isPresent() && deadline.get() <= System.currentTimeMillis();
+	}
+
+	/**
+	 * Sets the priority class of the search. Searches are {@link Priority#INTERACTIVE} by default.
+	 */
+	public SearchSettings withPriority(@Nonnull final Priority priority) {
+		this.priority = Objects.requireNonNull(priority, "A priority is required.");
+		return this;
+	}
+
+	@Nonnull
+	public Priority getPriority() {
+		return priority;
+	}
+
 	public SearchSettings filterBy(@Nonnull final Query filter) {
 		filterList.add(filter);
 		return this;
@@ -121,6 +221,72 @@ public class SearchSettings implements SearchOption {
 		return optionCollection;
 	}
 
+	/**
+	 * Returns the executor that enriches the query with the given option. While the settings are
+	 * degraded a {@link Degradable} option is replaced by its cheaper variant or dropped.
+	 */
+	protected Optional<EnrichQueryExecutor> getQueryExecutorOf(@Nonnull final SearchOption option) {
+		if (degraded && option instanceof Degradable) {
+			return ((Degradable) option).getDegradedQueryExecutor();
+		}
+		return Optional.of(option.getQueryExecutor());
+	}
+
+	/**
+	 * Returns the number of rows that are requested from the search engine. This is the page size
+	 * unless the settings are degraded, keyset paging always requests complete pages.
+	 */
+	protected int getRowsToFetch() {
+		if (degraded && degradedRowLimit.isPresent() && !isKeysetPaging()) {
+			return Math.min(getPageSize(), degradedRowLimit.get());
+		}
+		return getPageSize();
+	}
+
+	/**
+	 * @return true for the copy of the settings a {@link LoadSheddingQueryExecutor} executes an
+	 * overloaded search with, see {@link #createDegradedCopy(Optional)}
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+
+	/**
+	 * Returns a copy of the settings with reduced options. The settings themselves are not changed,
+	 * so they can be shared by concurrent searches and reused after an asynchronous search.
+	 */
+	@Nonnull
+	SearchSettings createDegradedCopy(@Nonnull final Optional<Integer> rowLimit) {
+		SearchSettings copy = copy();
+		copy.degraded = true;
+		copy.degradedRowLimit = rowLimit;
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of the settings with all options, the offset and the continuation token. The
+	 * decorators of a context add their filters to the settings of every search, so a search that
+	 * walks through several pages executes every page with its own copy.
+	 */
+	@Nonnull
+	SearchSettings copy() {
+		SearchSettings copy = createCopy();
+		copyTo(copy);
+		copy.offset = offset;
+		copy.continuationToken = continuationToken;
+		copy.optionCollection.addAll(optionCollection);
+		return copy;
+	}
+
+	/**
+	 * Creates empty settings of the same type for {@link #copy()}. Subclasses
+	 * return an instance of their own type with their own state.
+	 */
+	@Nonnull
+	protected SearchSettings createCopy() {
+		return new SearchSettings(generator, capabilities);
+	}
+
 	public Collection<SortBy> getSort() {
 		return sort;
 	}
@@ -149,6 +315,35 @@ public class SearchSettings implements SearchOption {
 		return this;
 	}
 
+	/**
+	 * Restricts the result to the fields that are read by the given mapping class, i.e. all fields
+	 * that are annotated with {@link de.faz.modules.query.fields.MapToField}. Call this method once
+	 * for every mapping you want to read from the result.
+	 */
+	public SearchSettings retainOnlyFieldsOf(@Nonnull final Class<? extends Mapping> mappingClass) {
+		for (String fieldName : MappedFieldResolver.getFieldNames(mappingClass)) {
+			if (!fieldList.contains(fieldName)) {
+				fieldList.add(fieldName);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Copies the paging, the sort, the filters, the field list, the deadline, the priority and the parameters to the given settings.
+	 * Search options like highlighting, the offset and the continuation token are not copied.
+	 */
+	void copyTo(@Nonnull final SearchSettings target) {
+		target.pageSize = pageSize;
+		target.keysetField = keysetField;
+		target.deadline = deadline;
+		target.priority = priority;
+		target.sort.addAll(sort);
+		target.filterList.addAll(filterList);
+		target.fieldList.addAll(fieldList);
+		target.parameterMap.putAll(parameterMap);
+	}
+
 	public static class SortBy {
 		private CharSequence fieldName;
 
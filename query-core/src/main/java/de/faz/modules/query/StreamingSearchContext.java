@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query;
+
+import de.faz.modules.query.fields.Mapping;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link SearchContext} that can hand the results of a search to a handler while the
+ * response is read. The method is not part of {@link SearchContext} itself, so existing
+ * implementations of that interface keep compiling. All contexts that extend
+ * {@link DefaultSearchContext} implement this interface.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public interface StreamingSearchContext extends SearchContext {
+
+    /**
+     * This function executes the query like {@link SearchContext#execute(Query, SearchSettings)}
+     * but hands every result to the given handler while the response is read instead of
+     * collecting the page in a {@link SearchResult}. Use this function for large pages,
+     * i.e. exports, that would need a lot of memory otherwise.
+     * Highlighting and grouping are not available for streamed results.
+     *
+     * @param query a {@link Query} instance
+     * @param settings a custom {@link SearchSettings} instance
+     * @param mappingClass the {@link de.faz.modules.query.fields.Mapping} every result is mapped to
+     * @param handler the handler that receives the results in order
+     * @return the number of matching documents
+     */
+    <T extends Mapping> long stream(@Nonnull Query query, @Nonnull SearchSettings settings, @Nonnull Class<T> mappingClass,
+        @Nonnull ResultHandler<T> handler);
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import de.faz.modules.query.fields.Mapping;
+import de.faz.modules.query.util.QueryFingerprint;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor that records the fingerprint and the latency of every search of the wrapped executor
+ * in a {@link QueryFrequencyTracker}. Counts and streamed searches are recorded with the parameter
+ * <code>request=count</code> or <code>request=stream</code>, because they cause a different load
+ * than a search of the same query.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class TrackingQueryExecutor extends ForwardingQueryExecutor {
+
+	private static final String REQUEST_PARAM = "request";
+
+	private final QueryFrequencyTracker tracker;
+
+	public TrackingQueryExecutor(@Nonnull final QueryExecutor delegate, @Nonnull final QueryFrequencyTracker tracker) {
+		super(delegate);
+		this.tracker = Objects.requireNonNull(tracker, "A tracker is required to record the searches.");
+	}
+
+	@Nonnull
+	@Override
+	public SearchContext.SearchResult execute(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		QueryFingerprint fingerprint = QueryFrequencyTracker.createFingerprint(query, settings);
+		long start = System.nanoTime();
+		try {
+			return super.execute(query, settings);
+		} finally {
+			record(fingerprint, start);
+		}
+	}
+
+	@Nonnull
+	@Override
+	public ListenableFuture<SearchContext.SearchResult> executeAsync(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		final QueryFingerprint fingerprint = QueryFrequencyTracker.createFingerprint(query, settings);
+		final long start = System.nanoTime();
+		ListenableFuture<SearchContext.SearchResult> future;
+		try {
+			future = super.executeAsync(query, settings);
+		} catch (RuntimeException e) {
+			record(fingerprint, start);
+			throw e;
+		}
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				record(fingerprint, start);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
+	}
+
+	@Override
+	public long count(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		QueryFingerprint fingerprint = QueryFrequencyTracker.newFingerprint(query, settings).add(REQUEST_PARAM, "count").build();
+		long start = System.nanoTime();
+		try {
+			return super.count(query, settings);
+		} finally {
+			record(fingerprint, start);
+		}
+	}
+
+	@Override
+	public <T extends Mapping> long stream(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final ResultHandler<T> handler) {
+		QueryFingerprint fingerprint = QueryFrequencyTracker.newFingerprint(query, settings).add(REQUEST_PARAM, "stream").build();
+		long start = System.nanoTime();
+		try {
+			return super.stream(query, settings, mappingClass, handler);
+		} finally {
+			record(fingerprint, start);
+		}
+	}
+
+	private void record(final QueryFingerprint fingerprint, final long start) {
+		tracker.record(fingerprint, System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	@Nonnull
+	public QueryFrequencyTracker getTracker() {
+		return tracker;
+	}
+}
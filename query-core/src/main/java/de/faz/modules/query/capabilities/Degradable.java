@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+
+package de.faz.modules.query.capabilities;
+
+import com.google.common.base.Optional;
+
+/**
+ * A {@link SearchOption} that is not required for a usable result. When the search engine is
+ * overloaded the option is replaced by a cheaper variant or dropped, see
+ * {@link de.faz.modules.query.LoadSheddingPolicy}.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public interface Degradable {
+
+	/**
+	 * @return the executor that enriches the query with the cheaper variant of this option,
+	 * or absent when the option is dropped completely
+	 */
+	Optional<EnrichQueryExecutor> getDegradedQueryExecutor();
+}
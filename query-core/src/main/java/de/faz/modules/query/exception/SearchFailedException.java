@@ -0,0 +1,17 @@
+package de.faz.modules.query.exception;
+
+/**
+ * Thrown when the search engine could not be reached or answered with an error, i.e. for a
+ * result that is marked with {@link de.faz.modules.query.SearchContext.SearchResult#isFailed()}.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class SearchFailedException extends RuntimeException {
+	public SearchFailedException(final String message) {
+		super(message);
+	}
+
+	public SearchFailedException(final String message, final Throwable cause) {
+		super(message, cause);
+	}
+}
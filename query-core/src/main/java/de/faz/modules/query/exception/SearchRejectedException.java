@@ -0,0 +1,13 @@
+package de.faz.modules.query.exception;
+
+/**
+ * Thrown when a search is not executed because the search engine is overloaded, i.e. when
+ * the concurrency limit is reached and the search could not be queued.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class SearchRejectedException extends RuntimeException {
+	public SearchRejectedException(final String message) {
+		super(message);
+	}
+}
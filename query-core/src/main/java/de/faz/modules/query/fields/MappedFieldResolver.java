@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2013. F.A.Z. Electronic Media GmbH
+ * All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of F.A.Z. Electronic Media GmbH and its suppliers,
+ * if any. The intellectual and technical concepts contained
+ * herein are proprietary to F.A.Z. Electronic Media GmbH
+ * and its suppliers and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from F.A.Z. Electronic Media GmbH.
+ */
+
+package de.faz.modules.query.fields;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the names of all index fields a {@link Mapping} reads. These are the values of every
+ * {@link MapToField} annotation on the public methods of the mapping, including inherited ones.
+ * The result is cached per class because it does not change at runtime.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public final class MappedFieldResolver {
+
+	private static final ConcurrentMap<Class<?>, Set<String>> FIELD_CACHE = new ConcurrentHashMap<>();
+
+	private MappedFieldResolver() {
+	}
+
+	/**
+	 * @return the sorted and unmodifiable field names of the given mapping class
+	 */
+	@Nonnull
+	public static Set<String> getFieldNames(@Nonnull final Class<? extends Mapping> mappingClass) {
+		Objects.requireNonNull(mappingClass, "a mapping class is required to resolve its fields.");
+		Set<String> fieldNames = FIELD_CACHE.get(mappingClass);
+		if (fieldNames == null) {
+			fieldNames = resolveFieldNames(mappingClass);
+			FIELD_CACHE.putIfAbsent(mappingClass, fieldNames);
+		}
+		return fieldNames;
+	}
+
+	private static Set<String> resolveFieldNames(final Class<?> mappingClass) {
+		Set<String> fieldNames = new TreeSet<>();
+		for (Method method : mappingClass.getMethods()) {
+			MapToField mapping = method.getAnnotation(MapToField.class);
+			if (mapping != null) {
+				fieldNames.add(mapping.value());
+			}
+		}
+		return Collections.unmodifiableSet(fieldNames);
+	}
+}
@@ -0,0 +1,246 @@
+package de.faz.modules.query.solr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.apache.solr.client.solrj.ResponseParser;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import de.faz.modules.query.Query;
+import de.faz.modules.query.SearchContext;
+import de.faz.modules.query.SearchSettings;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+
+/**
+ * This executor sends the same select request as {@link SolrQueryExecutor} but uses
+ * a non-blocking http client. No thread is blocked while a request is in flight, the
+ * response is parsed in the callback of the http client.
+ * The {@link HttpSolrServer} is only used to determine the url of the solr core.
+ *
+ * When the settings carry a deadline the timeouts of the http request are cut to the
+ * remaining time, and cancelling the returned future aborts the http request.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+class AsyncSolrQueryExecutor extends SolrQueryExecutor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncSolrQueryExecutor.class);
+
+	private static final String SELECT_PATH = "/select";
+
+	private final String baseUrl;
+	private final HttpAsyncClient asyncClient;
+	private final ResponseParser parser;
+	private final RequestConfig requestConfig;
+
+	AsyncSolrQueryExecutor(final HttpSolrServer httpSolrServer, final HttpAsyncClient asyncClient, final FieldDefinitionGenerator generator) {
+		this(httpSolrServer, asyncClient, generator, SolrConnectionSettings.DEFAULT_POST_THRESHOLD, new SolrRequestStatistics(), RequestConfig.DEFAULT);
+	}
+
+	/**
+	 * @param requestConfig the default config of the http client, the timeouts of a request with a deadline are derived from it
+	 */
+	AsyncSolrQueryExecutor(final HttpSolrServer httpSolrServer, final HttpAsyncClient asyncClient, final FieldDefinitionGenerator generator,
+		final int postThreshold, final SolrRequestStatistics statistics, final RequestConfig requestConfig) {
+		super(httpSolrServer, generator, postThreshold, statistics);
+		this.baseUrl = httpSolrServer.getBaseURL();
+		this.asyncClient = asyncClient;
+		this.parser = new BinaryResponseParser();
+		this.requestConfig = requestConfig;
+	}
+
+	@Override
+	@Nonnull
+	protected SearchContext.SearchResult executeQuery(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		return Futures.getUnchecked(executeAsync(query, settings));
+	}
+
+	@Override
+	@Nonnull
+	public ListenableFuture<SearchContext.SearchResult> executeAsync(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		Objects.requireNonNull(query, "A query instance is required to perform a search.");
+		Objects.requireNonNull(settings, "Settings are required to perform a search.");
+
+		if (!canProcessQuery(query)) {
+			return Futures.<SearchContext.SearchResult>immediateFuture(createDefaultResult(settings.getPageSize()));
+		}
+		if (isDeadlineExceeded(settings)) {
+			return Futures.<SearchContext.SearchResult>immediateFuture(createExpiredResult(settings.getPageSize()));
+		}
+
+		org.apache.solr.client.solrj.SolrQuery solrQuery = createQuery(query, settings);
+		recordQuery(solrQuery);
+		if (isKnownEmpty(solrQuery)) {
+			return Futures.<SearchContext.SearchResult>immediateFuture(createDefaultResult(settings.getPageSize()));
+		}
+		HttpRequestBase request = createRequest(solrQuery);
+		Optional<Long> remainingTime = settings.getRemainingTime();
+		if (remainingTime.isPresent()) {
+			request.setConfig(createDeadlineConfig(remainingTime.get()));
+		}
+		SolrResponseFuture future = new SolrResponseFuture(settings, solrQuery);
+		future.setHttpFuture(asyncClient.execute(request, future));
+		return future;
+	}
+
+	/**
+	 * Cuts all timeouts of the default config to the remaining time, so the connection
+	 * is released when nobody waits for the response anymore.
+	 */
+	@Nonnull
+	RequestConfig createDeadlineConfig(final long remainingTime) {
+		return RequestConfig.copy(requestConfig)
+			.setConnectTimeout(limitTimeout(requestConfig.getConnectTimeout(), remainingTime))
+			.setConnectionRequestTimeout(limitTimeout(requestConfig.getConnectionRequestTimeout(), remainingTime))
+			.setSocketTimeout(limitTimeout(requestConfig.getSocketTimeout(), remainingTime))
+			.build();
+	}
+
+	private int limitTimeout(final int timeout, final long remainingTime) {
+		// a timeout of 0 means infinite for the http client
+		int limit = (int) Math.max(1, Math.min(remainingTime, Integer.MAX_VALUE));
+		return timeout > 0 ? Math.min(timeout, limit) : limit;
+	}
+
+	@Nonnull
+	HttpRequestBase createRequest(@Nonnull final SolrParams params) {
+		ModifiableSolrParams requestParams = new ModifiableSolrParams(params);
+		requestParams.set(CommonParams.WT, parser.getWriterType());
+		requestParams.set(CommonParams.VERSION, parser.getVersion());
+		String url = baseUrl + SELECT_PATH;
+		if (isPostRequired(params)) {
+			HttpPost post = new HttpPost(url);
+			post.setEntity(new UrlEncodedFormEntity(toNameValuePairs(requestParams), Consts.UTF_8));
+			return post;
+		}
+		return new HttpGet(url + ClientUtils.toQueryString(requestParams, false));
+	}
+
+	private List<NameValuePair> toNameValuePairs(final SolrParams params) {
+		List<NameValuePair> pairs = new ArrayList<>();
+		Iterator<String> names = params.getParameterNamesIterator();
+		while (names.hasNext()) {
+			String name = names.next();
+			for (String value : params.getParams(name)) {
+				pairs.add(new BasicNameValuePair(name, value));
+			}
+		}
+		return pairs;
+	}
+
+	@Nonnull
+	QueryResponse parseResponse(@Nonnull final HttpResponse response) throws IOException {
+		HttpEntity entity = response.getEntity();
+		try {
+			int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode != HttpStatus.SC_OK) {
+				throw new IOException("solr responded with status " + statusCode + ": " + response.getStatusLine().getReasonPhrase());
+			}
+			ContentType contentType = ContentType.get(entity);
+			String charset = contentType != null && contentType.getCharset() != null ? contentType.getCharset().name() : null;
+			try (InputStream in = entity.getContent()) {
+				NamedList<Object> result = parser.processResponse(in, charset);
+				return new QueryResponse(result, null);
+			}
+		} finally {
+			EntityUtils.consumeQuietly(entity);
+		}
+	}
+
+	private class SolrResponseFuture extends AbstractFuture<SearchContext.SearchResult> implements FutureCallback<HttpResponse> {
+		private final SearchSettings settings;
+		private final SolrParams params;
+		private final long start = System.nanoTime();
+		private volatile Future<HttpResponse> httpFuture;
+
+		SolrResponseFuture(final SearchSettings settings, final SolrParams params) {
+			this.settings = settings;
+			this.params = params;
+		}
+
+		void setHttpFuture(final Future<HttpResponse> httpFuture) {
+			this.httpFuture = httpFuture;
+			if (isCancelled()) {
+				httpFuture.cancel(true);
+			}
+		}
+
+		@Override
+		public void completed(final HttpResponse response) {
+			QueryResponse solrResult;
+			try {
+				solrResult = parseResponse(response);
+			} catch (IOException | RuntimeException e) {
+				failed(e);
+				return;
+			}
+			recordRequest(start, true);
+			try {
+				recordResponse(params, solrResult);
+				set(mapSolrQueryToDomainResult(settings, solrResult));
+			} catch (RuntimeException e) {
+				LOG.warn("got exception when map the response of solr", e);
+				set(createFailedResult(settings.getPageSize()));
+			}
+		}
+
+		@Override
+		public void failed(final Exception e) {
+			LOG.warn("got exception when execute a search to solr", e);
+			recordRequest(start, false);
+			set(createFailedResult(settings.getPageSize()));
+		}
+
+		@Override
+		public void cancelled() {
+			super.cancel(false);
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			Future<HttpResponse> request = httpFuture;
+			if (cancelled && request != null) {
+				request.cancel(true);
+			}
+			return cancelled;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package de.faz.modules.query.solr;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A {@link SolrServer} that stops sending requests to solr when too many of the recent requests
+ * failed. The breaker opens when the failure rate of the last <code>windowSize</code> requests
+ * reaches the threshold. While it is open every request fails at once instead of waiting for the
+ * timeout. After the open time one probe request is let through, the breaker closes again when
+ * the probe succeeds.
+ *
+ * The last complete response of every query is kept in a cache. A query that is rejected by the
+ * open breaker or that fails is answered from this cache when possible, so the users get a stale
+ * result instead of an empty one during an outage.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class CircuitBreakerSolrServer extends SolrServer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CircuitBreakerSolrServer.class);
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final SolrServer solrServer;
+	private final boolean[] outcomes;
+	private final int failureRateThreshold;
+	private final long openTimeNanos;
+	private final Cache<String, NamedList<Object>> staleCache;
+	private final AtomicBoolean probeInFlight = new AtomicBoolean();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong staleResponseCount = new AtomicLong();
+
+	private volatile State state = State.CLOSED;
+	private volatile long openedAt;
+	private int outcomeCount;
+	private int failureCount;
+
+	/**
+	 * @param solrServer the server the requests are sent to
+	 * @param windowSize the number of recent requests the failure rate is calculated from
+	 * @param failureRateThreshold the failure rate in percent that opens the breaker
+	 * @param openTime the time in milliseconds the breaker stays open before a probe is sent
+	 * @param staleCacheSize the maximum number of queries whose last response is kept
+	 */
+	public CircuitBreakerSolrServer(@Nonnull final SolrServer solrServer, final int windowSize, final int failureRateThreshold, final long openTime,
+		final int staleCacheSize) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("the window of the circuit breaker must contain at least one request.");
+		}
+		if (failureRateThreshold < 1 || failureRateThreshold > 100) {
+			throw new IllegalArgumentException("the failure rate threshold must be between 1 and 100 percent.");
+		}
+		this.solrServer = Objects.requireNonNull(solrServer, "A solr server is required.");
+		this.outcomes = new boolean[windowSize];
+		this.failureRateThreshold = failureRateThreshold;
+		this.openTimeNanos = TimeUnit.MILLISECONDS.toNanos(openTime);
+		this.staleCache = CacheBuilder.newBuilder().maximumSize(staleCacheSize).build();
+	}
+
+	@Override
+	public NamedList<Object> request(final SolrRequest request) throws SolrServerException, IOException {
+		String cacheKey = createCacheKey(request);
+		boolean probe = false;
+		if (state != State.CLOSED) {
+			probe = tryStartProbe();
+			if (!probe) {
+				rejectedCount.incrementAndGet();
+				return fallback(cacheKey, new SolrServerException("circuit breaker is open, the request is not sent to solr."));
+			}
+		}
+
+		try {
+			NamedList<Object> response = solrServer.request(request);
+			recordOutcome(true, probe);
+			// a response that was cut off by a deadline is no fallback for a complete one
+			if (cacheKey != null && !ResultCachingSolrServer.isPartial(response)) {
+				staleCache.put(cacheKey, response);
+			}
+			return response;
+		} catch (SolrServerException e) {
+			recordOutcome(false, probe);
+			return fallback(cacheKey, e);
+		} catch (IOException e) {
+			recordOutcome(false, probe);
+			return fallback(cacheKey, e);
+		} catch (SolrException e) {
+			// an invalid request is no sign of an unhealthy solr
+			boolean serverError = e.code() >= SolrException.ErrorCode.SERVER_ERROR.code;
+			recordOutcome(!serverError, probe);
+			if (serverError) {
+				return fallback(cacheKey, e);
+			}
+			throw e;
+		} catch (RuntimeException e) {
+			// e.g. a closed connection pool, a probe must always finish or the breaker never closes again
+			recordOutcome(false, probe);
+			throw e;
+		}
+	}
+
+	private <E extends Exception> NamedList<Object> fallback(final String cacheKey, final E failure) throws E {
+		NamedList<Object> staleResponse = cacheKey != null ? staleCache.getIfPresent(cacheKey) : null;
+		if (staleResponse == null) {
+			throw failure;
+		}
+		LOG.debug("answering request from stale cache: {}", failure.getMessage());
+		staleResponseCount.incrementAndGet();
+		return staleResponse;
+	}
+
+	/**
+	 * Only one probe is sent after the open time, all other requests are rejected until
+	 * the result of the probe is known.
+	 */
+	private boolean tryStartProbe() {
+		if (state == State.OPEN && System.nanoTime() - openedAt < openTimeNanos) {
+			return false;
+		}
+		if (!probeInFlight.compareAndSet(false, true)) {
+			return false;
+		}
+		state = State.HALF_OPEN;
+		return true;
+	}
+
+	private synchronized void recordOutcome(final boolean success, final boolean probe) {
+		if (probe) {
+			probeInFlight.set(false);
+			if (success) {
+				LOG.info("solr recovered, closing circuit breaker");
+				state = State.CLOSED;
+				resetWindow();
+			} else {
+				open();
+			}
+			return;
+		}
+		if (state != State.CLOSED) {
+			return;
+		}
+		int index = outcomeCount++ % outcomes.length;
+		if (outcomeCount > outcomes.length && outcomes[index]) {
+			failureCount--;
+		}
+		outcomes[index] = !success;
+		if (!success) {
+			failureCount++;
+		}
+		int requests = Math.min(outcomeCount, outcomes.length);
+		if (requests == outcomes.length && failureCount * 100 >= failureRateThreshold * requests) {
+			LOG.warn("{} of the last {} requests to solr failed, opening circuit breaker", failureCount, requests);
+			open();
+		}
+	}
+
+	private void open() {
+		openedAt = System.nanoTime();
+		state = State.OPEN;
+		resetWindow();
+	}
+
+	private void resetWindow() {
+		outcomeCount = 0;
+		failureCount = 0;
+		Arrays.fill(outcomes, false);
+	}
+
+	/**
+	 * Creates a key from the path and the fingerprint of a query, so the same query hits the
+	 * same cache entry regardless of the order of its parameters. Other requests and streamed
+	 * queries are not cached.
+	 */
+	static String createCacheKey(final SolrRequest request) {
+		if (!(request instanceof QueryRequest) || request.getResponseParser() != null || request.getParams() == null) {
+			return null;
+		}
+		return request.getPath() + "?" + SolrFingerprints.createFingerprint(request.getParams());
+	}
+
+	@Nonnull
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the number of requests that were not sent to solr because the breaker was open
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @return the number of requests that were answered from the stale cache
+	 */
+	public long getStaleResponseCount() {
+		return staleResponseCount.get();
+	}
+}
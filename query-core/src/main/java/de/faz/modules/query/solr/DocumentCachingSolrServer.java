@@ -0,0 +1,241 @@
+package de.faz.modules.query.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link SolrServer} that keeps the stored fields of the returned documents in a local cache.
+ * A query is sent in two phases: the first request only asks for the id and the version of the
+ * hits, i.e. <code>contentId</code> and <code>commitId</code>, the second request loads the
+ * documents that are not cached with <code>id:(1 OR 2 ...)</code> queries of at most 100 ids
+ * by default. A cached document is only used when its version matches the version of the hit, so
+ * a modified document is loaded again.
+ *
+ * All other parameters of the query, like highlighting or facets, are sent with the first request.
+ * The documents are cached for the requested field list, so a query with another field list does
+ * not get documents with missing fields. Grouped queries, streamed queries and other requests are
+ * sent unchanged. When most of the hits are not cached, the second request makes the query slower,
+ * so use this server for listings of popular documents.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class DocumentCachingSolrServer extends SolrServer {
+
+	private static final String RESPONSE_KEY = "response";
+	private static final String SCORE_FIELD = "score";
+	private static final String ALL_FIELDS = "*";
+
+	public static final int DEFAULT_MAX_IDS_PER_REQUEST = 100;
+
+	private final SolrServer solrServer;
+	private final String idField;
+	private final String versionField;
+	private final Cache<String, CachedDocument> documentCache;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	private int maxIdsPerRequest = DEFAULT_MAX_IDS_PER_REQUEST;
+
+	/**
+	 * @param solrServer the server the requests are sent to
+	 * @param idField the unique field of the documents
+	 * @param versionField a field that changes with every modification of a document
+	 * @param maxDocuments the maximum number of documents that are cached
+	 */
+	public DocumentCachingSolrServer(@Nonnull final SolrServer solrServer, @Nonnull final String idField, @Nonnull final String versionField,
+		final int maxDocuments) {
+		this.solrServer = Objects.requireNonNull(solrServer, "A solr server is required.");
+		this.idField = Objects.requireNonNull(idField, "The id field is required to cache the documents.");
+		this.versionField = Objects.requireNonNull(versionField, "The version field is required to validate the cached documents.");
+		this.documentCache = CacheBuilder.newBuilder().maximumSize(maxDocuments).build();
+	}
+
+	/**
+	 * Sets the maximum number of documents that are loaded with one request. It must stay below the
+	 * <code>maxBooleanClauses</code> of solr, 1024 by default.
+	 */
+	public DocumentCachingSolrServer withMaxIdsPerRequest(final int maxIdsPerRequest) {
+		if (maxIdsPerRequest < 1) {
+			throw new IllegalArgumentException("at least one document must be loaded with a request.");
+		}
+		this.maxIdsPerRequest = maxIdsPerRequest;
+		return this;
+	}
+
+	@Override
+	public NamedList<Object> request(final SolrRequest request) throws SolrServerException, IOException {
+		if (!isCacheable(request)) {
+			return solrServer.request(request);
+		}
+		SolrParams params = request.getParams();
+		String fieldList = params.get(CommonParams.FL, ALL_FIELDS);
+		NamedList<Object> response = solrServer.request(createIdRequest(request, fieldList));
+		int index = response.indexOf(RESPONSE_KEY, 0);
+		if (index < 0 || !(response.getVal(index) instanceof SolrDocumentList)) {
+			return response;
+		}
+		SolrDocumentList hits = (SolrDocumentList) response.getVal(index);
+
+		Map<String, SolrDocument> documents = new HashMap<>();
+		List<String> missingIds = new ArrayList<>();
+		for (SolrDocument hit : hits) {
+			String id = String.valueOf(hit.getFieldValue(idField));
+			CachedDocument cached = documentCache.getIfPresent(createCacheKey(fieldList, id));
+			if (cached != null && cached.version.equals(hit.getFieldValue(versionField))) {
+				documents.put(id, cached.document);
+			} else {
+				missingIds.add(id);
+			}
+		}
+		hitCount.addAndGet(documents.size());
+		missCount.addAndGet(missingIds.size());
+		if (!missingIds.isEmpty()) {
+			documents.putAll(loadDocuments(request, fieldList, missingIds, hits));
+		}
+		response.setVal(index, createDocumentList(hits, documents));
+		return response;
+	}
+
+	private boolean isCacheable(final SolrRequest request) {
+		return request instanceof QueryRequest && request.getResponseParser() == null && request.getParams() != null
+			&& !request.getParams().getBool(GroupParams.GROUP, false);
+	}
+
+	/**
+	 * Replaces the field list of the query with the id and the version. The score is kept
+	 * because it is not stored in the cached documents.
+	 */
+	private QueryRequest createIdRequest(final SolrRequest request, final String fieldList) {
+		ModifiableSolrParams params = new ModifiableSolrParams(request.getParams());
+		StringBuilder fields = new StringBuilder(idField).append(',').append(versionField);
+		if (fieldList.contains(SCORE_FIELD)) {
+			fields.append(',').append(SCORE_FIELD);
+		}
+		params.set(CommonParams.FL, fields.toString());
+		return createRequest(request, params);
+	}
+
+	private Map<String, SolrDocument> loadDocuments(final SolrRequest request, final String fieldList, final List<String> ids, final SolrDocumentList hits)
+		throws SolrServerException, IOException {
+		Map<String, Object> versions = new HashMap<>();
+		for (SolrDocument hit : hits) {
+			versions.put(String.valueOf(hit.getFieldValue(idField)), hit.getFieldValue(versionField));
+		}
+		Map<String, SolrDocument> documents = new HashMap<>();
+		// every id is a clause of the query, solr rejects more than maxBooleanClauses of them
+		for (List<String> batch : Lists.partition(ids, maxIdsPerRequest)) {
+			Object result = solrServer.request(createDocumentRequest(request, fieldList, batch)).get(RESPONSE_KEY);
+			if (result instanceof SolrDocumentList) {
+				for (SolrDocument document : (SolrDocumentList) result) {
+					String id = String.valueOf(document.getFieldValue(idField));
+					documents.put(id, document);
+					// the version of the hit is used, a document without a version is never cached
+					Object version = versions.get(id);
+					if (version != null) {
+						documentCache.put(createCacheKey(fieldList, id), new CachedDocument(version, document));
+					}
+				}
+			}
+		}
+		return documents;
+	}
+
+	private QueryRequest createDocumentRequest(final SolrRequest request, final String fieldList, final List<String> ids) {
+		StringBuilder query = new StringBuilder(idField).append(":(");
+		for (int i = 0; i < ids.size(); i++) {
+			query.append(i > 0 ? " OR " : "").append(ClientUtils.escapeQueryChars(ids.get(i)));
+		}
+		ModifiableSolrParams params = new ModifiableSolrParams();
+		params.set(CommonParams.Q, query.append(')').toString());
+		params.set(CommonParams.FL, fieldList);
+		params.set(CommonParams.START, 0);
+		params.set(CommonParams.ROWS, ids.size());
+		return createRequest(request, params);
+	}
+
+	private QueryRequest createRequest(final SolrRequest request, final SolrParams params) {
+		QueryRequest queryRequest = new QueryRequest(params, request.getMethod());
+		queryRequest.setPath(request.getPath());
+		return queryRequest;
+	}
+
+	/**
+	 * Creates the documents of the page in the order of the hits. Every document is a copy, including
+	 * the lists of multi valued fields, so the cached documents are never modified. A document that
+	 * was deleted between the two requests is left out.
+	 */
+	private SolrDocumentList createDocumentList(final SolrDocumentList hits, final Map<String, SolrDocument> documents) {
+		SolrDocumentList result = new SolrDocumentList();
+		result.setNumFound(hits.getNumFound());
+		result.setStart(hits.getStart());
+		result.setMaxScore(hits.getMaxScore());
+		for (SolrDocument hit : hits) {
+			SolrDocument document = documents.get(String.valueOf(hit.getFieldValue(idField)));
+			if (document != null) {
+				SolrDocument copy = new SolrDocument();
+				for (Map.Entry<String, Object> field : document) {
+					Object value = field.getValue();
+					copy.setField(field.getKey(), value instanceof Collection ? new ArrayList<>((Collection<?>) value) : value);
+				}
+				if (hit.containsKey(SCORE_FIELD)) {
+					copy.setField(SCORE_FIELD, hit.getFieldValue(SCORE_FIELD));
+				}
+				result.add(copy);
+			}
+		}
+		return result;
+	}
+
+	private static String createCacheKey(final String fieldList, final String id) {
+		return fieldList + '|' + id;
+	}
+
+	/**
+	 * @return the number of documents that were taken from the cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the number of documents that were loaded from solr
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	private static class CachedDocument {
+		private final Object version;
+		private final SolrDocument document;
+
+		CachedDocument(final Object version, final SolrDocument document) {
+			this.version = version;
+			this.document = document;
+		}
+	}
+}
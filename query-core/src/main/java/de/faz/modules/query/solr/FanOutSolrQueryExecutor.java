@@ -0,0 +1,326 @@
+package de.faz.modules.query.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.faz.modules.query.Query;
+import de.faz.modules.query.ResultHandler;
+import de.faz.modules.query.SearchContext;
+import de.faz.modules.query.SearchSettings;
+import de.faz.modules.query.exception.SearchFailedException;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import de.faz.modules.query.fields.Mapping;
+
+/**
+ * This executor sends every query to several solr cores in parallel and merges the sorted
+ * hit lists of all cores into one page. Every core is asked for the first <code>offset + rows</code>
+ * hits, the merged page is cut out of the sorted union of these lists and numFound is the sum
+ * of all cores. Without a sort the hits are merged by score, so the scores of the cores must be
+ * comparable.
+ *
+ * A core that fails is logged and left out of the result. Grouping is not supported.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+class FanOutSolrQueryExecutor extends SolrQueryExecutor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FanOutSolrQueryExecutor.class);
+
+	private static final String SCORE_FIELD = "score";
+	private static final String ALL_FIELDS = "*";
+	private static final String PARTIAL_RESULTS_KEY = "partialResults";
+
+	private final List<String> coreUrls;
+	private final List<SolrServer> servers;
+	private final ExecutorService executorService;
+
+	/**
+	 * @param servers the servers of the cores by their urls, the servers may be decorated, i.e. with a cache
+	 */
+	FanOutSolrQueryExecutor(@Nonnull final Map<String, ? extends SolrServer> servers, @Nonnull final ExecutorService executorService,
+		final FieldDefinitionGenerator generator, final int postThreshold, final SolrRequestStatistics statistics) {
+		super(servers.isEmpty() ? null : servers.values().iterator().next(), generator, postThreshold, statistics);
+		this.coreUrls = new ArrayList<>(servers.keySet());
+		this.servers = new ArrayList<SolrServer>(servers.values());
+		this.executorService = Objects.requireNonNull(executorService, "An executor is required to query the cores in parallel.");
+	}
+
+	@Override
+	@Nonnull
+	protected SearchContext.SearchResult executeQuery(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		Objects.requireNonNull(query, "A query instance is required to perform a search.");
+		Objects.requireNonNull(settings, "Settings are required to perform a search.");
+
+		if (!canProcessQuery(query)) {
+			return createDefaultResult(settings.getPageSize());
+		}
+		if (isDeadlineExceeded(settings)) {
+			return createExpiredResult(settings.getPageSize());
+		}
+		List<SearchSettings.SortBy> sort = getMergeSort(settings);
+		int offset = settings.isKeysetPaging() ? 0 : settings.getOffset().or(0);
+		org.apache.solr.client.solrj.SolrQuery solrQuery = createFanOutQuery(query, settings, sort, offset);
+		List<QueryResponse> responses = sendToAllCores(solrQuery);
+		SolrSearchResult result = mapSolrQueryToDomainResult(settings, mergeResponses(responses, sort, offset, settings.getPageSize()));
+		if (responses.size() < servers.size()) {
+			// the hits of the failed cores are missing
+			result.markFailed();
+		}
+		return result;
+	}
+
+	@Override
+	public long count(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		Objects.requireNonNull(query, "A query instance is required to perform a search.");
+		Objects.requireNonNull(settings, "Settings are required to perform a search.");
+
+		if (!canProcessQuery(query)) {
+			return 0;
+		}
+		checkDeadline(settings);
+		List<QueryResponse> responses = sendToAllCores(createCountQuery(query, settings));
+		if (responses.size() < servers.size()) {
+			// the matches of the failed cores are missing
+			throw new SearchFailedException("only " + responses.size() + " of " + servers.size() + " solr cores answered the count.");
+		}
+		long count = 0;
+		for (QueryResponse response : responses) {
+			count += getCount(response);
+		}
+		return count;
+	}
+
+	/**
+	 * The documents of several cores can not be streamed in order, so the merged page is
+	 * collected first and handed to the handler afterwards.
+	 */
+	@Override
+	public <T extends Mapping> long stream(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final ResultHandler<T> handler) {
+		SearchContext.SearchResult result = execute(query, settings);
+		Iterator<T> it = result.getResultsForMapping(mappingClass);
+		while (it.hasNext()) {
+			handler.handle(it.next());
+		}
+		return result.getNumCount();
+	}
+
+	@Override
+	boolean canProcessQuery(final Query query) {
+		return !servers.isEmpty() && !query.isEmpty();
+	}
+
+	private List<SearchSettings.SortBy> getMergeSort(final SearchSettings settings) {
+		Collection<SearchSettings.SortBy> sort = settings.getSort();
+		if (settings.isKeysetPaging() && settings instanceof SolrSearchSettings) {
+			sort = ((SolrSearchSettings) settings).getKeysetSort();
+		}
+		if (sort.isEmpty()) {
+			return Arrays.asList(new SearchSettings.SortBy(SCORE_FIELD, SearchSettings.Order.DESC));
+		}
+		return new ArrayList<>(sort);
+	}
+
+	/**
+	 * Every core must return all hits up to the end of the requested page, and the values
+	 * of the sort fields are required to merge the hits.
+	 */
+	org.apache.solr.client.solrj.SolrQuery createFanOutQuery(final Query query, final SearchSettings settings,
+		final List<SearchSettings.SortBy> sort, final int offset) {
+		org.apache.solr.client.solrj.SolrQuery solrQuery = createQuery(query, settings);
+		for (String name : new ArrayList<>(solrQuery.getParameterNames())) {
+			if (name.startsWith(GroupParams.GROUP)) {
+				solrQuery.remove(name);
+			}
+		}
+		solrQuery.setStart(0);
+		solrQuery.setRows(offset + settings.getPageSize());
+		if (solrQuery.getFields() == null) {
+			solrQuery.setFields(ALL_FIELDS);
+		}
+		List<String> fields = Arrays.asList(solrQuery.getFields().split(","));
+		for (SearchSettings.SortBy sortBy : sort) {
+			String fieldName = sortBy.getFieldName().toString();
+			if (!fields.contains(fieldName) && (SCORE_FIELD.equals(fieldName) || !fields.contains(ALL_FIELDS))) {
+				solrQuery.addField(fieldName);
+			}
+		}
+		return solrQuery;
+	}
+
+	private List<QueryResponse> sendToAllCores(final org.apache.solr.client.solrj.SolrQuery solrQuery) {
+		final SolrRequest.METHOD method = isPostRequired(solrQuery) ? SolrRequest.METHOD.POST : SolrRequest.METHOD.GET;
+		long start = System.nanoTime();
+		List<Future<QueryResponse>> requests = new ArrayList<>(servers.size());
+		for (final SolrServer server : servers) {
+			requests.add(executorService.submit(new Callable<QueryResponse>() {
+				@Override
+				public QueryResponse call() throws Exception {
+					return server.query(solrQuery, method);
+				}
+			}));
+		}
+
+		List<QueryResponse> responses = new ArrayList<>(servers.size());
+		for (int i = 0; i < requests.size(); i++) {
+			try {
+				responses.add(requests.get(i).get());
+			} catch (ExecutionException e) {
+				LOG.warn("got exception when execute a search to solr core " + coreUrls.get(i), e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOG.warn("interrupted while waiting for solr core {}", coreUrls.get(i));
+				break;
+			}
+		}
+		for (Future<QueryResponse> request : requests) {
+			request.cancel(true);
+		}
+		// the search is reported once, it is as slow as the slowest core
+		recordRequest(start, responses.size() == servers.size());
+		return responses;
+	}
+
+	/**
+	 * Merges the sorted hit lists of all cores with a k-way merge and creates a response
+	 * that contains only the requested page.
+	 */
+	QueryResponse mergeResponses(final List<QueryResponse> responses, final List<SearchSettings.SortBy> sort, final int offset, final int rows) {
+		final DocumentComparator comparator = new DocumentComparator(sort);
+		PriorityQueue<DocumentCursor> cursors = new PriorityQueue<>(Math.max(1, responses.size()), new Comparator<DocumentCursor>() {
+			@Override
+			public int compare(final DocumentCursor c1, final DocumentCursor c2) {
+				int result = comparator.compare(c1.current(), c2.current());
+				return result != 0 ? result : Integer.compare(c1.core, c2.core);
+			}
+		});
+
+		SolrDocumentList merged = new SolrDocumentList();
+		NamedList<Object> highlighting = new SimpleOrderedMap<>();
+		long numFound = 0;
+		Float maxScore = null;
+		int queryTime = 0;
+		boolean partial = false;
+		for (int core = 0; core < responses.size(); core++) {
+			QueryResponse response = responses.get(core);
+			SolrDocumentList documents = response.getResults();
+			if (documents != null) {
+				numFound += documents.getNumFound();
+				if (documents.getMaxScore() != null && (maxScore == null || documents.getMaxScore() > maxScore)) {
+					maxScore = documents.getMaxScore();
+				}
+				if (!documents.isEmpty()) {
+					cursors.add(new DocumentCursor(core, documents));
+				}
+			}
+			NamedList<?> coreHighlighting = (NamedList<?>) response.getResponse().get("highlighting");
+			if (coreHighlighting != null) {
+				highlighting.addAll((NamedList<Object>) coreHighlighting);
+			}
+			queryTime = Math.max(queryTime, response.getQTime());
+			partial |= response.getResponseHeader() != null && Boolean.TRUE.equals(response.getResponseHeader().get(PARTIAL_RESULTS_KEY));
+		}
+
+		int position = 0;
+		while (!cursors.isEmpty() && merged.size() < rows) {
+			DocumentCursor cursor = cursors.poll();
+			if (position++ >= offset) {
+				merged.add(cursor.current());
+			}
+			if (cursor.advance()) {
+				cursors.add(cursor);
+			}
+		}
+		merged.setNumFound(numFound);
+		merged.setStart(offset);
+		merged.setMaxScore(maxScore);
+
+		NamedList<Object> header = new SimpleOrderedMap<>();
+		header.add("status", 0);
+		header.add("QTime", queryTime);
+		if (partial) {
+			header.add(PARTIAL_RESULTS_KEY, true);
+		}
+		NamedList<Object> result = new NamedList<>();
+		result.add("responseHeader", header);
+		result.add("response", merged);
+		if (highlighting.size() > 0) {
+			result.add("highlighting", highlighting);
+		}
+		return new QueryResponse(result, null);
+	}
+
+	private static class DocumentCursor {
+		private final int core;
+		private final SolrDocumentList documents;
+		private int index;
+
+		DocumentCursor(final int core, final SolrDocumentList documents) {
+			this.core = core;
+			this.documents = documents;
+		}
+
+		SolrDocument current() {
+			return documents.get(index);
+		}
+
+		boolean advance() {
+			return ++index < documents.size();
+		}
+	}
+
+	private static class DocumentComparator implements Comparator<SolrDocument> {
+		private final List<SearchSettings.SortBy> sort;
+
+		DocumentComparator(final List<SearchSettings.SortBy> sort) {
+			this.sort = sort;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public int compare(final SolrDocument d1, final SolrDocument d2) {
+			for (SearchSettings.SortBy sortBy : sort) {
+				Object v1 = d1.getFirstValue(sortBy.getFieldName().toString());
+				Object v2 = d2.getFirstValue(sortBy.getFieldName().toString());
+				int result;
+				if (v1 == null || v2 == null) {
+					// documents without a value are sorted last
+					result = v1 == null ? (v2 == null ? 0 : 1) : -1;
+				} else {
+					result = ((Comparable<Object>) v1).compareTo(v2);
+					if (sortBy.getOrder() == SearchSettings.Order.DESC) {
+						result = -result;
+					}
+				}
+				if (result != 0) {
+					return result;
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package de.faz.modules.query.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * A {@link SolrServer} that sends a second request to another replica when the first one
+ * has not answered within the given percentile of the recent latencies, and returns
+ * whichever response arrives first. This cuts the tail latency that is caused by a single
+ * slow replica, i.e. during a long gc pause.
+ *
+ * The number of hedged requests is limited to a percentage of all requests by a token bucket:
+ * every request adds the percentage of a token and every hedge takes a whole one. The bucket
+ * holds at most {@link #MAX_HEDGE_BURST} tokens, so a long quiet period does not save up a budget
+ * that lets a replica set that is slow as a whole get twice the load. Hedging starts after
+ * {@link #MIN_SAMPLES} requests have completed.
+ *
+ * The request that loses is cancelled by interrupting its thread. The blocking http client
+ * does not abort a running request on interrupt, so the loser still completes in the
+ * background and its connection is returned to the pool afterwards.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class HedgingSolrServer extends SolrServer {
+
+	public static final int MIN_SAMPLES = 20;
+	public static final int MAX_HEDGE_BURST = 10;
+
+	/** a hedge costs one token, the tokens are counted in hundredths */
+	private static final long HEDGE_COST = 100;
+
+	private static final int HISTOGRAM_SIZE = 512;
+	/** number of samples after which the hedge delay is calculated again */
+	private static final int DELAY_UPDATE_INTERVAL = 16;
+
+	private final List<SolrServer> replicas;
+	private final ExecutorService executorService;
+	private final double percentile;
+	private final int maxExtraLoad;
+	private final LatencyHistogram histogram;
+	private final AtomicInteger rotation = new AtomicInteger();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong hedgeCount = new AtomicLong();
+	private final AtomicLong hedgeWinCount = new AtomicLong();
+	private final AtomicLong budgetExceededCount = new AtomicLong();
+	private final AtomicLong hedgeTokens = new AtomicLong();
+
+	private volatile long hedgeDelayNanos;
+
+	/**
+	 * @param replicas the replicas of one core, at least two are required to hedge a request
+	 * @param executorService the executor that sends the requests to the replicas
+	 * @param percentile the percentile of the recent latencies after which a request is hedged, i.e. 95
+	 * @param maxExtraLoad the maximum number of hedged requests in percent of all requests
+	 */
+	public HedgingSolrServer(@Nonnull final List<? extends SolrServer> replicas, @Nonnull final ExecutorService executorService,
+		final double percentile, final int maxExtraLoad) {
+		if (replicas.isEmpty()) {
+			throw new IllegalArgumentException("at least one replica is required.");
+		}
+		if (percentile <= 0 || percentile >= 100) {
+			throw new IllegalArgumentException("the hedging percentile must be between 0 and 100.");
+		}
+		if (maxExtraLoad < 0 || maxExtraLoad > 100) {
+			throw new IllegalArgumentException("the extra load of hedged requests must be between 0 and 100 percent.");
+		}
+		this.replicas = new ArrayList<>(replicas);
+		this.executorService = Objects.requireNonNull(executorService, "An executor is required to send hedged requests.");
+		this.percentile = percentile;
+		this.maxExtraLoad = maxExtraLoad;
+		this.histogram = new LatencyHistogram(HISTOGRAM_SIZE);
+	}
+
+	@Override
+	public NamedList<Object> request(final SolrRequest request) throws SolrServerException, IOException {
+		requestCount.incrementAndGet();
+		addHedgeToken();
+		int primaryIndex = Math.abs(rotation.getAndIncrement() % replicas.size());
+		CompletionService<NamedList<Object>> completionService = new ExecutorCompletionService<>(executorService);
+		List<Future<NamedList<Object>>> attempts = new ArrayList<>(2);
+		Future<NamedList<Object>> primary = completionService.submit(createAttempt(replicas.get(primaryIndex), request));
+		attempts.add(primary);
+		try {
+			long delay = hedgeDelayNanos;
+			Future<NamedList<Object>> completed = null;
+			if (replicas.size() > 1 && delay > 0) {
+				completed = completionService.poll(delay, TimeUnit.NANOSECONDS);
+				if (completed == null && acquireHedge()) {
+					attempts.add(completionService.submit(createAttempt(replicas.get((primaryIndex + 1) % replicas.size()), request)));
+				}
+			}
+
+			ExecutionException failure = null;
+			for (int pending = attempts.size(); pending > 0; pending--) {
+				Future<NamedList<Object>> attempt = completed != null ? completed : completionService.take();
+				completed = null;
+				try {
+					NamedList<Object> response = attempt.get();
+					if (attempt != primary) {
+						hedgeWinCount.incrementAndGet();
+					}
+					return response;
+				} catch (ExecutionException e) {
+					// the other attempt may still succeed
+					failure = e;
+				}
+			}
+			throw unwrap(failure);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SolrServerException("interrupted while waiting for a solr replica.", e);
+		} finally {
+			for (Future<NamedList<Object>> attempt : attempts) {
+				attempt.cancel(true);
+			}
+		}
+	}
+
+	private Callable<NamedList<Object>> createAttempt(final SolrServer server, final SolrRequest request) {
+		return new Callable<NamedList<Object>>() {
+			@Override
+			public NamedList<Object> call() throws Exception {
+				long start = System.nanoTime();
+				NamedList<Object> response = server.request(request);
+				recordLatency(System.nanoTime() - start);
+				return response;
+			}
+		};
+	}
+
+	private void addHedgeToken() {
+		long tokens;
+		do {
+			tokens = hedgeTokens.get();
+		} while (!hedgeTokens.compareAndSet(tokens, Math.min(MAX_HEDGE_BURST * HEDGE_COST, tokens + maxExtraLoad)));
+	}
+
+	private boolean acquireHedge() {
+		long tokens;
+		do {
+			tokens = hedgeTokens.get();
+			if (tokens < HEDGE_COST) {
+				budgetExceededCount.incrementAndGet();
+				return false;
+			}
+		} while (!hedgeTokens.compareAndSet(tokens, tokens - HEDGE_COST));
+		hedgeCount.incrementAndGet();
+		return true;
+	}
+
+	private void recordLatency(final long latencyNanos) {
+		histogram.record(latencyNanos);
+		long samples = histogram.getCount();
+		if (samples >= MIN_SAMPLES && samples % DELAY_UPDATE_INTERVAL == 0) {
+			hedgeDelayNanos = histogram.getPercentile(percentile);
+		}
+	}
+
+	private SolrServerException unwrap(final ExecutionException e) throws IOException {
+		Throwable cause = e.getCause();
+		if (cause instanceof SolrServerException) {
+			return (SolrServerException) cause;
+		} else if (cause instanceof IOException) {
+			throw (IOException) cause;
+		} else if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		return new SolrServerException(cause);
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return the number of requests that were sent to a second replica
+	 */
+	public long getHedgeCount() {
+		return hedgeCount.get();
+	}
+
+	/**
+	 * @return the number of hedged requests that were answered by the second replica first
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWinCount.get();
+	}
+
+	/**
+	 * @return the number of slow requests that were not hedged because the budget was used up
+	 */
+	public long getBudgetExceededCount() {
+		return budgetExceededCount.get();
+	}
+
+	/**
+	 * @return the current delay in milliseconds after which a request is hedged, 0 while hedging is not started
+	 */
+	public long getHedgeDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos);
+	}
+}
@@ -0,0 +1,17 @@
+package de.faz.modules.query.solr;
+
+/**
+ * A listener that is notified by an {@link IndexVersionWatcher} when the index of a solr core
+ * was changed by a commit or a replication. Caches implement this interface to drop the results
+ * of the previous index.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public interface IndexVersionListener {
+
+	/**
+	 * Is called with the new version and generation of the index. The listener is called by the
+	 * polling thread of the watcher, so it must not block.
+	 */
+	void indexVersionChanged(long indexVersion, long generation);
+}
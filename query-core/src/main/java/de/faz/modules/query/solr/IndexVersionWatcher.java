@@ -0,0 +1,166 @@
+package de.faz.modules.query.solr;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls the version and the generation of the index of a solr core from its replication handler
+ * (<code>/replication?command=indexversion</code>) and notifies the registered
+ * {@link IndexVersionListener}s when the index was changed. The request does not touch the index,
+ * so it can be sent every second.
+ *
+ * Caches that listen to a watcher can keep their entries until the next commit instead of
+ * expiring them after a fixed time. A failed poll is logged and the last known version is kept.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class IndexVersionWatcher implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(IndexVersionWatcher.class);
+
+	public static final long DEFAULT_POLL_INTERVAL = 1000;
+	public static final long UNKNOWN_VERSION = -1;
+
+	private static final String REPLICATION_PATH = "/replication";
+	private static final String COMMAND_PARAM = "command";
+	private static final String INDEX_VERSION_COMMAND = "indexversion";
+	private static final String INDEX_VERSION_KEY = "indexversion";
+	private static final String GENERATION_KEY = "generation";
+
+	private final SolrServer solrServer;
+	private final ScheduledExecutorService scheduler;
+	private final CopyOnWriteArrayList<IndexVersionListener> listeners = new CopyOnWriteArrayList<>();
+
+	private long pollInterval = DEFAULT_POLL_INTERVAL;
+	private volatile long indexVersion = UNKNOWN_VERSION;
+	private volatile long generation = UNKNOWN_VERSION;
+	private ScheduledFuture<?> pollTask;
+
+	public IndexVersionWatcher(@Nonnull final SolrServer solrServer, @Nonnull final ScheduledExecutorService scheduler) {
+		this.solrServer = Objects.requireNonNull(solrServer, "A solr server is required to poll the index version.");
+		this.scheduler = Objects.requireNonNull(scheduler, "A scheduler is required to poll the index version.");
+	}
+
+	/**
+	 * Sets the time in milliseconds between two polls. It must be set before the watcher is started.
+	 */
+	public IndexVersionWatcher withPollInterval(final long pollInterval) {
+		if (pollInterval < 1) {
+			throw new IllegalArgumentException("the poll interval must be at least one millisecond.");
+		}
+		this.pollInterval = pollInterval;
+		return this;
+	}
+
+	/**
+	 * Registers a listener. A listener that is already registered is not added again.
+	 */
+	public IndexVersionWatcher addListener(@Nonnull final IndexVersionListener listener) {
+		listeners.addIfAbsent(Objects.requireNonNull(listener, "A listener is required."));
+		return this;
+	}
+
+	public void removeListener(final IndexVersionListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Polls the index version at once and then every poll interval until the watcher is closed.
+	 */
+	public synchronized IndexVersionWatcher start() {
+		if (pollTask == null) {
+			pollTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					poll();
+				}
+			}, 0, pollInterval, TimeUnit.MILLISECONDS);
+		}
+		return this;
+	}
+
+	/**
+	 * Requests the index version and notifies the listeners when it differs from the last known
+	 * version. The first successful poll notifies the listeners as well, so results that were cached
+	 * before the version was known are dropped.
+	 *
+	 * @return true when the index was changed
+	 */
+	public boolean poll() {
+		long newVersion;
+		long newGeneration;
+		try {
+			ModifiableSolrParams params = new ModifiableSolrParams();
+			params.set(COMMAND_PARAM, INDEX_VERSION_COMMAND);
+			QueryRequest request = new QueryRequest(params);
+			request.setPath(REPLICATION_PATH);
+			NamedList<Object> response = solrServer.request(request);
+			newVersion = toLong(response.get(INDEX_VERSION_KEY));
+			newGeneration = toLong(response.get(GENERATION_KEY));
+		} catch (Exception e) {
+			LOG.warn("could not poll the index version of solr, keeping version {}", indexVersion, e);
+			return false;
+		}
+		synchronized (this) {
+			if (newVersion == indexVersion && newGeneration == generation) {
+				return false;
+			}
+			indexVersion = newVersion;
+			generation = newGeneration;
+		}
+		LOG.debug("index of solr changed to version {} in generation {}", newVersion, newGeneration);
+		for (IndexVersionListener listener : listeners) {
+			try {
+				listener.indexVersionChanged(newVersion, newGeneration);
+			} catch (RuntimeException e) {
+				LOG.warn("index version listener {} failed", listener, e);
+			}
+		}
+		return true;
+	}
+
+	private static long toLong(final Object value) {
+		if (!(value instanceof Number)) {
+			throw new IllegalStateException("the replication handler returned no index version: " + value);
+		}
+		return ((Number) value).longValue();
+	}
+
+	/**
+	 * @return the last known version of the index or {@link #UNKNOWN_VERSION}
+	 */
+	public long getIndexVersion() {
+		return indexVersion;
+	}
+
+	/**
+	 * @return the last known generation of the index or {@link #UNKNOWN_VERSION}
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Stops polling. The scheduler is not shut down.
+	 */
+	@Override
+	public synchronized void close() {
+		if (pollTask != null) {
+			pollTask.cancel(false);
+			pollTask = null;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package de.faz.modules.query.solr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.util.DateUtil;
+
+import com.google.common.io.BaseEncoding;
+
+import de.faz.modules.query.SearchSettings;
+import de.faz.modules.query.exception.InvalidQueryException;
+
+/**
+ * Builds the continuation token of a keyset paged result and the filter query that selects
+ * all documents behind the document the token was created from. The token contains the
+ * sort values of that document in the syntax of the solr query parser, so it is opaque for
+ * the caller but can be used in a filter query without knowing the field types.
+ *
+ * Every filter is only used for one page, so it is not stored in the filter cache of solr
+ * where it would evict the filters that are used again.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+class KeysetCursor {
+
+	private static final BaseEncoding TOKEN_ENCODING = BaseEncoding.base64Url().omitPadding();
+	private static final String DISABLE_CACHING = "{!cache=false}";
+
+	private final List<SearchSettings.SortBy> sort;
+
+	KeysetCursor(@Nonnull final List<SearchSettings.SortBy> sort) {
+		this.sort = sort;
+	}
+
+	/**
+	 * Creates the token from the sort values of the given document.
+	 *
+	 * @throws InvalidQueryException if the document has no value for one of the sort fields, the
+	 *         documents behind it can not be selected then
+	 */
+	@Nonnull
+	String createToken(@Nonnull final SolrDocument document) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeShort(sort.size());
+			for (SearchSettings.SortBy sortBy : sort) {
+				Object value = document.getFirstValue(sortBy.getFieldName().toString());
+				if (value == null) {
+					throw new InvalidQueryException("The document has no value for the sort field " + sortBy.getFieldName()
+						+ ", keyset paging requires a value in every sort field.");
+				}
+				out.writeUTF(toQueryValue(value));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("could not write continuation token.", e);
+		}
+		return TOKEN_ENCODING.encode(bytes.toByteArray());
+	}
+
+	/**
+	 * Creates a filter query that matches all documents that are sorted behind the
+	 * document the given token was created from. For a sort by a, b and the tie breaker id
+	 * the filter is <code>a:{va TO *} OR (a:va AND b:{vb TO *}) OR (a:va AND b:vb AND id:{vid TO *})</code>,
+	 * descending fields use <code>{* TO v}</code>. The filter is prefixed with <code>{!cache=false}</code>.
+	 */
+	@Nonnull
+	String createFilter(@Nonnull final String token) {
+		List<String> values = parseToken(token);
+		StringBuilder filter = new StringBuilder(DISABLE_CACHING);
+		for (int i = 0; i < sort.size(); i++) {
+			if (i > 0) {
+				filter.append(" OR ");
+			}
+			filter.append('(');
+			for (int j = 0; j < i; j++) {
+				filter.append(sort.get(j).getFieldName()).append(':').append(values.get(j)).append(" AND ");
+			}
+			SearchSettings.SortBy sortBy = sort.get(i);
+			filter.append(sortBy.getFieldName()).append(':');
+			if (sortBy.getOrder() == SearchSettings.Order.DESC) {
+				filter.append("{* TO ").append(values.get(i)).append('}');
+			} else {
+				filter.append('{').append(values.get(i)).append(" TO *}");
+			}
+			filter.append(')');
+		}
+		return filter.toString();
+	}
+
+	private List<String> parseToken(final String token) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(TOKEN_ENCODING.decode(token)))) {
+			int size = in.readShort();
+			if (size != sort.size()) {
+				throw new InvalidQueryException("The continuation token does not match the sort of the settings.");
+			}
+			List<String> values = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(in.readUTF());
+			}
+			return values;
+		} catch (IOException | IllegalArgumentException e) {
+			throw new InvalidQueryException("The continuation token is invalid: " + token);
+		}
+	}
+
+	private String toQueryValue(final Object value) {
+		if (value instanceof Date) {
+			return ClientUtils.escapeQueryChars(DateUtil.getThreadLocalDateFormat().format((Date) value));
+		} else if (value instanceof Number || value instanceof Boolean) {
+			return ClientUtils.escapeQueryChars(value.toString());
+		}
+		return '"' + value.toString().replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+}
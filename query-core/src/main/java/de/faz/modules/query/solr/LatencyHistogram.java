@@ -0,0 +1,56 @@
+package de.faz.modules.query.solr;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latest latencies of a solr server in a ring buffer and calculates
+ * percentiles from them. Old samples are overwritten, so the percentiles follow
+ * changes of the latency within a few hundred requests.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+class LatencyHistogram {
+
+	private final long[] samples;
+	private long count;
+
+	LatencyHistogram(final int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("the histogram must hold at least one sample.");
+		}
+		this.samples = new long[size];
+	}
+
+	synchronized void record(final long latencyNanos) {
+		samples[(int) (count++ % samples.length)] = latencyNanos;
+	}
+
+	/**
+	 * @return the number of recorded samples, including the overwritten ones
+	 */
+	synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the latency in nanoseconds that is not exceeded by the given percentage of
+	 * the samples in the buffer, or 0 if nothing was recorded yet.
+	 *
+	 * @param percentile a value between 0 and 100
+	 */
+	long getPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("the percentile must be between 0 and 100.");
+		}
+		long[] sorted;
+		synchronized (this) {
+			sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+		}
+		if (sorted.length == 0) {
+			return 0;
+		}
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+}
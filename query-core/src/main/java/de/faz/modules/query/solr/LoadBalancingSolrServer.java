@@ -0,0 +1,176 @@
+package de.faz.modules.query.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SolrServer} that distributes the requests over several replicas of the same core.
+ * Every request is sent to the replica with the lowest cost, which is the number of requests in
+ * flight multiplied with the moving average of its latency. So a slow replica gets less requests
+ * than a fast one without any configuration.
+ *
+ * A replica that fails several times in a row is ejected for a while. A failed request is retried
+ * on the next replica, a request that Solr rejects as invalid is not retried.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class LoadBalancingSolrServer extends SolrServer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LoadBalancingSolrServer.class);
+
+	/** weight of the latest latency in the moving average */
+	private static final double LATENCY_DECAY = 0.3;
+
+	private final List<Replica> replicas;
+	private final int maxFailures;
+	private final long ejectionTimeNanos;
+	private final AtomicInteger rotation;
+
+	public LoadBalancingSolrServer(@Nonnull final List<HttpSolrServer> servers, final int maxFailures, final long ejectionTime) {
+		if (servers.isEmpty()) {
+			throw new IllegalArgumentException("at least one replica is required.");
+		}
+		List<Replica> replicaList = new ArrayList<>(servers.size());
+		for (HttpSolrServer server : servers) {
+			replicaList.add(new Replica(Objects.requireNonNull(server, "a replica must not be null.")));
+		}
+		this.replicas = Collections.unmodifiableList(replicaList);
+		this.maxFailures = maxFailures;
+		this.ejectionTimeNanos = TimeUnit.MILLISECONDS.toNanos(ejectionTime);
+		this.rotation = new AtomicInteger();
+	}
+
+	@Override
+	public NamedList<Object> request(final SolrRequest request) throws SolrServerException, IOException {
+		List<Replica> triedReplicas = new ArrayList<>(replicas.size());
+		Exception lastFailure = null;
+		while (triedReplicas.size() < replicas.size()) {
+			Replica replica = selectReplica(triedReplicas);
+			triedReplicas.add(replica);
+			long start = System.nanoTime();
+			replica.inFlightRequests.incrementAndGet();
+			try {
+				NamedList<Object> response = replica.server.request(request);
+				replica.recordSuccess(System.nanoTime() - start);
+				return response;
+			} catch (SolrServerException | IOException e) {
+				replica.recordFailure(maxFailures, ejectionTimeNanos);
+				lastFailure = e;
+			} catch (SolrException e) {
+				if (e.code() < SolrException.ErrorCode.SERVER_ERROR.code) {
+					replica.recordSuccess(System.nanoTime() - start);
+					throw e;
+				}
+				replica.recordFailure(maxFailures, ejectionTimeNanos);
+				lastFailure = e;
+			} finally {
+				replica.inFlightRequests.decrementAndGet();
+			}
+			LOG.warn("request to solr replica {} failed, trying next replica", replica.getUrl(), lastFailure);
+		}
+		throw new SolrServerException("no solr replica could process the request.", lastFailure);
+	}
+
+	/**
+	 * Selects the replica with the lowest cost that was not tried yet. Ejected replicas are only
+	 * selected when all replicas are ejected, then the one that is ejected the shortest is used.
+	 */
+	Replica selectReplica(final List<Replica> excluded) {
+		long now = System.nanoTime();
+		int offset = Math.abs(rotation.getAndIncrement() % replicas.size());
+		Replica best = null;
+		Replica fallback = null;
+		for (int i = 0; i < replicas.size(); i++) {
+			Replica replica = replicas.get((offset + i) % replicas.size());
+			if (excluded.contains(replica)) {
+				continue;
+			}
+			if (replica.isEjected(now)) {
+				if (fallback == null || replica.ejectedUntil < fallback.ejectedUntil) {
+					fallback = replica;
+				}
+			} else if (best == null || replica.getCost() < best.getCost()) {
+				best = replica;
+			}
+		}
+		return best != null ? best : fallback;
+	}
+
+	@Nonnull
+	public List<Replica> getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * The state of one replica as it is seen by the load balancer.
+	 */
+	public static class Replica {
+		private final HttpSolrServer server;
+		private final AtomicInteger inFlightRequests = new AtomicInteger();
+		private volatile double latencyAverage;
+		private volatile long ejectedUntil;
+		private int consecutiveFailures;
+
+		Replica(final HttpSolrServer server) {
+			this.server = server;
+		}
+
+		public String getUrl() {
+			return server.getBaseURL();
+		}
+
+		public int getInFlightRequests() {
+			return inFlightRequests.get();
+		}
+
+		/**
+		 * @return the moving average of the latency in milliseconds
+		 */
+		public double getLatencyAverage() {
+			return latencyAverage;
+		}
+
+		public boolean isEjected() {
+			return isEjected(System.nanoTime());
+		}
+
+		boolean isEjected(final long now) {
+			return ejectedUntil != 0 && now - ejectedUntil < 0;
+		}
+
+		double getCost() {
+			return (inFlightRequests.get() + 1) * Math.max(latencyAverage, 1d);
+		}
+
+		synchronized void recordSuccess(final long latencyNanos) {
+			double latency = latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+			latencyAverage = latencyAverage == 0 ? latency : latencyAverage + LATENCY_DECAY * (latency - latencyAverage);
+			consecutiveFailures = 0;
+			ejectedUntil = 0;
+		}
+
+		synchronized void recordFailure(final int maxFailures, final long ejectionTimeNanos) {
+			// a replica that fails again after its ejection is ejected again at once
+			if (++consecutiveFailures >= maxFailures) {
+				ejectedUntil = System.nanoTime() + ejectionTimeNanos;
+				LOG.warn("ejected solr replica {} after {} failures in a row", getUrl(), consecutiveFailures);
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package de.faz.modules.query.solr;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Remembers the queries that did not match any document, so they are answered with an empty
+ * result without a request to solr. Many queries of rare tags or inactive authors are empty,
+ * and every one of them would cost a complete round trip otherwise.
+ *
+ * A query is identified by a hash of all parameters that decide which documents match. Paging,
+ * sorting, the field list, highlighting and grouping are ignored, so a count and all pages of an
+ * empty query share one entry. A bloom filter in front of the set of empty queries answers most
+ * lookups of queries that have hits without touching the set.
+ *
+ * The entries expire after a short time. Register the cache at an {@link IndexVersionWatcher}
+ * to drop all entries when documents were added to the index.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class NegativeResultCache implements IndexVersionListener {
+
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+	private static final String PARTIAL_RESULTS_KEY = "partialResults";
+
+	private final int maxQueries;
+	private final Cache<String, Boolean> emptyQueries;
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private volatile BloomFilter<CharSequence> filter;
+	private int filterInsertions;
+
+	/**
+	 * @param maxQueries the maximum number of empty queries that are kept
+	 * @param timeToLive the time in milliseconds an empty query is kept
+	 */
+	public NegativeResultCache(final int maxQueries, final long timeToLive) {
+		if (maxQueries < 1) {
+			throw new IllegalArgumentException("the cache must keep at least one query.");
+		}
+		this.maxQueries = maxQueries;
+		this.emptyQueries = CacheBuilder.newBuilder().maximumSize(maxQueries).expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS).build();
+		this.filter = createFilter();
+	}
+
+	/**
+	 * Returns true when the query did not match any document recently.
+	 */
+	public boolean isKnownEmpty(@Nonnull final SolrParams params) {
+		String fingerprint = createFingerprint(params);
+		if (!filter.mightContain(fingerprint) || emptyQueries.getIfPresent(fingerprint) == null) {
+			return false;
+		}
+		hitCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Remembers the query when its response contains no hits. Grouped responses and responses
+	 * that were cut off by the deadline are ignored.
+	 */
+	public void record(@Nonnull final SolrParams params, @Nonnull final QueryResponse response) {
+		SolrDocumentList results = response.getResults();
+		if (results == null || results.getNumFound() > 0 || isPartial(response)) {
+			return;
+		}
+		String fingerprint = createFingerprint(params);
+		emptyQueries.put(fingerprint, Boolean.TRUE);
+		synchronized (this) {
+			// the filter can not remove expired queries, so it is rebuilt before it is full
+			if (++filterInsertions > maxQueries) {
+				rebuildFilter();
+			}
+			filter.put(fingerprint);
+		}
+	}
+
+	private boolean isPartial(final QueryResponse response) {
+		NamedList<Object> header = response.getResponseHeader();
+		return header != null && Boolean.TRUE.equals(header.get(PARTIAL_RESULTS_KEY));
+	}
+
+	@Override
+	public synchronized void indexVersionChanged(final long indexVersion, final long generation) {
+		emptyQueries.invalidateAll();
+		filter = createFilter();
+		filterInsertions = 0;
+	}
+
+	private void rebuildFilter() {
+		BloomFilter<CharSequence> newFilter = createFilter();
+		Set<String> fingerprints = emptyQueries.asMap().keySet();
+		for (String fingerprint : fingerprints) {
+			newFilter.put(fingerprint);
+		}
+		filter = newFilter;
+		filterInsertions = fingerprints.size();
+	}
+
+	private BloomFilter<CharSequence> createFilter() {
+		return BloomFilter.create(Funnels.stringFunnel(), maxQueries, FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * Creates a hash of the sorted parameters that decide which documents match.
+	 */
+	static String createFingerprint(final SolrParams params) {
+		return SolrFingerprints.createMatchingFingerprint(params).hash().toString();
+	}
+
+	public long getSize() {
+		return emptyQueries.size();
+	}
+
+	/**
+	 * @return the number of queries that were answered without a request to solr
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+}
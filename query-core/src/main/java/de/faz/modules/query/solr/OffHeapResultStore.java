@@ -0,0 +1,203 @@
+package de.faz.modules.query.solr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores solr responses as javabin bytes in one direct buffer outside of the heap. Only the keys
+ * and the positions of the entries are kept on the heap, so thousands of cached responses do not
+ * fill the old generation. A response is decoded when it is read, every reader gets its own copy.
+ *
+ * The buffer is written like a ring: new entries are appended behind the last one, and when the end
+ * of the buffer is reached the oldest entries are overwritten. Entries that are larger than an
+ * eighth of the buffer are not stored.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class OffHeapResultStore {
+
+	private static final Logger LOG = LoggerFactory.getLogger(OffHeapResultStore.class);
+
+	private static final int MAX_ENTRY_FRACTION = 8;
+
+	private final ByteBuffer buffer;
+	private final long maxAgeNanos;
+	private final Map<String, Slot> index = new HashMap<>();
+	private final ArrayDeque<Slot> slots = new ArrayDeque<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private int writePosition;
+	private long usedBytes;
+
+	/**
+	 * @param capacity the size of the buffer in bytes
+	 * @param maxAge the time in milliseconds an entry is kept at most
+	 */
+	public OffHeapResultStore(final int capacity, final long maxAge) {
+		if (capacity < MAX_ENTRY_FRACTION) {
+			throw new IllegalArgumentException("the capacity of the store is too small.");
+		}
+		this.buffer = ByteBuffer.allocateDirect(capacity);
+		this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAge);
+	}
+
+	/**
+	 * Returns a decoded copy of the response that was stored with the given key or null.
+	 */
+	public NamedList<Object> get(@Nonnull final String key) {
+		byte[] bytes;
+		lock.readLock().lock();
+		try {
+			Slot slot = index.get(key);
+			if (slot == null || System.nanoTime() - slot.created > maxAgeNanos) {
+				return null;
+			}
+			bytes = new byte[slot.length];
+			ByteBuffer source = buffer.duplicate();
+			source.position(slot.offset);
+			source.get(bytes);
+		} finally {
+			lock.readLock().unlock();
+		}
+		return decode(bytes);
+	}
+
+	/**
+	 * Stores the response. An entry with the same key is replaced.
+	 */
+	public void put(@Nonnull final String key, @Nonnull final NamedList<Object> response) {
+		byte[] bytes = encode(response);
+		if (bytes == null || bytes.length > buffer.capacity() / MAX_ENTRY_FRACTION) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			if (writePosition + bytes.length > buffer.capacity()) {
+				// the rest of the buffer is too small, the entries behind the write position are the oldest
+				evictFrom(writePosition, buffer.capacity());
+				writePosition = 0;
+			}
+			evictFrom(writePosition, writePosition + bytes.length);
+			ByteBuffer target = buffer.duplicate();
+			target.position(writePosition);
+			target.put(bytes);
+			Slot slot = new Slot(key, writePosition, bytes.length);
+			slots.addLast(slot);
+			index.put(key, slot);
+			writePosition += bytes.length;
+			usedBytes += bytes.length;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the oldest entries as long as they start within the given range. The entries are
+	 * ordered by their position in the ring, so the first entry is always the next one to overwrite.
+	 */
+	private void evictFrom(final int start, final int end) {
+		while (!slots.isEmpty() && slots.peekFirst().offset >= start && slots.peekFirst().offset < end) {
+			Slot slot = slots.removeFirst();
+			usedBytes -= slot.length;
+			if (index.get(slot.key) == slot) {
+				index.remove(slot.key);
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			index.clear();
+			slots.clear();
+			writePosition = 0;
+			usedBytes = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	static byte[] encode(final NamedList<Object> response) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			new JavaBinCodec().marshal(response, out);
+		} catch (IOException | RuntimeException e) {
+			LOG.debug("could not encode the solr response, it is not stored", e);
+			return null;
+		}
+		return out.toByteArray();
+	}
+
+	@SuppressWarnings("unchecked")
+	static NamedList<Object> decode(final byte[] bytes) {
+		try {
+			return (NamedList<Object>) new JavaBinCodec().unmarshal(new ByteArrayInputStream(bytes));
+		} catch (IOException | RuntimeException e) {
+			// the codec throws runtime exceptions for broken bytes as well
+			throw new IllegalStateException("could not decode a stored solr response.", e);
+		}
+	}
+
+	public int getSize() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of bytes of the buffer that are occupied by entries, including replaced ones
+	 */
+	public long getUsedBytes() {
+		lock.readLock().lock();
+		try {
+			return usedBytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getCapacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * @return the number of entries that were overwritten by newer ones
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	private static class Slot {
+		private final String key;
+		private final int offset;
+		private final int length;
+		private final long created = System.nanoTime();
+
+		Slot(final String key, final int offset, final int length) {
+			this.key = key;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
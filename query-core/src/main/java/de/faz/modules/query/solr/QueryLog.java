@@ -0,0 +1,113 @@
+package de.faz.modules.query.solr;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.common.params.SolrParams;
+
+import de.faz.modules.query.util.HeavyHitters;
+import de.faz.modules.query.util.QueryFingerprint;
+
+/**
+ * Counts how often the rendered solr queries of a {@link SolrQueryExecutor} are sent and keeps the
+ * most frequent ones, so a {@link QueryWarmer} can send them again after solr opened a new index.
+ *
+ * The log counts the queries in a {@link HeavyHitters} sketch and keeps at most <code>maxQueries</code>
+ * of them. A query is identified by its {@link QueryFingerprint}, the time allowed of a deadline is
+ * ignored. Counting a query only hashes its parameters, they are kept only when the query enters the
+ * log and only rendered when the log is written to a file.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class QueryLog {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int COUNTERS_PER_QUERY = 4;
+
+	private final HeavyHitters queries;
+
+	/**
+	 * @param maxQueries the maximum number of queries that are kept
+	 */
+	public QueryLog(final int maxQueries) {
+		if (maxQueries < 1) {
+			throw new IllegalArgumentException("the log must keep at least one query.");
+		}
+		this.queries = new HeavyHitters(Math.max(HeavyHitters.DEFAULT_WIDTH, COUNTERS_PER_QUERY * maxQueries), maxQueries);
+	}
+
+	public void record(@Nonnull final SolrParams params) {
+		queries.add(SolrFingerprints.createFingerprint(params), 1);
+	}
+
+	/**
+	 * Returns the most frequent queries, the most frequent one first.
+	 */
+	@Nonnull
+	public List<SolrParams> getTopQueries(final int count) {
+		List<HeavyHitters.Entry> entries = queries.getTop(count);
+		List<SolrParams> topQueries = new ArrayList<>(entries.size());
+		for (HeavyHitters.Entry entry : entries) {
+			topQueries.add(SolrFingerprints.toParams(entry.getFingerprint()));
+		}
+		return topQueries;
+	}
+
+	/**
+	 * Returns how often the query was sent. The count is an estimate that is never too low.
+	 */
+	public long getCount(@Nonnull final SolrParams params) {
+		return queries.estimate(SolrFingerprints.createFingerprint(params));
+	}
+
+	public int getSize() {
+		return queries.getSize();
+	}
+
+	/**
+	 * @return the number of queries that were recorded
+	 */
+	public long getRecordCount() {
+		return queries.getTotalWeight();
+	}
+
+	/**
+	 * Writes the kept queries and their counts to the given file, one query per line.
+	 */
+	public void writeTo(@Nonnull final File file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), UTF_8)) {
+			for (HeavyHitters.Entry entry : queries.getTop(Integer.MAX_VALUE)) {
+				writer.write(entry.getEstimate() + "\t" + entry.getFingerprint());
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Adds the queries of a file that was written by {@link #writeTo(File)}. Broken lines are skipped.
+	 */
+	public void readFrom(@Nonnull final File file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int separator = line.indexOf('\t');
+				if (separator > 0) {
+					try {
+						long count = Long.parseLong(line.substring(0, separator));
+						queries.add(QueryFingerprint.parse(line.substring(separator + 1)), count);
+					} catch (IllegalArgumentException e) {
+						// a line that was cut off by a crash
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package de.faz.modules.query.solr;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.params.SolrParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the most frequent queries of a {@link QueryLog} again in the background, so the caches of
+ * solr and the client side caches in front of it are filled before the users ask for them. Register
+ * the warmer at an {@link IndexVersionWatcher} after the caches, then the queries are sent right
+ * after the caches were invalidated, and once after startup when the watcher reads the first index
+ * version.
+ *
+ * The queries are sent to the given server, so use the outermost server of a decorator chain,
+ * e.g. a {@link ResultCachingSolrServer}, to warm all of its caches. A running warm up is cancelled
+ * when the next one starts. Failing queries are logged and skipped.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class QueryWarmer implements IndexVersionListener {
+
+	private static final Logger LOG = LoggerFactory.getLogger(QueryWarmer.class);
+
+	public static final int DEFAULT_QUERY_COUNT = 100;
+
+	private final SolrServer solrServer;
+	private final QueryLog queryLog;
+	private final ExecutorService executorService;
+	private final AtomicLong replayCount = new AtomicLong();
+
+	private int queryCount = DEFAULT_QUERY_COUNT;
+	private Future<?> warmUpTask;
+
+	public QueryWarmer(@Nonnull final SolrServer solrServer, @Nonnull final QueryLog queryLog, @Nonnull final ExecutorService executorService) {
+		this.solrServer = Objects.requireNonNull(solrServer, "A solr server is required.");
+		this.queryLog = Objects.requireNonNull(queryLog, "A query log is required to find the queries to send.");
+		this.executorService = Objects.requireNonNull(executorService, "An executor is required to send the queries in the background.");
+	}
+
+	/**
+	 * Sets the number of the most frequent queries that are sent.
+	 */
+	public QueryWarmer withQueryCount(final int queryCount) {
+		this.queryCount = queryCount;
+		return this;
+	}
+
+	@Override
+	public void indexVersionChanged(final long indexVersion, final long generation) {
+		warmUp();
+	}
+
+	/**
+	 * Starts sending the most frequent queries in the background.
+	 */
+	@Nonnull
+	public synchronized Future<?> warmUp() {
+		if (warmUpTask != null) {
+			warmUpTask.cancel(true);
+		}
+		final List<SolrParams> queries = queryLog.getTopQueries(queryCount);
+		warmUpTask = executorService.submit(new Runnable() {
+			@Override
+			public void run() {
+				sendQueries(queries);
+			}
+		});
+		return warmUpTask;
+	}
+
+	private void sendQueries(final List<SolrParams> queries) {
+		int sent = 0;
+		for (SolrParams query : queries) {
+			if (Thread.currentThread().isInterrupted()) {
+				LOG.debug("warm up was cancelled after {} queries", sent);
+				return;
+			}
+			try {
+				// the method is not part of any cache key, POST is safe for long queries
+				solrServer.request(new QueryRequest(query, SolrRequest.METHOD.POST));
+				replayCount.incrementAndGet();
+				sent++;
+			} catch (Exception e) {
+				LOG.debug("could not send warm up query " + query, e);
+			}
+		}
+		LOG.info("sent {} warm up queries", sent);
+	}
+
+	/**
+	 * @return the number of queries that were sent successfully
+	 */
+	public long getReplayCount() {
+		return replayCount.get();
+	}
+}
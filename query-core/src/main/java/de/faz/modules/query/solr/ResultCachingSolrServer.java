@@ -0,0 +1,303 @@
+package de.faz.modules.query.solr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A {@link SolrServer} that caches the responses of queries, including counts, until the index
+ * of solr changes. Register it at an {@link IndexVersionWatcher}, then every entry is kept until
+ * the next commit and the cache needs no short expiry time. The maximum age is only a safety net
+ * for a watcher that can not reach solr.
+ *
+ * The cache keys contain the index version the response was read from. A response of the previous
+ * index that arrives after the index was changed is therefore never returned, even when it is put
+ * into the cache after all entries were invalidated. Streamed queries, other requests and partial
+ * responses of queries that exceeded their time allowed are not cached. The cached responses are shared, so callers must not modify them.
+ *
+ * With an {@link OffHeapResultStore} the cache has two tiers: a new response is encoded to javabin
+ * bytes outside of the heap by an executor, so the request does not wait for it, and is answered
+ * from memory until it is stored. A response that is requested again is decoded and promoted to the
+ * heap, so the heap only keeps the hot responses and queries that are never repeated do not reach it.
+ *
+ * The hottest responses can be written to a snapshot file with {@link #writeSnapshot(File, int)} and
+ * loaded after a restart with {@link #loadSnapshot(File)}. The responses of a snapshot are decoded
+ * when they are requested and are only used while solr still serves the index version the snapshot
+ * was written from.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class ResultCachingSolrServer extends SolrServer implements IndexVersionListener {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ResultCachingSolrServer.class);
+	private static final String RESPONSE_HEADER_KEY = "responseHeader";
+	private static final String PARTIAL_RESULTS_KEY = "partialResults";
+
+	private final SolrServer solrServer;
+	private final Cache<String, CachedResponse> resultCache;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	private volatile long indexVersion = IndexVersionWatcher.UNKNOWN_VERSION;
+	private final ConcurrentMap<String, NamedList<Object>> pendingWrites = new ConcurrentHashMap<>();
+	private OffHeapResultStore offHeapStore;
+	private Executor storeExecutor;
+	private volatile ResultSnapshot snapshot;
+
+	/**
+	 * @param solrServer the server the requests are sent to
+	 * @param maxResults the maximum number of cached responses
+	 * @param maxAge the time in milliseconds a response is kept at most
+	 */
+	public ResultCachingSolrServer(@Nonnull final SolrServer solrServer, final int maxResults, final long maxAge) {
+		this.solrServer = Objects.requireNonNull(solrServer, "A solr server is required.");
+		this.resultCache = CacheBuilder.newBuilder().maximumSize(maxResults).expireAfterWrite(maxAge, TimeUnit.MILLISECONDS).build();
+	}
+
+	/**
+	 * Adds a second tier outside of the heap. It must be set before the first request.
+	 *
+	 * @param executor encodes the new responses into the store, a response that it rejects is not stored
+	 */
+	public ResultCachingSolrServer withOffHeapStore(@Nonnull final OffHeapResultStore store, @Nonnull final Executor executor) {
+		this.offHeapStore = Objects.requireNonNull(store, "A store is required.");
+		this.storeExecutor = Objects.requireNonNull(executor, "An executor is required to store the responses.");
+		return this;
+	}
+
+	@Override
+	public NamedList<Object> request(final SolrRequest request) throws SolrServerException, IOException {
+		String requestKey = CircuitBreakerSolrServer.createCacheKey(request);
+		if (requestKey == null) {
+			return solrServer.request(request);
+		}
+		long version = indexVersion;
+		String cacheKey = version + "|" + requestKey;
+		CachedResponse cached = resultCache.getIfPresent(cacheKey);
+		if (cached == null) {
+			NamedList<Object> pending = pendingWrites.get(cacheKey);
+			if (pending != null) {
+				hitCount.incrementAndGet();
+				return pending;
+			}
+			NamedList<Object> stored = readStoredResponse(cacheKey, requestKey, version);
+			if (stored != null) {
+				// the response was requested again, so it is hot enough for the heap
+				cached = new CachedResponse(stored);
+				resultCache.put(cacheKey, cached);
+			}
+		}
+		if (cached != null) {
+			hitCount.incrementAndGet();
+			cached.hits.incrementAndGet();
+			return cached.response;
+		}
+		missCount.incrementAndGet();
+		NamedList<Object> response = solrServer.request(request);
+		if (version == indexVersion && !isPartial(response)) {
+			if (offHeapStore != null) {
+				store(cacheKey, version, response);
+			} else {
+				resultCache.put(cacheKey, new CachedResponse(response));
+			}
+		}
+		return response;
+	}
+
+	private void store(final String cacheKey, final long version, final NamedList<Object> response) {
+		if (pendingWrites.putIfAbsent(cacheKey, response) != null) {
+			return;
+		}
+		try {
+			storeExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (version == indexVersion) {
+							offHeapStore.put(cacheKey, response);
+						}
+					} finally {
+						pendingWrites.remove(cacheKey, response);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pendingWrites.remove(cacheKey, response);
+			LOG.debug("the off heap store is busy, the response {} is not stored", cacheKey);
+		}
+	}
+
+	/**
+	 * A response that solr cut off at the time allowed only contains the documents found so far
+	 * and must not be returned to later requests that may have more time.
+	 */
+	static boolean isPartial(final NamedList<Object> response) {
+		Object header = response != null ? response.get(RESPONSE_HEADER_KEY) : null;
+		return header instanceof NamedList && Boolean.TRUE.equals(((NamedList<?>) header).get(PARTIAL_RESULTS_KEY));
+	}
+
+	private NamedList<Object> readStoredResponse(final String cacheKey, final String requestKey, final long version) {
+		NamedList<Object> response = null;
+		if (offHeapStore != null) {
+			try {
+				response = offHeapStore.get(cacheKey);
+			} catch (IllegalStateException e) {
+				LOG.warn("could not read the stored response " + cacheKey, e);
+			}
+		}
+		ResultSnapshot currentSnapshot = snapshot;
+		if (response == null && currentSnapshot != null && version != IndexVersionWatcher.UNKNOWN_VERSION
+			&& currentSnapshot.getIndexVersion() == version) {
+			try {
+				response = currentSnapshot.get(requestKey);
+			} catch (RuntimeException e) {
+				// a broken snapshot is not read again, the responses are loaded from solr
+				LOG.warn("discarded the broken result snapshot of index version " + currentSnapshot.getIndexVersion(), e);
+				discardSnapshot(currentSnapshot);
+			}
+		}
+		return response;
+	}
+
+	private void discardSnapshot(final ResultSnapshot brokenSnapshot) {
+		if (snapshot == brokenSnapshot) {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public void indexVersionChanged(final long indexVersion, final long generation) {
+		this.indexVersion = indexVersion;
+		resultCache.invalidateAll();
+		pendingWrites.clear();
+		if (offHeapStore != null) {
+			offHeapStore.clear();
+		}
+		ResultSnapshot currentSnapshot = snapshot;
+		if (currentSnapshot != null && currentSnapshot.getIndexVersion() != indexVersion) {
+			LOG.info("discarded the result snapshot of index version {}, solr serves version {}", currentSnapshot.getIndexVersion(), indexVersion);
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * Loads the responses of a snapshot that was written by {@link #writeSnapshot(File, int)}. The
+	 * responses are used as soon as the {@link IndexVersionWatcher} reports the index version of the
+	 * snapshot. A missing or broken file is ignored, a snapshot with a broken response is discarded
+	 * when the response is requested.
+	 *
+	 * @return true when the snapshot was loaded
+	 */
+	public boolean loadSnapshot(@Nonnull final File file) {
+		if (!file.isFile()) {
+			return false;
+		}
+		try {
+			ResultSnapshot loaded = ResultSnapshot.read(file);
+			if (indexVersion != IndexVersionWatcher.UNKNOWN_VERSION && loaded.getIndexVersion() != indexVersion) {
+				LOG.info("ignored the result snapshot {} of index version {}, solr serves version {}", file, loaded.getIndexVersion(), indexVersion);
+				return false;
+			}
+			snapshot = loaded;
+			LOG.info("loaded {} responses of index version {} from {}", loaded.getSize(), loaded.getIndexVersion(), file);
+			return true;
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("could not load the result snapshot " + file, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the most requested responses of the current index version to the given file. Nothing
+	 * is written as long as the index version is unknown.
+	 *
+	 * @param maxEntries the maximum number of responses in the snapshot
+	 * @return the number of responses that were written
+	 */
+	public int writeSnapshot(@Nonnull final File file, final int maxEntries) throws IOException {
+		long version = indexVersion;
+		if (version == IndexVersionWatcher.UNKNOWN_VERSION) {
+			return 0;
+		}
+		String prefix = version + "|";
+		List<Map.Entry<String, CachedResponse>> entries = new ArrayList<>();
+		for (Map.Entry<String, CachedResponse> entry : resultCache.asMap().entrySet()) {
+			if (entry.getKey().startsWith(prefix)) {
+				entries.add(entry);
+			}
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<String, CachedResponse>>() {
+			@Override
+			public int compare(final Map.Entry<String, CachedResponse> e1, final Map.Entry<String, CachedResponse> e2) {
+				return Integer.compare(e2.getValue().hits.get(), e1.getValue().hits.get());
+			}
+		});
+		Map<String, NamedList<Object>> responses = new LinkedHashMap<>();
+		for (Map.Entry<String, CachedResponse> entry : entries.subList(0, Math.min(maxEntries, entries.size()))) {
+			responses.put(entry.getKey().substring(prefix.length()), entry.getValue().response);
+		}
+		return ResultSnapshot.write(file, version, responses);
+	}
+
+	/**
+	 * @return the version of the index the cached responses belong to
+	 */
+	public long getIndexVersion() {
+		return indexVersion;
+	}
+
+	/**
+	 * @return the number of responses on the heap
+	 */
+	public long getSize() {
+		return resultCache.size();
+	}
+
+	/**
+	 * @return the number of requests that were answered from the cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the number of requests that were sent to solr
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	private static class CachedResponse {
+		private final NamedList<Object> response;
+		private final AtomicInteger hits = new AtomicInteger();
+
+		CachedResponse(final NamedList<Object> response) {
+			this.response = response;
+		}
+	}
+}
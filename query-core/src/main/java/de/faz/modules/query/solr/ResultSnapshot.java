@@ -0,0 +1,146 @@
+package de.faz.modules.query.solr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * A file with the hottest responses of a {@link ResultCachingSolrServer} and the index version they
+ * were read from. The file is memory mapped when it is read, only the keys are read at once, the
+ * responses are decoded when they are requested.
+ *
+ * The file starts with a magic number, the format version, the index version and the number of
+ * entries. Every entry consists of the length and the UTF-8 bytes of the key followed by the length
+ * and the javabin bytes of the response.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+class ResultSnapshot {
+
+	private static final int MAGIC = 0x46415a52;
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 20;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final long indexVersion;
+	private final ByteBuffer buffer;
+	private final Map<String, Slot> index;
+
+	private ResultSnapshot(final long indexVersion, final ByteBuffer buffer, final Map<String, Slot> index) {
+		this.indexVersion = indexVersion;
+		this.buffer = buffer;
+		this.index = index;
+	}
+
+	/**
+	 * Writes the responses to a temporary file first and replaces the given file with it, so a
+	 * reader never sees a half written snapshot.
+	 */
+	static int write(final File file, final long indexVersion, final Map<String, NamedList<Object>> responses) throws IOException {
+		List<byte[]> keys = new ArrayList<>(responses.size());
+		List<byte[]> values = new ArrayList<>(responses.size());
+		long size = HEADER_SIZE;
+		for (Map.Entry<String, NamedList<Object>> entry : responses.entrySet()) {
+			byte[] value = OffHeapResultStore.encode(entry.getValue());
+			if (value != null) {
+				byte[] key = entry.getKey().getBytes(UTF_8);
+				keys.add(key);
+				values.add(value);
+				size += 8 + key.length + value.length;
+			}
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("the snapshot is too large to be memory mapped.");
+		}
+
+		File tempFile = new File(file.getPath() + ".tmp");
+		try (RandomAccessFile out = new RandomAccessFile(tempFile, "rw")) {
+			out.setLength(size);
+			MappedByteBuffer target = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			target.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(indexVersion).putInt(keys.size());
+			for (int i = 0; i < keys.size(); i++) {
+				target.putInt(keys.get(i).length).put(keys.get(i));
+				target.putInt(values.get(i).length).put(values.get(i));
+			}
+			target.force();
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return keys.size();
+	}
+
+	static ResultSnapshot read(final File file) throws IOException {
+		MappedByteBuffer buffer;
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			if (in.length() > Integer.MAX_VALUE) {
+				throw new IOException("the result snapshot " + file + " is too large to be memory mapped.");
+			}
+			// the mapping stays valid after the file is closed
+			buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+		}
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+			throw new IOException("the file " + file + " is no result snapshot.");
+		}
+		long indexVersion = buffer.getLong();
+		int count = buffer.getInt();
+		Map<String, Slot> index = new HashMap<>();
+		try {
+			for (int i = 0; i < count; i++) {
+				byte[] key = new byte[buffer.getInt()];
+				buffer.get(key);
+				int length = buffer.getInt();
+				index.put(new String(key, UTF_8), new Slot(buffer.position(), length));
+				buffer.position(buffer.position() + length);
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("the result snapshot " + file + " is truncated.", e);
+		}
+		return new ResultSnapshot(indexVersion, buffer, index);
+	}
+
+	long getIndexVersion() {
+		return indexVersion;
+	}
+
+	int getSize() {
+		return index.size();
+	}
+
+	/**
+	 * Returns a decoded copy of the response that was stored with the given key or null.
+	 *
+	 * @throws IllegalStateException when the stored bytes of the response are broken
+	 */
+	NamedList<Object> get(final String key) {
+		Slot slot = index.get(key);
+		if (slot == null) {
+			return null;
+		}
+		byte[] bytes = new byte[slot.length];
+		ByteBuffer source = buffer.duplicate();
+		source.position(slot.offset);
+		source.get(bytes);
+		return OffHeapResultStore.decode(bytes);
+	}
+
+	private static class Slot {
+		private final int offset;
+		private final int length;
+
+		Slot(final int offset, final int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package de.faz.modules.query.solr;
+
+import java.io.File;
+
+/**
+ * Connection settings for the pooled http client that is owned by a
+ * {@link SolrServerRegistry}. All values are in milliseconds unless
+ * the name says otherwise.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class SolrConnectionSettings {
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 32;
+	public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 128;
+	public static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+	public static final int DEFAULT_SOCKET_TIMEOUT = 10000;
+	public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 2000;
+	public static final long DEFAULT_KEEP_ALIVE = 30000;
+	public static final int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+	public static final int DEFAULT_POST_THRESHOLD = 4096;
+	public static final int DEFAULT_MAX_REPLICA_FAILURES = 3;
+	public static final long DEFAULT_REPLICA_EJECTION_TIME = 30000;
+	public static final double DEFAULT_HEDGING_PERCENTILE = 95;
+	public static final int DEFAULT_MAX_HEDGING_LOAD = 5;
+	public static final int DEFAULT_CIRCUIT_BREAKER_WINDOW = 20;
+	public static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 50;
+	public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_TIME = 10000;
+	public static final int DEFAULT_STALE_CACHE_SIZE = 1000;
+	public static final int DEFAULT_DOCUMENT_CACHE_SIZE = 10000;
+	public static final int DEFAULT_RESULT_CACHE_SIZE = 10000;
+	public static final long DEFAULT_RESULT_CACHE_MAX_AGE = 3600000;
+	public static final int DEFAULT_OFF_HEAP_RESULT_CACHE_CAPACITY = 0;
+	public static final int DEFAULT_RESULT_SNAPSHOT_SIZE = 1000;
+	public static final int DEFAULT_QUERY_LOG_SIZE = 1000;
+	public static final int DEFAULT_WARM_UP_QUERY_COUNT = QueryWarmer.DEFAULT_QUERY_COUNT;
+	public static final int DEFAULT_NEGATIVE_CACHE_SIZE = 10000;
+	public static final long DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE = 60000;
+
+	private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+	private int maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+	private int connectionRequestTimeout = DEFAULT_CONNECTION_REQUEST_TIMEOUT;
+	private long keepAlive = DEFAULT_KEEP_ALIVE;
+	private int validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+	private int postThreshold = DEFAULT_POST_THRESHOLD;
+	private int maxReplicaFailures = DEFAULT_MAX_REPLICA_FAILURES;
+	private long replicaEjectionTime = DEFAULT_REPLICA_EJECTION_TIME;
+	private double hedgingPercentile = DEFAULT_HEDGING_PERCENTILE;
+	private int maxHedgingLoad = DEFAULT_MAX_HEDGING_LOAD;
+	private int circuitBreakerWindow = DEFAULT_CIRCUIT_BREAKER_WINDOW;
+	private int circuitBreakerThreshold = DEFAULT_CIRCUIT_BREAKER_THRESHOLD;
+	private long circuitBreakerOpenTime = DEFAULT_CIRCUIT_BREAKER_OPEN_TIME;
+	private int staleCacheSize = DEFAULT_STALE_CACHE_SIZE;
+	private int documentCacheSize = DEFAULT_DOCUMENT_CACHE_SIZE;
+	private int resultCacheSize = DEFAULT_RESULT_CACHE_SIZE;
+	private long resultCacheMaxAge = DEFAULT_RESULT_CACHE_MAX_AGE;
+	private int offHeapResultCacheCapacity = DEFAULT_OFF_HEAP_RESULT_CACHE_CAPACITY;
+	private File resultSnapshotDirectory;
+	private int resultSnapshotSize = DEFAULT_RESULT_SNAPSHOT_SIZE;
+	private int queryLogSize = DEFAULT_QUERY_LOG_SIZE;
+	private int warmUpQueryCount = DEFAULT_WARM_UP_QUERY_COUNT;
+	private int negativeCacheSize = DEFAULT_NEGATIVE_CACHE_SIZE;
+	private long negativeCacheTimeToLive = DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE;
+
+	public SolrConnectionSettings withMaxConnectionsPerRoute(final int maxConnections) {
+		this.maxConnectionsPerRoute = maxConnections;
+		return this;
+	}
+
+	public SolrConnectionSettings withMaxConnectionsTotal(final int maxConnections) {
+		this.maxConnectionsTotal = maxConnections;
+		return this;
+	}
+
+	public SolrConnectionSettings withConnectTimeout(final int timeout) {
+		this.connectTimeout = timeout;
+		return this;
+	}
+
+	public SolrConnectionSettings withSocketTimeout(final int timeout) {
+		this.socketTimeout = timeout;
+		return this;
+	}
+
+	/**
+	 * Sets the time a request waits for a free connection from the pool
+	 * before it fails.
+	 */
+	public SolrConnectionSettings withConnectionRequestTimeout(final int timeout) {
+		this.connectionRequestTimeout = timeout;
+		return this;
+	}
+
+	/**
+	 * Sets the time an idle connection is kept open when Solr does not
+	 * send a keep-alive header itself.
+	 */
+	public SolrConnectionSettings withKeepAlive(final long keepAlive) {
+		this.keepAlive = keepAlive;
+		return this;
+	}
+
+	/**
+	 * Sets the idle time after which a pooled connection is checked for being
+	 * stale before it is handed out again. A negative value disables the check.
+	 */
+	public SolrConnectionSettings withValidateAfterInactivity(final int inactivity) {
+		this.validateAfterInactivity = inactivity;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum length of the encoded query parameters that is sent with GET.
+	 * Longer requests are sent as POST so they are not truncated by proxies or
+	 * rejected by the servlet container.
+	 */
+	public SolrConnectionSettings withPostThreshold(final int threshold) {
+		this.postThreshold = threshold;
+		return this;
+	}
+
+	/**
+	 * Sets the number of failed requests in a row after which a replica is ejected
+	 * from load balancing.
+	 */
+	public SolrConnectionSettings withMaxReplicaFailures(final int failures) {
+		this.maxReplicaFailures = failures;
+		return this;
+	}
+
+	/**
+	 * Sets the time an ejected replica does not get any requests.
+	 */
+	public SolrConnectionSettings withReplicaEjectionTime(final long ejectionTime) {
+		this.replicaEjectionTime = ejectionTime;
+		return this;
+	}
+
+	/**
+	 * Sets the percentile of the recent latencies after which a request is sent to
+	 * a second replica, see {@link HedgingSolrServer}.
+	 */
+	public SolrConnectionSettings withHedgingPercentile(final double percentile) {
+		this.hedgingPercentile = percentile;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of hedged requests in percent of all requests.
+	 */
+	public SolrConnectionSettings withMaxHedgingLoad(final int percent) {
+		this.maxHedgingLoad = percent;
+		return this;
+	}
+
+	/**
+	 * Sets the number of recent requests the failure rate of a {@link CircuitBreakerSolrServer}
+	 * is calculated from.
+	 */
+	public SolrConnectionSettings withCircuitBreakerWindow(final int requests) {
+		this.circuitBreakerWindow = requests;
+		return this;
+	}
+
+	/**
+	 * Sets the failure rate in percent that opens the circuit breaker.
+	 */
+	public SolrConnectionSettings withCircuitBreakerThreshold(final int percent) {
+		this.circuitBreakerThreshold = percent;
+		return this;
+	}
+
+	/**
+	 * Sets the time the circuit breaker stays open before a probe request is sent.
+	 */
+	public SolrConnectionSettings withCircuitBreakerOpenTime(final long openTime) {
+		this.circuitBreakerOpenTime = openTime;
+		return this;
+	}
+
+	/**
+	 * Sets the number of queries whose last response is kept to answer them while solr is down.
+	 */
+	public SolrConnectionSettings withStaleCacheSize(final int size) {
+		this.staleCacheSize = size;
+		return this;
+	}
+
+	/**
+	 * Sets the number of documents a {@link DocumentCachingSolrServer} keeps.
+	 */
+	public SolrConnectionSettings withDocumentCacheSize(final int size) {
+		this.documentCacheSize = size;
+		return this;
+	}
+
+	/**
+	 * Sets the number of responses a {@link ResultCachingSolrServer} keeps.
+	 */
+	public SolrConnectionSettings withResultCacheSize(final int size) {
+		this.resultCacheSize = size;
+		return this;
+	}
+
+	/**
+	 * Sets the time a cached response is kept at most, even when the index version did not change.
+	 */
+	public SolrConnectionSettings withResultCacheMaxAge(final long maxAge) {
+		this.resultCacheMaxAge = maxAge;
+		return this;
+	}
+
+	/**
+	 * Sets the size in bytes of the {@link OffHeapResultStore} of a {@link ResultCachingSolrServer}.
+	 * The store is disabled by default, the direct memory of the jvm must be large enough for it.
+	 */
+	public SolrConnectionSettings withOffHeapResultCacheCapacity(final int capacity) {
+		this.offHeapResultCacheCapacity = capacity;
+		return this;
+	}
+
+	/**
+	 * Sets the directory the result caches and the query logs write their snapshots to when the
+	 * registry is closed. The snapshots are loaded again when the result caches and the query logs
+	 * are created, so the hottest responses survive a restart. Snapshots are disabled by default.
+	 */
+	public SolrConnectionSettings withResultSnapshotDirectory(final File directory) {
+		this.resultSnapshotDirectory = directory;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of responses a snapshot of a result cache contains.
+	 */
+	public SolrConnectionSettings withResultSnapshotSize(final int size) {
+		this.resultSnapshotSize = size;
+		return this;
+	}
+
+	/**
+	 * Sets the number of queries a {@link QueryLog} counts.
+	 */
+	public SolrConnectionSettings withQueryLogSize(final int size) {
+		this.queryLogSize = size;
+		return this;
+	}
+
+	/**
+	 * Sets the number of the most frequent queries a {@link QueryWarmer} sends after the index changed.
+	 */
+	public SolrConnectionSettings withWarmUpQueryCount(final int count) {
+		this.warmUpQueryCount = count;
+		return this;
+	}
+
+	/**
+	 * Sets the number of empty queries a {@link NegativeResultCache} keeps.
+	 */
+	public SolrConnectionSettings withNegativeCacheSize(final int size) {
+		this.negativeCacheSize = size;
+		return this;
+	}
+
+	/**
+	 * Sets the time an empty query is answered without a request to solr.
+	 */
+	public SolrConnectionSettings withNegativeCacheTimeToLive(final long timeToLive) {
+		this.negativeCacheTimeToLive = timeToLive;
+		return this;
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	public int getMaxConnectionsTotal() {
+		return maxConnectionsTotal;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	public int getConnectionRequestTimeout() {
+		return connectionRequestTimeout;
+	}
+
+	public long getKeepAlive() {
+		return keepAlive;
+	}
+
+	public int getValidateAfterInactivity() {
+		return validateAfterInactivity;
+	}
+
+	public int getPostThreshold() {
+		return postThreshold;
+	}
+
+	public int getMaxReplicaFailures() {
+		return maxReplicaFailures;
+	}
+
+	public long getReplicaEjectionTime() {
+		return replicaEjectionTime;
+	}
+
+	public double getHedgingPercentile() {
+		return hedgingPercentile;
+	}
+
+	public int getMaxHedgingLoad() {
+		return maxHedgingLoad;
+	}
+
+	public int getCircuitBreakerWindow() {
+		return circuitBreakerWindow;
+	}
+
+	public int getCircuitBreakerThreshold() {
+		return circuitBreakerThreshold;
+	}
+
+	public long getCircuitBreakerOpenTime() {
+		return circuitBreakerOpenTime;
+	}
+
+	public int getStaleCacheSize() {
+		return staleCacheSize;
+	}
+
+	public int getDocumentCacheSize() {
+		return documentCacheSize;
+	}
+
+	public int getResultCacheSize() {
+		return resultCacheSize;
+	}
+
+	public long getResultCacheMaxAge() {
+		return resultCacheMaxAge;
+	}
+
+	public int getOffHeapResultCacheCapacity() {
+		return offHeapResultCacheCapacity;
+	}
+
+	public File getResultSnapshotDirectory() {
+		return resultSnapshotDirectory;
+	}
+
+	public int getResultSnapshotSize() {
+		return resultSnapshotSize;
+	}
+
+	public int getQueryLogSize() {
+		return queryLogSize;
+	}
+
+	public int getWarmUpQueryCount() {
+		return warmUpQueryCount;
+	}
+
+	public int getNegativeCacheSize() {
+		return negativeCacheSize;
+	}
+
+	public long getNegativeCacheTimeToLive() {
+		return negativeCacheTimeToLive;
+	}
+}
@@ -0,0 +1,78 @@
+package de.faz.modules.query.solr;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.params.HighlightParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+
+import de.faz.modules.query.util.QueryFingerprint;
+
+/**
+ * Creates the {@link QueryFingerprint fingerprints} of solr parameters for the caches and the statistics
+ * of this package.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+final class SolrFingerprints {
+
+	private static final Set<String> MATCHING_IGNORED_PARAMS = new HashSet<>(Arrays.asList(CommonParams.START, CommonParams.ROWS,
+		CommonParams.SORT, CommonParams.FL, CommonParams.WT, CommonParams.VERSION, CommonParams.TIME_ALLOWED));
+
+	private SolrFingerprints() {
+	}
+
+	/**
+	 * Identifies a query by all of its parameters. The time allowed is the remaining time of a deadline
+	 * and differs on every call, so it is ignored.
+	 */
+	static QueryFingerprint createFingerprint(final SolrParams params) {
+		return createFingerprint(params, Collections.singleton(CommonParams.TIME_ALLOWED), false);
+	}
+
+	/**
+	 * Identifies the documents a query matches. The page, the sort, the returned fields, the response
+	 * format, the highlighting and the grouping are ignored.
+	 */
+	static QueryFingerprint createMatchingFingerprint(final SolrParams params) {
+		return createFingerprint(params, MATCHING_IGNORED_PARAMS, true);
+	}
+
+	private static QueryFingerprint createFingerprint(final SolrParams params, final Set<String> ignoredParams, final boolean ignoreRendering) {
+		QueryFingerprint.Builder fingerprint = QueryFingerprint.builder();
+		Iterator<String> it = params.getParameterNamesIterator();
+		while (it.hasNext()) {
+			String name = it.next();
+			if (ignoredParams.contains(name)
+				|| ignoreRendering && (name.startsWith(HighlightParams.HIGHLIGHT) || name.startsWith(GroupParams.GROUP))) {
+				continue;
+			}
+			String[] values = params.getParams(name);
+			if (values != null) {
+				for (String value : values) {
+					fingerprint.add(name, String.valueOf(value));
+				}
+			}
+		}
+		return fingerprint.build();
+	}
+
+	/**
+	 * Creates the parameters of a fingerprint that was created by {@link #createFingerprint(SolrParams)}.
+	 */
+	static SolrParams toParams(final QueryFingerprint fingerprint) {
+		ModifiableSolrParams params = new ModifiableSolrParams();
+		for (Map.Entry<String, Collection<String>> entry : fingerprint.getParameters().asMap().entrySet()) {
+			params.add(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+		}
+		return params;
+	}
+}
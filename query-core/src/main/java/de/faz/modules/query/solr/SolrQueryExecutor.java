@@ -15,38 +15,94 @@
 package de.faz.modules.query.solr;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.params.HighlightParams;
+import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.faz.modules.query.Query;
 import de.faz.modules.query.QueryExecutor;
+import de.faz.modules.query.ResultHandler;
 import de.faz.modules.query.SearchContext;
+import de.faz.modules.query.SearchRequestListener;
 import de.faz.modules.query.SearchSettings;
+import de.faz.modules.query.exception.SearchFailedException;
 import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import de.faz.modules.query.fields.Mapping;
+import de.faz.modules.query.solr.internal.SolrResponseCallbackFactory;
 
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
 class SolrQueryExecutor extends QueryExecutor {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SolrQueryExecutor.class);
 
+	private static final String RESPONSE_KEY = "response";
+
 	private final FieldDefinitionGenerator fieldGenerator;
 
-	private final HttpSolrServer httpSolrServer;
+	private final SolrServer solrServer;
+
+	private final int postThreshold;
+
+	private final SolrRequestStatistics statistics;
+
+	private NegativeResultCache negativeResultCache;
+
+	private QueryLog queryLog;
+
+	private SearchRequestListener requestListener;
 
-	SolrQueryExecutor(final HttpSolrServer httpSolrServer, final FieldDefinitionGenerator generator) {
+	SolrQueryExecutor(final SolrServer solrServer, final FieldDefinitionGenerator generator) {
+		this(solrServer, generator, SolrConnectionSettings.DEFAULT_POST_THRESHOLD, new SolrRequestStatistics());
+	}
+
+	SolrQueryExecutor(final SolrServer solrServer, final FieldDefinitionGenerator generator, final int postThreshold, final SolrRequestStatistics statistics) {
 		super();
-		this.httpSolrServer = httpSolrServer;
+		this.solrServer = solrServer;
 		this.fieldGenerator = generator;
+		this.postThreshold = postThreshold;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Answers queries that were empty recently without a request to solr.
+	 */
+	SolrQueryExecutor withNegativeResultCache(final NegativeResultCache cache) {
+		this.negativeResultCache = cache;
+		return this;
+	}
+
+	/**
+	 * Records every query that is sent to solr, so it can be sent again by a {@link QueryWarmer}.
+	 */
+	SolrQueryExecutor withQueryLog(final QueryLog log) {
+		this.queryLog = log;
+		return this;
+	}
+
+	/**
+	 * Reports every request that is sent to solr, i.e. to an {@link de.faz.modules.query.AdaptiveConcurrencyLimiter}.
+	 */
+	SolrQueryExecutor withRequestListener(final SearchRequestListener listener) {
+		this.requestListener = listener;
+		return this;
 	}
 
 	@Override
@@ -58,7 +114,7 @@ class SolrQueryExecutor extends QueryExecutor {
 		int numOfElementsOnPage = settings.getPageSize();
 		SolrSearchResult result = createDefaultResult(numOfElementsOnPage);
 		if (canProcessQuery(query)) {
-			result = processQuery(query, settings);
+			result = isDeadlineExceeded(settings) ? createExpiredResult(numOfElementsOnPage) : processQuery(query, settings);
 		}
 
 		return result;
@@ -68,20 +124,132 @@ class SolrQueryExecutor extends QueryExecutor {
 	private SolrSearchResult processQuery(final Query query, final SearchSettings settings) {
 		SolrSearchResult result = createDefaultResult(settings.getPageSize());
 		try {
-			QueryResponse solrResult = httpSolrServer.query(createQuery(query, settings));
+			SolrQuery solrQuery = createQuery(query, settings);
+			recordQuery(solrQuery);
+			if (isKnownEmpty(solrQuery)) {
+				return result;
+			}
+			QueryResponse solrResult = sendQuery(solrQuery);
+			recordResponse(solrQuery, solrResult);
 			result = mapSolrQueryToDomainResult(settings, solrResult);
 		} catch (SolrServerException e) {
 			LOG.warn("got exception when execute a search to solr", e);
+			result = createFailedResult(settings.getPageSize());
 		}
 		return result;
 	}
 
+	@Override
+	public long count(@Nonnull final Query query, @Nonnull final SearchSettings settings) {
+		Objects.requireNonNull(query, "A query instance is required to perform a search.");
+		Objects.requireNonNull(settings, "Settings are required to perform a search.");
+
+		if (!canProcessQuery(query)) {
+			return 0;
+		}
+		checkDeadline(settings);
+		SolrQuery solrQuery = createCountQuery(query, settings);
+		recordQuery(solrQuery);
+		if (isKnownEmpty(solrQuery)) {
+			return 0;
+		}
+		QueryResponse solrResult;
+		try {
+			solrResult = sendQuery(solrQuery);
+		} catch (SolrServerException e) {
+			throw new SearchFailedException("got exception when execute a count to solr", e);
+		}
+		recordResponse(solrQuery, solrResult);
+		return getCount(solrResult);
+	}
+
+	/**
+	 * A count that is started after its deadline is not sent to solr. Unlike a search it has no
+	 * result that could be marked as partial, so the exceeded deadline is reported as a failure.
+	 */
+	void checkDeadline(final SearchSettings settings) {
+		if (isDeadlineExceeded(settings)) {
+			throw new SearchFailedException("the deadline of the count was exceeded before it was sent to solr.");
+		}
+	}
+
+	/**
+	 * Returns the number of matches of a count response. A response that solr cut off at the
+	 * time allowed only counts the matches found so far, so it is reported as a failure.
+	 */
+	long getCount(final QueryResponse response) {
+		if (ResultCachingSolrServer.isPartial(response.getResponse())) {
+			throw new SearchFailedException("solr cut off the count at the time allowed.");
+		}
+		return response.getResults() != null ? response.getResults().getNumFound() : 0;
+	}
+
+	/**
+	 * Streams the documents of the result to the handler while the javabin response is parsed.
+	 * Highlighting and grouping are removed from the query because they are not available
+	 * for streamed documents.
+	 */
+	@Override
+	public <T extends Mapping> long stream(@Nonnull final Query query, @Nonnull final SearchSettings settings, @Nonnull final Class<T> mappingClass,
+		@Nonnull final ResultHandler<T> handler) {
+		Objects.requireNonNull(query, "A query instance is required to perform a search.");
+		Objects.requireNonNull(settings, "Settings are required to perform a search.");
+		Objects.requireNonNull(mappingClass, "A mapping class is required to stream the results.");
+		Objects.requireNonNull(handler, "A handler is required to stream the results.");
+
+		long numFound = 0;
+		if (canProcessQuery(query) && !isDeadlineExceeded(settings)) {
+			SolrQuery solrQuery = createQuery(query, settings);
+			removeHighlightingAndGrouping(solrQuery);
+			QueryRequest request = new QueryRequest(solrQuery, isPostRequired(solrQuery) ? SolrRequest.METHOD.POST : SolrRequest.METHOD.GET);
+			request.setResponseParser(new StreamingResponseParser<>(fieldGenerator, mappingClass, handler, getCallbackFactory(settings)));
+			long start = System.nanoTime();
+			boolean success = false;
+			try {
+				SolrDocumentList documents = (SolrDocumentList) solrServer.request(request).get(RESPONSE_KEY);
+				success = true;
+				if (documents != null) {
+					numFound = documents.getNumFound();
+				}
+			} catch (SolrServerException | IOException e) {
+				LOG.warn("got exception when stream a search from solr", e);
+			} finally {
+				recordRequest(start, success);
+			}
+		}
+		return numFound;
+	}
+
+	private SolrResponseCallbackFactory getCallbackFactory(final SearchSettings settings) {
+		if (settings instanceof SolrSearchSettings) {
+			return ((SolrSearchSettings) settings).getCustomCallbackFactory();
+		}
+		return new StandardCallbackFactory();
+	}
+
+	@Nonnull
+	QueryResponse sendQuery(@Nonnull final SolrQuery solrQuery) throws SolrServerException {
+		boolean post = isPostRequired(solrQuery);
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			QueryResponse response = post ? solrServer.query(solrQuery, SolrRequest.METHOD.POST) : solrServer.query(solrQuery);
+			success = true;
+			return response;
+		} finally {
+			recordRequest(start, success);
+		}
+	}
+
 	@Nonnull
-	private SolrSearchResult mapSolrQueryToDomainResult(final SearchSettings settings, final QueryResponse solrResult) {
+	SolrSearchResult mapSolrQueryToDomainResult(final SearchSettings settings, final QueryResponse solrResult) {
 		SolrSearchResult result = createDefaultResult(settings.getPageSize());
 		//TODO ugly but it works. refactor this instanceof to a method that handles SolrSearchSettings only
 		if (settings instanceof SolrSearchSettings) {
 			result = new SolrSearchResult(fieldGenerator, solrResult, settings.getPageSize(), getCurrentPage(settings), ((SolrSearchSettings) settings).getCustomCallbackFactory());
+			if (settings.isKeysetPaging()) {
+				result.setKeysetCursor(new KeysetCursor(((SolrSearchSettings) settings).getKeysetSort()));
+			}
 		}
 		return result;
 	}
@@ -95,14 +263,86 @@ class SolrQueryExecutor extends QueryExecutor {
 		return page;
 	}
 
-	private boolean canProcessQuery(final Query query) {
-		return httpSolrServer != null && !query.isEmpty();
+	/**
+	 * Checks whether the encoded parameters are too long to be sent with GET
+	 * and records the request in the statistics.
+	 */
+	boolean isPostRequired(final SolrParams params) {
+		boolean post = ClientUtils.toQueryString(params, false).length() > postThreshold;
+		if (post) {
+			LOG.debug("encoded query exceeds {} characters, sending it as POST", postThreshold);
+		}
+		statistics.recordRequest(post);
+		return post;
 	}
 
-	private SolrSearchResult createDefaultResult(final int numOfElementsOnPage) {
+	void recordQuery(final SolrParams params) {
+		if (queryLog != null) {
+			queryLog.record(params);
+		}
+	}
+
+	/**
+	 * Reports a request that was sent to solr. Searches that are answered without a request are
+	 * never reported.
+	 */
+	void recordRequest(final long startNanos, final boolean success) {
+		if (requestListener != null) {
+			requestListener.requestFinished(System.nanoTime() - startNanos, success);
+		}
+	}
+
+	boolean isKnownEmpty(final SolrParams params) {
+		return negativeResultCache != null && negativeResultCache.isKnownEmpty(params);
+	}
+
+	void recordResponse(final SolrParams params, final QueryResponse response) {
+		if (negativeResultCache != null) {
+			negativeResultCache.record(params, response);
+		}
+	}
+
+	SolrRequestStatistics getStatistics() {
+		return statistics;
+	}
+
+	boolean canProcessQuery(final Query query) {
+		return solrServer != null && !query.isEmpty();
+	}
+
+	/**
+	 * A search that is started after its deadline is not sent to solr, nobody waits for its result.
+	 */
+	boolean isDeadlineExceeded(final SearchSettings settings) {
+		if (settings.isDeadlineExceeded()) {
+			LOG.debug("deadline of the search is exceeded, the request is not sent to solr");
+			return true;
+		}
+		return false;
+	}
+
+	SolrSearchResult createDefaultResult(final int numOfElementsOnPage) {
 		return new SolrSearchResult(null, numOfElementsOnPage);
 	}
 
+	/**
+	 * Creates an empty result that is marked as partial because the deadline was exceeded.
+	 */
+	SolrSearchResult createExpiredResult(final int numOfElementsOnPage) {
+		SolrSearchResult result = createDefaultResult(numOfElementsOnPage);
+		result.markPartial();
+		return result;
+	}
+
+	/**
+	 * Creates an empty result that is marked as failed because solr did not answer.
+	 */
+	SolrSearchResult createFailedResult(final int numOfElementsOnPage) {
+		SolrSearchResult result = createDefaultResult(numOfElementsOnPage);
+		result.markFailed();
+		return result;
+	}
+
 	protected SolrQuery createQuery(final Query q, final SearchSettings settings) {
 		SolrQuery solrQuery = new SolrQuery(q.toString());
 		solrQuery.setRows(settings.getPageSize());
@@ -111,4 +351,34 @@ class SolrQueryExecutor extends QueryExecutor {
 		LOG.debug("Executing query: {}", solrQuery);
 		return solrQuery;
 	}
+
+	/**
+	 * Creates the query like {@link #createQuery(Query, SearchSettings)} but removes everything
+	 * that is only needed to load documents, so solr only has to count the matches. The filter
+	 * of a continuation token selects a page, so it is not part of the count either.
+	 */
+	SolrQuery createCountQuery(final Query q, final SearchSettings settings) {
+		SolrQuery solrQuery;
+		if (settings instanceof SolrSearchSettings) {
+			solrQuery = new SolrQuery(q.toString());
+			((SolrSearchSettings) settings).enrichCountQuery(solrQuery);
+		} else {
+			solrQuery = createQuery(q, settings);
+		}
+		removeHighlightingAndGrouping(solrQuery);
+		solrQuery.remove(CommonParams.SORT);
+		solrQuery.remove(CommonParams.FL);
+		solrQuery.setStart(0);
+		solrQuery.setRows(0);
+		return solrQuery;
+	}
+
+	private void removeHighlightingAndGrouping(final SolrQuery solrQuery) {
+		List<String> parameterNames = new ArrayList<>(solrQuery.getParameterNames());
+		for (String name : parameterNames) {
+			if (name.startsWith(HighlightParams.HIGHLIGHT) || name.startsWith(GroupParams.GROUP)) {
+				solrQuery.remove(name);
+			}
+		}
+	}
 }
@@ -0,0 +1,34 @@
+package de.faz.modules.query.solr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the requests that were sent to solr by all executors sharing this instance.
+ * A {@link SolrServerRegistry} shares one instance with all contexts it creates.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class SolrRequestStatistics {
+
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong postRequestCount = new AtomicLong();
+
+	void recordRequest(final boolean post) {
+		requestCount.incrementAndGet();
+		if (post) {
+			postRequestCount.incrementAndGet();
+		}
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Returns the number of requests that were sent as POST because their
+	 * encoded parameters exceeded the configured post threshold.
+	 */
+	public long getPostRequestCount() {
+		return postRequestCount.get();
+	}
+}
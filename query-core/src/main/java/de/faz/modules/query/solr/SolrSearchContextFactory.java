@@ -1,9 +1,31 @@
 package de.faz.modules.query.solr;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import de.faz.modules.query.AdaptiveConcurrencyLimiter;
+import de.faz.modules.query.AsyncSearchContext;
+import de.faz.modules.query.ConcurrencyLimitingQueryExecutor;
+import de.faz.modules.query.LoadSheddingPolicy;
+import de.faz.modules.query.LoadSheddingQueryExecutor;
+import de.faz.modules.query.PriorityBulkheads;
+import de.faz.modules.query.PriorityQueryExecutor;
+import de.faz.modules.query.QueryExecutor;
+import de.faz.modules.query.QueryFrequencyTracker;
 import de.faz.modules.query.SearchContext;
+import de.faz.modules.query.TrackingQueryExecutor;
 import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
@@ -19,4 +41,428 @@ public final class SolrSearchContextFactory {
 
 		return new SolrSearchContext(executor, generator);
 	}
+
+	/**
+	 * Returns a builder for a context of the given solr url that combines the features of the
+	 * <code>create*SearchContext</code> methods, e.g. a result cache with a concurrency limit and
+	 * load shedding.
+	 */
+	@Nonnull
+	public static Builder builder(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl) {
+		Objects.requireNonNull(solrUrl, "A solr url is required to build a search context.");
+		return new Builder(registry, Collections.singletonList(solrUrl), false, null, null);
+	}
+
+	/**
+	 * Creates a new context for the given solr url. The underlying {@link HttpSolrServer}
+	 * is taken from the registry, so all contexts for the same url share one connection pool.
+	 */
+	public static SearchContext createSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl) {
+		return builder(registry, solrUrl).build();
+	}
+
+	/**
+	 * Creates a new context for the given solr url whose searches are limited by the given
+	 * {@link AdaptiveConcurrencyLimiter}. Share the limiter between all contexts of one solr, so the
+	 * limit bounds all requests to it.
+	 */
+	public static SearchContext createLimitedSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl,
+		@Nonnull final AdaptiveConcurrencyLimiter limiter) {
+		return builder(registry, solrUrl).withConcurrencyLimiter(limiter).build();
+	}
+
+	/**
+	 * Creates a new context for the given solr url that records the fingerprint and the latency of
+	 * every search in the given {@link QueryFrequencyTracker}. Share the tracker between all contexts
+	 * of the application to find the queries that dominate the load.
+	 */
+	public static SearchContext createTrackingSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl,
+		@Nonnull final QueryFrequencyTracker tracker) {
+		return builder(registry, solrUrl).withTracker(tracker).build();
+	}
+
+	/**
+	 * Creates a new context for the given solr url that drops highlighting, reduces grouping and limits
+	 * the rows of its searches while the given {@link LoadSheddingPolicy} reports an overload. Share the
+	 * policy between all contexts of one solr.
+	 */
+	public static SearchContext createLoadSheddingSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl,
+		@Nonnull final LoadSheddingPolicy policy) {
+		return builder(registry, solrUrl).withLoadShedding(policy).build();
+	}
+
+	/**
+	 * Creates a new context for the given solr url that executes every search in the bulkhead of
+	 * its {@link de.faz.modules.query.SearchSettings.Priority}. Share the bulkheads between all contexts
+	 * of one solr, so background searches of one context can not starve interactive searches of another.
+	 */
+	public static SearchContext createPrioritizedSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl,
+		@Nonnull final PriorityBulkheads bulkheads) {
+		return builder(registry, solrUrl).withBulkheads(bulkheads).build();
+	}
+
+	/**
+	 * Creates a new context for the given solr url that stops sending requests while solr fails
+	 * and answers known queries with their last result instead. See {@link CircuitBreakerSolrServer}.
+	 */
+	public static SearchContext createCircuitBreakingSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl) {
+		return builder(registry, solrUrl).withCircuitBreaker().build();
+	}
+
+	/**
+	 * Creates a new context for the given solr url that loads the ids of the hits first and takes
+	 * the stored fields from a shared document cache, i.e. with the fields <code>contentId</code>
+	 * and <code>commitId</code>. See {@link DocumentCachingSolrServer}.
+	 */
+	public static SearchContext createDocumentCachingSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl,
+		@Nonnull final String idField, @Nonnull final String versionField) {
+		return builder(registry, solrUrl).withDocumentCache(idField, versionField).build();
+	}
+
+	/**
+	 * Creates a new context for the given solr url that caches the responses until the given watcher
+	 * reports a new index version. See {@link ResultCachingSolrServer}.
+	 */
+	public static SearchContext createResultCachingSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl,
+		@Nonnull final IndexVersionWatcher watcher) {
+		return builder(registry, solrUrl).withResultCache(watcher).build();
+	}
+
+	/**
+	 * Creates a new context for the given solr url that caches the responses like
+	 * {@link #createResultCachingSearchContext(SolrServerRegistry, String, IndexVersionWatcher)} and
+	 * records every query. When the given watcher reports a new index version, the most frequent
+	 * queries are sent again in the background to fill the caches. See {@link QueryWarmer}.
+	 */
+	public static SearchContext createWarmingSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl,
+		@Nonnull final IndexVersionWatcher watcher, @Nonnull final ExecutorService executorService) {
+		return builder(registry, solrUrl).withWarmUp(watcher, executorService).build();
+	}
+
+	/**
+	 * Creates a new context for the given solr url that answers queries, which did not match any
+	 * document recently, without a request to solr. The empty queries are dropped when the given
+	 * watcher reports a new index version. See {@link NegativeResultCache}.
+	 */
+	public static SearchContext createNegativeCachingSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl,
+		@Nonnull final IndexVersionWatcher watcher) {
+		return builder(registry, solrUrl).withNegativeResultCache(watcher).build();
+	}
+
+	/**
+	 * Creates a new context that distributes its requests over several replicas of the same core.
+	 * Every request is sent to the replica with the fewest requests in flight and the lowest latency,
+	 * failing replicas are ejected for a while. See {@link LoadBalancingSolrServer}.
+	 */
+	public static SearchContext createReplicatedSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final Collection<String> replicaUrls) {
+		return replicatedBuilder(registry, replicaUrls).build();
+	}
+
+	/**
+	 * Returns a builder for a context like {@link #createReplicatedSearchContext(SolrServerRegistry, Collection)}
+	 * that combines the load balancer with the other features.
+	 */
+	@Nonnull
+	public static Builder replicatedBuilder(@Nonnull final SolrServerRegistry registry, @Nonnull final Collection<String> replicaUrls) {
+		return new Builder(registry, checkUrls(replicaUrls, "at least one replica is required."), true, null, null);
+	}
+
+	/**
+	 * Creates a new context that sends a request to a second replica when the first one is
+	 * slower than the configured percentile of the recent latencies. The latencies are tracked
+	 * by the registry, so all contexts of the same replicas share them. See {@link HedgingSolrServer}.
+	 */
+	public static SearchContext createHedgedSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final ExecutorService executorService,
+		@Nonnull final Collection<String> replicaUrls) {
+		return hedgedBuilder(registry, executorService, replicaUrls).build();
+	}
+
+	/**
+	 * Returns a builder for a context like {@link #createHedgedSearchContext(SolrServerRegistry, ExecutorService, Collection)}
+	 * that combines the hedged requests with the other features.
+	 */
+	@Nonnull
+	public static Builder hedgedBuilder(@Nonnull final SolrServerRegistry registry, @Nonnull final ExecutorService executorService,
+		@Nonnull final Collection<String> replicaUrls) {
+		Objects.requireNonNull(executorService, "An executor is required to send hedged requests.");
+		return new Builder(registry, checkUrls(replicaUrls, "at least one replica is required."), false, executorService, null);
+	}
+
+	/**
+	 * Creates a new context for the given solr url that sends all requests over the
+	 * non-blocking http client of the registry. Use {@link AsyncSearchContext#executeAsync}
+	 * to benefit from it.
+	 */
+	public static AsyncSearchContext createAsyncSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final String solrUrl) {
+		return builder(registry, solrUrl).withNonBlockingTransport().build();
+	}
+
+	/**
+	 * Creates a new context that sends every query to all given solr cores in parallel and merges
+	 * the results into one page, i.e. to search several content types at once. The requests to the
+	 * cores are executed by the given executor.
+	 */
+	public static SearchContext createFanOutSearchContext(@Nonnull final SolrServerRegistry registry, @Nonnull final ExecutorService executorService,
+		@Nonnull final String... solrUrls) {
+		return fanOutBuilder(registry, executorService, solrUrls).build();
+	}
+
+	/**
+	 * Returns a builder for a context like {@link #createFanOutSearchContext(SolrServerRegistry, ExecutorService, String...)}
+	 * that combines the fan-out with the other features. The features of the connection are added to every core.
+	 */
+	@Nonnull
+	public static Builder fanOutBuilder(@Nonnull final SolrServerRegistry registry, @Nonnull final ExecutorService executorService,
+		@Nonnull final String... solrUrls) {
+		Objects.requireNonNull(executorService, "An executor is required to query the cores in parallel.");
+		return new Builder(registry, checkUrls(Arrays.asList(solrUrls), "at least one solr url is required."), false, null, executorService);
+	}
+
+	private static List<String> checkUrls(final Collection<String> urls, final String message) {
+		if (urls.isEmpty()) {
+			throw new IllegalArgumentException(message);
+		}
+		return new ArrayList<>(urls);
+	}
+
+	/**
+	 * Builds a context from the features of the registry. The features of the connection are nested
+	 * around one server per core: the load balancer or the hedged replicas are the innermost server,
+	 * then the circuit breaker, the document cache and the result cache follow. So the result cache
+	 * answers before the document cache is asked, and the circuit breaker only sees the requests
+	 * that were not answered from a cache. The features of the executor are added in this order:
+	 * load shedding, bulkheads, concurrency limit, tracking, negative result cache and query log.
+	 *
+	 * The non-blocking transport sends its requests with its own http client, so it can not be
+	 * combined with the features of the connection. The negative result cache and the warm up can
+	 * not be used for a fan-out, because the merged queries are not recorded.
+	 *
+	 * The listeners of the features are only registered at the watchers and the limiter when the
+	 * context is built.
+	 */
+	public static final class Builder {
+
+		private static final String BREAKER_KEY_SUFFIX = "|breaker";
+		private static final String DOCUMENTS_KEY_SUFFIX = "|documents:";
+		private static final String HEDGED_KEY_PREFIX = "hedged:";
+
+		private final SolrServerRegistry registry;
+		private final List<String> urls;
+		private final boolean replicated;
+		private final ExecutorService hedgingExecutor;
+		private final ExecutorService fanOutExecutor;
+
+		private boolean nonBlocking;
+		private boolean circuitBreaker;
+		private String idField;
+		private String versionField;
+		private IndexVersionWatcher resultCacheWatcher;
+		private ExecutorService warmUpExecutor;
+		private IndexVersionWatcher negativeCacheWatcher;
+		private AdaptiveConcurrencyLimiter limiter;
+		private QueryFrequencyTracker tracker;
+		private LoadSheddingPolicy policy;
+		private PriorityBulkheads bulkheads;
+
+		/**
+		 * @param urls the url of the core, the urls of its replicas or the urls of the cores of a fan-out
+		 * @param replicated whether the requests are balanced over the replicas
+		 * @param hedgingExecutor the executor of the hedged requests to the replicas
+		 * @param fanOutExecutor the executor of the requests to the cores of a fan-out
+		 */
+		private Builder(final SolrServerRegistry registry, final List<String> urls, final boolean replicated,
+			@Nullable final ExecutorService hedgingExecutor, @Nullable final ExecutorService fanOutExecutor) {
+			this.registry = Objects.requireNonNull(registry, "A registry is required to build a search context.");
+			this.urls = urls;
+			this.replicated = replicated;
+			this.hedgingExecutor = hedgingExecutor;
+			this.fanOutExecutor = fanOutExecutor;
+		}
+
+		/**
+		 * Sends the searches over the non-blocking http client of the registry, see {@link AsyncSearchContext#executeAsync}.
+		 */
+		public Builder withNonBlockingTransport() {
+			this.nonBlocking = true;
+			return this;
+		}
+
+		/**
+		 * Stops sending requests while solr fails, see {@link CircuitBreakerSolrServer}.
+		 */
+		public Builder withCircuitBreaker() {
+			this.circuitBreaker = true;
+			return this;
+		}
+
+		/**
+		 * Takes the stored fields from a shared document cache, see {@link DocumentCachingSolrServer}.
+		 */
+		public Builder withDocumentCache(@Nonnull final String idField, @Nonnull final String versionField) {
+			this.idField = Objects.requireNonNull(idField, "An id field is required to cache documents.");
+			this.versionField = Objects.requireNonNull(versionField, "A version field is required to cache documents.");
+			return this;
+		}
+
+		/**
+		 * Caches the responses until the given watcher reports a new index version, see {@link ResultCachingSolrServer}.
+		 */
+		public Builder withResultCache(@Nonnull final IndexVersionWatcher watcher) {
+			this.resultCacheWatcher = Objects.requireNonNull(watcher, "A watcher is required to invalidate the result cache.");
+			return this;
+		}
+		/**
+		 * Caches the responses like {@link #withResultCache(IndexVersionWatcher)} and records every query, so
+		 * the most frequent ones are sent again when the watcher reports a new index version. See {@link QueryWarmer}.
+		 */
+		public Builder withWarmUp(@Nonnull final IndexVersionWatcher watcher, @Nonnull final ExecutorService executorService) {
+			withResultCache(watcher);
+			this.warmUpExecutor = Objects.requireNonNull(executorService, "An executor is required to send the warm up queries.");
+			return this;
+		}
+
+		/**
+		 * Answers queries that did not match any document recently without a request to solr, see {@link NegativeResultCache}.
+		 */
+		public Builder withNegativeResultCache(@Nonnull final IndexVersionWatcher watcher) {
+			this.negativeCacheWatcher = Objects.requireNonNull(watcher, "A watcher is required to invalidate the negative result cache.");
+			return this;
+		}
+
+		/**
+		 * Limits the searches with the given limiter and reports the latency of every request to solr to it.
+		 * Share the limiter between all contexts of one solr.
+		 */
+		public Builder withConcurrencyLimiter(@Nonnull final AdaptiveConcurrencyLimiter limiter) {
+			this.limiter = Objects.requireNonNull(limiter, "A limiter is required to limit the searches.");
+			return this;
+		}
+
+		/**
+		 * Records the fingerprint and the latency of every search, see {@link TrackingQueryExecutor}.
+		 */
+		public Builder withTracker(@Nonnull final QueryFrequencyTracker tracker) {
+			this.tracker = Objects.requireNonNull(tracker, "A tracker is required to record the searches.");
+			return this;
+		}
+
+		/**
+		 * Degrades the searches while the given policy reports an overload, see {@link LoadSheddingQueryExecutor}.
+		 */
+		public Builder withLoadShedding(@Nonnull final LoadSheddingPolicy policy) {
+			this.policy = Objects.requireNonNull(policy, "A policy is required to shed load.");
+			return this;
+		}
+
+		/**
+		 * Executes every search in the bulkhead of its priority, see {@link PriorityQueryExecutor}.
+		 */
+		public Builder withBulkheads(@Nonnull final PriorityBulkheads bulkheads) {
+			this.bulkheads = Objects.requireNonNull(bulkheads, "Bulkheads are required to prioritize the searches.");
+			return this;
+		}
+
+		@Nonnull
+		public SolrSearchContext build() {
+			checkFeatures();
+			FieldDefinitionGenerator generator = new FieldDefinitionGenerator();
+			SolrQueryExecutor solrExecutor = createExecutor(generator);
+			if (negativeCacheWatcher != null) {
+				NegativeResultCache cache = registry.getNegativeResultCacheOf(getConnectionKey());
+				negativeCacheWatcher.addListener(cache);
+				solrExecutor.withNegativeResultCache(cache);
+			}
+			if (warmUpExecutor != null) {
+				solrExecutor.withQueryLog(registry.getQueryLogOf(getConnectionKey()));
+			}
+			if (limiter != null) {
+				solrExecutor.withRequestListener(limiter);
+			}
+
+			QueryExecutor executor = solrExecutor;
+			if (tracker != null) {
+				executor = new TrackingQueryExecutor(executor, tracker);
+			}
+			if (limiter != null) {
+				executor = new ConcurrencyLimitingQueryExecutor(executor, limiter);
+			}
+			if (bulkheads != null) {
+				executor = new PriorityQueryExecutor(executor, bulkheads);
+			}
+			if (policy != null) {
+				executor = new LoadSheddingQueryExecutor(executor, policy);
+			}
+			return new SolrSearchContext(executor, generator);
+		}
+
+		private void checkFeatures() {
+			boolean connectionFeature = circuitBreaker || idField != null || resultCacheWatcher != null;
+			if (nonBlocking && (connectionFeature || replicated || hedgingExecutor != null || fanOutExecutor != null)) {
+				throw new IllegalStateException("the non-blocking transport can only be used for a single solr url without features of the connection.");
+			}
+			if (fanOutExecutor != null && (negativeCacheWatcher != null || warmUpExecutor != null)) {
+				throw new IllegalStateException("the negative result cache and the warm up can not be used for a fan-out.");
+			}
+		}
+
+		private SolrQueryExecutor createExecutor(final FieldDefinitionGenerator generator) {
+			SolrConnectionSettings settings = registry.getSettings();
+			if (nonBlocking) {
+				return new AsyncSolrQueryExecutor(registry.getServer(urls.get(0)), registry.getAsyncHttpClient(), generator,
+					settings.getPostThreshold(), registry.getStatistics(), registry.getRequestConfig());
+			}
+			if (fanOutExecutor != null) {
+				Map<String, SolrServer> servers = new LinkedHashMap<>();
+				for (String solrUrl : urls) {
+					String key = registry.getConnectionKey(Collections.singletonList(solrUrl));
+					servers.put(key, decorate(key, registry.getServer(solrUrl)));
+				}
+				return new FanOutSolrQueryExecutor(servers, fanOutExecutor, generator, settings.getPostThreshold(), registry.getStatistics());
+			}
+			return new SolrQueryExecutor(decorate(getConnectionKey(), createServer()), generator, settings.getPostThreshold(),
+				registry.getStatistics());
+		}
+
+		private String getConnectionKey() {
+			String key = registry.getConnectionKey(urls);
+			return hedgingExecutor != null ? HEDGED_KEY_PREFIX + key : key;
+		}
+
+		private SolrServer createServer() {
+			if (hedgingExecutor != null) {
+				return registry.getHedgingServer(urls, hedgingExecutor);
+			}
+			if (replicated) {
+				return registry.getLoadBalancedServer(urls);
+			}
+			return registry.getServer(urls.get(0));
+		}
+
+		/**
+		 * Nests the features of the connection around the given server. Every feature is shared by all
+		 * contexts with the same features below it, so the key of a server names all of them.
+		 */
+		private SolrServer decorate(final String connectionKey, final SolrServer solrServer) {
+			String key = connectionKey;
+			SolrServer server = solrServer;
+			if (circuitBreaker) {
+				server = registry.getCircuitBreakerServer(key, server);
+				key += BREAKER_KEY_SUFFIX;
+			}
+			if (idField != null) {
+				server = registry.getDocumentCachingServer(key, server, idField, versionField);
+				key += DOCUMENTS_KEY_SUFFIX + idField + ',' + versionField;
+			}
+			if (resultCacheWatcher != null) {
+				ResultCachingSolrServer resultCache = registry.getResultCachingServer(key, server);
+				// the warmer must be notified after the cache was invalidated
+				resultCacheWatcher.addListener(resultCache);
+				if (warmUpExecutor != null) {
+					resultCacheWatcher.addListener(registry.getQueryWarmer(key, resultCache, registry.getQueryLogOf(connectionKey), warmUpExecutor));
+				}
+				server = resultCache;
+			}
+			return server;
+		}
+	}
 }
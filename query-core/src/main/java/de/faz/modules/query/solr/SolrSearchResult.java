@@ -13,6 +13,7 @@
  */
 package de.faz.modules.query.solr;
 
+import com.google.common.base.Optional;
 import de.faz.modules.query.SearchContext;
 import de.faz.modules.query.fields.FieldDefinitionGenerator;
 import de.faz.modules.query.fields.Mapping;
@@ -20,6 +21,7 @@ import de.faz.modules.query.solr.internal.SolrResponseCallbackFactory;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.NamedList;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -27,10 +29,14 @@ import java.util.NoSuchElementException;
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
 class SolrSearchResult extends SearchContext.SearchResult {
 
+	private static final String PARTIAL_RESULTS_KEY = "partialResults";
+
 	private SolrResponseCallbackFactory callbackFactory;
 	private FieldDefinitionGenerator fieldGenerator;
 
 	private final QueryResponse response;
+	private Optional<KeysetCursor> keysetCursor = Optional.absent();
+	private boolean partial;
 
 
 	SolrSearchResult(final QueryResponse result, final int pageSize) {
@@ -93,6 +99,51 @@ class SolrSearchResult extends SearchContext.SearchResult {
 		};
 	}
 
+	/**
+	 * @throws de.faz.modules.query.exception.InvalidQueryException if the last document has no value
+	 *         for one of the sort fields of the keyset paging
+	 */
+	@Override
+	public Optional<String> getContinuationToken() {
+		if (!keysetCursor.isPresent() || response == null || response.getResults() == null) {
+			return Optional.absent();
+		}
+		SolrDocumentList documents = response.getResults();
+		if (documents.isEmpty() || documents.size() < pageSize) {
+			return Optional.absent();
+		}
+		return Optional.of(keysetCursor.get().createToken(documents.get(documents.size() - 1)));
+	}
+
+	/**
+	 * Solr sets <code>partialResults</code> in the response header when timeAllowed was exceeded.
+	 */
+	@Override
+	public boolean isPartial() {
+		if (partial) {
+			return true;
+		}
+		if (response == null || response.getResponseHeader() == null) {
+			return false;
+		}
+		NamedList<Object> header = response.getResponseHeader();
+		return Boolean.TRUE.equals(header.get(PARTIAL_RESULTS_KEY));
+	}
+
+	void markPartial() {
+		this.partial = true;
+	}
+
+	// makes the flag available to the executors of this package
+	@Override
+	protected void markFailed() {
+		super.markFailed();
+	}
+
+	void setKeysetCursor(final KeysetCursor cursor) {
+		this.keysetCursor = Optional.of(cursor);
+	}
+
 	protected <S> Iterator<S> createDefaultIterator() {
 		return new Iterator<S>() {
 			@Override
@@ -6,17 +6,21 @@ import de.faz.modules.query.SearchHighlighter;
 import de.faz.modules.query.SearchSettings;
 import de.faz.modules.query.capabilities.EnrichQueryExecutor;
 import de.faz.modules.query.capabilities.SearchOption;
+import de.faz.modules.query.exception.InvalidQueryException;
 import de.faz.modules.query.fields.FieldDefinitionGenerator;
 import de.faz.modules.query.solr.internal.SolrEnrichQueryExecutor;
 import de.faz.modules.query.solr.internal.SolrResponseCallbackFactory;
 import org.apache.solr.client.solrj.SolrQuery;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
 public class SolrSearchSettings extends SearchSettings {
 
 	private static final int DEFAULT_OFFSET = 0;
+	private static final String SCORE_FIELD = "score";
 
 	private Optional<SolrResponseCallbackFactory> customCallbackFactory = Optional.absent();
 
@@ -44,31 +48,99 @@ public class SolrSearchSettings extends SearchSettings {
 		return highlighter;
 	}
 
+	@Override
+	protected SearchSettings createCopy() {
+		SolrSearchSettings copy = new SolrSearchSettings(generator);
+		copy.customCallbackFactory = customCallbackFactory;
+		return copy;
+	}
+
 	public SolrResponseCallbackFactory getCustomCallbackFactory() {
 		return customCallbackFactory.or(new StandardCallbackFactory());
 	}
 
 	void enrichQuery(final SolrQuery query) {
-		query.setStart(offset.or(DEFAULT_OFFSET));
-		query.setRows(pageSize.or(DEFAULT_ROWS));
-		Collection<SearchSettings.SortBy> sortCollection = getSort();
+		query.setStart(isKeysetPaging() ? DEFAULT_OFFSET : offset.or(DEFAULT_OFFSET));
+		query.setRows(getRowsToFetch());
+		Collection<SearchSettings.SortBy> sortCollection = isKeysetPaging() ? getKeysetSort() : getSort();
 
 		for (SearchSettings.SortBy sortBy : sortCollection) {
 			query.addSortField(sortBy.getFieldName().toString(), new SolrOrderByMapper(sortBy).toSolrOrder());
 		}
 
+		for (String field : fieldList) {
+			query.addField(field);
+		}
+
+		if (isKeysetPaging()) {
+			enrichKeysetPaging(query);
+		}
+
+		enrichMatching(query);
+	}
+
+	/**
+	 * Enriches a query that only counts the matches: without the page, the sort, the field list
+	 * and the filter of the continuation token.
+	 */
+	void enrichCountQuery(final SolrQuery query) {
+		query.setStart(DEFAULT_OFFSET);
+		query.setRows(0);
+		enrichMatching(query);
+	}
+
+	private void enrichMatching(final SolrQuery query) {
 		for (SearchOption option : optionCollection) {
-			option.getQueryExecutor().enrich(query);
+			Optional<EnrichQueryExecutor> optionExecutor = getQueryExecutorOf(option);
+			if (optionExecutor.isPresent()) {
+				optionExecutor.get().enrich(query);
+			}
 		}
 
 		for (Query filter : filterList) {
 			query.addFilterQuery(filter.toString());
 		}
 
-		for (String field : fieldList) {
-			query.addField(field);
+		Optional<Long> remainingTime = getRemainingTime();
+		if (remainingTime.isPresent()) {
+			// solr treats a timeAllowed of 0 as no limit
+			query.setTimeAllowed((int) Math.max(1, Math.min(remainingTime.get(), Integer.MAX_VALUE)));
+		}
+	}
+
+	/**
+	 * Returns the sort of the settings with the keyset field as last sort field.
+	 */
+	List<SearchSettings.SortBy> getKeysetSort() {
+		List<SearchSettings.SortBy> keysetSort = new ArrayList<>();
+		boolean containsKeysetField = false;
+		for (SearchSettings.SortBy sortBy : getSort()) {
+			String fieldName = sortBy.getFieldName().toString();
+			if (SCORE_FIELD.equals(fieldName)) {
+				throw new InvalidQueryException("keyset paging can not be used with a sort by score.");
+			}
+			containsKeysetField |= fieldName.equals(keysetField.get().toString());
+			keysetSort.add(sortBy);
+		}
+		if (!containsKeysetField) {
+			keysetSort.add(new SearchSettings.SortBy(keysetField.get(), Order.ASC));
 		}
+		return keysetSort;
+	}
 
+	private void enrichKeysetPaging(final SolrQuery query) {
+		List<SearchSettings.SortBy> keysetSort = getKeysetSort();
+		// the sort values of the last document are required to create the continuation token
+		if (!fieldList.isEmpty()) {
+			for (SearchSettings.SortBy sortBy : keysetSort) {
+				if (!fieldList.contains(sortBy.getFieldName().toString())) {
+					query.addField(sortBy.getFieldName().toString());
+				}
+			}
+		}
+		if (continuationToken.isPresent()) {
+			query.addFilterQuery(new KeysetCursor(keysetSort).createFilter(continuationToken.get()));
+		}
 	}
 
 	private class SolrOrderByMapper {
@@ -0,0 +1,574 @@
+package de.faz.modules.query.solr;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.protocol.HttpContext;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This registry owns one pooled http client and hands out one {@link HttpSolrServer}
+ * per Solr url (including the core name). All servers share the connection pool
+ * of this registry, so creating a new {@link de.faz.modules.query.SearchContext}
+ * per request does not open new connections any more.
+ *
+ * A registry should live as long as the application and must be closed on shutdown.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class SolrServerRegistry implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SolrServerRegistry.class);
+
+	private static final String RESULT_SNAPSHOT_SUFFIX = ".snapshot";
+	private static final String QUERY_LOG_SUFFIX = ".queries";
+	private static final int OFF_HEAP_WRITE_QUEUE_SIZE = 1024;
+
+	private final SolrConnectionSettings settings;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+	private final ConcurrentMap<String, HttpSolrServer> serverMap;
+	private final ConcurrentMap<List<String>, LoadBalancingSolrServer> loadBalancerMap;
+	private final ConcurrentMap<List<String>, HedgingSolrServer> hedgingMap;
+	private final ConcurrentMap<String, CircuitBreakerSolrServer> circuitBreakerMap;
+	private final ConcurrentMap<List<String>, DocumentCachingSolrServer> documentCacheMap;
+	private final ConcurrentMap<String, ResultCachingSolrServer> resultCacheMap;
+	private final ConcurrentMap<String, NegativeResultCache> negativeCacheMap;
+	private final ConcurrentMap<String, QueryLog> queryLogMap;
+	private final ConcurrentMap<String, QueryWarmer> queryWarmerMap;
+	private final SolrRequestStatistics statistics;
+	private final RequestConfig requestConfig;
+
+	private CloseableHttpAsyncClient asyncHttpClient;
+	private ExecutorService offHeapWriter;
+
+	public SolrServerRegistry() {
+		this(new SolrConnectionSettings());
+	}
+
+	public SolrServerRegistry(@Nonnull final SolrConnectionSettings settings) {
+		this.settings = Objects.requireNonNull(settings, "connection settings are required.");
+		this.serverMap = new ConcurrentHashMap<>();
+		this.loadBalancerMap = new ConcurrentHashMap<>();
+		this.hedgingMap = new ConcurrentHashMap<>();
+		this.circuitBreakerMap = new ConcurrentHashMap<>();
+		this.documentCacheMap = new ConcurrentHashMap<>();
+		this.resultCacheMap = new ConcurrentHashMap<>();
+		this.negativeCacheMap = new ConcurrentHashMap<>();
+		this.queryLogMap = new ConcurrentHashMap<>();
+		this.queryWarmerMap = new ConcurrentHashMap<>();
+		this.statistics = new SolrRequestStatistics();
+		this.requestConfig = createRequestConfig(settings);
+		this.connectionManager = createConnectionManager(settings);
+		this.httpClient = createHttpClient(requestConfig, settings, connectionManager);
+	}
+
+	/**
+	 * Returns the {@link HttpSolrServer} for the given url. The same instance is returned
+	 * for every call with the same url, trailing slashes are ignored.
+	 *
+	 * @param solrUrl the complete url of a solr core, i.e. http://localhost:8080/solr/public
+	 * @return a shared {@link HttpSolrServer} that uses the pooled client of this registry
+	 */
+	@Nonnull
+	public HttpSolrServer getServer(@Nonnull final String solrUrl) {
+		if (StringUtils.isBlank(solrUrl)) {
+			throw new IllegalArgumentException("a solr url is required.");
+		}
+		String key = normalize(solrUrl);
+		HttpSolrServer server = serverMap.get(key);
+		if (server == null) {
+			HttpSolrServer newServer = new HttpSolrServer(key, httpClient);
+			server = serverMap.putIfAbsent(key, newServer);
+			if (server == null) {
+				LOG.info("created pooled solr server for {}", key);
+				server = newServer;
+			}
+		}
+		return server;
+	}
+
+	@Nonnull
+	public HttpSolrServer getServer(@Nonnull final String solrUrl, @Nonnull final String coreName) {
+		return getServer(StringUtils.removeEnd(solrUrl, "/") + "/" + coreName);
+	}
+
+	/**
+	 * Returns a {@link LoadBalancingSolrServer} that distributes the requests over the given
+	 * replicas of one core. The same instance is returned for the same set of urls, so all
+	 * contexts share the latency and failure statistics of the replicas.
+	 *
+	 * @param replicaUrls the complete urls of all replicas of a solr core
+	 */
+	@Nonnull
+	public LoadBalancingSolrServer getLoadBalancedServer(@Nonnull final Collection<String> replicaUrls) {
+		List<String> key = getReplicaKey(replicaUrls);
+		LoadBalancingSolrServer server = loadBalancerMap.get(key);
+		if (server == null) {
+			List<HttpSolrServer> replicas = getReplicas(key);
+			LoadBalancingSolrServer newServer = new LoadBalancingSolrServer(replicas, settings.getMaxReplicaFailures(), settings.getReplicaEjectionTime());
+			server = loadBalancerMap.putIfAbsent(key, newServer);
+			if (server == null) {
+				LOG.info("created load balanced solr server for {}", key);
+				server = newServer;
+			}
+		}
+		return server;
+	}
+
+	/**
+	 * Returns a {@link HedgingSolrServer} that hedges the requests to the given replicas of one core.
+	 * The same instance is returned for the same set of urls, so all contexts share the latencies
+	 * and the hedging budget. It uses the executor of the first call.
+	 *
+	 * @param replicaUrls the complete urls of all replicas of a solr core
+	 */
+	@Nonnull
+	public HedgingSolrServer getHedgingServer(@Nonnull final Collection<String> replicaUrls, @Nonnull final ExecutorService executorService) {
+		List<String> key = getReplicaKey(replicaUrls);
+		HedgingSolrServer server = hedgingMap.get(key);
+		if (server == null) {
+			HedgingSolrServer newServer = new HedgingSolrServer(getReplicas(key), executorService, settings.getHedgingPercentile(),
+				settings.getMaxHedgingLoad());
+			server = hedgingMap.putIfAbsent(key, newServer);
+			if (server == null) {
+				LOG.info("created hedging solr server for {}", key);
+				server = newServer;
+			}
+		}
+		return server;
+	}
+
+	/**
+	 * Returns the key of the connection to the given replicas, the connections of the
+	 * features are identified by it.
+	 */
+	@Nonnull
+	String getConnectionKey(@Nonnull final Collection<String> replicaUrls) {
+		List<String> key = getReplicaKey(replicaUrls);
+		return key.size() == 1 ? key.get(0) : StringUtils.join(key, ',');
+	}
+
+	private List<String> getReplicaKey(final Collection<String> replicaUrls) {
+		List<String> key = new ArrayList<>(replicaUrls.size());
+		for (String replicaUrl : replicaUrls) {
+			if (StringUtils.isBlank(replicaUrl)) {
+				throw new IllegalArgumentException("a solr url is required.");
+			}
+			key.add(normalize(replicaUrl));
+		}
+		Collections.sort(key);
+		return key;
+	}
+
+	private List<HttpSolrServer> getReplicas(final List<String> replicaUrls) {
+		List<HttpSolrServer> replicas = new ArrayList<>(replicaUrls.size());
+		for (String replicaUrl : replicaUrls) {
+			replicas.add(getServer(replicaUrl));
+		}
+		return replicas;
+	}
+
+	/**
+	 * Returns a {@link CircuitBreakerSolrServer} around the {@link HttpSolrServer} for the given url.
+	 * The same instance is returned for every call with the same url, so all contexts see the same
+	 * state of the breaker and share the stale cache.
+	 */
+	@Nonnull
+	public CircuitBreakerSolrServer getCircuitBreakerServer(@Nonnull final String solrUrl) {
+		HttpSolrServer httpSolrServer = getServer(solrUrl);
+		return getCircuitBreakerServer(httpSolrServer.getBaseURL(), httpSolrServer);
+	}
+
+	/**
+	 * Returns the {@link CircuitBreakerSolrServer} around the given server, which is identified by the
+	 * given key. The same instance is returned for every call with the same key.
+	 */
+	@Nonnull
+	CircuitBreakerSolrServer getCircuitBreakerServer(@Nonnull final String key, @Nonnull final SolrServer solrServer) {
+		CircuitBreakerSolrServer server = circuitBreakerMap.get(key);
+		if (server == null) {
+			CircuitBreakerSolrServer newServer = new CircuitBreakerSolrServer(solrServer, settings.getCircuitBreakerWindow(),
+				settings.getCircuitBreakerThreshold(), settings.getCircuitBreakerOpenTime(), settings.getStaleCacheSize());
+			server = circuitBreakerMap.putIfAbsent(key, newServer);
+			if (server == null) {
+				LOG.info("created circuit breaker for {}", key);
+				server = newServer;
+			}
+		}
+		return server;
+	}
+
+	/**
+	 * Returns a {@link DocumentCachingSolrServer} around the {@link HttpSolrServer} for the given url.
+	 * The same instance is returned for every call with the same url and fields, so all contexts
+	 * share the cached documents.
+	 */
+	@Nonnull
+	public DocumentCachingSolrServer getDocumentCachingServer(@Nonnull final String solrUrl, @Nonnull final String idField,
+		@Nonnull final String versionField) {
+		HttpSolrServer httpSolrServer = getServer(solrUrl);
+		return getDocumentCachingServer(httpSolrServer.getBaseURL(), httpSolrServer, idField, versionField);
+	}
+
+	/**
+	 * Returns the {@link DocumentCachingSolrServer} around the given server, which is identified by the
+	 * given key. The same instance is returned for every call with the same key and fields.
+	 */
+	@Nonnull
+	DocumentCachingSolrServer getDocumentCachingServer(@Nonnull final String key, @Nonnull final SolrServer solrServer,
+		@Nonnull final String idField, @Nonnull final String versionField) {
+		List<String> cacheKey = Arrays.asList(key, idField, versionField);
+		DocumentCachingSolrServer server = documentCacheMap.get(cacheKey);
+		if (server == null) {
+			DocumentCachingSolrServer newServer = new DocumentCachingSolrServer(solrServer, idField, versionField, settings.getDocumentCacheSize());
+			server = documentCacheMap.putIfAbsent(cacheKey, newServer);
+			if (server == null) {
+				LOG.info("created document cache for {}", key);
+				server = newServer;
+			}
+		}
+		return server;
+	}
+
+	/**
+	 * Returns a {@link ResultCachingSolrServer} around the {@link HttpSolrServer} for the given url.
+	 * The same instance is returned for every call with the same url, so all contexts share the
+	 * cached responses.
+	 */
+	@Nonnull
+	public ResultCachingSolrServer getResultCachingServer(@Nonnull final String solrUrl) {
+		HttpSolrServer httpSolrServer = getServer(solrUrl);
+		return getResultCachingServer(httpSolrServer.getBaseURL(), httpSolrServer);
+	}
+
+	/**
+	 * Returns the {@link ResultCachingSolrServer} around the given server, which is identified by the
+	 * given key. The snapshot of the cache is named after the key.
+	 */
+	@Nonnull
+	ResultCachingSolrServer getResultCachingServer(@Nonnull final String key, @Nonnull final SolrServer solrServer) {
+		ResultCachingSolrServer server = resultCacheMap.get(key);
+		if (server == null) {
+			// the off heap store allocates its whole buffer, so only one server must be created
+			synchronized (resultCacheMap) {
+				server = resultCacheMap.get(key);
+				if (server == null) {
+					server = new ResultCachingSolrServer(solrServer, settings.getResultCacheSize(), settings.getResultCacheMaxAge());
+					if (settings.getOffHeapResultCacheCapacity() > 0) {
+						server.withOffHeapStore(new OffHeapResultStore(settings.getOffHeapResultCacheCapacity(), settings.getResultCacheMaxAge()),
+							getOffHeapWriter());
+					}
+					File snapshotFile = getSnapshotFile(key, RESULT_SNAPSHOT_SUFFIX);
+					if (snapshotFile != null) {
+						server.loadSnapshot(snapshotFile);
+					}
+					resultCacheMap.put(key, server);
+					LOG.info("created result cache for {}", key);
+				}
+			}
+		}
+		return server;
+	}
+
+	/**
+	 * Returns the {@link NegativeResultCache} of the solr core with the given url. The same instance
+	 * is returned for every call with the same url.
+	 */
+	@Nonnull
+	public NegativeResultCache getNegativeResultCache(@Nonnull final String solrUrl) {
+		return getNegativeResultCacheOf(getServer(solrUrl).getBaseURL());
+	}
+
+	/**
+	 * Returns the {@link NegativeResultCache} of the connection with the given key.
+	 */
+	@Nonnull
+	NegativeResultCache getNegativeResultCacheOf(@Nonnull final String key) {
+		NegativeResultCache cache = negativeCacheMap.get(key);
+		if (cache == null) {
+			NegativeResultCache newCache = new NegativeResultCache(settings.getNegativeCacheSize(), settings.getNegativeCacheTimeToLive());
+			cache = negativeCacheMap.putIfAbsent(key, newCache);
+			if (cache == null) {
+				LOG.info("created negative result cache for {}", key);
+				cache = newCache;
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns the {@link QueryLog} of the solr core with the given url. The same instance is returned
+	 * for every call with the same url. When a snapshot directory is configured, the log is read from
+	 * it when it is created and written to it when the registry is closed.
+	 */
+	@Nonnull
+	public QueryLog getQueryLog(@Nonnull final String solrUrl) {
+		return getQueryLogOf(getServer(solrUrl).getBaseURL());
+	}
+
+	/**
+	 * Returns the {@link QueryLog} of the connection with the given key.
+	 */
+	@Nonnull
+	QueryLog getQueryLogOf(@Nonnull final String key) {
+		QueryLog log = queryLogMap.get(key);
+		if (log == null) {
+			QueryLog newLog = new QueryLog(settings.getQueryLogSize());
+			log = queryLogMap.putIfAbsent(key, newLog);
+			if (log == null) {
+				readQueryLog(key, newLog);
+				log = newLog;
+			}
+		}
+		return log;
+	}
+
+	/**
+	 * Returns the {@link QueryWarmer} that sends the most frequent queries of the solr core with the
+	 * given url to its {@link ResultCachingSolrServer}. The same instance is returned for every call
+	 * with the same url, it uses the executor of the first call.
+	 */
+	@Nonnull
+	public QueryWarmer getQueryWarmer(@Nonnull final String solrUrl, @Nonnull final ExecutorService executorService) {
+		HttpSolrServer httpSolrServer = getServer(solrUrl);
+		String key = httpSolrServer.getBaseURL();
+		return getQueryWarmer(key, getResultCachingServer(key, httpSolrServer), getQueryLogOf(key), executorService);
+	}
+
+	/**
+	 * Returns the {@link QueryWarmer} that sends the most frequent queries of the given log to the
+	 * given cache, which is identified by the given key. It uses the executor of the first call.
+	 */
+	@Nonnull
+	QueryWarmer getQueryWarmer(@Nonnull final String key, @Nonnull final ResultCachingSolrServer server, @Nonnull final QueryLog queryLog,
+		@Nonnull final ExecutorService executorService) {
+		QueryWarmer warmer = queryWarmerMap.get(key);
+		if (warmer == null) {
+			QueryWarmer newWarmer = new QueryWarmer(server, queryLog, executorService)
+				.withQueryCount(settings.getWarmUpQueryCount());
+			warmer = queryWarmerMap.putIfAbsent(key, newWarmer);
+			if (warmer == null) {
+				warmer = newWarmer;
+			}
+		}
+		return warmer;
+	}
+
+	/**
+	 * Returns the thread that encodes the responses of all result caches into their off heap stores.
+	 * A response is not stored when the queue of the thread is full.
+	 */
+	private synchronized ExecutorService getOffHeapWriter() {
+		if (offHeapWriter == null) {
+			offHeapWriter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(OFF_HEAP_WRITE_QUEUE_SIZE),
+				new ThreadFactoryBuilder().setNameFormat("off-heap-result-writer-%d").setDaemon(true).build());
+		}
+		return offHeapWriter;
+	}
+
+	@Nonnull
+	public HttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * Returns a non-blocking http client that is configured with the same settings as
+	 * the blocking one. The client is created and started on the first call.
+	 */
+	@Nonnull
+	public synchronized HttpAsyncClient getAsyncHttpClient() {
+		if (asyncHttpClient == null) {
+			asyncHttpClient = createAsyncHttpClient(requestConfig, settings);
+			asyncHttpClient.start();
+		}
+		return asyncHttpClient;
+	}
+
+	/**
+	 * Returns the timeouts that both http clients of this registry use by default.
+	 */
+	@Nonnull
+	public RequestConfig getRequestConfig() {
+		return requestConfig;
+	}
+
+	@Nonnull
+	public SolrConnectionSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Returns the request statistics of all contexts that were created with this registry.
+	 */
+	@Nonnull
+	public SolrRequestStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Writes the snapshots of all result caches when a snapshot directory is configured.
+	 */
+	@Override
+	public void close() throws IOException {
+		writeSnapshots();
+		serverMap.clear();
+		loadBalancerMap.clear();
+		hedgingMap.clear();
+		circuitBreakerMap.clear();
+		documentCacheMap.clear();
+		resultCacheMap.clear();
+		negativeCacheMap.clear();
+		queryLogMap.clear();
+		queryWarmerMap.clear();
+		httpClient.close();
+		connectionManager.shutdown();
+		synchronized (this) {
+			if (asyncHttpClient != null) {
+				asyncHttpClient.close();
+				asyncHttpClient = null;
+			}
+			if (offHeapWriter != null) {
+				offHeapWriter.shutdownNow();
+				offHeapWriter = null;
+			}
+		}
+	}
+
+	private void writeSnapshots() {
+		for (Map.Entry<String, QueryLog> entry : queryLogMap.entrySet()) {
+			File logFile = getSnapshotFile(entry.getKey(), QUERY_LOG_SUFFIX);
+			if (logFile == null) {
+				break;
+			}
+			try {
+				entry.getValue().writeTo(logFile);
+			} catch (IOException e) {
+				LOG.warn("could not write the query log for " + entry.getKey(), e);
+			}
+		}
+		for (Map.Entry<String, ResultCachingSolrServer> entry : resultCacheMap.entrySet()) {
+			File snapshotFile = getSnapshotFile(entry.getKey(), RESULT_SNAPSHOT_SUFFIX);
+			if (snapshotFile == null) {
+				return;
+			}
+			try {
+				int count = entry.getValue().writeSnapshot(snapshotFile, settings.getResultSnapshotSize());
+				LOG.info("wrote {} responses of the result cache for {} to {}", count, entry.getKey(), snapshotFile);
+			} catch (IOException | RuntimeException e) {
+				LOG.warn("could not write the result snapshot for " + entry.getKey(), e);
+			}
+		}
+	}
+
+	private void readQueryLog(final String baseUrl, final QueryLog log) {
+		File logFile = getSnapshotFile(baseUrl, QUERY_LOG_SUFFIX);
+		if (logFile != null && logFile.isFile()) {
+			try {
+				log.readFrom(logFile);
+				LOG.info("read {} queries for {} from {}", log.getSize(), baseUrl, logFile);
+			} catch (IOException e) {
+				LOG.warn("could not read the query log " + logFile, e);
+			}
+		}
+	}
+
+	private File getSnapshotFile(final String baseUrl, final String suffix) {
+		File directory = settings.getResultSnapshotDirectory();
+		if (directory == null) {
+			return null;
+		}
+		return new File(directory, baseUrl.replaceAll("[^A-Za-z0-9]+", "_") + suffix);
+	}
+
+	private String normalize(final String solrUrl) {
+		String url = solrUrl.trim();
+		while (url.endsWith("/")) {
+			url = url.substring(0, url.length() - 1);
+		}
+		return url;
+	}
+
+	private static PoolingHttpClientConnectionManager createConnectionManager(final SolrConnectionSettings settings) {
+		PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+		manager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+		manager.setMaxTotal(settings.getMaxConnectionsTotal());
+		manager.setValidateAfterInactivity(settings.getValidateAfterInactivity());
+		return manager;
+	}
+
+	private static CloseableHttpClient createHttpClient(final RequestConfig requestConfig, final SolrConnectionSettings settings,
+		final PoolingHttpClientConnectionManager manager) {
+		return HttpClientBuilder.create()
+			.setConnectionManager(manager)
+			.setDefaultRequestConfig(requestConfig)
+			.setKeepAliveStrategy(new SettingsKeepAliveStrategy(settings.getKeepAlive()))
+			.evictExpiredConnections()
+			.evictIdleConnections(settings.getKeepAlive(), TimeUnit.MILLISECONDS)
+			.build();
+	}
+
+	private static CloseableHttpAsyncClient createAsyncHttpClient(final RequestConfig requestConfig, final SolrConnectionSettings settings) {
+		return HttpAsyncClientBuilder.create()
+			.setMaxConnPerRoute(settings.getMaxConnectionsPerRoute())
+			.setMaxConnTotal(settings.getMaxConnectionsTotal())
+			.setDefaultRequestConfig(requestConfig)
+			.setKeepAliveStrategy(new SettingsKeepAliveStrategy(settings.getKeepAlive()))
+			.build();
+	}
+
+	private static RequestConfig createRequestConfig(final SolrConnectionSettings settings) {
+		return RequestConfig.custom()
+			.setConnectTimeout(settings.getConnectTimeout())
+			.setSocketTimeout(settings.getSocketTimeout())
+			.setConnectionRequestTimeout(settings.getConnectionRequestTimeout())
+			.build();
+	}
+
+	private static class SettingsKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+		private final long defaultKeepAlive;
+
+		SettingsKeepAliveStrategy(final long defaultKeepAlive) {
+			this.defaultKeepAlive = defaultKeepAlive;
+		}
+
+		@Override
+		public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+			long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+		}
+	}
+}
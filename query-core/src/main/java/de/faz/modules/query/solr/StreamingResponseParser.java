@@ -0,0 +1,103 @@
+package de.faz.modules.query.solr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.FastInputStream;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+
+import de.faz.modules.query.ResultHandler;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import de.faz.modules.query.fields.Mapping;
+import de.faz.modules.query.solr.internal.SolrResponseCallbackFactory;
+
+/**
+ * A javabin parser that maps every document of the result to the given mapping class and
+ * hands it to a {@link ResultHandler} as soon as the document is read. The documents are not
+ * collected, the document list of the parsed response only contains numFound, start and
+ * maxScore.
+ *
+ * SolrJ 3.6 has no streaming callback, so the codec intercepts the array of documents that
+ * follows the header of a document list.
+ *
+ * The documents are mapped with the callbacks of the given factory, i.e. the custom factory of the
+ * {@link SolrSearchSettings}. The response is not complete while its documents are read, so the
+ * callbacks get an empty response.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+class StreamingResponseParser<T extends Mapping> extends BinaryResponseParser {
+
+	private final FieldDefinitionGenerator generator;
+	private final Class<T> mappingClass;
+	private final ResultHandler<T> handler;
+	private final SolrResponseCallbackFactory callbackFactory;
+	private final QueryResponse emptyResponse = new QueryResponse();
+
+	StreamingResponseParser(final FieldDefinitionGenerator generator, final Class<T> mappingClass, final ResultHandler<T> handler) {
+		this(generator, mappingClass, handler, new StandardCallbackFactory());
+	}
+
+	StreamingResponseParser(final FieldDefinitionGenerator generator, final Class<T> mappingClass, final ResultHandler<T> handler,
+		final SolrResponseCallbackFactory callbackFactory) {
+		this.generator = generator;
+		this.mappingClass = mappingClass;
+		this.handler = handler;
+		this.callbackFactory = callbackFactory;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public NamedList<Object> processResponse(final InputStream body, final String encoding) {
+		try {
+			return (NamedList<Object>) new StreamingCodec().unmarshal(body);
+		} catch (IOException e) {
+			throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "could not parse the streamed solr response.", e);
+		}
+	}
+
+	private void handleDocument(final SolrDocument document) {
+		handler.handle(generator.enhanceWithInterceptor(mappingClass, callbackFactory.createCallbackForDocument(emptyResponse, document)));
+	}
+
+	private class StreamingCodec extends JavaBinCodec {
+		private boolean readingDocuments;
+
+		@Override
+		public SolrDocumentList readSolrDocumentList(final FastInputStream dis) throws IOException {
+			SolrDocumentList documents = new SolrDocumentList();
+			List<?> header = (List<?>) readVal(dis);
+			documents.setNumFound((Long) header.get(0));
+			documents.setStart((Long) header.get(1));
+			documents.setMaxScore((Float) header.get(2));
+			readingDocuments = true;
+			readVal(dis);
+			return documents;
+		}
+
+		@Override
+		public List readArray(final FastInputStream dis) throws IOException {
+			if (!readingDocuments) {
+				return super.readArray(dis);
+			}
+			// multi valued fields of a document are arrays too, they are read as usual
+			readingDocuments = false;
+			int size = readSize(dis);
+			for (int i = 0; i < size; i++) {
+				Object document = readVal(dis);
+				if (document instanceof SolrDocument) {
+					handleDocument((SolrDocument) document);
+				}
+			}
+			return Collections.emptyList();
+		}
+	}
+}
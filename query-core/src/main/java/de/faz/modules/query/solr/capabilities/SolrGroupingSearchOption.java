@@ -1,7 +1,9 @@
 package de.faz.modules.query.solr.capabilities;
 
+import com.google.common.base.Optional;
 import de.faz.modules.query.GroupingSearchOption;
 import de.faz.modules.query.Query;
+import de.faz.modules.query.capabilities.Degradable;
 import de.faz.modules.query.capabilities.EnrichQueryExecutor;
 import de.faz.modules.query.fields.FieldDefinitionGenerator;
 import de.faz.modules.query.solr.internal.SolrEnrichQueryExecutor;
@@ -10,7 +12,9 @@ import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.common.params.GroupParams;
 
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
-public class SolrGroupingSearchOption extends GroupingSearchOption {
+public class SolrGroupingSearchOption extends GroupingSearchOption implements Degradable {
+
+	private static final int DEGRADED_LIMIT = 1;
 
 	public SolrGroupingSearchOption(final FieldDefinitionGenerator generator) {
 		super(generator);
@@ -21,21 +25,38 @@ public class SolrGroupingSearchOption extends GroupingSearchOption {
 		return new SolrEnrichQueryExecutor() {
 			@Override
 			public void enrich(final SolrQuery query) {
-				CharSequence fieldName = getFieldName();
-				query.setParam(GroupParams.GROUP, true);
-				query.setParam(GroupParams.GROUP_MAIN, isMerge());
-				if(StringUtils.isNotEmpty(fieldName)) {
-					query.setParam(GroupParams.GROUP_FIELD, fieldName.toString());
-				}
-
-				if(getLimit() != null) {
-					query.setParam(GroupParams.GROUP_LIMIT, String.valueOf(getLimit()));
-				}
-
-				for(Query groupQuery : getGroupQueries()) {
-					query.add(GroupParams.GROUP_QUERY, groupQuery.toString());
-				}
+				enrichGrouping(query, getLimit());
 			}
 		};
 	}
+
+	/**
+	 * Under load only the first document of every group is requested.
+	 */
+	@Override
+	public Optional<EnrichQueryExecutor> getDegradedQueryExecutor() {
+		return Optional.<EnrichQueryExecutor>of(new SolrEnrichQueryExecutor() {
+			@Override
+			public void enrich(final SolrQuery query) {
+				enrichGrouping(query, DEGRADED_LIMIT);
+			}
+		});
+	}
+
+	private void enrichGrouping(final SolrQuery query, final Integer limit) {
+		CharSequence fieldName = getFieldName();
+		query.setParam(GroupParams.GROUP, true);
+		query.setParam(GroupParams.GROUP_MAIN, isMerge());
+		if(StringUtils.isNotEmpty(fieldName)) {
+			query.setParam(GroupParams.GROUP_FIELD, fieldName.toString());
+		}
+
+		if(limit != null) {
+			query.setParam(GroupParams.GROUP_LIMIT, String.valueOf(limit));
+		}
+
+		for(Query groupQuery : getGroupQueries()) {
+			query.add(GroupParams.GROUP_QUERY, groupQuery.toString());
+		}
+	}
 }
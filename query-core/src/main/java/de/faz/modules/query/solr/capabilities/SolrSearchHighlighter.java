@@ -1,7 +1,9 @@
 package de.faz.modules.query.solr.capabilities;
 
+import com.google.common.base.Optional;
 import de.faz.modules.query.fields.MapToField;
 import de.faz.modules.query.SearchHighlighter;
+import de.faz.modules.query.capabilities.Degradable;
 import de.faz.modules.query.capabilities.EnrichQueryExecutor;
 import de.faz.modules.query.fields.FieldDefinitionGenerator;
 import de.faz.modules.query.solr.internal.SolrEnrichQueryExecutor;
@@ -15,11 +17,14 @@ import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.params.HighlightParams;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
-public class SolrSearchHighlighter extends SearchHighlighter implements SolrResponseCallbackFactory {
+public class SolrSearchHighlighter extends SearchHighlighter implements SolrResponseCallbackFactory, Degradable {
+
+	private static final String ID_FIELD = "contentId";
 
 	public SolrSearchHighlighter(final FieldDefinitionGenerator generator) {
 		super(generator);
@@ -42,19 +47,32 @@ public class SolrSearchHighlighter extends SearchHighlighter implements SolrResp
 				if(highlightingQuery != null) {
 					query.setParam(HighlightParams.Q, highlightingQuery.toString());
 				}
+
+				// the highlighting result is mapped by the id, so it must be part of a restricted field list
+				if(query.getFields() != null && !Arrays.asList(query.getFields().split(",")).contains(ID_FIELD)) {
+					query.addField(ID_FIELD);
+				}
 			}
 		};
 	}
 
+	/**
+	 * Highlighting is dropped under load, the documents are mapped with their stored values then.
+	 */
+	@Override
+	public Optional<EnrichQueryExecutor> getDegradedQueryExecutor() {
+		return Optional.absent();
+	}
+
 	@Override
 	public Callback createCallbackForDocument(final QueryResponse response, final SolrDocument document) {
 		return new MethodInterceptor() {
 			@Override
 			public Object intercept(final Object o, final Method method, final Object[] objects, final MethodProxy methodProxy) throws Throwable {
 				final MapToField mapping = method.getAnnotation(MapToField.class);
-				final String docId = (String)document.getFieldValue("contentId");
+				final String docId = (String)document.getFieldValue(ID_FIELD);
 				if(mapping != null) {
-					final Map<String, List<String>> highlightingResult = response.getHighlighting().get(docId);
+					final Map<String, List<String>> highlightingResult = response.getHighlighting() != null ? response.getHighlighting().get(docId) : null;
 					if(hasHighlightingForField(mapping.value(), highlightingResult)) {
 						return highlightingResult.get(mapping.value()).get(0);
 					} else {
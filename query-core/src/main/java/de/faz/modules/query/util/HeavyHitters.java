@@ -0,0 +1,180 @@
+package de.faz.modules.query.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Finds the queries with the highest weight, e.g. the most frequent or the most expensive ones, with a
+ * fixed amount of memory. The weights are summed up in a count-min sketch and the queries with the
+ * highest estimates are kept in a top list. An estimate is never too low; with a probability of 98%
+ * it is too high by at most <code>e / width</code> of the total weight.
+ *
+ * Adding a weight only updates the sketch without a lock. The top list is locked when a new query
+ * enters it, a query whose estimate is not above the smallest estimate of the list when it was last
+ * searched is rejected without a lock.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class HeavyHitters {
+
+	public static final int DEFAULT_WIDTH = 2048;
+
+	private static final int DEPTH = 4;
+
+	private final int width;
+	private final int maxSize;
+	private final AtomicLongArray sketch;
+	private final ConcurrentMap<Long, QueryFingerprint> topList = new ConcurrentHashMap<>();
+	private final AtomicLong totalWeight = new AtomicLong();
+
+	private volatile long floor;
+
+	/**
+	 * @param width the number of counters in every row of the sketch
+	 * @param maxSize the number of queries that are kept in the top list
+	 */
+	public HeavyHitters(final int width, final int maxSize) {
+		if (width < 1 || maxSize < 1) {
+			throw new IllegalArgumentException("the width of the sketch and the size of the top list must be positive.");
+		}
+		this.width = width;
+		this.maxSize = maxSize;
+		this.sketch = new AtomicLongArray(DEPTH * width);
+	}
+
+	/**
+	 * Adds the weight to the query and returns its new estimate.
+	 */
+	public long add(@Nonnull final QueryFingerprint fingerprint, final long weight) {
+		long hash = fingerprint.hash().asLong();
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			estimate = Math.min(estimate, sketch.addAndGet(getIndex(hash, row), weight));
+		}
+		totalWeight.addAndGet(weight);
+		if (estimate > floor && !topList.containsKey(hash)) {
+			offer(hash, fingerprint, estimate);
+		}
+		return estimate;
+	}
+
+	private synchronized void offer(final long hash, final QueryFingerprint fingerprint, final long estimate) {
+		if (topList.containsKey(hash)) {
+			return;
+		}
+		if (topList.size() < maxSize) {
+			topList.put(hash, fingerprint);
+			return;
+		}
+		Long smallest = null;
+		long smallestEstimate = Long.MAX_VALUE;
+		for (Long candidate : topList.keySet()) {
+			long candidateEstimate = estimate(candidate);
+			if (candidateEstimate < smallestEstimate) {
+				smallest = candidate;
+				smallestEstimate = candidateEstimate;
+			}
+		}
+		// the estimates only grow, so the floor stays a lower bound until the next search
+		floor = smallestEstimate;
+		if (estimate > smallestEstimate) {
+			topList.remove(smallest);
+			topList.put(hash, fingerprint);
+		}
+	}
+
+	/**
+	 * Returns the estimated weight of the query, it is never too low.
+	 */
+	public long estimate(@Nonnull final QueryFingerprint fingerprint) {
+		return estimate(fingerprint.hash().asLong());
+	}
+
+	private long estimate(final long hash) {
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			estimate = Math.min(estimate, sketch.get(getIndex(hash, row)));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Derives the columns of all rows from one hash, see Kirsch and Mitzenmacher, "Less Hashing, Same Performance".
+	 */
+	private int getIndex(final long hash, final int row) {
+		int combined = (int) hash + row * (int) (hash >>> 32);
+		return row * width + (combined & Integer.MAX_VALUE) % width;
+	}
+
+	/**
+	 * Returns the queries of the top list with their estimates, the highest estimate first.
+	 */
+	@Nonnull
+	public List<Entry> getTop(final int size) {
+		List<Entry> entries = new ArrayList<>(topList.size());
+		for (Map.Entry<Long, QueryFingerprint> entry : topList.entrySet()) {
+			entries.add(new Entry(entry.getValue(), estimate(entry.getKey())));
+		}
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(final Entry e1, final Entry e2) {
+				return Long.compare(e2.estimate, e1.estimate);
+			}
+		});
+		return entries.subList(0, Math.min(size, entries.size()));
+	}
+
+	/**
+	 * @return the number of queries in the top list
+	 */
+	public int getSize() {
+		return topList.size();
+	}
+
+	/**
+	 * @return the sum of all weights that were added
+	 */
+	public long getTotalWeight() {
+		return totalWeight.get();
+	}
+
+	public synchronized void clear() {
+		for (int i = 0; i < sketch.length(); i++) {
+			sketch.set(i, 0);
+		}
+		topList.clear();
+		totalWeight.set(0);
+		floor = 0;
+	}
+
+	/**
+	 * A query of the top list with its estimated weight.
+	 */
+	public static class Entry {
+		private final QueryFingerprint fingerprint;
+		private final long estimate;
+
+		Entry(final QueryFingerprint fingerprint, final long estimate) {
+			this.fingerprint = fingerprint;
+			this.estimate = estimate;
+		}
+
+		@Nonnull
+		public QueryFingerprint getFingerprint() {
+			return fingerprint;
+		}
+
+		public long getEstimate() {
+			return estimate;
+		}
+	}
+}
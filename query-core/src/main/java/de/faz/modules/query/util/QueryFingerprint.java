@@ -0,0 +1,194 @@
+package de.faz.modules.query.util;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * The canonical form of a query: its parameters sorted by name, the values of a parameter in the
+ * order they were added. Two queries with the same parameters in another order have the same
+ * fingerprint, so it identifies a query in caches and statistics.
+ *
+ * The hash is computed from the parameters without rendering them. The string form
+ * <code>name=value&amp;name=value</code> is only created when it is asked for; the characters
+ * <code>%&amp;=+</code> and line breaks are escaped, so it can be {@link #parse(String) parsed}
+ * again and written line by line.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public final class QueryFingerprint {
+
+	private static final String ESCAPED_CHARS = "%&=+\r\n";
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private final String[] names;
+	private final String[] values;
+
+	private HashCode hash;
+	private String canonical;
+
+	private QueryFingerprint(final String[] names, final String[] values) {
+		this.names = names;
+		this.values = values;
+	}
+
+	@Nonnull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Parses the string form of a fingerprint, see {@link #toString()}.
+	 *
+	 * @throws IllegalArgumentException if a parameter has no value
+	 */
+	@Nonnull
+	public static QueryFingerprint parse(@Nonnull final String fingerprint) {
+		Builder builder = builder();
+		if (fingerprint.isEmpty()) {
+			return builder.build();
+		}
+		for (String pair : fingerprint.split("&")) {
+			int separator = pair.indexOf('=');
+			if (separator < 0) {
+				throw new IllegalArgumentException("the query parameter " + pair + " has no value.");
+			}
+			builder.add(unescape(pair.substring(0, separator)), unescape(pair.substring(separator + 1)));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return a 128 bit murmur3 hash of the sorted parameters
+	 */
+	@Nonnull
+	public HashCode hash() {
+		if (hash == null) {
+			Hasher hasher = Hashing.murmur3_128().newHasher();
+			for (int i = 0; i < names.length; i++) {
+				// the lengths keep "a=b&c=d" apart from a single value "b&c=d"
+				hasher.putInt(names[i].length()).putString(names[i]).putInt(values[i].length()).putString(values[i]);
+			}
+			hash = hasher.hash();
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the parameters sorted by name
+	 */
+	@Nonnull
+	public ListMultimap<String, String> getParameters() {
+		ImmutableListMultimap.Builder<String, String> parameters = ImmutableListMultimap.builder();
+		for (int i = 0; i < names.length; i++) {
+			parameters.put(names[i], values[i]);
+		}
+		return parameters.build();
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof QueryFingerprint)) {
+			return false;
+		}
+		QueryFingerprint other = (QueryFingerprint) o;
+		return Arrays.equals(names, other.names) && Arrays.equals(values, other.values);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash().asInt();
+	}
+
+	@Override
+	public String toString() {
+		if (canonical == null) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < names.length; i++) {
+				if (i > 0) {
+					sb.append('&');
+				}
+				escape(names[i], sb);
+				sb.append('=');
+				escape(values[i], sb);
+			}
+			canonical = sb.toString();
+		}
+		return canonical;
+	}
+
+	private static void escape(final String value, final StringBuilder sb) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (ESCAPED_CHARS.indexOf(c) >= 0) {
+				sb.append('%').append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+
+	private static String unescape(final String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Collects the parameters of a fingerprint, the order of the parameters does not matter.
+	 */
+	public static class Builder {
+
+		private static final Comparator<String[]> BY_NAME = new Comparator<String[]>() {
+			@Override
+			public int compare(final String[] p1, final String[] p2) {
+				return p1[0].compareTo(p2[0]);
+			}
+		};
+
+		private final List<String[]> parameters = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		@Nonnull
+		public Builder add(@Nonnull final String name, @Nonnull final String value) {
+			Objects.requireNonNull(name, "A parameter of a fingerprint needs a name.");
+			Objects.requireNonNull(value, "A parameter of a fingerprint needs a value.");
+			parameters.add(new String[] {name, value});
+			return this;
+		}
+
+		@Nonnull
+		public QueryFingerprint build() {
+			// the sort is stable, so the values of a parameter keep their order
+			List<String[]> sorted = new ArrayList<>(parameters);
+			Collections.sort(sorted, BY_NAME);
+			String[] names = new String[sorted.size()];
+			String[] values = new String[sorted.size()];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = sorted.get(i)[0];
+				values[i] = sorted.get(i)[1];
+			}
+			return new QueryFingerprint(names, values);
+		}
+	}
+}
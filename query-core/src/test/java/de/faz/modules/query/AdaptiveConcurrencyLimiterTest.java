@@ -0,0 +1,154 @@
+package de.faz.modules.query;
+
+import de.faz.modules.query.exception.SearchRejectedException;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class AdaptiveConcurrencyLimiterTest {
+
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private SearchSettings settings;
+
+	@Before
+	public void setUp() {
+		settings = new SearchSettings(new FieldDefinitionGenerator());
+	}
+
+	@Test
+	public void acquire_belowLimit_countsSearchInFlight() {
+		AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(2, 1, 10, 0, 0);
+		underTest.acquire(settings);
+		underTest.acquire(settings);
+		assertEquals(2, underTest.getInFlight());
+	}
+
+	@Test
+	public void acquire_withFullQueue_throwsSearchRejectedException() {
+		AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(1, 1, 1, 0, 1000);
+		underTest.acquire(settings);
+		try {
+			underTest.acquire(settings);
+			fail("a search beyond the limit must be rejected when the queue is full");
+		} catch (SearchRejectedException e) {
+			assertEquals(1, underTest.getRejectedCount());
+		}
+	}
+
+	@Test(expected = SearchRejectedException.class)
+	public void acquire_withExceededQueueTime_throwsSearchRejectedException() {
+		AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(1, 1, 1, 1, 10);
+		underTest.acquire(settings);
+		underTest.acquire(settings);
+	}
+
+	@Test(expected = SearchRejectedException.class)
+	public void acquire_withExceededDeadline_doesNotWaitForQueueTime() {
+		AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(1, 1, 1, 1, 60000);
+		underTest.acquire(settings);
+		underTest.acquire(settings.withTimeout(0, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void acquire_withQueuedSearch_continuesWhenSlotIsReleased() throws Exception {
+		final AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(1, 1, 1, 1, 5000);
+		underTest.acquire(settings);
+		final CountDownLatch acquired = new CountDownLatch(1);
+		Thread waiting = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				underTest.acquire(settings);
+				acquired.countDown();
+			}
+		});
+		waiting.start();
+		while (underTest.getQueued() == 0) {
+			Thread.sleep(1);
+		}
+		underTest.release();
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		assertEquals(0, underTest.getQueued());
+	}
+
+	@Test
+	public void requestFinished_withLatencyNearMinimum_increasesLimit() {
+		AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(10, 1, 100, 0, 0);
+		for (int i = 0; i < 20; i++) {
+			acquireAll(underTest);
+			releaseAll(underTest, MILLIS);
+		}
+		assertTrue(underTest.getLimit() > 10);
+	}
+
+	@Test
+	public void requestFinished_withGrowingLatency_decreasesLimit() {
+		AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(50, 1, 100, 0, 0);
+		acquireAll(underTest);
+		releaseAll(underTest, MILLIS);
+		for (int i = 0; i < 10; i++) {
+			acquireAll(underTest);
+			releaseAll(underTest, 20 * MILLIS);
+		}
+		assertTrue(underTest.getLimit() < 50);
+	}
+
+	@Test
+	public void requestFinished_withFailedRequest_decreasesLimit() {
+		AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(10, 1, 100, 0, 0);
+		underTest.acquire(settings);
+		underTest.requestFinished(MILLIS, false);
+		underTest.release();
+		assertEquals(9, underTest.getLimit());
+	}
+
+	@Test
+	public void release_withoutRequest_keepsLimit() {
+		AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(10, 1, 100, 0, 0);
+		for (int i = 0; i < 20; i++) {
+			acquireAll(underTest);
+			while (underTest.getInFlight() > 0) {
+				underTest.release();
+			}
+		}
+		assertEquals(10, underTest.getLimit());
+		assertEquals(0, underTest.getInFlight());
+	}
+
+	@Test
+	public void requestFinished_withLowUtilization_keepsLimit() {
+		AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(10, 1, 100, 0, 0);
+		for (int i = 0; i < 20; i++) {
+			underTest.acquire(settings);
+			underTest.requestFinished(MILLIS, true);
+			underTest.release();
+		}
+		assertEquals(10, underTest.getLimit());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_withInitialLimitAboveMaxLimit_throwsException() {
+		new AdaptiveConcurrencyLimiter(20, 1, 10, 0, 0);
+	}
+
+	private void acquireAll(final AdaptiveConcurrencyLimiter limiter) {
+		while (limiter.getInFlight() < limiter.getLimit()) {
+			limiter.acquire(settings);
+		}
+	}
+
+	private void releaseAll(final AdaptiveConcurrencyLimiter limiter, final long latency) {
+		while (limiter.getInFlight() > 0) {
+			limiter.requestFinished(latency, true);
+			limiter.release();
+		}
+	}
+}
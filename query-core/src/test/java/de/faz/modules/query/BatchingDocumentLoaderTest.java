@@ -0,0 +1,184 @@
+package de.faz.modules.query;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import de.faz.modules.query.exception.SearchFailedException;
+import de.faz.modules.query.exception.SearchRejectedException;
+import de.faz.modules.query.fields.Mapping;
+import de.faz.modules.query.solr.SolrSearchContextFactory;
+import de.faz.modules.query.solr.StandInSolrServer;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class BatchingDocumentLoaderTest {
+
+	@Mock QueryExecutor executor;
+
+	private ScheduledExecutorService scheduler;
+	private BatchingDocumentLoader<TestMapping> underTest;
+
+	@Before
+	public void setUp() {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		MockedSearchContext context = new MockedSearchContext(executor);
+		TestMapping definition = context.createFieldDefinitionFor(TestMapping.class);
+		underTest = new BatchingDocumentLoader<>(context, TestMapping.class, definition.getField1(), new Function<TestMapping, String>() {
+			@Override
+			public String apply(final TestMapping document) {
+				return document.getField1();
+			}
+		}, scheduler).withBatchWindow(TimeUnit.MINUTES.toMillis(1));
+		when(executor.executeAsync(any(Query.class), any(SearchSettings.class))).thenAnswer(new FoundDocumentsAnswer("1", "3"));
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void dispatch_withSeveralLookups_sendsOneSearchForAllIds() throws Exception {
+		ListenableFuture<Optional<TestMapping>> first = underTest.load("1");
+		ListenableFuture<Optional<TestMapping>> second = underTest.load("2");
+		ListenableFuture<Optional<TestMapping>> third = underTest.load("3");
+		underTest.dispatch();
+
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		ArgumentCaptor<SearchSettings> settings = ArgumentCaptor.forClass(SearchSettings.class);
+		verify(executor).executeAsync(query.capture(), settings.capture());
+		assertEquals("field1:(1 OR 2 OR 3)", query.getValue().toString());
+		assertEquals(3, settings.getValue().getPageSize());
+		assertEquals("1", first.get(1, TimeUnit.SECONDS).get().getField1());
+		assertFalse(second.get(1, TimeUnit.SECONDS).isPresent());
+		assertEquals("3", third.get(1, TimeUnit.SECONDS).get().getField1());
+		assertEquals(1, underTest.getBatchCount());
+	}
+
+	@Test
+	public void load_withSameIdTwice_sharesLookup() throws Exception {
+		ListenableFuture<Optional<TestMapping>> first = underTest.load("1");
+		ListenableFuture<Optional<TestMapping>> second = underTest.load("1");
+		underTest.dispatch();
+
+		assertTrue(first == second);
+		assertEquals(2, underTest.getLoadCount());
+		assertTrue(first.get(1, TimeUnit.SECONDS).isPresent());
+	}
+
+	@Test
+	public void load_withFullBatch_sendsBatchImmediately() throws Exception {
+		underTest.withMaxBatchSize(2);
+		underTest.load("1");
+		ListenableFuture<Optional<TestMapping>> second = underTest.load("2");
+		underTest.load("3");
+
+		assertFalse(second.get(1, TimeUnit.SECONDS).isPresent());
+		verify(executor, times(1)).executeAsync(any(Query.class), any(SearchSettings.class));
+	}
+
+	@Test
+	public void load_afterBatchWindow_sendsBatch() throws Exception {
+		underTest.withBatchWindow(5);
+		ListenableFuture<Optional<TestMapping>> future = underTest.load("3");
+
+		assertEquals("3", future.get(1, TimeUnit.SECONDS).get().getField1());
+	}
+
+	@Test(expected = SearchRejectedException.class)
+	public void dispatch_withRejectedSearch_failsAllLookups() throws Throwable {
+		doThrow(new SearchRejectedException("overloaded")).when(executor).executeAsync(any(Query.class), any(SearchSettings.class));
+		ListenableFuture<Optional<TestMapping>> future = underTest.load("1");
+		underTest.dispatch();
+		try {
+			future.get(1, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Test(expected = SearchFailedException.class)
+	public void dispatch_withUnreachableSolr_failsAllLookups() throws Throwable {
+		StandInSolrServer solr = new StandInSolrServer();
+		solr.close();
+		SearchContext context = SolrSearchContextFactory.createSearchContext(new HttpSolrServer(solr.getUrl()));
+		TestMapping definition = context.createFieldDefinitionFor(TestMapping.class);
+		underTest = new BatchingDocumentLoader<>(context, TestMapping.class, definition.getField1(), new Function<TestMapping, String>() {
+			@Override
+			public String apply(final TestMapping document) {
+				return document.getField1();
+			}
+		}, scheduler);
+		ListenableFuture<Optional<TestMapping>> future = underTest.load("1");
+		underTest.dispatch();
+		try {
+			future.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static class FoundDocumentsAnswer implements Answer<ListenableFuture<SearchContext.SearchResult>> {
+		private final String[] ids;
+
+		FoundDocumentsAnswer(final String... ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public ListenableFuture<SearchContext.SearchResult> answer(final InvocationOnMock invocation) throws Throwable {
+			final List<TestMapping> documents = new ArrayList<>();
+			for (String id : ids) {
+				TestMapping document = mock(TestMapping.class);
+				when(document.getField1()).thenReturn(id);
+				documents.add(document);
+			}
+			return Futures.<SearchContext.SearchResult>immediateFuture(new SearchContext.SearchResult(ids.length) {
+				@Override
+				@SuppressWarnings("unchecked")
+				public <S extends Mapping> Iterator<S> getResultsForMapping(final Class<S> mapping) {
+					return (Iterator<S>) documents.iterator();
+				}
+
+				@Override
+				public long getNumCount() {
+					return documents.size();
+				}
+
+				@Override
+				public long getNumberOfPages() {
+					return 1;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package de.faz.modules.query;
+
+import com.google.common.util.concurrent.SettableFuture;
+import de.faz.modules.query.exception.SearchRejectedException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class ConcurrencyLimitingQueryExecutorTest {
+
+	@Mock QueryExecutor delegate;
+	@Mock Query query;
+	@Mock SearchSettings settings;
+	@Mock SearchContext.SearchResult result;
+
+	private AdaptiveConcurrencyLimiter limiter;
+	private ConcurrencyLimitingQueryExecutor underTest;
+
+	@Before
+	public void setUp() {
+		limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0, 0);
+		underTest = new ConcurrencyLimitingQueryExecutor(delegate, limiter);
+	}
+
+	@Test
+	public void execute_withFreeSlot_returnsResultOfDelegate() {
+		when(delegate.execute(query, settings)).thenReturn(result);
+		assertSame(result, underTest.execute(query, settings));
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void execute_withFailingDelegate_releasesSlot() {
+		when(delegate.execute(query, settings)).thenThrow(new IllegalStateException("failed"));
+		try {
+			underTest.execute(query, settings);
+			fail("the exception of the delegate must be thrown");
+		} catch (IllegalStateException e) {
+			assertEquals(0, limiter.getInFlight());
+		}
+	}
+
+	@Test
+	public void executeAsync_withPendingFuture_holdsSlotUntilCompleted() {
+		SettableFuture<SearchContext.SearchResult> future = SettableFuture.create();
+		when(delegate.executeAsync(query, settings)).thenReturn(future);
+		underTest.executeAsync(query, settings);
+		assertEquals(1, limiter.getInFlight());
+		future.set(result);
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void count_withReachedLimit_throwsSearchRejectedException() {
+		when(delegate.executeAsync(query, settings)).thenReturn(SettableFuture.<SearchContext.SearchResult>create());
+		underTest.executeAsync(query, settings);
+		try {
+			underTest.count(query, settings);
+			fail("a search beyond the limit must be rejected");
+		} catch (SearchRejectedException e) {
+			verify(delegate, times(0)).count(any(Query.class), any(SearchSettings.class));
+		}
+	}
+
+	@Test
+	public void stream_withFreeSlot_forwardsToDelegate() {
+		ResultHandler<TestMapping> handler = new ResultHandler<TestMapping>() {
+			@Override
+			public void handle(final TestMapping result) {
+			}
+		};
+		when(delegate.stream(query, settings, TestMapping.class, handler)).thenReturn(3L);
+		assertEquals(3L, underTest.stream(query, settings, TestMapping.class, handler));
+		assertEquals(0, limiter.getInFlight());
+	}
+}
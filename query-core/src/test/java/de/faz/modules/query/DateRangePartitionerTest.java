@@ -0,0 +1,51 @@
+package de.faz.modules.query;
+
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class DateRangePartitionerTest {
+
+	private MockedSearchContext context;
+	private TermQueryPart dateField;
+
+	@Before
+	public void setUp() {
+		context = new MockedSearchContext(null, new FieldDefinitionGenerator());
+		TestMapping fieldDef = context.createFieldDefinitionFor(TestMapping.class);
+		dateField = context.createQuery().term(fieldDef.getField2());
+	}
+
+	@Test
+	public void createPartitions_withThreePartitions_createsAdjacentRangesWithOpenEnds() {
+		List<Query> partitions = new DateRangePartitioner(dateField, new Date(0), new Date(3000), 3).createPartitions(context);
+		assertEquals(4, partitions.size());
+		assertEquals("field2:[* TO 1970-01-01T00:00:00.999Z]", partitions.get(0).toString());
+		assertEquals("field2:[1970-01-01T00:00:01.000Z TO 1970-01-01T00:00:01.999Z]", partitions.get(1).toString());
+		assertEquals("field2:[1970-01-01T00:00:02.000Z TO *]", partitions.get(2).toString());
+	}
+
+	@Test
+	public void createPartitions_withOnePartition_createsOpenRange() {
+		List<Query> partitions = new DateRangePartitioner(dateField, new Date(0), new Date(3000), 1).createPartitions(context);
+		assertEquals("field2:[* TO *]", partitions.get(0).toString());
+	}
+
+	@Test
+	public void createPartitions_addsPartitionForDocumentsWithoutDate() {
+		List<Query> partitions = new DateRangePartitioner(dateField, new Date(0), new Date(3000), 2).createPartitions(context);
+		assertEquals(3, partitions.size());
+		assertEquals("NOT (field2:[* TO *])", partitions.get(2).toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_withEndBeforeStart_throwsException() {
+		new DateRangePartitioner(dateField, new Date(3000), new Date(0), 2);
+	}
+}
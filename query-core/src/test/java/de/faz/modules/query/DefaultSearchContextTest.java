@@ -84,6 +84,35 @@ public class DefaultSearchContextTest {
 		verify(executor).execute(q, settings);
 	}
 
+	@Test
+	public void executeAsync_withDecorator_callsDecoratorAndExecutor() {
+		SearchDecorator decorator = mock(SearchDecorator.class);
+		underTest.addSearchDecorator(decorator);
+		underTest.executeAsync(q, settings);
+		verify(decorator).decorateQuery(q);
+		verify(decorator).decorateSettings(settings);
+		verify(executor).executeAsync(q, settings);
+	}
+
+	@Test
+	public void stream_withDecorator_callsDecoratorAndExecutor() {
+		SearchDecorator decorator = mock(SearchDecorator.class);
+		ResultHandler<TestMapping> handler = mock(ResultHandler.class);
+		underTest.addSearchDecorator(decorator);
+		underTest.stream(q, settings, TestMapping.class, handler);
+		verify(decorator).decorateSettings(settings);
+		verify(executor).stream(q, settings, TestMapping.class, handler);
+	}
+
+	@Test
+	public void count_withDecorator_callsDecoratorAndExecutor() {
+		SearchDecorator decorator = mock(SearchDecorator.class);
+		underTest.addSearchDecorator(decorator);
+		underTest.count(q, settings);
+		verify(decorator).decorateSettings(settings);
+		verify(executor).count(q, settings);
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void createFieldDefinitionFor_withoutClass_throwsIllegalArgumentException() {
 		underTest.createFieldDefinitionFor(null);
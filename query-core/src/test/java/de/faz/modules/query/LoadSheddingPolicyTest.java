@@ -0,0 +1,59 @@
+package de.faz.modules.query;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class LoadSheddingPolicyTest {
+
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void shouldDegrade_withLatencyBelowThreshold_returnsFalse() {
+		LoadSheddingPolicy underTest = new LoadSheddingPolicy(100, 10);
+		finishSearches(underTest, 10, 50 * MILLIS);
+		assertFalse(underTest.shouldDegrade());
+	}
+
+	@Test
+	public void shouldDegrade_withLatencyAboveThreshold_returnsTrue() {
+		LoadSheddingPolicy underTest = new LoadSheddingPolicy(100, 10);
+		finishSearches(underTest, 1, 500 * MILLIS);
+		assertTrue(underTest.shouldDegrade());
+	}
+
+	@Test
+	public void shouldDegrade_withTooManySearchesInFlight_returnsTrue() {
+		LoadSheddingPolicy underTest = new LoadSheddingPolicy(100, 2);
+		for (int i = 0; i < 3; i++) {
+			underTest.searchStarted();
+		}
+		assertTrue(underTest.shouldDegrade());
+	}
+
+	@Test
+	public void shouldDegrade_withLatencySlightlyBelowThreshold_staysDegradedUntilRecovered() {
+		LoadSheddingPolicy underTest = new LoadSheddingPolicy(100, 10);
+		finishSearches(underTest, 1, 200 * MILLIS);
+		finishSearches(underTest, 30, 90 * MILLIS);
+		assertTrue(underTest.shouldDegrade());
+		finishSearches(underTest, 30, 10 * MILLIS);
+		assertFalse(underTest.shouldDegrade());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void withMaxRows_withoutRows_throwsException() {
+		new LoadSheddingPolicy().withMaxRows(0);
+	}
+
+	private void finishSearches(final LoadSheddingPolicy policy, final int count, final long latency) {
+		for (int i = 0; i < count; i++) {
+			policy.searchStarted();
+			policy.searchFinished(latency);
+		}
+	}
+}
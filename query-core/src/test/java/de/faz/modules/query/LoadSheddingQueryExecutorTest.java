@@ -0,0 +1,151 @@
+package de.faz.modules.query;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import de.faz.modules.query.fields.Mapping;
+import de.faz.modules.query.solr.SolrSearchSettings;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class LoadSheddingQueryExecutorTest {
+
+	@Mock QueryExecutor delegate;
+	@Mock Query query;
+
+	private SearchSettings settings;
+	private LoadSheddingPolicy policy;
+	private LoadSheddingQueryExecutor underTest;
+
+	@Before
+	public void setUp() {
+		settings = new SearchSettings(new FieldDefinitionGenerator()).withPageSize(50);
+		policy = new LoadSheddingPolicy(100, 10).withMaxRows(20);
+		underTest = new LoadSheddingQueryExecutor(delegate, policy);
+	}
+
+	@Test
+	public void execute_withoutOverload_executesCompleteSearch() {
+		when(delegate.execute(query, settings)).thenAnswer(new SettingsAnswer());
+		SearchContext.SearchResult result = underTest.execute(query, settings);
+		assertFalse(result.isDegraded());
+		assertEquals(50, ((TestResult) result).rowsToFetch);
+	}
+
+	@Test
+	public void execute_withOverload_degradesSearchAndRestoresSettings() {
+		overload();
+		when(delegate.execute(eq(query), any(SearchSettings.class))).thenAnswer(new SettingsAnswer());
+		SearchContext.SearchResult result = underTest.execute(query, settings);
+		assertTrue(result.isDegraded());
+		assertTrue(((TestResult) result).degraded);
+		assertEquals(20, ((TestResult) result).rowsToFetch);
+		assertFalse(settings.isDegraded());
+		assertEquals(1, policy.getDegradedCount());
+	}
+
+	@Test
+	public void executeAsync_withOverload_marksResultAsDegraded() throws Exception {
+		overload();
+		when(delegate.executeAsync(eq(query), any(SearchSettings.class))).thenReturn(Futures.<SearchContext.SearchResult>immediateFuture(new TestResult(settings)));
+		assertTrue(underTest.executeAsync(query, settings).get(1, TimeUnit.SECONDS).isDegraded());
+		assertFalse(settings.isDegraded());
+		assertEquals(0, policy.getInFlight());
+	}
+
+	@Test
+	public void executeAsync_withOverload_doesNotChangeSettingsUntilCompletion() throws Exception {
+		overload();
+		SettableFuture<SearchContext.SearchResult> future = SettableFuture.create();
+		ArgumentCaptor<SearchSettings> captor = ArgumentCaptor.forClass(SearchSettings.class);
+		when(delegate.executeAsync(eq(query), captor.capture())).thenReturn(future);
+		settings.startAt(100);
+		underTest.executeAsync(query, settings);
+
+		SearchSettings degraded = captor.getValue();
+		assertNotSame(settings, degraded);
+		assertTrue(degraded.isDegraded());
+		assertEquals(20, degraded.getRowsToFetch());
+		assertEquals(Integer.valueOf(100), degraded.getOffset().get());
+		assertFalse(settings.isDegraded());
+		assertEquals(50, settings.getRowsToFetch());
+	}
+
+	@Test
+	public void execute_withOverload_keepsTypeOfSettings() {
+		overload();
+		SolrSearchSettings solrSettings = new SolrSearchSettings(new FieldDefinitionGenerator());
+		ArgumentCaptor<SearchSettings> captor = ArgumentCaptor.forClass(SearchSettings.class);
+		when(delegate.execute(eq(query), captor.capture())).thenAnswer(new SettingsAnswer());
+		underTest.execute(query, solrSettings);
+
+		assertTrue(captor.getValue() instanceof SolrSearchSettings);
+		assertFalse(solrSettings.isDegraded());
+	}
+
+	@Test
+	public void count_withOverload_doesNotDegradeSearch() {
+		overload();
+		when(delegate.count(query, settings)).thenReturn(5L);
+		assertEquals(5L, underTest.count(query, settings));
+		assertEquals(0, policy.getDegradedCount());
+	}
+
+	private void overload() {
+		policy.searchStarted();
+		policy.searchFinished(TimeUnit.SECONDS.toNanos(1));
+	}
+
+	private class SettingsAnswer implements Answer<SearchContext.SearchResult> {
+		@Override
+		public SearchContext.SearchResult answer(final InvocationOnMock invocation) throws Throwable {
+			return new TestResult((SearchSettings) invocation.getArguments()[1]);
+		}
+	}
+
+	private static class TestResult extends SearchContext.SearchResult {
+		private final boolean degraded;
+		private final int rowsToFetch;
+
+		TestResult(final SearchSettings settings) {
+			super(settings.getPageSize());
+			this.degraded = settings.isDegraded();
+			this.rowsToFetch = settings.getRowsToFetch();
+		}
+
+		@Override
+		public <S extends Mapping> Iterator<S> getResultsForMapping(final Class<S> mapping) {
+			return Collections.emptyIterator();
+		}
+
+		@Override
+		public long getNumCount() {
+			return 0;
+		}
+
+		@Override
+		public long getNumberOfPages() {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package de.faz.modules.query;
+
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import de.faz.modules.query.fields.Mapping;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Optional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class PartitionedExportTest {
+
+	@Mock SearchContext context;
+	@Mock Query query;
+
+	private final List<Integer> filterCounts = Collections.synchronizedList(new ArrayList<Integer>());
+	private volatile String failingPartition;
+	private FieldDefinitionGenerator generator;
+	private SearchSettings settings;
+	private ExecutorService executorService;
+	private PartitionedExport underTest;
+
+	@Before
+	public void setUp() {
+		generator = new FieldDefinitionGenerator();
+		TestMapping fieldDef = generator.createFieldDefinition(TestMapping.class);
+		settings = new SearchSettings(generator).withPageSize(2).withKeysetPaging(fieldDef.getField2());
+		executorService = Executors.newFixedThreadPool(3);
+		when(context.withSettings()).thenAnswer(new Answer<SearchSettings>() {
+			@Override
+			public SearchSettings answer(final InvocationOnMock invocation) throws Throwable {
+				return new SearchSettings(generator);
+			}
+		});
+		answerWithThreeResultsPerPartition();
+		underTest = new PartitionedExport(context, new Partitioner() {
+			@Override
+			public List<Query> createPartitions(final SearchContext context) {
+				return Arrays.asList(createPartition("p0"), createPartition("p1"), createPartition("p2"));
+			}
+		}, executorService);
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void export_withOneHandler_handsResultsOfAllPartitionsToHandler() {
+		final List<String> values = new ArrayList<>();
+		long count = underTest.export(query, settings, TestMapping.class, new ResultHandler<TestMapping>() {
+			@Override
+			public void handle(final TestMapping result) {
+				values.add(result.getField1());
+			}
+		});
+		assertEquals(9, count);
+		Collections.sort(values);
+		assertEquals(Arrays.asList("p0-0", "p0-1", "p0-2", "p1-0", "p1-1", "p1-2", "p2-0", "p2-1", "p2-2"), values);
+	}
+
+	@Test
+	public void export_withHandlerPerPartition_handsResultsOfPartitionToItsHandler() {
+		List<CollectingHandler> handlers = Arrays.asList(new CollectingHandler(), new CollectingHandler(), new CollectingHandler());
+		assertEquals(9, underTest.export(query, settings, TestMapping.class, handlers));
+		assertEquals(Arrays.asList("p1-0", "p1-1", "p1-2"), handlers.get(1).values);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void export_withWrongNumberOfHandlers_throwsException() {
+		underTest.export(query, settings, TestMapping.class, Arrays.asList(new CollectingHandler()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void export_withoutKeysetPaging_throwsException() {
+		underTest.export(query, new SearchSettings(generator), TestMapping.class, new CollectingHandler());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void export_withFailingPartition_throwsException() {
+		doThrow(new RuntimeException("search failed")).when(context).execute(any(Query.class), any(SearchSettings.class));
+		underTest.export(query, settings, TestMapping.class, new CollectingHandler());
+	}
+
+	@Test
+	public void export_withDecoratedPages_executesEveryPageWithFreshSettings() {
+		underTest.export(query, settings, TestMapping.class, new CollectingHandler());
+
+		assertEquals(6, filterCounts.size());
+		for (int filterCount : filterCounts) {
+			assertEquals(1, filterCount);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void export_withFailedPage_throwsException() {
+		failingPartition = "p1";
+		underTest.export(query, settings, TestMapping.class, new CollectingHandler());
+	}
+
+	private Query createPartition(final String name) {
+		Query partition = mock(Query.class);
+		when(partition.toString()).thenReturn(name);
+		return partition;
+	}
+
+	private void answerWithThreeResultsPerPartition() {
+		when(context.execute(any(Query.class), any(SearchSettings.class))).thenAnswer(new Answer<SearchContext.SearchResult>() {
+			@Override
+			public SearchContext.SearchResult answer(final InvocationOnMock invocation) throws Throwable {
+				SearchSettings pageSettings = (SearchSettings) invocation.getArguments()[1];
+				String partition = pageSettings.filterList.get(0).toString();
+				filterCounts.add(pageSettings.filterList.size());
+				// like a decorator of a context, which adds its filter to the settings of every search
+				pageSettings.filterBy(mock(Query.class));
+				boolean secondPage = pageSettings.continuationToken.isPresent();
+				boolean failed = secondPage && partition.equals(failingPartition);
+				final List<TestMapping> page = new ArrayList<>();
+				for (int i = secondPage ? 2 : 0; i < (secondPage && !failed ? 3 : 2); i++) {
+					TestMapping mapping = mock(TestMapping.class);
+					when(mapping.getField1()).thenReturn(partition + "-" + i);
+					page.add(mapping);
+				}
+				final Optional<String> token = secondPage ? Optional.<String>absent() : Optional.of("token");
+				SearchContext.SearchResult result = new SearchContext.SearchResult(pageSettings.getPageSize()) {
+					@Override
+					public Optional<String> getContinuationToken() {
+						return token;
+					}
+
+					@Override
+					public <S extends Mapping> Iterator<S> getResultsForMapping(final Class<S> mapping) {
+						return (Iterator<S>) page.iterator();
+					}
+
+					@Override
+					public long getNumCount() {
+						return 3;
+					}
+
+					@Override
+					public long getNumberOfPages() {
+						return 2;
+					}
+				};
+				if (failed) {
+					result.markFailed();
+				}
+				return result;
+			}
+		});
+	}
+
+	private static class CollectingHandler implements ResultHandler<TestMapping> {
+		private final List<String> values = new ArrayList<>();
+
+		@Override
+		public void handle(final TestMapping result) {
+			values.add(result.getField1());
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package de.faz.modules.query;
+
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import de.faz.modules.query.fields.Mapping;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class PrefetchingResultIteratorTest {
+
+	@Mock SearchContext context;
+	@Mock Query query;
+
+	private SearchSettings settings;
+	private ExecutorService executorService;
+
+	@Before
+	public void setUp() {
+		settings = new SearchSettings(new FieldDefinitionGenerator()).withPageSize(2);
+		executorService = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void next_withSeveralPages_returnsAllResultsInOrder() {
+		answerWithResults(5);
+		PrefetchingResultIterator<TestMapping> it = new PrefetchingResultIterator<>(context, query, settings, TestMapping.class, executorService);
+		List<String> values = new ArrayList<>();
+		while (it.hasNext()) {
+			values.add(it.next().getField1());
+		}
+		assertEquals(5, values.size());
+		assertEquals("0", values.get(0));
+		assertEquals("4", values.get(4));
+		verify(context, atMost(3)).execute(any(Query.class), any(SearchSettings.class));
+	}
+
+	@Test
+	public void hasNext_withoutResults_returnsFalse() {
+		answerWithResults(0);
+		PrefetchingResultIterator<TestMapping> it = new PrefetchingResultIterator<>(context, query, settings, TestMapping.class, executorService);
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void hasNext_withPrefetchDepth_fetchesOnlyBoundedNumberOfPages() throws Exception {
+		answerWithResults(100);
+		PrefetchingResultIterator<TestMapping> it = new PrefetchingResultIterator<>(context, query, settings, TestMapping.class, executorService, 1);
+		it.next();
+		Thread.sleep(200);
+		// one page is consumed, one is queued and one fetch waits for free space
+		verify(context, atMost(3)).execute(any(Query.class), any(SearchSettings.class));
+		it.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void hasNext_withFailingSearch_throwsException() {
+		when(context.execute(any(Query.class), any(SearchSettings.class))).thenThrow(new RuntimeException("search failed"));
+		PrefetchingResultIterator<TestMapping> it = new PrefetchingResultIterator<>(context, query, settings, TestMapping.class, executorService);
+		it.hasNext();
+	}
+
+	@Test
+	public void close_beforeEndOfResult_stopsBackgroundTask() throws Exception {
+		answerWithResults(100);
+		PrefetchingResultIterator<TestMapping> it = new PrefetchingResultIterator<>(context, query, settings, TestMapping.class, executorService);
+		it.next();
+		it.close();
+		assertFalse(it.hasNext());
+		executorService.shutdown();
+		assertEquals(true, executorService.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void next_withFilteringDecorator_addsFilterOncePerPage() {
+		QueryExecutor executor = mock(QueryExecutor.class);
+		final List<Integer> filterCounts = new ArrayList<>();
+		when(executor.execute(any(Query.class), any(SearchSettings.class))).thenAnswer(new Answer<SearchContext.SearchResult>() {
+			@Override
+			public SearchContext.SearchResult answer(final InvocationOnMock invocation) throws Throwable {
+				SearchSettings pageSettings = (SearchSettings) invocation.getArguments()[1];
+				filterCounts.add(pageSettings.filterList.size());
+				return createResult(pageSettings, 5);
+			}
+		});
+		MockedSearchContext decoratedContext = new MockedSearchContext(executor);
+		decoratedContext.addSearchDecorator(new SearchDecorator() {
+			@Override
+			public Query decorateQuery(final Query q) {
+				return q;
+			}
+
+			@Override
+			public SearchSettings decorateSettings(final SearchSettings s) {
+				return s.filterBy(mock(Query.class));
+			}
+		});
+		PrefetchingResultIterator<TestMapping> it = new PrefetchingResultIterator<>(decoratedContext, query, settings, TestMapping.class, executorService);
+		while (it.hasNext()) {
+			it.next();
+		}
+
+		assertEquals(3, filterCounts.size());
+		for (int filterCount : filterCounts) {
+			assertEquals(1, filterCount);
+		}
+		assertEquals(0, settings.filterList.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void hasNext_withFailedPage_throwsException() {
+		when(context.execute(any(Query.class), any(SearchSettings.class))).thenAnswer(new Answer<SearchContext.SearchResult>() {
+			@Override
+			public SearchContext.SearchResult answer(final InvocationOnMock invocation) throws Throwable {
+				SearchSettings pageSettings = (SearchSettings) invocation.getArguments()[1];
+				SearchContext.SearchResult result = createResult(pageSettings, pageSettings.getOffset().or(0) > 0 ? 0 : 5);
+				if (pageSettings.getOffset().or(0) > 0) {
+					result.markFailed();
+				}
+				return result;
+			}
+		});
+		PrefetchingResultIterator<TestMapping> it = new PrefetchingResultIterator<>(context, query, settings, TestMapping.class, executorService);
+		it.next();
+		it.next();
+		it.hasNext();
+	}
+
+	private void answerWithResults(final int numCount) {
+		when(context.execute(any(Query.class), any(SearchSettings.class))).thenAnswer(new Answer<SearchContext.SearchResult>() {
+			@Override
+			public SearchContext.SearchResult answer(final InvocationOnMock invocation) throws Throwable {
+				return createResult((SearchSettings) invocation.getArguments()[1], numCount);
+			}
+		});
+	}
+
+	private SearchContext.SearchResult createResult(final SearchSettings pageSettings, final int numCount) {
+		int offset = pageSettings.getOffset().or(0);
+		int end = Math.min(numCount, offset + pageSettings.getPageSize());
+		final List<TestMapping> page = new ArrayList<>();
+		for (int i = offset; i < end; i++) {
+			TestMapping mapping = mock(TestMapping.class);
+			when(mapping.getField1()).thenReturn(String.valueOf(i));
+			page.add(mapping);
+		}
+		return new SearchContext.SearchResult(pageSettings.getPageSize(), offset) {
+			@Override
+			public <S extends Mapping> Iterator<S> getResultsForMapping(final Class<S> mapping) {
+				return (Iterator<S>) page.iterator();
+			}
+
+			@Override
+			public long getNumCount() {
+				return numCount;
+			}
+
+			@Override
+			public long getNumberOfPages() {
+				return 0;
+			}
+		};
+	}
+}
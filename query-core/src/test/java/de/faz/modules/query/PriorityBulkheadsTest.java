@@ -0,0 +1,103 @@
+package de.faz.modules.query;
+
+import de.faz.modules.query.exception.SearchRejectedException;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class PriorityBulkheadsTest {
+
+	@Test
+	public void acquire_withReachedQuota_rejectsOnlyThatClass() {
+		PriorityBulkheads underTest = new PriorityBulkheads(4).withQueue(SearchSettings.Priority.BACKGROUND, 0, 0);
+		underTest.acquire(createSettings(SearchSettings.Priority.BACKGROUND));
+		try {
+			underTest.acquire(createSettings(SearchSettings.Priority.BACKGROUND));
+			fail("a background search beyond its quota must be rejected");
+		} catch (SearchRejectedException e) {
+			assertEquals(1, underTest.getRejectedCount(SearchSettings.Priority.BACKGROUND));
+		}
+		underTest.acquire(createSettings(SearchSettings.Priority.INTERACTIVE));
+		underTest.acquire(createSettings(SearchSettings.Priority.INTERACTIVE));
+		underTest.acquire(createSettings(SearchSettings.Priority.INTERACTIVE));
+		assertEquals(3, underTest.getInFlight(SearchSettings.Priority.INTERACTIVE));
+		assertEquals(0, underTest.getRejectedCount(SearchSettings.Priority.INTERACTIVE));
+	}
+
+	@Test(expected = SearchRejectedException.class)
+	public void acquire_withExceededQueueTime_throwsSearchRejectedException() {
+		PriorityBulkheads underTest = new PriorityBulkheads(1).withQueue(SearchSettings.Priority.INTERACTIVE, 1, 10);
+		underTest.acquire(createSettings(SearchSettings.Priority.INTERACTIVE));
+		underTest.acquire(createSettings(SearchSettings.Priority.INTERACTIVE));
+	}
+
+	@Test
+	public void release_withWaitingSearchesOfBothClasses_prefersInteractiveSearch() throws Exception {
+		PriorityBulkheads underTest = new PriorityBulkheads(1).withQuota(SearchSettings.Priority.BACKGROUND, 1)
+			.withQueue(SearchSettings.Priority.BACKGROUND, 1, 5000)
+			.withQueue(SearchSettings.Priority.INTERACTIVE, 1, 5000);
+		underTest.acquire(createSettings(SearchSettings.Priority.INTERACTIVE));
+
+		CountDownLatch backgroundAcquired = acquireInBackground(underTest, SearchSettings.Priority.BACKGROUND);
+		while (underTest.getQueued(SearchSettings.Priority.BACKGROUND) == 0) {
+			Thread.sleep(1);
+		}
+		CountDownLatch interactiveAcquired = acquireInBackground(underTest, SearchSettings.Priority.INTERACTIVE);
+		while (underTest.getQueued(SearchSettings.Priority.INTERACTIVE) == 0) {
+			Thread.sleep(1);
+		}
+
+		underTest.release(SearchSettings.Priority.INTERACTIVE);
+		assertTrue(interactiveAcquired.await(5, TimeUnit.SECONDS));
+		assertEquals(1, backgroundAcquired.getCount());
+		assertEquals(1, underTest.getQueued(SearchSettings.Priority.BACKGROUND));
+
+		underTest.release(SearchSettings.Priority.INTERACTIVE);
+		assertTrue(backgroundAcquired.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void acquire_withInteractiveSearchWaitingForItsQuota_acquiresBackgroundSlot() throws Exception {
+		PriorityBulkheads underTest = new PriorityBulkheads(4).withQuota(SearchSettings.Priority.INTERACTIVE, 1)
+			.withQueue(SearchSettings.Priority.INTERACTIVE, 1, 5000)
+			.withQueue(SearchSettings.Priority.BACKGROUND, 0, 0);
+		underTest.acquire(createSettings(SearchSettings.Priority.INTERACTIVE));
+		acquireInBackground(underTest, SearchSettings.Priority.INTERACTIVE);
+		while (underTest.getQueued(SearchSettings.Priority.INTERACTIVE) == 0) {
+			Thread.sleep(1);
+		}
+
+		underTest.acquire(createSettings(SearchSettings.Priority.BACKGROUND));
+		assertEquals(1, underTest.getInFlight(SearchSettings.Priority.BACKGROUND));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void withQuota_aboveTotalLimit_throwsException() {
+		new PriorityBulkheads(2).withQuota(SearchSettings.Priority.BACKGROUND, 3);
+	}
+
+	private CountDownLatch acquireInBackground(final PriorityBulkheads bulkheads, final SearchSettings.Priority priority) {
+		final CountDownLatch acquired = new CountDownLatch(1);
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				bulkheads.acquire(createSettings(priority));
+				acquired.countDown();
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return acquired;
+	}
+
+	private SearchSettings createSettings(final SearchSettings.Priority priority) {
+		return new SearchSettings(new FieldDefinitionGenerator()).withPriority(priority);
+	}
+}
@@ -0,0 +1,63 @@
+package de.faz.modules.query;
+
+import com.google.common.util.concurrent.SettableFuture;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class PriorityQueryExecutorTest {
+
+	@Mock QueryExecutor delegate;
+	@Mock Query query;
+	@Mock SearchContext.SearchResult result;
+
+	private SearchSettings settings;
+	private PriorityBulkheads bulkheads;
+	private PriorityQueryExecutor underTest;
+
+	@Before
+	public void setUp() {
+		settings = new SearchSettings(new FieldDefinitionGenerator()).withPriority(SearchSettings.Priority.BACKGROUND);
+		bulkheads = new PriorityBulkheads(4);
+		underTest = new PriorityQueryExecutor(delegate, bulkheads);
+	}
+
+	@Test
+	public void execute_withBackgroundSearch_returnsResultAndReleasesSlot() {
+		when(delegate.execute(query, settings)).thenReturn(result);
+		assertSame(result, underTest.execute(query, settings));
+		assertEquals(0, bulkheads.getInFlight(SearchSettings.Priority.BACKGROUND));
+	}
+
+	@Test
+	public void count_withFailingDelegate_releasesSlot() {
+		when(delegate.count(query, settings)).thenThrow(new IllegalStateException("failed"));
+		try {
+			underTest.count(query, settings);
+			fail("the exception of the delegate must be thrown");
+		} catch (IllegalStateException e) {
+			assertEquals(0, bulkheads.getInFlight(SearchSettings.Priority.BACKGROUND));
+		}
+	}
+
+	@Test
+	public void executeAsync_withPendingFuture_holdsSlotOfPriorityUntilCompleted() {
+		SettableFuture<SearchContext.SearchResult> future = SettableFuture.create();
+		when(delegate.executeAsync(query, settings)).thenReturn(future);
+		underTest.executeAsync(query, settings);
+		assertEquals(1, bulkheads.getInFlight(SearchSettings.Priority.BACKGROUND));
+		assertEquals(0, bulkheads.getInFlight(SearchSettings.Priority.INTERACTIVE));
+		future.set(result);
+		assertEquals(0, bulkheads.getInFlight(SearchSettings.Priority.BACKGROUND));
+	}
+}
@@ -1,5 +1,6 @@
 package de.faz.modules.query;
 
+import de.faz.modules.query.exception.SearchFailedException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,11 +11,15 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /** @author Andreas Kaubisch <a.kaubisch@faz.de> */
 @RunWith(MockitoJUnitRunner.class)
@@ -40,4 +45,18 @@ public class QueryExecutorTest {
         verify(executor).executeQuery(query, settings);
     }
 
+    @Test
+    public void executeAsync_withQueryAndSettings_returnsCompletedFutureOfExecuteQuery() {
+        assertTrue(executor.executeAsync(query, settings).isDone());
+        verify(executor).executeQuery(query, settings);
+    }
+
+    @Test(expected = SearchFailedException.class)
+    public void count_withFailedResult_throwsException() {
+        SearchContext.SearchResult result = mock(SearchContext.SearchResult.class);
+        when(result.isFailed()).thenReturn(true);
+        doReturn(result).when(executor).executeQuery(query, settings);
+        executor.count(query, settings);
+    }
+
 }
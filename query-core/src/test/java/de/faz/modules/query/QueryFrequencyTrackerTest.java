@@ -0,0 +1,112 @@
+package de.faz.modules.query;
+
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import de.faz.modules.query.util.QueryFingerprint;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class QueryFrequencyTrackerTest {
+
+	@Mock Query query;
+	@Mock Query filter1;
+	@Mock Query filter2;
+
+	private QueryFrequencyTracker underTest;
+
+	@Before
+	public void setUp() {
+		underTest = new QueryFrequencyTracker(1024, 2);
+	}
+
+	@Test
+	public void getTopByFrequency_returnsMostFrequentQueryFirst() {
+		underTest.record(fingerprint("tag:rare"), 1, TimeUnit.MILLISECONDS);
+		underTest.record(fingerprint("tag:popular"), 1, TimeUnit.MILLISECONDS);
+		underTest.record(fingerprint("tag:popular"), 1, TimeUnit.MILLISECONDS);
+
+		List<QueryFrequencyTracker.HeavyHitter> top = underTest.getTopByFrequency(2);
+		assertEquals("q=tag:popular", top.get(0).getFingerprint());
+		assertEquals(2, top.get(0).getCount());
+		assertEquals("q=tag:rare", top.get(1).getFingerprint());
+	}
+
+	@Test
+	public void getTopByLatency_returnsMostExpensiveQueryFirst() {
+		underTest.record(fingerprint("tag:popular"), 1, TimeUnit.MILLISECONDS);
+		underTest.record(fingerprint("tag:popular"), 1, TimeUnit.MILLISECONDS);
+		underTest.record(fingerprint("tag:expensive"), 500, TimeUnit.MILLISECONDS);
+
+		QueryFrequencyTracker.HeavyHitter top = underTest.getTopByLatency(1).get(0);
+		assertEquals("q=tag:expensive", top.getFingerprint());
+		assertEquals(500, top.getTotalLatency());
+		assertEquals(500.0, top.getAverageLatency(), 0.001);
+	}
+
+	@Test
+	public void record_withFullTopList_replacesLessFrequentQuery() {
+		underTest.record(fingerprint("tag:rare"), 1, TimeUnit.MILLISECONDS);
+		underTest.record(fingerprint("tag:popular"), 1, TimeUnit.MILLISECONDS);
+		underTest.record(fingerprint("tag:popular"), 1, TimeUnit.MILLISECONDS);
+		for (int i = 0; i < 3; i++) {
+			underTest.record(fingerprint("tag:rising"), 1, TimeUnit.MILLISECONDS);
+		}
+
+		List<QueryFrequencyTracker.HeavyHitter> top = underTest.getTopByFrequency(2);
+		assertEquals(2, top.size());
+		assertEquals("q=tag:rising", top.get(0).getFingerprint());
+		assertEquals("q=tag:popular", top.get(1).getFingerprint());
+		assertEquals(6, underTest.getRecordCount());
+	}
+
+	@Test
+	public void reset_removesAllQueries() {
+		underTest.record(fingerprint("tag:popular"), 1, TimeUnit.MILLISECONDS);
+		underTest.reset();
+
+		assertEquals(0, underTest.getTopByFrequency(2).size());
+		assertEquals(0, underTest.getRecordCount());
+	}
+
+	@Test
+	public void createFingerprint_withFiltersInOtherOrder_returnsSameFingerprint() {
+		when(query.toString()).thenReturn("title:merkel");
+		when(filter1.toString()).thenReturn("type:article");
+		when(filter2.toString()).thenReturn("section:politik");
+		SearchSettings settings1 = new SearchSettings(new FieldDefinitionGenerator()).filterBy(filter1).filterBy(filter2).startAt(10);
+		SearchSettings settings2 = new SearchSettings(new FieldDefinitionGenerator()).filterBy(filter2).filterBy(filter1);
+
+		assertEquals(QueryFrequencyTracker.createFingerprint(query, settings1), QueryFrequencyTracker.createFingerprint(query, settings2));
+		assertEquals("fq=section:politik&fq=type:article&q=title:merkel&rows=10", QueryFrequencyTracker.createFingerprint(query, settings2).toString());
+	}
+
+	@Test
+	public void registerMBean_exposesRecordCount() throws Exception {
+		underTest.record(fingerprint("tag:popular"), 1, TimeUnit.MILLISECONDS);
+		ObjectName name = underTest.registerMBean("test");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			assertEquals(1L, server.getAttribute(name, "RecordCount"));
+			assertEquals(1, ((Object[]) server.getAttribute(name, "TopQueriesByFrequency")).length);
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	private QueryFingerprint fingerprint(final String query) {
+		return QueryFingerprint.builder().add("q", query).build();
+	}
+}
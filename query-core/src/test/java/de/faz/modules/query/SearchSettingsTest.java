@@ -15,6 +15,9 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
@@ -104,5 +107,36 @@ public class SearchSettingsTest {
 		return factory;
 	}
 
+	@Test
+	public void withTimeout_withTimeInFuture_returnsRemainingTime() {
+		underTest.withTimeout(10, TimeUnit.SECONDS);
+		long remaining = underTest.getRemainingTime().get();
+		assertTrue(remaining > 9000 && remaining <= 10000);
+		assertFalse(underTest.isDeadlineExceeded());
+	}
+
+	@Test
+	public void withDeadline_withDateInPast_isExceeded() {
+		underTest.withDeadline(new Date(System.currentTimeMillis() - 1000));
+		assertEquals(0L, (long) underTest.getRemainingTime().get());
+		assertTrue(underTest.isDeadlineExceeded());
+	}
+
+	@Test
+	public void getRemainingTime_withoutDeadline_returnsAbsent() {
+		assertFalse(underTest.getRemainingTime().isPresent());
+		assertFalse(underTest.isDeadlineExceeded());
+	}
 
+	@Test
+	public void getPriority_withoutPriority_returnsInteractive() {
+		assertEquals(SearchSettings.Priority.INTERACTIVE, underTest.getPriority());
+	}
+
+	@Test
+	public void copyTo_withPriority_copiesPriority() {
+		SearchSettings target = new SearchSettings(generator, capabilities);
+		underTest.withPriority(SearchSettings.Priority.BACKGROUND).copyTo(target);
+		assertEquals(SearchSettings.Priority.BACKGROUND, target.getPriority());
+	}
 }
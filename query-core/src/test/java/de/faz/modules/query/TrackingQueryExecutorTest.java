@@ -0,0 +1,75 @@
+package de.faz.modules.query;
+
+import com.google.common.util.concurrent.SettableFuture;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class TrackingQueryExecutorTest {
+
+	@Mock QueryExecutor delegate;
+	@Mock Query query;
+	@Mock SearchContext.SearchResult result;
+
+	private SearchSettings settings;
+	private QueryFrequencyTracker tracker;
+	private TrackingQueryExecutor underTest;
+
+	@Before
+	public void setUp() {
+		when(query.toString()).thenReturn("title:merkel");
+		settings = new SearchSettings(new FieldDefinitionGenerator()).withPageSize(20);
+		tracker = new QueryFrequencyTracker(1024, 10);
+		underTest = new TrackingQueryExecutor(delegate, tracker);
+	}
+
+	@Test
+	public void execute_recordsFingerprint() {
+		when(delegate.execute(query, settings)).thenReturn(result);
+		underTest.execute(query, settings);
+		underTest.execute(query, settings);
+
+		QueryFrequencyTracker.HeavyHitter top = tracker.getTopByFrequency(1).get(0);
+		assertEquals("q=title:merkel&rows=20", top.getFingerprint());
+		assertEquals(2, top.getCount());
+	}
+
+	@Test
+	public void execute_withFailingSearch_recordsFingerprint() {
+		when(delegate.execute(query, settings)).thenThrow(new IllegalStateException("unavailable"));
+		try {
+			underTest.execute(query, settings);
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertEquals(1, tracker.getRecordCount());
+	}
+
+	@Test
+	public void executeAsync_recordsFingerprintWhenFutureIsDone() {
+		SettableFuture<SearchContext.SearchResult> future = SettableFuture.create();
+		when(delegate.executeAsync(query, settings)).thenReturn(future);
+		underTest.executeAsync(query, settings);
+		assertEquals(0, tracker.getRecordCount());
+
+		future.set(result);
+		assertEquals(1, tracker.getRecordCount());
+	}
+
+	@Test
+	public void count_recordsFingerprintWithPrefix() {
+		when(delegate.count(query, settings)).thenReturn(5L);
+		underTest.count(query, settings);
+
+		assertEquals("q=title:merkel&request=count&rows=20", tracker.getTopByFrequency(1).get(0).getFingerprint());
+	}
+}
@@ -0,0 +1,35 @@
+package de.faz.modules.query.fields;
+
+import de.faz.modules.query.TestMapping;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class MappedFieldResolverTest {
+
+	@Test
+	public void getFieldNames_withMapping_returnsDistinctMappedFields() {
+		assertEquals(Arrays.asList("field1", "field2"), new ArrayList<>(MappedFieldResolver.getFieldNames(TestMapping.class)));
+	}
+
+	@Test
+	public void getFieldNames_withInheritedMapping_containsFieldsOfSuperClass() {
+		assertEquals(Arrays.asList("field1", "field2", "field3", "field4"),
+				new ArrayList<>(MappedFieldResolver.getFieldNames(InheritedMapping.class)));
+	}
+
+	@Test
+	public void getFieldNames_calledTwice_returnsCachedInstance() {
+		assertSame(MappedFieldResolver.getFieldNames(TestMapping.class), MappedFieldResolver.getFieldNames(TestMapping.class));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void getFieldNames_withoutClass_throwsException() {
+		MappedFieldResolver.getFieldNames(null);
+	}
+}
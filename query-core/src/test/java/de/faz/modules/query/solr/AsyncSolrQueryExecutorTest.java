@@ -0,0 +1,164 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import de.faz.modules.query.Query;
+import de.faz.modules.query.SearchContext;
+import de.faz.modules.query.SearchRequestListener;
+import de.faz.modules.query.TestMapping;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncSolrQueryExecutorTest {
+
+	@Mock Query q;
+
+	private FieldDefinitionGenerator generator;
+	private SolrServerRegistry registry;
+	private StandInSolrServer solr;
+	private AsyncSolrQueryExecutor underTest;
+
+	@Before
+	public void setUp() throws Exception {
+		when(q.toString()).thenReturn("field1:value");
+		generator = new FieldDefinitionGenerator();
+		registry = new SolrServerRegistry();
+		solr = new StandInSolrServer().respondWith(StandInSolrServer.createDocuments("field1", "a", "b", "c"));
+		underTest = new AsyncSolrQueryExecutor(registry.getServer(solr.getUrl()), registry.getAsyncHttpClient(), generator);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		solr.close();
+		registry.close();
+	}
+
+	@Test
+	public void executeAsync_withQuery_returnsResultOfSolr() throws Exception {
+		SearchContext.SearchResult result = underTest.executeAsync(q, new SolrSearchSettings(generator)).get(5, TimeUnit.SECONDS);
+		assertEquals(3, result.getNumCount());
+		Iterator<TestMapping> it = result.getResultsForMapping(TestMapping.class);
+		assertEquals("a", it.next().getField1());
+	}
+
+	@Test
+	public void executeAsync_withQuery_sendsSelectRequestWithQueryString() throws Exception {
+		underTest.executeAsync(q, new SolrSearchSettings(generator)).get(5, TimeUnit.SECONDS);
+		StandInSolrServer.StandInRequest request = solr.getRequests().get(0);
+		assertEquals("/solr/select", request.getPath());
+		assertTrue(request.getQuery().contains("q=field1%3Avalue"));
+		assertTrue(request.getQuery().contains("wt=javabin"));
+	}
+
+	@Test
+	public void executeAsync_withQueryLongerThanThreshold_sendsFormEncodedPost() throws Exception {
+		SolrRequestStatistics statistics = new SolrRequestStatistics();
+		underTest = new AsyncSolrQueryExecutor(registry.getServer(solr.getUrl()), registry.getAsyncHttpClient(), generator, 10, statistics, RequestConfig.DEFAULT);
+		SearchContext.SearchResult result = underTest.executeAsync(q, new SolrSearchSettings(generator)).get(5, TimeUnit.SECONDS);
+		assertEquals(3, result.getNumCount());
+		StandInSolrServer.StandInRequest request = solr.getRequests().get(0);
+		assertEquals("POST", request.getMethod());
+		assertTrue(request.getBody().contains("q=field1%3Avalue"));
+		assertEquals(1, statistics.getPostRequestCount());
+	}
+
+	@Test
+	public void executeAsync_withEmptyQuery_doesNotCallSolr() throws Exception {
+		when(q.isEmpty()).thenReturn(true);
+		SearchContext.SearchResult result = underTest.executeAsync(q, new SolrSearchSettings(generator)).get(5, TimeUnit.SECONDS);
+		assertEquals(0, result.getNumCount());
+		assertEquals(0, solr.getRequestCount());
+	}
+
+	@Test
+	public void executeAsync_withServerError_returnsDefaultResult() throws Exception {
+		solr.withStatusCode(500);
+		SearchContext.SearchResult result = underTest.executeAsync(q, new SolrSearchSettings(generator)).get(5, TimeUnit.SECONDS);
+		assertEquals(0, result.getNumCount());
+		assertFalse(result.getResultsForMapping(TestMapping.class).hasNext());
+		assertTrue(result.isFailed());
+	}
+
+	@Test
+	public void executeAsync_withServerError_reportsFailedRequest() throws Exception {
+		SearchRequestListener listener = mock(SearchRequestListener.class);
+		underTest.withRequestListener(listener);
+		underTest.executeAsync(q, new SolrSearchSettings(generator)).get(5, TimeUnit.SECONDS);
+		solr.withStatusCode(500);
+		underTest.executeAsync(q, new SolrSearchSettings(generator)).get(5, TimeUnit.SECONDS);
+
+		verify(listener).requestFinished(anyLong(), eq(true));
+		verify(listener).requestFinished(anyLong(), eq(false));
+	}
+
+	@Test
+	public void executeAsync_cancelled_isCancelled() throws Exception {
+		solr.withDelay(2000);
+		ListenableFuture<SearchContext.SearchResult> future = underTest.executeAsync(q, new SolrSearchSettings(generator));
+		assertTrue(future.cancel(true));
+		assertTrue(future.isCancelled());
+	}
+
+	@Test
+	public void executeQuery_withQuery_waitsForAsyncResult() {
+		SearchContext.SearchResult result = underTest.executeQuery(q, new SolrSearchSettings(generator));
+		assertEquals(3, result.getNumCount());
+	}
+
+	@Test
+	public void executeAsync_withTimeout_sendsTimeAllowed() throws Exception {
+		SolrSearchSettings settings = new SolrSearchSettings(generator);
+		settings.withTimeout(5, TimeUnit.SECONDS);
+		underTest.executeAsync(q, settings).get(5, TimeUnit.SECONDS);
+		assertTrue(solr.getRequests().get(0).getQuery().contains("timeAllowed="));
+	}
+
+	@Test
+	public void executeAsync_withExceededDeadline_doesNotCallSolr() throws Exception {
+		SolrSearchSettings settings = new SolrSearchSettings(generator);
+		settings.withDeadline(new Date(System.currentTimeMillis() - 1000));
+		SearchContext.SearchResult result = underTest.executeAsync(q, settings).get(5, TimeUnit.SECONDS);
+		assertTrue(result.isPartial());
+		assertEquals(0, solr.getRequestCount());
+	}
+
+	@Test
+	public void createDeadlineConfig_withShortRemainingTime_limitsAllTimeouts() {
+		underTest = new AsyncSolrQueryExecutor(registry.getServer(solr.getUrl()), registry.getAsyncHttpClient(), generator, 10,
+			new SolrRequestStatistics(), registry.getRequestConfig());
+		RequestConfig config = underTest.createDeadlineConfig(500);
+		assertEquals(500, config.getSocketTimeout());
+		assertEquals(500, config.getConnectTimeout());
+		assertEquals(500, config.getConnectionRequestTimeout());
+	}
+
+	@Test
+	public void createDeadlineConfig_withLongRemainingTime_keepsDefaultTimeouts() {
+		underTest = new AsyncSolrQueryExecutor(registry.getServer(solr.getUrl()), registry.getAsyncHttpClient(), generator, 10,
+			new SolrRequestStatistics(), registry.getRequestConfig());
+		RequestConfig config = underTest.createDeadlineConfig(60000);
+		assertEquals(SolrConnectionSettings.DEFAULT_SOCKET_TIMEOUT, config.getSocketTimeout());
+	}
+}
@@ -0,0 +1,190 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class CircuitBreakerSolrServerTest {
+
+	@Mock SolrServer solrServer;
+
+	private NamedList<Object> response;
+	private CircuitBreakerSolrServer underTest;
+
+	@Before
+	public void setUp() {
+		response = new NamedList<>();
+		underTest = new CircuitBreakerSolrServer(solrServer, 4, 50, 60000, 10);
+	}
+
+	@Test
+	public void request_withFailureRateAboveThreshold_opensBreaker() throws Exception {
+		when(solrServer.request(any(SolrRequest.class))).thenThrow(new SolrServerException("solr is down"));
+		for (int i = 0; i < 6; i++) {
+			try {
+				underTest.request(createRequest("field1:value"));
+				fail("a failed request without cached response must throw");
+			} catch (SolrServerException e) {
+				// expected
+			}
+		}
+		assertEquals(CircuitBreakerSolrServer.State.OPEN, underTest.getState());
+		assertEquals(2, underTest.getRejectedCount());
+		verify(solrServer, times(4)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void request_withFailureRateBelowThreshold_staysClosed() throws Exception {
+		when(solrServer.request(any(SolrRequest.class))).thenReturn(response).thenThrow(new SolrServerException("solr is down"))
+			.thenReturn(response);
+		for (int i = 0; i < 6; i++) {
+			try {
+				underTest.request(createRequest("field1:value" + i));
+			} catch (SolrServerException e) {
+				// expected once
+			}
+		}
+		assertEquals(CircuitBreakerSolrServer.State.CLOSED, underTest.getState());
+	}
+
+	@Test
+	public void request_withOpenBreaker_returnsStaleResponse() throws Exception {
+		when(solrServer.request(any(SolrRequest.class))).thenReturn(response).thenThrow(new SolrServerException("solr is down"));
+		for (int i = 0; i < 5; i++) {
+			assertSame(response, underTest.request(createRequest("field1:value")));
+		}
+		assertEquals(CircuitBreakerSolrServer.State.OPEN, underTest.getState());
+		assertSame(response, underTest.request(createRequest("field1:value")));
+		assertEquals(5, underTest.getStaleResponseCount());
+	}
+
+	@Test
+	public void request_afterOpenTime_closesBreakerWhenProbeSucceeds() throws Exception {
+		underTest = new CircuitBreakerSolrServer(solrServer, 1, 100, 0, 10);
+		when(solrServer.request(any(SolrRequest.class))).thenThrow(new SolrServerException("solr is down")).thenReturn(response);
+		try {
+			underTest.request(createRequest("field1:value"));
+		} catch (SolrServerException e) {
+			assertEquals(CircuitBreakerSolrServer.State.OPEN, underTest.getState());
+		}
+		assertSame(response, underTest.request(createRequest("field1:value")));
+		assertEquals(CircuitBreakerSolrServer.State.CLOSED, underTest.getState());
+	}
+
+	@Test
+	public void request_afterOpenTime_opensBreakerAgainWhenProbeFails() throws Exception {
+		underTest = new CircuitBreakerSolrServer(solrServer, 1, 100, 0, 10);
+		when(solrServer.request(any(SolrRequest.class))).thenThrow(new SolrServerException("solr is down"));
+		for (int i = 0; i < 2; i++) {
+			try {
+				underTest.request(createRequest("field1:value"));
+			} catch (SolrServerException e) {
+				// expected
+			}
+		}
+		assertEquals(CircuitBreakerSolrServer.State.OPEN, underTest.getState());
+		verify(solrServer, times(2)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void request_withUnexpectedExceptionOfProbe_probesAgainAfterOpenTime() throws Exception {
+		underTest = new CircuitBreakerSolrServer(solrServer, 1, 100, 0, 10);
+		when(solrServer.request(any(SolrRequest.class))).thenThrow(new SolrServerException("solr is down"))
+			.thenThrow(new IllegalStateException("Connection pool shut down")).thenReturn(response);
+		for (int i = 0; i < 2; i++) {
+			try {
+				underTest.request(createRequest("field1:value"));
+				fail("a failed request without cached response must throw");
+			} catch (SolrServerException | IllegalStateException e) {
+				// expected
+			}
+		}
+		assertEquals(CircuitBreakerSolrServer.State.OPEN, underTest.getState());
+
+		assertSame(response, underTest.request(createRequest("field1:value")));
+		assertEquals(CircuitBreakerSolrServer.State.CLOSED, underTest.getState());
+	}
+
+	@Test
+	public void request_withPartialResponse_doesNotUseItAsStaleResponse() throws Exception {
+		NamedList<Object> header = new NamedList<>();
+		header.add("partialResults", Boolean.TRUE);
+		response.add("responseHeader", header);
+		when(solrServer.request(any(SolrRequest.class))).thenReturn(response).thenThrow(new SolrServerException("solr is down"));
+		underTest.request(createRequest("field1:value"));
+		try {
+			underTest.request(createRequest("field1:value"));
+			fail("a partial response must not be used as stale response");
+		} catch (SolrServerException e) {
+			assertEquals(0, underTest.getStaleResponseCount());
+		}
+	}
+
+	@Test
+	public void request_withInvalidRequest_doesNotOpenBreaker() throws Exception {
+		when(solrServer.request(any(SolrRequest.class))).thenThrow(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "invalid"));
+		for (int i = 0; i < 4; i++) {
+			try {
+				underTest.request(createRequest("field1:"));
+				fail("an invalid request must be rethrown");
+			} catch (SolrException e) {
+				assertEquals(400, e.code());
+			}
+		}
+		assertEquals(CircuitBreakerSolrServer.State.CLOSED, underTest.getState());
+	}
+
+	@Test
+	public void createCacheKey_withParametersInOtherOrder_returnsSameKey() {
+		SolrQuery first = new SolrQuery("field1:value");
+		first.setRows(10);
+		first.addFilterQuery("field2:value");
+		SolrQuery second = new SolrQuery();
+		second.addFilterQuery("field2:value");
+		second.setRows(10);
+		second.setQuery("field1:value");
+		assertEquals(CircuitBreakerSolrServer.createCacheKey(new QueryRequest(first)), CircuitBreakerSolrServer.createCacheKey(new QueryRequest(second)));
+	}
+
+	@Test
+	public void createCacheKey_withOtherTimeAllowed_returnsSameKey() {
+		SolrQuery first = new SolrQuery("field1:value");
+		first.setTimeAllowed(120);
+		SolrQuery second = new SolrQuery("field1:value");
+		second.setTimeAllowed(80);
+
+		assertEquals(CircuitBreakerSolrServer.createCacheKey(new QueryRequest(first)), CircuitBreakerSolrServer.createCacheKey(new QueryRequest(second)));
+	}
+
+	@Test
+	public void createCacheKey_withCustomResponseParser_returnsNull() {
+		QueryRequest request = new QueryRequest(new SolrQuery("field1:value"));
+		request.setResponseParser(new BinaryResponseParser());
+		assertNull(CircuitBreakerSolrServer.createCacheKey(request));
+	}
+
+	private SolrRequest createRequest(final String query) {
+		return new QueryRequest(new SolrQuery(query));
+	}
+}
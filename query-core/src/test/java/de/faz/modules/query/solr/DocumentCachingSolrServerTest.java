@@ -0,0 +1,198 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class DocumentCachingSolrServerTest {
+
+	@Mock SolrServer solrServer;
+
+	private StandInIndex index;
+	private List<SolrRequest> requests;
+	private DocumentCachingSolrServer underTest;
+
+	@Before
+	public void setUp() throws Exception {
+		index = new StandInIndex();
+		index.put("1", 10L);
+		index.put("2", 20L);
+		requests = new ArrayList<>();
+		when(solrServer.request(any(SolrRequest.class))).thenAnswer(index);
+		underTest = new DocumentCachingSolrServer(solrServer, "contentId", "commitId", 100);
+	}
+
+	@Test
+	public void request_withUncachedDocuments_loadsDocumentsWithSecondRequest() throws Exception {
+		SolrDocumentList documents = getDocuments(underTest.request(createRequest()));
+
+		assertEquals(2, documents.size());
+		assertEquals("title 1", documents.get(0).getFieldValue("title"));
+		assertEquals("title 2", documents.get(1).getFieldValue("title"));
+		assertEquals(2, documents.getNumFound());
+		assertEquals("contentId,commitId", requests.get(0).getParams().get(CommonParams.FL));
+		assertEquals("contentId:(1 OR 2)", requests.get(1).getParams().get(CommonParams.Q));
+		assertEquals("contentId,title", requests.get(1).getParams().get(CommonParams.FL));
+		assertEquals(2, underTest.getMissCount());
+	}
+
+	@Test
+	public void request_withCachedDocuments_sendsOnlyIdRequest() throws Exception {
+		underTest.request(createRequest());
+		SolrDocumentList documents = getDocuments(underTest.request(createRequest()));
+
+		assertEquals(2, documents.size());
+		assertEquals("title 1", documents.get(0).getFieldValue("title"));
+		assertEquals(3, requests.size());
+		assertEquals(2, underTest.getHitCount());
+	}
+
+	@Test
+	public void request_withModifiedDocument_loadsOnlyModifiedDocument() throws Exception {
+		underTest.request(createRequest());
+		index.put("2", 21L);
+		SolrDocumentList documents = getDocuments(underTest.request(createRequest()));
+
+		assertEquals("title 2 (21)", documents.get(1).getFieldValue("title"));
+		assertEquals("contentId:(2)", requests.get(3).getParams().get(CommonParams.Q));
+	}
+
+	@Test
+	public void request_withOtherFieldList_doesNotUseCachedDocuments() throws Exception {
+		underTest.request(createRequest());
+		SolrQuery query = new SolrQuery("*:*");
+		query.setFields("contentId", "title", "author");
+		underTest.request(new QueryRequest(query));
+
+		assertEquals(4, requests.size());
+	}
+
+	@Test
+	public void request_withChangedDocument_doesNotModifyCachedDocument() throws Exception {
+		getDocuments(underTest.request(createRequest())).get(0).setField("title", "changed");
+
+		assertEquals("title 1", getDocuments(underTest.request(createRequest())).get(0).getFieldValue("title"));
+	}
+
+	@Test
+	public void request_withChangedMultiValuedField_doesNotModifyCachedDocument() throws Exception {
+		getDocuments(underTest.request(createRequest())).get(0).addField("tags", "changed");
+
+		assertEquals(Arrays.asList("tag 1"), getDocuments(underTest.request(createRequest())).get(0).getFieldValue("tags"));
+	}
+
+	@Test
+	public void request_withMoreMissesThanMaxIdsPerRequest_loadsDocumentsWithSeveralRequests() throws Exception {
+		index.put("3", 30L);
+		underTest.withMaxIdsPerRequest(2);
+		SolrDocumentList documents = getDocuments(underTest.request(createRequest()));
+
+		assertEquals(3, documents.size());
+		assertEquals("title 3", documents.get(2).getFieldValue("title"));
+		assertEquals(3, requests.size());
+		assertEquals("contentId:(1 OR 2)", requests.get(1).getParams().get(CommonParams.Q));
+		assertEquals("contentId:(3)", requests.get(2).getParams().get(CommonParams.Q));
+		assertEquals("1", requests.get(2).getParams().get(CommonParams.ROWS));
+	}
+
+	@Test
+	public void request_withGrouping_sendsRequestUnchanged() throws Exception {
+		SolrQuery query = new SolrQuery("*:*");
+		query.set(GroupParams.GROUP, true);
+		QueryRequest request = new QueryRequest(query);
+		underTest.request(request);
+
+		assertSame(request, requests.get(0));
+		verify(solrServer, times(1)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void request_withResponseParser_sendsRequestUnchanged() throws Exception {
+		QueryRequest request = createRequest();
+		request.setResponseParser(new BinaryResponseParser());
+		underTest.request(request);
+
+		assertSame(request, requests.get(0));
+	}
+
+	private QueryRequest createRequest() {
+		SolrQuery query = new SolrQuery("*:*");
+		query.setFields("contentId", "title");
+		return new QueryRequest(query);
+	}
+
+	private SolrDocumentList getDocuments(final NamedList<Object> response) {
+		return (SolrDocumentList) response.get("response");
+	}
+
+	/**
+	 * Answers the id request with all documents of the index and the document request with
+	 * the requested documents.
+	 */
+	private class StandInIndex implements Answer<NamedList<Object>> {
+		private final Map<String, Long> versions = new HashMap<>();
+		private final List<String> ids = new ArrayList<>();
+
+		void put(final String id, final Long version) {
+			if (!ids.contains(id)) {
+				ids.add(id);
+			}
+			versions.put(id, version);
+		}
+
+		@Override
+		public NamedList<Object> answer(final InvocationOnMock invocation) throws Throwable {
+			return answer((SolrRequest) invocation.getArguments()[0]);
+		}
+
+		NamedList<Object> answer(final SolrRequest request) {
+			requests.add(request);
+			String q = request.getParams().get(CommonParams.Q);
+			SolrDocumentList documents = new SolrDocumentList();
+			for (String id : ids) {
+				if ("*:*".equals(q) || q.matches(".*[( ]" + id + "[ )].*")) {
+					SolrDocument document = new SolrDocument();
+					document.setField("contentId", id);
+					document.setField("commitId", versions.get(id));
+					Long version = versions.get(id);
+					document.setField("title", "title " + id + (version % 10 == 0 ? "" : " (" + version + ")"));
+					document.setField("tags", new ArrayList<>(Arrays.asList("tag " + id)));
+					documents.add(document);
+				}
+			}
+			documents.setNumFound(documents.size());
+			NamedList<Object> response = new NamedList<>();
+			response.add("response", documents);
+			return response;
+		}
+	}
+}
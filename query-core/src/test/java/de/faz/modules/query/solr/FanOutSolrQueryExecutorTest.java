@@ -0,0 +1,141 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrDocumentList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import de.faz.modules.query.Query;
+import de.faz.modules.query.SearchContext;
+import de.faz.modules.query.SearchSettings;
+import de.faz.modules.query.TestMapping;
+import de.faz.modules.query.exception.SearchFailedException;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class FanOutSolrQueryExecutorTest {
+
+	@Mock Query q;
+
+	private FieldDefinitionGenerator generator;
+	private TestMapping fieldDef;
+	private SolrServerRegistry registry;
+	private ExecutorService executorService;
+	private StandInSolrServer articles;
+	private StandInSolrServer videos;
+	private FanOutSolrQueryExecutor underTest;
+
+	@Before
+	public void setUp() throws Exception {
+		when(q.toString()).thenReturn("field1:value");
+		generator = new FieldDefinitionGenerator();
+		fieldDef = generator.createFieldDefinition(TestMapping.class);
+		registry = new SolrServerRegistry();
+		executorService = Executors.newFixedThreadPool(2);
+		articles = new StandInSolrServer().respondWith(createDocuments(7, "a", "c", "e"));
+		videos = new StandInSolrServer().respondWith(createDocuments(4, "b", "d"));
+		Map<String, SolrServer> servers = new LinkedHashMap<>();
+		servers.put(articles.getUrl(), registry.getServer(articles.getUrl()));
+		servers.put(videos.getUrl(), registry.getServer(videos.getUrl()));
+		underTest = new FanOutSolrQueryExecutor(servers, executorService, generator, SolrConnectionSettings.DEFAULT_POST_THRESHOLD, new SolrRequestStatistics());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		articles.close();
+		videos.close();
+		executorService.shutdownNow();
+		registry.close();
+	}
+
+	@Test
+	public void executeQuery_withSortAndOffset_mergesPageOfAllCores() {
+		SolrSearchSettings settings = new SolrSearchSettings(generator);
+		settings.withPageSize(2).startAt(1);
+		settings.sortBy(fieldDef.getField2(), SearchSettings.Order.ASC);
+
+		SearchContext.SearchResult result = underTest.executeQuery(q, settings);
+		assertEquals(11, result.getNumCount());
+		assertEquals(Arrays.asList("b", "c"), readField2(result));
+		assertTrue(articles.getRequests().get(0).getQuery().contains("rows=3"));
+		assertTrue(articles.getRequests().get(0).getQuery().contains("start=0"));
+	}
+
+	@Test
+	public void executeQuery_withoutSort_mergesByScore() {
+		SolrSearchSettings settings = new SolrSearchSettings(generator);
+		settings.withPageSize(3);
+
+		SearchContext.SearchResult result = underTest.executeQuery(q, settings);
+		assertEquals(Arrays.asList("a", "b", "c"), readField2(result));
+		assertTrue(articles.getRequests().get(0).getQuery().contains("fl=*%2Cscore"));
+	}
+
+	@Test
+	public void executeQuery_withFailingCore_returnsResultOfOtherCores() {
+		videos.withStatusCode(500);
+		SolrSearchSettings settings = new SolrSearchSettings(generator);
+		settings.withPageSize(5);
+
+		SearchContext.SearchResult result = underTest.executeQuery(q, settings);
+		assertEquals(7, result.getNumCount());
+		assertEquals(Arrays.asList("a", "c", "e"), readField2(result));
+	}
+
+	@Test
+	public void count_withSeveralCores_returnsSumOfNumFound() {
+		assertEquals(11, underTest.count(q, new SolrSearchSettings(generator)));
+	}
+
+	@Test(expected = SearchFailedException.class)
+	public void count_withFailingCore_throwsException() {
+		videos.withStatusCode(500);
+		underTest.count(q, new SolrSearchSettings(generator));
+	}
+
+	@Test
+	public void executeQuery_withEmptyQuery_doesNotCallSolr() {
+		when(q.isEmpty()).thenReturn(true);
+		SearchContext.SearchResult result = underTest.executeQuery(q, new SolrSearchSettings(generator));
+		assertFalse(result.getResultsForMapping(TestMapping.class).hasNext());
+		assertEquals(0, articles.getRequestCount());
+	}
+
+	private List<String> readField2(final SearchContext.SearchResult result) {
+		List<String> values = new ArrayList<>();
+		Iterator<TestMapping> it = result.getResultsForMapping(TestMapping.class);
+		while (it.hasNext()) {
+			values.add(it.next().getField2());
+		}
+		return values;
+	}
+
+	/** creates documents with descending scores in the order of the given values */
+	private SolrDocumentList createDocuments(final long numFound, final String... values) {
+		SolrDocumentList documents = StandInSolrServer.createDocuments("field2", values);
+		for (int i = 0; i < documents.size(); i++) {
+			documents.get(i).setField("score", 10f - documents.get(i).getFieldValue("field2").toString().charAt(0));
+		}
+		documents.setNumFound(numFound);
+		return documents;
+	}
+}
@@ -0,0 +1,161 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.util.NamedList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class HedgingSolrServerTest {
+
+	private ExecutorService executorService;
+	private SolrServer first;
+	private SolrServer second;
+	private DelayedAnswer firstAnswer;
+	private DelayedAnswer secondAnswer;
+
+	@Before
+	public void setUp() throws Exception {
+		executorService = Executors.newCachedThreadPool();
+		first = mock(SolrServer.class);
+		second = mock(SolrServer.class);
+		firstAnswer = new DelayedAnswer(new NamedList<Object>());
+		secondAnswer = new DelayedAnswer(new NamedList<Object>());
+		when(first.request(any(SolrRequest.class))).thenAnswer(firstAnswer);
+		when(second.request(any(SolrRequest.class))).thenAnswer(secondAnswer);
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void request_withSlowReplica_returnsResponseOfOtherReplica() throws Exception {
+		HedgingSolrServer underTest = createWarmedUpServer(100);
+		firstAnswer.delay = 2000;
+		long hedges = underTest.getHedgeCount();
+		long wins = underTest.getHedgeWinCount();
+
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 4; i++) {
+			underTest.request(createRequest());
+		}
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertTrue(underTest.getHedgeCount() - hedges >= 2);
+		assertTrue(underTest.getHedgeWinCount() - wins >= 2);
+	}
+
+	@Test
+	public void request_withExhaustedBudget_doesNotHedge() throws Exception {
+		HedgingSolrServer underTest = createWarmedUpServer(0);
+		firstAnswer.delay = 100;
+		long exceeded = underTest.getBudgetExceededCount();
+
+		for (int i = 0; i < 4; i++) {
+			underTest.request(createRequest());
+		}
+		assertEquals(0, underTest.getHedgeCount());
+		assertTrue(underTest.getBudgetExceededCount() - exceeded >= 2);
+	}
+
+	@Test
+	public void request_afterQuietPeriod_hedgesAtMostBurstAndPercentage() throws Exception {
+		HedgingSolrServer underTest = createWarmedUpServer(10);
+		for (int i = 0; i < 300; i++) {
+			underTest.request(createRequest());
+		}
+		firstAnswer.delay = 20;
+		long hedges = underTest.getHedgeCount();
+
+		for (int i = 0; i < 60; i++) {
+			underTest.request(createRequest());
+		}
+		assertTrue(underTest.getHedgeCount() - hedges <= HedgingSolrServer.MAX_HEDGE_BURST + 6);
+	}
+
+	@Test
+	public void request_withoutLatencySamples_doesNotHedge() throws Exception {
+		HedgingSolrServer underTest = new HedgingSolrServer(Arrays.asList(first, second), executorService, 50, 100);
+		firstAnswer.delay = 100;
+
+		underTest.request(createRequest());
+		assertEquals(0, underTest.getHedgeCount());
+		assertEquals(0, underTest.getHedgeDelay());
+	}
+
+	@Test
+	public void request_withFailingPrimary_returnsResponseOfHedge() throws Exception {
+		HedgingSolrServer underTest = createWarmedUpServer(100);
+		firstAnswer.delay = 100;
+		firstAnswer.failure = new SolrServerException("failed");
+
+		NamedList<Object> response = underTest.request(createRequest());
+		assertSame(secondAnswer.response, response);
+	}
+
+	@Test(expected = SolrServerException.class)
+	public void request_withFailingReplica_throwsException() throws Exception {
+		firstAnswer.failure = new SolrServerException("failed");
+		new HedgingSolrServer(Arrays.asList(first), executorService, 95, 5).request(createRequest());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_withoutReplicas_throwsException() {
+		new HedgingSolrServer(Arrays.<SolrServer>asList(), executorService, 95, 5);
+	}
+
+	private HedgingSolrServer createWarmedUpServer(final int maxExtraLoad) throws Exception {
+		HedgingSolrServer underTest = new HedgingSolrServer(Arrays.asList(first, second), executorService, 50, maxExtraLoad);
+		while (underTest.getHedgeDelay() == 0 || underTest.getRequestCount() % 2 != 0) {
+			underTest.request(createRequest());
+		}
+		return underTest;
+	}
+
+	private SolrRequest createRequest() {
+		return new QueryRequest(new SolrQuery("field1:value"));
+	}
+
+	private static class DelayedAnswer implements Answer<NamedList<Object>> {
+		private final NamedList<Object> response;
+		private volatile long delay;
+		private volatile Exception failure;
+
+		DelayedAnswer(final NamedList<Object> response) {
+			this.response = response;
+		}
+
+		@Override
+		public NamedList<Object> answer(final InvocationOnMock invocation) throws Throwable {
+			if (delay > 0) {
+				Thread.sleep(delay);
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			if (delay == 0) {
+				Thread.sleep(2);
+			}
+			return response;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.util.NamedList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class IndexVersionWatcherTest {
+
+	@Mock IndexVersionListener listener;
+
+	private StandInSolrServer solr;
+	private ScheduledExecutorService scheduler;
+	private IndexVersionWatcher underTest;
+
+	@Before
+	public void setUp() throws Exception {
+		solr = new StandInSolrServer();
+		solr.respondWith(createVersionResponse(1000L, 3L));
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		underTest = new IndexVersionWatcher(new HttpSolrServer(solr.getUrl()), scheduler).addListener(listener);
+	}
+
+	@After
+	public void tearDown() {
+		underTest.close();
+		scheduler.shutdownNow();
+		solr.close();
+	}
+
+	@Test
+	public void poll_requestsIndexVersionFromReplicationHandler() {
+		underTest.poll();
+
+		assertEquals("/solr/replication", solr.getRequests().get(0).getPath());
+		assertTrue(solr.getRequests().get(0).getQuery().contains("command=indexversion"));
+		assertEquals(1000L, underTest.getIndexVersion());
+		assertEquals(3L, underTest.getGeneration());
+	}
+
+	@Test
+	public void poll_withChangedIndex_notifiesListeners() {
+		underTest.poll();
+		solr.respondWith(createVersionResponse(1001L, 4L));
+
+		assertTrue(underTest.poll());
+		verify(listener).indexVersionChanged(1001L, 4L);
+	}
+
+	@Test
+	public void poll_withSameIndex_doesNotNotifyListenersAgain() {
+		assertTrue(underTest.poll());
+		assertFalse(underTest.poll());
+		verify(listener).indexVersionChanged(1000L, 3L);
+	}
+
+	@Test
+	public void poll_withFailingSolr_keepsLastVersion() {
+		underTest.poll();
+		solr.withStatusCode(500);
+
+		assertFalse(underTest.poll());
+		assertEquals(1000L, underTest.getIndexVersion());
+	}
+
+	@Test
+	public void poll_withFailingListener_notifiesOtherListeners() {
+		IndexVersionListener failingListener = mock(IndexVersionListener.class);
+		doThrow(new IllegalStateException("failed")).when(failingListener).indexVersionChanged(anyLong(), anyLong());
+		underTest.removeListener(listener);
+		underTest.addListener(failingListener).addListener(listener);
+
+		underTest.poll();
+		verify(listener).indexVersionChanged(1000L, 3L);
+	}
+
+	@Test
+	public void start_pollsInBackground() {
+		underTest.withPollInterval(10).start();
+
+		verify(listener, timeout(1000)).indexVersionChanged(1000L, 3L);
+	}
+
+	@Test
+	public void addListener_withSameListenerTwice_notifiesListenerOnce() {
+		underTest.addListener(listener).poll();
+
+		verify(listener).indexVersionChanged(1000L, 3L);
+	}
+
+	private NamedList<Object> createVersionResponse(final long indexVersion, final long generation) {
+		NamedList<Object> response = new NamedList<>();
+		response.add("indexversion", indexVersion);
+		response.add("generation", generation);
+		return response;
+	}
+}
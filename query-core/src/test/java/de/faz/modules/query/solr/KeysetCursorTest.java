@@ -0,0 +1,67 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.solr.common.SolrDocument;
+import org.junit.Before;
+import org.junit.Test;
+
+
+import de.faz.modules.query.SearchSettings;
+import de.faz.modules.query.exception.InvalidQueryException;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class KeysetCursorTest {
+
+	private KeysetCursor underTest;
+
+	@Before
+	public void setUp() {
+		underTest = new KeysetCursor(Arrays.asList(
+				new SearchSettings.SortBy("date", SearchSettings.Order.DESC),
+				new SearchSettings.SortBy("contentId", SearchSettings.Order.ASC)));
+	}
+
+	@Test
+	public void createFilter_withTokenOfDocument_selectsDocumentsBehindSortValues() {
+		SolrDocument document = new SolrDocument();
+		document.setField("date", new Date(0));
+		document.setField("contentId", "1.2 3");
+
+		String filter = underTest.createFilter(underTest.createToken(document));
+		assertEquals("{!cache=false}(date:{* TO 1970\\-01\\-01T00\\:00\\:00.000Z}) OR (date:1970\\-01\\-01T00\\:00\\:00.000Z AND contentId:{\"1.2 3\" TO *})", filter);
+	}
+
+	@Test(expected = InvalidQueryException.class)
+	public void createToken_withMissingSortValue_throwsException() {
+		SolrDocument document = new SolrDocument();
+		document.setField("contentId", "1");
+		underTest.createToken(document);
+	}
+
+	@Test
+	public void createToken_withQuoteInValue_escapesValue() {
+		SolrDocument document = new SolrDocument();
+		document.setField("date", 5L);
+		document.setField("contentId", "a\"b");
+		String token = underTest.createToken(document);
+		assertTrue(underTest.createFilter(token).contains("contentId:{\"a\\\"b\" TO *}"));
+	}
+
+	@Test(expected = InvalidQueryException.class)
+	public void createFilter_withInvalidToken_throwsException() {
+		underTest.createFilter("not a token");
+	}
+
+	@Test(expected = InvalidQueryException.class)
+	public void createFilter_withTokenOfOtherSort_throwsException() {
+		SolrDocument document = new SolrDocument();
+		document.setField("contentId", "1");
+		String token = new KeysetCursor(Arrays.asList(new SearchSettings.SortBy("contentId", SearchSettings.Order.ASC))).createToken(document);
+		underTest.createFilter(token);
+	}
+}
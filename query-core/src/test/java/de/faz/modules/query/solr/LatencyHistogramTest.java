@@ -0,0 +1,43 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class LatencyHistogramTest {
+
+	@Test
+	public void getPercentile_withoutSamples_returnsZero() {
+		assertEquals(0, new LatencyHistogram(10).getPercentile(95));
+	}
+
+	@Test
+	public void getPercentile_withSamples_returnsLatencyOfPercentile() {
+		LatencyHistogram underTest = new LatencyHistogram(100);
+		for (int i = 100; i > 0; i--) {
+			underTest.record(i);
+		}
+		assertEquals(95, underTest.getPercentile(95));
+		assertEquals(50, underTest.getPercentile(50));
+		assertEquals(100, underTest.getPercentile(100));
+	}
+
+	@Test
+	public void record_withFullBuffer_overwritesOldestSamples() {
+		LatencyHistogram underTest = new LatencyHistogram(4);
+		for (int i = 0; i < 4; i++) {
+			underTest.record(1000);
+		}
+		for (int i = 0; i < 4; i++) {
+			underTest.record(10);
+		}
+		assertEquals(10, underTest.getPercentile(100));
+		assertEquals(8, underTest.getCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getPercentile_withInvalidPercentile_throwsException() {
+		new LatencyHistogram(10).getPercentile(101);
+	}
+}
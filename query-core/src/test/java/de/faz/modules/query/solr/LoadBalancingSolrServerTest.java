@@ -0,0 +1,106 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class LoadBalancingSolrServerTest {
+
+	private SolrServerRegistry registry;
+	private StandInSolrServer fastReplica;
+	private StandInSolrServer slowReplica;
+	private LoadBalancingSolrServer underTest;
+
+	@Before
+	public void setUp() throws Exception {
+		registry = new SolrServerRegistry();
+		fastReplica = new StandInSolrServer().respondWith(StandInSolrServer.createDocuments("field1", "a"));
+		slowReplica = new StandInSolrServer().respondWith(StandInSolrServer.createDocuments("field1", "a"));
+		underTest = new LoadBalancingSolrServer(Arrays.asList(registry.getServer(fastReplica.getUrl()), registry.getServer(slowReplica.getUrl())), 2, 60000);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		fastReplica.close();
+		slowReplica.close();
+		registry.close();
+	}
+
+	@Test
+	public void request_withSlowReplica_prefersFasterReplica() throws Exception {
+		slowReplica.withDelay(100);
+		for (int i = 0; i < 10; i++) {
+			underTest.query(new SolrQuery("field1:value"));
+		}
+		assertTrue(slowReplica.getRequestCount() <= 2);
+		assertEquals(10, fastReplica.getRequestCount() + slowReplica.getRequestCount());
+	}
+
+	@Test
+	public void request_withFailingReplica_retriesOnOtherReplica() throws Exception {
+		slowReplica.withStatusCode(500);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(1, underTest.query(new SolrQuery("field1:value")).getResults().getNumFound());
+		}
+		assertEquals(10, fastReplica.getRequestCount());
+	}
+
+	@Test
+	public void request_withFailingReplica_ejectsReplica() throws Exception {
+		slowReplica.withStatusCode(500);
+		for (int i = 0; i < 10; i++) {
+			underTest.query(new SolrQuery("field1:value"));
+		}
+		assertEquals(2, slowReplica.getRequestCount());
+		assertTrue(underTest.getReplicas().get(1).isEjected());
+		assertFalse(underTest.getReplicas().get(0).isEjected());
+	}
+
+	@Test
+	public void request_withInvalidRequest_doesNotRetry() throws Exception {
+		HttpSolrServer first = mock(HttpSolrServer.class);
+		HttpSolrServer second = mock(HttpSolrServer.class);
+		when(first.request(any(SolrRequest.class))).thenThrow(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "invalid query"));
+		when(second.request(any(SolrRequest.class))).thenThrow(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "invalid query"));
+		underTest = new LoadBalancingSolrServer(Arrays.asList(first, second), 2, 60000);
+		try {
+			underTest.request(new QueryRequest(new SolrQuery("field1:value")));
+			fail("expected a SolrException");
+		} catch (SolrException e) {
+			assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+		}
+		verify(first, times(1)).request(any(SolrRequest.class));
+		verify(second, times(0)).request(any(SolrRequest.class));
+	}
+
+	@Test(expected = SolrServerException.class)
+	public void request_withAllReplicasFailing_throwsException() throws Exception {
+		fastReplica.withStatusCode(500);
+		slowReplica.withStatusCode(500);
+		underTest.query(new SolrQuery("field1:value"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_withoutReplicas_throwsException() {
+		new LoadBalancingSolrServer(Arrays.asList(new HttpSolrServer[0]), 2, 1000);
+	}
+}
@@ -0,0 +1,115 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class NegativeResultCacheTest {
+
+	private NegativeResultCache underTest;
+
+	@Before
+	public void setUp() {
+		underTest = new NegativeResultCache(10, 60000);
+	}
+
+	@Test
+	public void isKnownEmpty_withRecordedEmptyQuery_returnsTrue() {
+		underTest.record(createQuery("tag:rare"), createResponse(0, false));
+
+		assertTrue(underTest.isKnownEmpty(createQuery("tag:rare")));
+		assertEquals(1, underTest.getHitCount());
+	}
+
+	@Test
+	public void isKnownEmpty_withQueryThatHasHits_returnsFalse() {
+		underTest.record(createQuery("tag:popular"), createResponse(5, false));
+
+		assertFalse(underTest.isKnownEmpty(createQuery("tag:popular")));
+	}
+
+	@Test
+	public void isKnownEmpty_withOtherPageOfEmptyQuery_returnsTrue() {
+		underTest.record(createQuery("tag:rare"), createResponse(0, false));
+		SolrQuery query = createQuery("tag:rare");
+		query.setStart(20);
+		query.setRows(0);
+		query.setSortField("date", SolrQuery.ORDER.desc);
+		query.setHighlight(true);
+
+		assertTrue(underTest.isKnownEmpty(query));
+	}
+
+	@Test
+	public void isKnownEmpty_withOtherFilter_returnsFalse() {
+		underTest.record(createQuery("tag:rare"), createResponse(0, false));
+		SolrQuery query = createQuery("tag:rare");
+		query.addFilterQuery("author:someone");
+
+		assertFalse(underTest.isKnownEmpty(query));
+	}
+
+	@Test
+	public void record_withPartialResponse_doesNotRememberQuery() {
+		underTest.record(createQuery("tag:rare"), createResponse(0, true));
+
+		assertFalse(underTest.isKnownEmpty(createQuery("tag:rare")));
+	}
+
+	@Test
+	public void indexVersionChanged_forgetsAllQueries() {
+		underTest.record(createQuery("tag:rare"), createResponse(0, false));
+		underTest.indexVersionChanged(1001L, 4L);
+
+		assertFalse(underTest.isKnownEmpty(createQuery("tag:rare")));
+		assertEquals(0, underTest.getSize());
+	}
+
+	@Test
+	public void record_withMoreQueriesThanSize_keepsRecentQueries() {
+		for (int i = 0; i < 25; i++) {
+			underTest.record(createQuery("tag:rare" + i), createResponse(0, false));
+		}
+
+		assertTrue(underTest.isKnownEmpty(createQuery("tag:rare24")));
+		assertTrue(underTest.getSize() <= 10);
+	}
+
+	@Test
+	public void createFingerprint_withDifferentParameterOrder_returnsSameFingerprint() {
+		SolrQuery first = createQuery("tag:rare");
+		first.addFilterQuery("a:1");
+		first.set("defType", "edismax");
+		SolrQuery second = new SolrQuery();
+		second.set("defType", "edismax");
+		second.addFilterQuery("a:1");
+		second.setQuery("tag:rare");
+
+		assertEquals(NegativeResultCache.createFingerprint(first), NegativeResultCache.createFingerprint(second));
+	}
+
+	private SolrQuery createQuery(final String query) {
+		return new SolrQuery(query);
+	}
+
+	private QueryResponse createResponse(final long numFound, final boolean partial) {
+		SolrDocumentList documents = new SolrDocumentList();
+		documents.setNumFound(numFound);
+		NamedList<Object> header = new NamedList<>();
+		if (partial) {
+			header.add("partialResults", true);
+		}
+		NamedList<Object> response = new NamedList<>();
+		response.add("responseHeader", header);
+		response.add("response", documents);
+		return new QueryResponse(response, null);
+	}
+}
@@ -0,0 +1,96 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class OffHeapResultStoreTest {
+
+	private OffHeapResultStore underTest;
+
+	@Before
+	public void setUp() {
+		underTest = new OffHeapResultStore(4096, 60000);
+	}
+
+	@Test
+	public void get_withStoredResponse_returnsDecodedCopy() {
+		NamedList<Object> response = StandInSolrServer.createResponse(StandInSolrServer.createDocuments("contentId", "1.1", "1.2"));
+		underTest.put("key", response);
+
+		NamedList<Object> stored = underTest.get("key");
+		assertNotSame(response, stored);
+		SolrDocumentList documents = (SolrDocumentList) stored.get("response");
+		assertEquals(2, documents.getNumFound());
+		assertEquals("1.2", documents.get(1).getFieldValue("contentId"));
+	}
+
+	@Test
+	public void get_withUnknownKey_returnsNull() {
+		assertNull(underTest.get("key"));
+	}
+
+	@Test
+	public void put_withSameKey_replacesResponse() {
+		underTest.put("key", createResponse("first"));
+		underTest.put("key", createResponse("second"));
+
+		assertEquals("second", underTest.get("key").get("value"));
+		assertEquals(1, underTest.getSize());
+	}
+
+	@Test
+	public void put_withFullBuffer_overwritesOldestResponses() {
+		for (int i = 0; i < 1000; i++) {
+			underTest.put("key" + i, createResponse("value" + i));
+		}
+
+		assertNull(underTest.get("key0"));
+		assertEquals("value999", underTest.get("key999").get("value"));
+		assertEquals(1000 - underTest.getSize(), underTest.getEvictionCount());
+		for (int i = 1000 - underTest.getSize(); i < 1000; i++) {
+			assertNotNull("key" + i + " must be stored", underTest.get("key" + i));
+		}
+	}
+
+	@Test
+	public void put_withTooLargeResponse_doesNotStoreResponse() {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			value.append('x');
+		}
+		underTest.put("key", createResponse(value.toString()));
+
+		assertNull(underTest.get("key"));
+	}
+
+	@Test
+	public void get_withExpiredResponse_returnsNull() {
+		underTest = new OffHeapResultStore(4096, 0);
+		underTest.put("key", createResponse("value"));
+
+		assertNull(underTest.get("key"));
+	}
+
+	@Test
+	public void clear_removesAllResponses() {
+		underTest.put("key", createResponse("value"));
+		underTest.clear();
+
+		assertNull(underTest.get("key"));
+		assertEquals(0, underTest.getUsedBytes());
+	}
+
+	private NamedList<Object> createResponse(final String value) {
+		NamedList<Object> response = new NamedList<>();
+		response.add("value", value);
+		return response;
+	}
+}
@@ -0,0 +1,107 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class QueryLogTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private QueryLog underTest;
+
+	@Before
+	public void setUp() {
+		underTest = new QueryLog(2);
+	}
+
+	@Test
+	public void getTopQueries_returnsMostFrequentQueryFirst() {
+		underTest.record(createQuery("tag:rare"));
+		underTest.record(createQuery("tag:popular"));
+		underTest.record(createQuery("tag:popular"));
+
+		List<SolrParams> queries = underTest.getTopQueries(2);
+		assertEquals("tag:popular", queries.get(0).get("q"));
+		assertEquals("tag:rare", queries.get(1).get("q"));
+	}
+
+	@Test
+	public void record_withFullLog_replacesLessFrequentQuery() {
+		underTest.record(createQuery("tag:popular"));
+		underTest.record(createQuery("tag:popular"));
+		underTest.record(createQuery("tag:rare"));
+		underTest.record(createQuery("tag:other"));
+		underTest.record(createQuery("tag:other"));
+
+		assertEquals(2, underTest.getSize());
+		List<SolrParams> queries = underTest.getTopQueries(2);
+		assertEquals("tag:popular", queries.get(0).get("q"));
+		assertEquals("tag:other", queries.get(1).get("q"));
+		assertEquals(1, underTest.getCount(createQuery("tag:rare")));
+	}
+
+	@Test
+	public void record_withDeadline_ignoresTimeAllowed() {
+		SolrQuery query = createQuery("tag:popular");
+		query.setTimeAllowed(50);
+		underTest.record(query);
+		underTest.record(createQuery("tag:popular"));
+
+		assertEquals(1, underTest.getSize());
+		assertEquals(null, underTest.getTopQueries(1).get(0).get("timeAllowed"));
+	}
+
+	@Test
+	public void record_withReorderedParameters_countsSameQuery() {
+		ModifiableSolrParams first = new ModifiableSolrParams();
+		first.add("q", "tag:popular");
+		first.add("rows", "10");
+		ModifiableSolrParams second = new ModifiableSolrParams();
+		second.add("rows", "10");
+		second.add("q", "tag:popular");
+		underTest.record(first);
+		underTest.record(second);
+
+		assertEquals(1, underTest.getSize());
+		assertEquals(2, underTest.getCount(first));
+	}
+
+	@Test
+	public void record_withChangedParametersAfterwards_keepsRecordedQuery() {
+		SolrQuery query = createQuery("tag:popular");
+		underTest.record(query);
+		query.setQuery("tag:changed");
+
+		assertEquals("tag:popular", underTest.getTopQueries(1).get(0).get("q"));
+	}
+
+	@Test
+	public void readFrom_withWrittenLog_restoresQueriesAndCounts() throws Exception {
+		File file = folder.newFile();
+		SolrQuery query = createQuery("title:\"a & b\"");
+		query.addFilterQuery("type:article", "section:politik");
+		underTest.record(query);
+		underTest.record(query);
+		underTest.writeTo(file);
+
+		QueryLog restored = new QueryLog(2);
+		restored.readFrom(file);
+		assertEquals(2, restored.getCount(query));
+		assertEquals(2, restored.getTopQueries(1).get(0).getParams("fq").length);
+	}
+
+	private SolrQuery createQuery(final String query) {
+		return new SolrQuery(query);
+	}
+}
@@ -0,0 +1,80 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class QueryWarmerTest {
+
+	@Mock SolrServer solrServer;
+
+	private QueryLog queryLog;
+	private ExecutorService executorService;
+	private QueryWarmer underTest;
+
+	@Before
+	public void setUp() {
+		queryLog = new QueryLog(10);
+		executorService = Executors.newSingleThreadExecutor();
+		underTest = new QueryWarmer(solrServer, queryLog, executorService);
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void warmUp_withQueryCount_sendsMostFrequentQueries() throws Exception {
+		queryLog.record(new SolrQuery("tag:rare"));
+		queryLog.record(new SolrQuery("tag:popular"));
+		queryLog.record(new SolrQuery("tag:popular"));
+		underTest.withQueryCount(1).warmUp().get();
+
+		ArgumentCaptor<SolrRequest> request = ArgumentCaptor.forClass(SolrRequest.class);
+		verify(solrServer, times(1)).request(request.capture());
+		assertEquals("tag:popular", request.getValue().getParams().get("q"));
+		assertEquals(1, underTest.getReplayCount());
+	}
+
+	@Test
+	public void warmUp_withFailingQuery_sendsRemainingQueries() throws Exception {
+		doThrow(new SolrServerException("unavailable")).doReturn(null).when(solrServer).request(any(SolrRequest.class));
+		queryLog.record(new SolrQuery("tag:popular"));
+		queryLog.record(new SolrQuery("tag:rare"));
+		underTest.warmUp().get();
+
+		verify(solrServer, times(2)).request(any(SolrRequest.class));
+		assertEquals(1, underTest.getReplayCount());
+	}
+
+	@Test
+	public void indexVersionChanged_sendsQueries() throws Exception {
+		queryLog.record(new SolrQuery("tag:popular"));
+		underTest.indexVersionChanged(1001L, 4L);
+		executorService.shutdown();
+		executorService.awaitTermination(5, TimeUnit.SECONDS);
+
+		verify(solrServer, times(1)).request(any(SolrRequest.class));
+	}
+}
@@ -0,0 +1,288 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+@RunWith(MockitoJUnitRunner.class)
+public class ResultCachingSolrServerTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Mock SolrServer solrServer;
+
+	private NamedList<Object> response;
+	private ResultCachingSolrServer underTest;
+
+	@Before
+	public void setUp() throws Exception {
+		response = new NamedList<>();
+		when(solrServer.request(any(SolrRequest.class))).thenReturn(response);
+		underTest = new ResultCachingSolrServer(solrServer, 10, 60000);
+	}
+
+	@Test
+	public void request_withSameQuery_returnsCachedResponse() throws Exception {
+		underTest.request(createRequest("field1:value"));
+
+		assertSame(response, underTest.request(createRequest("field1:value")));
+		verify(solrServer, times(1)).request(any(SolrRequest.class));
+		assertEquals(1, underTest.getHitCount());
+	}
+
+	@Test
+	public void request_withOtherQuery_sendsRequest() throws Exception {
+		underTest.request(createRequest("field1:value"));
+		underTest.request(createRequest("field1:other"));
+
+		verify(solrServer, times(2)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void request_afterIndexVersionChanged_sendsRequestAgain() throws Exception {
+		underTest.request(createRequest("field1:value"));
+		underTest.indexVersionChanged(1001L, 4L);
+		underTest.request(createRequest("field1:value"));
+
+		verify(solrServer, times(2)).request(any(SolrRequest.class));
+		assertEquals(1001L, underTest.getIndexVersion());
+	}
+
+	@Test
+	public void request_withResponseOfPreviousIndex_doesNotCacheResponse() throws Exception {
+		when(solrServer.request(any(SolrRequest.class))).thenAnswer(new Answer<NamedList<Object>>() {
+			@Override
+			public NamedList<Object> answer(final InvocationOnMock invocation) throws Throwable {
+				// the index changes while the request is processed
+				underTest.indexVersionChanged(1001L, 4L);
+				return response;
+			}
+		});
+		underTest.request(createRequest("field1:value"));
+
+		assertEquals(0, underTest.getSize());
+	}
+
+	@Test
+	public void request_withResponseParser_isNotCached() throws Exception {
+		QueryRequest request = createRequest("field1:value");
+		request.setResponseParser(new BinaryResponseParser());
+		underTest.request(request);
+		underTest.request(request);
+
+		verify(solrServer, times(2)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void request_withPartialResponse_isNotCached() throws Exception {
+		NamedList<Object> header = new NamedList<>();
+		header.add("partialResults", true);
+		response.add("responseHeader", header);
+		underTest.request(createRequest("field1:value"));
+		underTest.request(createRequest("field1:value"));
+
+		verify(solrServer, times(2)).request(any(SolrRequest.class));
+		assertEquals(0, underTest.getSize());
+	}
+
+	@Test
+	public void request_withOffHeapStore_returnsResponseEvictedFromHeap() throws Exception {
+		response.add("value", "cached");
+		underTest = new ResultCachingSolrServer(solrServer, 1, 60000).withOffHeapStore(new OffHeapResultStore(4096, 60000),
+			MoreExecutors.sameThreadExecutor());
+		underTest.request(createRequest("field1:value"));
+		underTest.request(createRequest("field1:other"));
+
+		assertEquals("cached", underTest.request(createRequest("field1:value")).get("value"));
+		verify(solrServer, times(2)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void indexVersionChanged_withOffHeapStore_clearsStore() throws Exception {
+		OffHeapResultStore store = new OffHeapResultStore(4096, 60000);
+		underTest = new ResultCachingSolrServer(solrServer, 1, 60000).withOffHeapStore(store, MoreExecutors.sameThreadExecutor());
+		underTest.request(createRequest("field1:value"));
+		underTest.indexVersionChanged(1001L, 4L);
+
+		assertEquals(0, store.getSize());
+	}
+
+	@Test
+	public void request_withOffHeapStore_promotesResponseToHeapWhenRequestedAgain() throws Exception {
+		OffHeapResultStore store = new OffHeapResultStore(4096, 60000);
+		underTest = new ResultCachingSolrServer(solrServer, 10, 60000).withOffHeapStore(store, MoreExecutors.sameThreadExecutor());
+		underTest.request(createRequest("field1:value"));
+		assertEquals(0, underTest.getSize());
+		assertEquals(1, store.getSize());
+
+		underTest.request(createRequest("field1:value"));
+		assertEquals(1, underTest.getSize());
+		verify(solrServer, times(1)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void request_whileResponseIsStored_returnsPendingResponse() throws Exception {
+		final List<Runnable> writes = new ArrayList<>();
+		OffHeapResultStore store = new OffHeapResultStore(4096, 60000);
+		underTest = new ResultCachingSolrServer(solrServer, 10, 60000).withOffHeapStore(store, new Executor() {
+			@Override
+			public void execute(final Runnable command) {
+				writes.add(command);
+			}
+		});
+		underTest.request(createRequest("field1:value"));
+
+		assertSame(response, underTest.request(createRequest("field1:value")));
+		assertEquals(0, store.getSize());
+		assertEquals(1, writes.size());
+		writes.get(0).run();
+		assertEquals(1, store.getSize());
+		verify(solrServer, times(1)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void request_withBusyStoreExecutor_returnsResponseWithoutStoringIt() throws Exception {
+		OffHeapResultStore store = new OffHeapResultStore(4096, 60000);
+		underTest = new ResultCachingSolrServer(solrServer, 10, 60000).withOffHeapStore(store, new Executor() {
+			@Override
+			public void execute(final Runnable command) {
+				throw new RejectedExecutionException("busy");
+			}
+		});
+
+		assertSame(response, underTest.request(createRequest("field1:value")));
+		underTest.request(createRequest("field1:value"));
+		verify(solrServer, times(2)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void loadSnapshot_withSameIndexVersion_returnsResponseWithoutRequest() throws Exception {
+		File file = folder.newFile();
+		response.add("value", "cached");
+		underTest.indexVersionChanged(1001L, 4L);
+		underTest.request(createRequest("field1:value"));
+		assertEquals(1, underTest.writeSnapshot(file, 10));
+
+		ResultCachingSolrServer restarted = new ResultCachingSolrServer(solrServer, 10, 60000);
+		restarted.loadSnapshot(file);
+		restarted.indexVersionChanged(1001L, 4L);
+
+		assertEquals("cached", restarted.request(createRequest("field1:value")).get("value"));
+		verify(solrServer, times(1)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void loadSnapshot_withOtherIndexVersion_sendsRequest() throws Exception {
+		File file = folder.newFile();
+		underTest.indexVersionChanged(1001L, 4L);
+		underTest.request(createRequest("field1:value"));
+		underTest.writeSnapshot(file, 10);
+
+		ResultCachingSolrServer restarted = new ResultCachingSolrServer(solrServer, 10, 60000);
+		restarted.loadSnapshot(file);
+		restarted.indexVersionChanged(1002L, 5L);
+		restarted.request(createRequest("field1:value"));
+
+		verify(solrServer, times(2)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void request_withBrokenSnapshotResponse_sendsRequestAndDiscardsSnapshot() throws Exception {
+		File file = folder.newFile();
+		underTest.indexVersionChanged(1001L, 4L);
+		underTest.request(createRequest("field1:value"));
+		underTest.request(createRequest("field1:other"));
+		underTest.writeSnapshot(file, 10);
+		String brokenKey;
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+			// overwrites the javabin version of the first response
+			out.seek(20);
+			byte[] key = new byte[out.readInt()];
+			out.readFully(key);
+			brokenKey = new String(key, "UTF-8");
+			out.skipBytes(4);
+			out.write(99);
+		}
+		QueryRequest broken = createRequest("field1:value");
+		QueryRequest intact = createRequest("field1:other");
+		if (!brokenKey.equals(CircuitBreakerSolrServer.createCacheKey(broken))) {
+			broken = intact;
+			intact = createRequest("field1:value");
+		}
+
+		ResultCachingSolrServer restarted = new ResultCachingSolrServer(solrServer, 10, 60000);
+		assertTrue(restarted.loadSnapshot(file));
+		restarted.indexVersionChanged(1001L, 4L);
+		assertSame(response, restarted.request(broken));
+		assertSame(response, restarted.request(intact));
+
+		verify(solrServer, times(4)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void loadSnapshot_withBrokenFile_returnsFalse() throws Exception {
+		File file = folder.newFile();
+
+		assertFalse(underTest.loadSnapshot(file));
+	}
+
+	@Test
+	public void writeSnapshot_withMaxEntries_writesMostRequestedResponses() throws Exception {
+		File file = folder.newFile();
+		underTest.indexVersionChanged(1001L, 4L);
+		underTest.request(createRequest("field1:value"));
+		underTest.request(createRequest("field1:other"));
+		underTest.request(createRequest("field1:other"));
+		underTest.writeSnapshot(file, 1);
+
+		ResultSnapshot snapshot = ResultSnapshot.read(file);
+		assertEquals(1, snapshot.getSize());
+		assertEquals(1001L, snapshot.getIndexVersion());
+		assertNotNull(snapshot.get(CircuitBreakerSolrServer.createCacheKey(createRequest("field1:other"))));
+	}
+
+	@Test
+	public void writeSnapshot_withUnknownIndexVersion_writesNothing() throws Exception {
+		File file = new File(folder.getRoot(), "result.snapshot");
+		underTest.request(createRequest("field1:value"));
+
+		assertEquals(0, underTest.writeSnapshot(file, 10));
+		assertFalse(file.exists());
+	}
+
+	private QueryRequest createRequest(final String query) {
+		return new QueryRequest(new SolrQuery(query));
+	}
+}
@@ -2,10 +2,15 @@ package de.faz.modules.query.solr;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -17,11 +22,14 @@ import java.util.Iterator;
 import net.sf.cglib.proxy.Callback;
 
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.NamedList;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -36,10 +44,16 @@ import org.mockito.stubbing.Answer;
 
 import com.google.common.base.Optional;
 
+import de.faz.modules.query.AdaptiveConcurrencyLimiter;
+import de.faz.modules.query.ConcurrencyLimitingQueryExecutor;
 import de.faz.modules.query.Query;
+import de.faz.modules.query.ResultHandler;
 import de.faz.modules.query.SearchContext;
 import de.faz.modules.query.SearchDecorator;
+import de.faz.modules.query.SearchRequestListener;
+import de.faz.modules.query.SearchSettings;
 import de.faz.modules.query.TestMapping;
+import de.faz.modules.query.exception.SearchFailedException;
 import de.faz.modules.query.fields.FieldDefinitionGenerator;
 import de.faz.modules.query.fields.Mapping;
 
@@ -124,6 +138,174 @@ public class SolrQueryExecutorTest {
         verify(generator).enhanceWithInterceptor(eq(TestMapping.class), any(Callback.class));
     }
 
+    @Test
+    public void executeQuery_withShortQuery_sendsQueryWithGet() throws SolrServerException {
+        SolrRequestStatistics statistics = new SolrRequestStatistics();
+        executor = new SolrQueryExecutor(httpSolrServer, generator, 1000, statistics);
+        when(q.toString()).thenReturn("field:value");
+        executor.executeQuery(q, settings);
+        verify(httpSolrServer).query(any(SolrQuery.class));
+        assertEquals(1, statistics.getRequestCount());
+        assertEquals(0, statistics.getPostRequestCount());
+    }
+
+    @Test
+    public void executeQuery_withQueryLongerThanThreshold_sendsQueryWithPost() throws SolrServerException {
+        SolrRequestStatistics statistics = new SolrRequestStatistics();
+        executor = new SolrQueryExecutor(httpSolrServer, generator, 10, statistics);
+        when(q.toString()).thenReturn("field:(value1 OR value2 OR value3)");
+        executor.executeQuery(q, settings);
+        verify(httpSolrServer).query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST));
+        assertEquals(1, statistics.getRequestCount());
+        assertEquals(1, statistics.getPostRequestCount());
+    }
+
+    @Test
+    public void count_withQuery_returnsNumFoundOfSolr() throws SolrServerException {
+        when(httpSolrServer.query(any(SolrQuery.class))).thenReturn(solrResponse);
+        when(solrResponse.getResults().getNumFound()).thenReturn(42L);
+        assertEquals(42L, executor.count(q, settings));
+    }
+
+    @Test
+    public void count_withEmptyQuery_doesNotCallSolr() throws SolrServerException {
+        when(q.isEmpty()).thenReturn(true);
+        assertEquals(0L, executor.count(q, settings));
+        verify(httpSolrServer, times(0)).query(any(SolrQuery.class));
+    }
+
+    @Test(expected = SearchFailedException.class)
+    public void count_withSolrException_throwsException() throws SolrServerException {
+        when(httpSolrServer.query(any(SolrQuery.class))).thenThrow(new SolrServerException("solr is down"));
+        executor.count(q, settings);
+    }
+
+    @Test(expected = SearchFailedException.class)
+    public void count_withExceededDeadline_throwsException() throws SolrServerException {
+        when(settings.isDeadlineExceeded()).thenReturn(true);
+        executor.count(q, settings);
+    }
+
+    @Test(expected = SearchFailedException.class)
+    public void count_withPartialResponse_throwsException() throws SolrServerException {
+        NamedList<Object> header = new NamedList<>();
+        header.add("partialResults", true);
+        NamedList<Object> response = new NamedList<>();
+        response.add("responseHeader", header);
+        when(httpSolrServer.query(any(SolrQuery.class))).thenReturn(solrResponse);
+        when(solrResponse.getResponse()).thenReturn(response);
+        executor.count(q, settings);
+    }
+
+    @Test
+    public void executeQuery_withSolrException_returnsFailedResult() throws SolrServerException {
+        when(httpSolrServer.query(any(SolrQuery.class))).thenThrow(new SolrServerException("solr is down"));
+        SearchContext.SearchResult result = executor.executeQuery(q, settings);
+        assertTrue(result.isFailed());
+        assertEquals(0, result.getNumCount());
+    }
+
+    @Test
+    public void createCountQuery_withSortHighlightingAndFields_removesAllButQueryAndFilters() {
+        FieldDefinitionGenerator fieldGenerator = new FieldDefinitionGenerator();
+        TestMapping fieldDef = fieldGenerator.createFieldDefinition(TestMapping.class);
+        SolrSearchSettings solrSettings = new SolrSearchSettings(fieldGenerator);
+        solrSettings.withPageSize(50).startAt(100);
+        solrSettings.sortBy(fieldDef.getField2(), SearchSettings.Order.ASC);
+        solrSettings.retainOnlyIncludedFieldsInResult(fieldDef.getField2());
+        solrSettings.addHighlighting();
+        Query filter = mock(Query.class);
+        when(filter.toString()).thenReturn("field2:filter");
+        solrSettings.filterBy(filter);
+        when(q.toString()).thenReturn("field1:value");
+
+        SolrQuery countQuery = executor.createCountQuery(q, solrSettings);
+        assertEquals("field1:value", countQuery.getQuery());
+        assertEquals(Integer.valueOf(0), countQuery.getRows());
+        assertEquals(Integer.valueOf(0), countQuery.getStart());
+        assertEquals("field2:filter", countQuery.getFilterQueries()[0]);
+        assertNull(countQuery.getSortField());
+        assertNull(countQuery.getFields());
+        assertNull(countQuery.get("hl"));
+        assertNull(countQuery.get("hl.fragsize"));
+    }
+
+    @Test
+    public void createCountQuery_withContinuationToken_doesNotAddKeysetFilter() {
+        FieldDefinitionGenerator fieldGenerator = new FieldDefinitionGenerator();
+        TestMapping fieldDef = fieldGenerator.createFieldDefinition(TestMapping.class);
+        SolrSearchSettings keysetSettings = new SolrSearchSettings(fieldGenerator);
+        keysetSettings.withPageSize(2).withKeysetPaging(fieldDef.getField2());
+        SolrDocument lastDocument = new SolrDocument();
+        lastDocument.setField("field2", "b");
+        keysetSettings.continueAfter(new KeysetCursor(keysetSettings.getKeysetSort()).createToken(lastDocument));
+        when(q.toString()).thenReturn("field1:value");
+
+        SolrQuery countQuery = executor.createCountQuery(q, keysetSettings);
+        assertNull(countQuery.getFilterQueries());
+        assertNull(countQuery.getSortField());
+    }
+
+    @Test
+    public void executeQuery_withKeysetPaging_returnsTokenForNextPage() throws Exception {
+        FieldDefinitionGenerator fieldGenerator = new FieldDefinitionGenerator();
+        TestMapping fieldDef = fieldGenerator.createFieldDefinition(TestMapping.class);
+        try (SolrServerRegistry registry = new SolrServerRegistry();
+             StandInSolrServer solr = new StandInSolrServer()) {
+            solr.respondWith(StandInSolrServer.createDocuments("field2", "a", "b"));
+            executor = new SolrQueryExecutor(registry.getServer(solr.getUrl()), fieldGenerator);
+            when(q.toString()).thenReturn("field1:value");
+            SolrSearchSettings keysetSettings = new SolrSearchSettings(fieldGenerator);
+            keysetSettings.withPageSize(2).withKeysetPaging(fieldDef.getField2());
+
+            SearchContext.SearchResult result = executor.executeQuery(q, keysetSettings);
+            keysetSettings.continueAfter(result.getContinuationToken().get());
+            executor.executeQuery(q, keysetSettings);
+
+            String secondRequest = java.net.URLDecoder.decode(solr.getRequests().get(1).getQuery(), "UTF-8");
+            Assert.assertTrue(secondRequest.contains("fq={!cache=false}(field2:{\"b\" TO *})"));
+            Assert.assertTrue(secondRequest.contains("sort=field2 asc"));
+        }
+    }
+
+    @Test
+    public void stream_withQuery_handsMappedDocumentsToHandler() throws Exception {
+        FieldDefinitionGenerator fieldGenerator = new FieldDefinitionGenerator();
+        try (SolrServerRegistry registry = new SolrServerRegistry();
+             StandInSolrServer solr = new StandInSolrServer()) {
+            solr.respondWith(StandInSolrServer.createDocuments("field1", "a", "b"));
+            executor = new SolrQueryExecutor(registry.getServer(solr.getUrl()), fieldGenerator);
+            when(q.toString()).thenReturn("field1:value");
+            SolrSearchSettings streamSettings = new SolrSearchSettings(fieldGenerator);
+            streamSettings.addHighlighting();
+            final java.util.List<String> values = new java.util.ArrayList<>();
+
+            long numFound = executor.stream(q, streamSettings, TestMapping.class, new ResultHandler<TestMapping>() {
+                @Override
+                public void handle(final TestMapping result) {
+                    values.add(result.getField1());
+                }
+            });
+            assertEquals(2, numFound);
+            assertEquals(java.util.Arrays.asList("a", "b"), values);
+            assertFalse(solr.getRequests().get(0).getQuery().contains("hl="));
+        }
+    }
+
+    @Test
+    public void stream_withEmptyQuery_doesNotCallSolr() throws Exception {
+        when(q.isEmpty()).thenReturn(true);
+        assertEquals(0, executor.stream(q, settings, TestMapping.class, mock(ResultHandler.class)));
+        verify(httpSolrServer, times(0)).request(any(SolrRequest.class));
+    }
+
+    @Test
+    public void executeQuery_withoutKeysetPaging_returnsNoToken() throws SolrServerException {
+        when(httpSolrServer.query(any(SolrQuery.class))).thenReturn(solrResponse);
+        SearchContext.SearchResult result = executor.executeQuery(q, settings);
+        assertFalse(result.getContinuationToken().isPresent());
+    }
+
     @Test
     public void executeQuery_withResult_verifyFactoryIsGetFromSettings() {
         executor.executeQuery(q, settings);
@@ -139,5 +321,112 @@ public class SolrQueryExecutorTest {
 			}));
 	}
 
+    @Test
+    public void executeQuery_withExceededDeadline_doesNotCallSolrAndReturnsPartialResult() throws SolrServerException {
+        when(settings.isDeadlineExceeded()).thenReturn(true);
+        SearchContext.SearchResult result = executor.executeQuery(q, settings);
+        verify(httpSolrServer, times(0)).query(any(SolrQuery.class));
+        assertTrue(result.isPartial());
+        assertEquals(0, result.getNumCount());
+    }
+
+    @Test
+    public void mapSolrQueryToDomainResult_withPartialResultsHeader_returnsPartialResult() {
+        NamedList<Object> header = new NamedList<>();
+        header.add("partialResults", true);
+        NamedList<Object> response = new NamedList<>();
+        response.add("responseHeader", header);
+        response.add("response", new SolrDocumentList());
+        SearchContext.SearchResult result = executor.mapSolrQueryToDomainResult(settings, new QueryResponse(response, null));
+        assertTrue(result.isPartial());
+    }
 
+    @Test
+    public void mapSolrQueryToDomainResult_withoutPartialResultsHeader_returnsCompleteResult() {
+        NamedList<Object> response = new NamedList<>();
+        response.add("responseHeader", new NamedList<>());
+        response.add("response", new SolrDocumentList());
+        assertFalse(executor.mapSolrQueryToDomainResult(settings, new QueryResponse(response, null)).isPartial());
+    }
+
+    @Test
+    public void executeQuery_withKnownEmptyQuery_doesNotCallSolr() throws SolrServerException {
+        NamedList<Object> response = new NamedList<>();
+        response.add("response", new SolrDocumentList());
+        when(httpSolrServer.query(any(SolrQuery.class))).thenReturn(new QueryResponse(response, null));
+        NegativeResultCache cache = new NegativeResultCache(10, 60000);
+        executor.withNegativeResultCache(cache);
+
+        assertEquals(0L, executor.count(q, settings));
+        SearchContext.SearchResult result = executor.executeQuery(q, settings);
+        verify(httpSolrServer, times(1)).query(any(SolrQuery.class));
+        assertEquals(0, result.getNumCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void executeQuery_withQueryLog_recordsQuery() throws SolrServerException {
+        when(httpSolrServer.query(any(SolrQuery.class))).thenReturn(new QueryResponse(new NamedList<Object>(), null));
+        QueryLog log = new QueryLog(10);
+        executor.withQueryLog(log);
+
+        executor.executeQuery(q, settings);
+        executor.count(q, settings);
+        assertEquals(2, log.getRecordCount());
+        assertEquals(2, log.getSize());
+    }
+
+    @Test
+    public void executeQuery_withUnreachableSolr_reportsFailedRequestToLimiter() throws Exception {
+        StandInSolrServer standIn = new StandInSolrServer();
+        standIn.close();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, 0, 0);
+        SolrQueryExecutor solrExecutor = new SolrQueryExecutor(new HttpSolrServer(standIn.getUrl()), generator).withRequestListener(limiter);
+        ConcurrencyLimitingQueryExecutor limited = new ConcurrencyLimitingQueryExecutor(solrExecutor, limiter);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limited.execute(q, settings).getNumCount());
+            try {
+                limited.count(q, settings);
+                Assert.fail("the count of an unreachable solr must fail.");
+            } catch (SearchFailedException e) {
+                // expected
+            }
+        }
+        assertTrue(limiter.getLimit() < 10);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void executeQuery_withoutRequestToSolr_reportsNothing() throws SolrServerException {
+        SearchRequestListener listener = mock(SearchRequestListener.class);
+        executor.withRequestListener(listener);
+        when(settings.isDeadlineExceeded()).thenReturn(true);
+        executor.executeQuery(q, settings);
+        try {
+            executor.count(q, settings);
+            Assert.fail("a count after its deadline must fail.");
+        } catch (SearchFailedException e) {
+            // expected
+        }
+
+        when(settings.isDeadlineExceeded()).thenReturn(false);
+        when(q.isEmpty()).thenReturn(true);
+        executor.executeQuery(q, settings);
+        executor.count(q, settings);
+        verify(listener, never()).requestFinished(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void executeQuery_withKnownEmptyQuery_reportsOnlyFirstRequest() throws SolrServerException {
+        NamedList<Object> response = new NamedList<>();
+        response.add("response", new SolrDocumentList());
+        when(httpSolrServer.query(any(SolrQuery.class))).thenReturn(new QueryResponse(response, null));
+        SearchRequestListener listener = mock(SearchRequestListener.class);
+        executor.withNegativeResultCache(new NegativeResultCache(10, 60000)).withRequestListener(listener);
+
+        executor.executeQuery(q, settings);
+        executor.executeQuery(q, settings);
+        verify(listener, times(1)).requestFinished(anyLong(), eq(true));
+    }
 }
@@ -1,6 +1,11 @@
 package de.faz.modules.query.solr;
 
+import de.faz.modules.query.AdaptiveConcurrencyLimiter;
+import de.faz.modules.query.LoadSheddingPolicy;
+import de.faz.modules.query.Query;
+import de.faz.modules.query.QueryFrequencyTracker;
 import de.faz.modules.query.SearchContext;
+import de.faz.modules.query.TestMapping;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.junit.Test;
@@ -8,7 +13,17 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 /**
  * @author Andreas Kaubisch <a.kaubisch@faz.de>
@@ -24,4 +39,132 @@ public class SolrSearchContextFactoryTest {
         SearchContext context = SolrSearchContextFactory.createSearchContext(httpSolrServer);
         assertEquals(SolrSearchContext.class, context.getClass());
     }
+
+    @Test
+    public void createSearchContext_withRegistry_returnsNewInstanceOfSolrSearchContext() throws Exception {
+        try (SolrServerRegistry registry = new SolrServerRegistry()) {
+            SearchContext context = SolrSearchContextFactory.createSearchContext(registry, "http://localhost:8080/solr/public");
+            assertEquals(SolrSearchContext.class, context.getClass());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createFanOutSearchContext_withoutUrls_throwsException() throws Exception {
+        try (SolrServerRegistry registry = new SolrServerRegistry()) {
+            SolrSearchContextFactory.createFanOutSearchContext(registry, mock(ExecutorService.class));
+        }
+    }
+
+    @Test
+    public void createHedgedSearchContext_withRegistry_returnsNewInstanceOfSolrSearchContext() throws Exception {
+        try (SolrServerRegistry registry = new SolrServerRegistry()) {
+            SearchContext context = SolrSearchContextFactory.createHedgedSearchContext(registry, mock(ExecutorService.class),
+                Arrays.asList("http://localhost:8080/solr/public", "http://localhost:8081/solr/public"));
+            assertEquals(SolrSearchContext.class, context.getClass());
+        }
+    }
+
+    @Test
+    public void builder_withStackedFeatures_appliesAllOfThem() throws Exception {
+        StandInSolrServer solr = new StandInSolrServer();
+        solr.close();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, 0, 0);
+        QueryFrequencyTracker tracker = new QueryFrequencyTracker();
+        try (SolrServerRegistry registry = new SolrServerRegistry()) {
+            SearchContext context = SolrSearchContextFactory.builder(registry, solr.getUrl())
+                .withCircuitBreaker()
+                .withConcurrencyLimiter(limiter)
+                .withTracker(tracker)
+                .withLoadShedding(new LoadSheddingPolicy())
+                .build();
+            TestMapping definition = context.createFieldDefinitionFor(TestMapping.class);
+            Query query = context.createQuery();
+            query.add(query.term(definition.getField1()).value("value"));
+
+            for (int i = 0; i < 3; i++) {
+                assertTrue(context.execute(query, context.withSettings()).isFailed());
+            }
+            assertEquals(3, tracker.getRecordCount());
+            assertTrue(limiter.getLimit() < 10);
+            assertEquals(0, limiter.getInFlight());
+        }
+    }
+
+    @Test
+    public void builder_withAllConnectionFeatures_nestsThemAndRegistersResultCache() throws Exception {
+        IndexVersionWatcher watcher = mock(IndexVersionWatcher.class);
+        try (SolrServerRegistry registry = new SolrServerRegistry();
+             StandInSolrServer solr = new StandInSolrServer()) {
+            solr.respondWith(StandInSolrServer.createDocuments("field2", "a", "b"));
+            SearchContext context = SolrSearchContextFactory.builder(registry, solr.getUrl())
+                .withCircuitBreaker()
+                .withDocumentCache("contentId", "commitId")
+                .withResultCache(watcher)
+                .build();
+            execute(context);
+            int requestCount = solr.getRequestCount();
+            execute(context);
+
+            assertEquals(requestCount, solr.getRequestCount());
+            verify(watcher).addListener(any(ResultCachingSolrServer.class));
+        }
+    }
+
+    @Test
+    public void replicatedBuilder_withResultCache_answersRepeatedQueryFromCache() throws Exception {
+        IndexVersionWatcher watcher = mock(IndexVersionWatcher.class);
+        try (SolrServerRegistry registry = new SolrServerRegistry();
+             StandInSolrServer first = new StandInSolrServer();
+             StandInSolrServer second = new StandInSolrServer()) {
+            first.respondWith(StandInSolrServer.createDocuments("field2", "a"));
+            second.respondWith(StandInSolrServer.createDocuments("field2", "a"));
+            SearchContext context = SolrSearchContextFactory.replicatedBuilder(registry, Arrays.asList(first.getUrl(), second.getUrl()))
+                .withResultCache(watcher)
+                .build();
+            execute(context);
+            execute(context);
+
+            assertEquals(1, first.getRequestCount() + second.getRequestCount());
+        }
+    }
+
+    @Test
+    public void fanOutBuilder_withResultCache_cachesResponseOfEveryCore() throws Exception {
+        IndexVersionWatcher watcher = mock(IndexVersionWatcher.class);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try (SolrServerRegistry registry = new SolrServerRegistry();
+             StandInSolrServer articles = new StandInSolrServer();
+             StandInSolrServer videos = new StandInSolrServer()) {
+            articles.respondWith(StandInSolrServer.createDocuments("field2", "a"));
+            videos.respondWith(StandInSolrServer.createDocuments("field2", "b"));
+            SearchContext context = SolrSearchContextFactory.fanOutBuilder(registry, executorService, articles.getUrl(), videos.getUrl())
+                .withResultCache(watcher)
+                .build();
+            execute(context);
+            execute(context);
+
+            assertEquals(1, articles.getRequestCount());
+            assertEquals(1, videos.getRequestCount());
+            verify(watcher, times(2)).addListener(any(ResultCachingSolrServer.class));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void builder_withNonBlockingTransportAndCircuitBreaker_throwsException() throws Exception {
+        try (SolrServerRegistry registry = new SolrServerRegistry()) {
+            SolrSearchContextFactory.builder(registry, "http://localhost:8080/solr/public")
+                .withNonBlockingTransport()
+                .withCircuitBreaker()
+                .build();
+        }
+    }
+
+    private void execute(final SearchContext context) {
+        TestMapping definition = context.createFieldDefinitionFor(TestMapping.class);
+        Query query = context.createQuery();
+        query.add(query.term(definition.getField1()).value("value"));
+        assertFalse(context.execute(query, context.withSettings()).isFailed());
+    }
 }
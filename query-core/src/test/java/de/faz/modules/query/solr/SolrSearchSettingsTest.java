@@ -4,13 +4,21 @@ import de.faz.modules.query.fields.FieldDefinitionGenerator;
 import de.faz.modules.query.Query;
 import de.faz.modules.query.SearchHighlighter;
 import de.faz.modules.query.SearchSettings;
+import de.faz.modules.query.TestMapping;
+import de.faz.modules.query.exception.InvalidQueryException;
+import org.apache.solr.common.SolrDocument;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -61,6 +69,70 @@ public class SolrSearchSettingsTest {
 		verify(query).addField("fieldName");
 	}
 
+	@Test
+	public void retainOnlyFieldsOf_withMappingClass_addMappedFieldsOnceToSolrQuery() {
+		underTest.retainOnlyFieldsOf(TestMapping.class);
+		underTest.retainOnlyFieldsOf(TestMapping.class);
+
+		org.apache.solr.client.solrj.SolrQuery query = new org.apache.solr.client.solrj.SolrQuery();
+		underTest.enrichQuery(query);
+		assertEquals("field1,field2", query.getFields());
+	}
+
+	@Test
+	public void retainOnlyFieldsOf_withHighlighting_addIdFieldForHighlightingResult() {
+		underTest.retainOnlyFieldsOf(TestMapping.class);
+		underTest.addHighlighting();
+
+		org.apache.solr.client.solrj.SolrQuery query = new org.apache.solr.client.solrj.SolrQuery();
+		underTest.enrichQuery(query);
+		assertEquals("field1,field2,contentId", query.getFields());
+	}
+
+	@Test
+	public void withKeysetPaging_withSort_appendsTieBreakerAndIgnoresOffset() {
+		when(generator.isEmpty()).thenReturn(false);
+		when(generator.pop()).thenReturn(new FieldDefinitionGenerator.FieldDefinition("date", 1),
+				new FieldDefinitionGenerator.FieldDefinition("contentId", 1));
+		underTest.sortBy(null, SearchSettings.Order.DESC);
+		underTest.withKeysetPaging(null).startAt(1000);
+
+		org.apache.solr.client.solrj.SolrQuery query = new org.apache.solr.client.solrj.SolrQuery();
+		underTest.enrichQuery(query);
+		assertEquals(Integer.valueOf(0), query.getStart());
+		assertEquals("date desc,contentId asc", query.getSortField());
+		assertNull(query.getFilterQueries());
+	}
+
+	@Test
+	public void continueAfter_withToken_addsRangeFilterToSolrQuery() {
+		when(generator.isEmpty()).thenReturn(false);
+		when(generator.pop()).thenReturn(new FieldDefinitionGenerator.FieldDefinition("contentId", 1));
+		underTest.withKeysetPaging(null);
+		SolrDocument document = new SolrDocument();
+		document.setField("contentId", "42");
+		underTest.continueAfter(new KeysetCursor(underTest.getKeysetSort()).createToken(document));
+
+		org.apache.solr.client.solrj.SolrQuery query = new org.apache.solr.client.solrj.SolrQuery();
+		underTest.enrichQuery(query);
+		assertEquals("{!cache=false}(contentId:{\"42\" TO *})", query.getFilterQueries()[0]);
+	}
+
+	@Test(expected = InvalidQueryException.class)
+	public void withKeysetPaging_withSortByScore_throwsException() {
+		when(generator.isEmpty()).thenReturn(false);
+		when(generator.pop()).thenReturn(new FieldDefinitionGenerator.FieldDefinition("score", 1),
+				new FieldDefinitionGenerator.FieldDefinition("contentId", 1));
+		underTest.sortBy(null, SearchSettings.Order.DESC);
+		underTest.withKeysetPaging(null);
+		underTest.enrichQuery(new org.apache.solr.client.solrj.SolrQuery());
+	}
+
+	@Test(expected = InvalidQueryException.class)
+	public void continueAfter_withoutKeysetPaging_throwsException() {
+		underTest.continueAfter("token");
+	}
+
 	@Test
 	public void withPageSize_withSize_addRowsToSolrQuery() {
 		underTest.withPageSize(50);
@@ -83,4 +155,19 @@ public class SolrSearchSettingsTest {
 		assertSame(highlighter, underTest.getCustomCallbackFactory());
 	}
 
+	@Test
+	public void withTimeout_setsTimeAllowedToRemainingTime() {
+		underTest.withTimeout(5, TimeUnit.SECONDS);
+
+		org.apache.solr.client.solrj.SolrQuery query = new org.apache.solr.client.solrj.SolrQuery();
+		underTest.enrichQuery(query);
+		assertTrue(query.getTimeAllowed() > 4000 && query.getTimeAllowed() <= 5000);
+	}
+
+	@Test
+	public void enrichQuery_withoutDeadline_doesNotSetTimeAllowed() {
+		org.apache.solr.client.solrj.SolrQuery query = new org.apache.solr.client.solrj.SolrQuery();
+		underTest.enrichQuery(query);
+		assertNull(query.getTimeAllowed());
+	}
 }
@@ -0,0 +1,109 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class SolrServerRegistryTest {
+
+	private SolrServerRegistry underTest;
+
+	@Before
+	public void setUp() {
+		underTest = new SolrServerRegistry(new SolrConnectionSettings().withMaxConnectionsPerRoute(4));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		underTest.close();
+	}
+
+	@Test
+	public void getServer_withSameUrl_returnsSameInstance() {
+		assertSame(underTest.getServer("http://localhost:8080/solr/public"), underTest.getServer("http://localhost:8080/solr/public"));
+	}
+
+	@Test
+	public void getServer_withTrailingSlash_returnsSameInstance() {
+		assertSame(underTest.getServer("http://localhost:8080/solr/public"), underTest.getServer("http://localhost:8080/solr/public/"));
+	}
+
+	@Test
+	public void getServer_withCoreName_appendsCoreToUrl() {
+		assertSame(underTest.getServer("http://localhost:8080/solr/public"), underTest.getServer("http://localhost:8080/solr/", "public"));
+	}
+
+	@Test
+	public void getServer_withDifferentUrls_sharesHttpClient() {
+		HttpSolrServer first = underTest.getServer("http://localhost:8080/solr/public");
+		HttpSolrServer second = underTest.getServer("http://localhost:8080/solr/internal");
+		assertNotSame(first, second);
+		assertSame(first.getHttpClient(), second.getHttpClient());
+		assertSame(underTest.getHttpClient(), first.getHttpClient());
+	}
+
+	@Test
+	public void getLoadBalancedServer_withSameUrlsInOtherOrder_returnsSameInstance() {
+		LoadBalancingSolrServer server = underTest.getLoadBalancedServer(Arrays.asList("http://solr1:8080/solr/public", "http://solr2:8080/solr/public"));
+		assertSame(server, underTest.getLoadBalancedServer(Arrays.asList("http://solr2:8080/solr/public/", "http://solr1:8080/solr/public")));
+		assertEquals(2, server.getReplicas().size());
+	}
+
+	@Test
+	public void getCircuitBreakerServer_withSameUrl_returnsSameInstance() {
+		CircuitBreakerSolrServer server = underTest.getCircuitBreakerServer("http://localhost:8080/solr/public");
+		assertSame(server, underTest.getCircuitBreakerServer("http://localhost:8080/solr/public/"));
+	}
+
+	@Test
+	public void getDocumentCachingServer_withSameUrlAndFields_returnsSameInstance() {
+		DocumentCachingSolrServer server = underTest.getDocumentCachingServer("http://localhost:8080/solr/public", "contentId", "commitId");
+		assertSame(server, underTest.getDocumentCachingServer("http://localhost:8080/solr/public/", "contentId", "commitId"));
+	}
+
+	@Test
+	public void getResultCachingServer_withSameUrl_returnsSameInstance() {
+		ResultCachingSolrServer server = underTest.getResultCachingServer("http://localhost:8080/solr/public");
+		assertSame(server, underTest.getResultCachingServer("http://localhost:8080/solr/public/"));
+	}
+
+	@Test
+	public void getNegativeResultCache_withSameUrl_returnsSameInstance() {
+		NegativeResultCache cache = underTest.getNegativeResultCache("http://localhost:8080/solr/public");
+		assertSame(cache, underTest.getNegativeResultCache("http://localhost:8080/solr/public/"));
+	}
+
+	@Test
+	public void getQueryLog_withSameUrl_returnsSameInstance() {
+		QueryLog log = underTest.getQueryLog("http://localhost:8080/solr/public");
+		assertSame(log, underTest.getQueryLog("http://localhost:8080/solr/public/"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getServer_withoutUrl_throwsIllegalArgumentException() {
+		underTest.getServer(" ");
+	}
+
+	@Test
+	public void getServer_withStandInServer_executesQueriesWithPooledClient() throws Exception {
+		try (StandInSolrServer solr = new StandInSolrServer()) {
+			solr.respondWith(StandInSolrServer.createDocuments("contentId", "1.1", "1.2"));
+			HttpSolrServer server = underTest.getServer(solr.getUrl());
+			for (int i = 0; i < 10; i++) {
+				QueryResponse response = server.query(new SolrQuery("*:*"));
+				assertEquals(2, response.getResults().getNumFound());
+			}
+			assertEquals(10, solr.getRequestCount());
+		}
+	}
+}
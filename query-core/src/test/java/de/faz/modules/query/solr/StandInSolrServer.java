@@ -0,0 +1,172 @@
+package de.faz.modules.query.solr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small http server that answers every request with a javabin encoded
+ * solr response. It is used to test the http transport without a running solr.
+ *
+ * @author Andreas Kaubisch <a.kaubisch@faz.de>
+ */
+public class StandInSolrServer implements Closeable {
+
+	private final HttpServer server;
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final List<StandInRequest> requests = new CopyOnWriteArrayList<>();
+
+	private volatile NamedList<Object> response = createResponse(new SolrDocumentList());
+	private volatile long delayInMillis;
+	private volatile int statusCode = 200;
+
+	public StandInSolrServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				handleRequest(exchange);
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	public String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/solr";
+	}
+
+	public StandInSolrServer respondWith(final SolrDocumentList documents) {
+		this.response = createResponse(documents);
+		return this;
+	}
+
+	public StandInSolrServer respondWith(final NamedList<Object> response) {
+		this.response = response;
+		return this;
+	}
+
+	public StandInSolrServer withDelay(final long delayInMillis) {
+		this.delayInMillis = delayInMillis;
+		return this;
+	}
+
+	public StandInSolrServer withStatusCode(final int statusCode) {
+		this.statusCode = statusCode;
+		return this;
+	}
+
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	public List<StandInRequest> getRequests() {
+		return requests;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	public static SolrDocumentList createDocuments(final String idField, final String... ids) {
+		SolrDocumentList documents = new SolrDocumentList();
+		for (String id : ids) {
+			SolrDocument document = new SolrDocument();
+			document.setField(idField, id);
+			documents.add(document);
+		}
+		documents.setNumFound(ids.length);
+		return documents;
+	}
+
+	public static NamedList<Object> createResponse(final SolrDocumentList documents) {
+		NamedList<Object> header = new SimpleOrderedMap<>();
+		header.add("status", 0);
+		header.add("QTime", 1);
+		NamedList<Object> result = new NamedList<>();
+		result.add("responseHeader", header);
+		result.add("response", documents);
+		return result;
+	}
+
+	private void handleRequest(final HttpExchange exchange) throws IOException {
+		requestCount.incrementAndGet();
+		requests.add(new StandInRequest(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+			exchange.getRequestURI().getRawQuery(), readBody(exchange.getRequestBody())));
+		try {
+			if (delayInMillis > 0) {
+				Thread.sleep(delayInMillis);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new JavaBinCodec().marshal(response, out);
+			byte[] body = out.toByteArray();
+			exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+			exchange.sendResponseHeaders(statusCode, body.length);
+			try (OutputStream responseBody = exchange.getResponseBody()) {
+				responseBody.write(body);
+			}
+		} catch (InterruptedException | IOException e) {
+			//the client went away
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private String readBody(final InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toString("UTF-8");
+	}
+
+	public static class StandInRequest {
+		private final String method;
+		private final String path;
+		private final String query;
+		private final String body;
+
+		StandInRequest(final String method, final String path, final String query, final String body) {
+			this.method = method;
+			this.path = path;
+			this.query = query;
+			this.body = body;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getQuery() {
+			return query;
+		}
+
+		public String getBody() {
+			return body;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package de.faz.modules.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.cglib.proxy.Callback;
+
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.faz.modules.query.ResultHandler;
+import de.faz.modules.query.TestMapping;
+import de.faz.modules.query.fields.FieldDefinitionGenerator;
+import de.faz.modules.query.solr.internal.SolrResponseCallbackFactory;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class StreamingResponseParserTest {
+
+	private List<String> handledValues;
+	private StreamingResponseParser<TestMapping> underTest;
+
+	@Before
+	public void setUp() {
+		handledValues = new ArrayList<>();
+		underTest = new StreamingResponseParser<>(new FieldDefinitionGenerator(), TestMapping.class, new ResultHandler<TestMapping>() {
+			@Override
+			public void handle(final TestMapping result) {
+				handledValues.add(result.getField1());
+			}
+		});
+	}
+
+	@Test
+	public void processResponse_withDocuments_handsEveryDocumentToHandler() throws Exception {
+		SolrDocumentList documents = StandInSolrServer.createDocuments("field1", "a", "b", "c");
+		documents.get(1).addField("field2", Arrays.asList("x", "y"));
+		documents.setNumFound(42);
+
+		NamedList<Object> response = underTest.processResponse(marshal(StandInSolrServer.createResponse(documents)), null);
+		assertEquals(Arrays.asList("a", "b", "c"), handledValues);
+		assertEquals(42, ((SolrDocumentList) response.get("response")).getNumFound());
+		assertTrue(((SolrDocumentList) response.get("response")).isEmpty());
+	}
+
+	@Test
+	public void processResponse_withCallbackFactory_mapsDocumentsWithIt() throws Exception {
+		final List<QueryResponse> responses = new ArrayList<>();
+		underTest = new StreamingResponseParser<>(new FieldDefinitionGenerator(), TestMapping.class, new ResultHandler<TestMapping>() {
+			@Override
+			public void handle(final TestMapping result) {
+				handledValues.add(result.getField1());
+			}
+		}, new SolrResponseCallbackFactory() {
+			@Override
+			public Callback createCallbackForDocument(final QueryResponse response, final SolrDocument document) {
+				responses.add(response);
+				return new StandardCallbackFactory().createCallbackForDocument(response, document);
+			}
+		});
+
+		underTest.processResponse(marshal(StandInSolrServer.createResponse(StandInSolrServer.createDocuments("field1", "a", "b"))), null);
+		assertEquals(Arrays.asList("a", "b"), handledValues);
+		assertEquals(2, responses.size());
+		assertNotNull(responses.get(0));
+	}
+
+	@Test
+	public void processResponse_withoutDocuments_returnsNumFound() throws Exception {
+		NamedList<Object> response = underTest.processResponse(marshal(StandInSolrServer.createResponse(new SolrDocumentList())), null);
+		assertTrue(handledValues.isEmpty());
+		assertEquals(0, ((SolrDocumentList) response.get("response")).getNumFound());
+	}
+
+	private ByteArrayInputStream marshal(final NamedList<Object> response) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JavaBinCodec().marshal(response, out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+}
@@ -92,4 +92,12 @@ public class SolrGroupingSearchOptionTest {
 		when(q.toString()).thenReturn(value);
 		return q;
 	}
+
+	@Test
+	public void getDegradedQueryExecutor_withGroupLimit_requestsOnlyFirstDocumentOfGroup() {
+		underTest.limitGroupResultsTo(10);
+		underTest.getDegradedQueryExecutor().get().enrich(query);
+		verify(query).setParam(GroupParams.GROUP, true);
+		verify(query).setParam(GroupParams.GROUP_LIMIT, "1");
+	}
 }
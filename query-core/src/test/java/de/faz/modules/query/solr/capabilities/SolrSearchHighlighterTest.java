@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -106,4 +107,17 @@ public class SolrSearchHighlighterTest {
 		return response;
 	}
 
+	@Test
+	public void getDegradedQueryExecutor_dropsHighlighting() {
+		assertFalse(underTest.getDegradedQueryExecutor().isPresent());
+	}
+
+	@Test
+	public void createCallbackForDocument_withoutHighlightingInResponse_returnsStoredValue() throws Throwable {
+		QueryResponse response = mock(QueryResponse.class);
+		SolrDocument document = new SolrDocument();
+		document.setField("field1", "stored");
+		MethodInterceptor callback = (MethodInterceptor) underTest.createCallbackForDocument(response, document);
+		assertEquals("stored", callback.intercept(null, TestMapping.class.getMethod("getField1"), new Object[0], null));
+	}
 }
@@ -0,0 +1,49 @@
+package de.faz.modules.query.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class HeavyHittersTest {
+
+	private HeavyHitters underTest;
+
+	@Before
+	public void setUp() {
+		underTest = new HeavyHitters(1024, 2);
+	}
+
+	@Test
+	public void add_withFullTopList_replacesQueryWithLowerEstimate() {
+		underTest.add(createFingerprint("tag:popular"), 5);
+		underTest.add(createFingerprint("tag:rare"), 1);
+		underTest.add(createFingerprint("tag:rising"), 1);
+		assertEquals(2, underTest.getSize());
+
+		underTest.add(createFingerprint("tag:rising"), 2);
+
+		List<HeavyHitters.Entry> top = underTest.getTop(2);
+		assertEquals(createFingerprint("tag:popular"), top.get(0).getFingerprint());
+		assertEquals(createFingerprint("tag:rising"), top.get(1).getFingerprint());
+		assertEquals(3, top.get(1).getEstimate());
+		assertEquals(9, underTest.getTotalWeight());
+	}
+
+	@Test
+	public void clear_removesAllQueries() {
+		underTest.add(createFingerprint("tag:popular"), 5);
+		underTest.clear();
+
+		assertEquals(0, underTest.getSize());
+		assertEquals(0, underTest.estimate(createFingerprint("tag:popular")));
+		assertEquals(0, underTest.getTotalWeight());
+	}
+
+	private QueryFingerprint createFingerprint(final String query) {
+		return QueryFingerprint.builder().add("q", query).build();
+	}
+}
@@ -0,0 +1,36 @@
+package de.faz.modules.query.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/** @author Andreas Kaubisch <a.kaubisch@faz.de> */
+public class QueryFingerprintTest {
+
+	@Test
+	public void build_withParametersInOtherOrder_returnsSameFingerprint() {
+		QueryFingerprint first = QueryFingerprint.builder().add("q", "tag:popular").add("fq", "type:article").add("fq", "section:politik").build();
+		QueryFingerprint second = QueryFingerprint.builder().add("fq", "type:article").add("q", "tag:popular").add("fq", "section:politik").build();
+
+		assertEquals(first, second);
+		assertEquals(first.hash(), second.hash());
+		assertEquals("fq=type:article&fq=section:politik&q=tag:popular", first.toString());
+	}
+
+	@Test
+	public void hash_withSeparatorInValue_differsFromSeparateParameters() {
+		QueryFingerprint single = QueryFingerprint.builder().add("q", "a&rows=10").build();
+		QueryFingerprint separate = QueryFingerprint.builder().add("q", "a").add("rows", "10").build();
+
+		assertNotEquals(single.hash(), separate.hash());
+		assertNotEquals(single.toString(), separate.toString());
+	}
+
+	@Test
+	public void parse_withEscapedCharacters_returnsSameFingerprint() {
+		QueryFingerprint fingerprint = QueryFingerprint.builder().add("q", "title:\"a & b\" +c 100%\nd").add("fq", "x=y").build();
+
+		assertEquals(fingerprint, QueryFingerprint.parse(fingerprint.toString()));
+	}
+}
@@ -5,6 +5,7 @@ package de.faz.modules.query.polopoly;
  * @since $rev$
  */
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
@@ -12,7 +13,6 @@ import java.util.List;
 
 import com.polopoly.application.ApplicationComponentControl;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +25,7 @@ import de.faz.modules.query.SearchContext;
 import de.faz.modules.query.SearchDecorator;
 import de.faz.modules.query.polopoly.filter.NeedIndexingFilter;
 import de.faz.modules.query.solr.SolrSearchContextFactory;
+import de.faz.modules.query.solr.SolrServerRegistry;
 
 import javax.annotation.Nullable;
 
@@ -33,6 +34,8 @@ public class PolopolySearchContextFactory {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SolrSearchContextFactory.class);
 
+	private static SolrServerRegistry serverRegistry;
+
 	private SolrSearchClient client;
 
 	public PolopolySearchContextFactory(Application application) {
@@ -48,8 +51,7 @@ public class PolopolySearchContextFactory {
 		ApplicationComponentControl serviceControl = client.getServiceControl();
 		if(serviceControl instanceof SolrClientImpl) {
 			SolrClientImpl solrClient = (SolrClientImpl) serviceControl;
-			HttpSolrServer httpSolrServer = new HttpSolrServer(solrClient.getSolrServerUrl().getUrl() + "/" + client.getIndexName().getName());
-			context = SolrSearchContextFactory.createSearchContext(httpSolrServer);
+			context = SolrSearchContextFactory.createSearchContext(getServerRegistry().getServer(solrClient.getSolrServerUrl().getUrl(), client.getIndexName().getName()));
 			appendSearchDecoratorsTo(solrClient, context);
 		} else {
 			context = SolrSearchContextFactory.createSearchContext(null);
@@ -58,6 +60,33 @@ public class PolopolySearchContextFactory {
 		return context;
 	}
 
+	private static synchronized SolrServerRegistry getServerRegistry() {
+		if (serverRegistry == null) {
+			serverRegistry = new SolrServerRegistry();
+		}
+		return serverRegistry;
+	}
+
+	/**
+	 * Closes the connection pools that are shared by all contexts of this factory. Call it when the
+	 * application is stopped or undeployed, i.e. in <code>ServletContextListener.contextDestroyed</code>,
+	 * otherwise the pooled connections leak. Contexts created afterwards use a new registry.
+	 */
+	public static void shutdown() {
+		SolrServerRegistry registry;
+		synchronized (PolopolySearchContextFactory.class) {
+			registry = serverRegistry;
+			serverRegistry = null;
+		}
+		if (registry != null) {
+			try {
+				registry.close();
+			} catch (IOException e) {
+				LOG.warn("could not close the solr server registry", e);
+			}
+		}
+	}
+
 	private static void appendSearchDecoratorsTo(SolrClientImpl client, SearchContext context) {
 		for(QueryDecorator decorator : client.getQueryDecorators()) {
 			if(decorator instanceof SearchDecorator) {